@@ -1,6 +1,11 @@
 import os
 import subprocess
 
+# Persistent RunEvaluator processes in sweep mode (lucene only), by (queries file, number of fields). They retrieve the
+# candidates of the queries once and re-score them in memory for every point, instead of starting a JVM and querying
+# the index again each time
+sweep_processes = {}
+
 
 # https://stackoverflow.com/questions/783897/how-to-truncate-float-values
 def truncate(f, n):
@@ -10,6 +15,42 @@ def truncate(f, n):
     return '.'.join([i, (d + '0' * n)[:n]])
 
 
+def run_sweep_point(weights, k1_str, b_str, queries_file, index, output):
+    """Writes the results of a point to output (relative to ../Knowgly), via a sweep process in the case of lucene"""
+    if index != "lucene":
+        args = ["java", "-jar", "../Knowgly/RunEvaluator.jar", "-q", queries_file, "-f", str(len(weights))]
+        for i, w in enumerate(weights):
+            args += [f"-w{i}", w]
+        args += ["-k1", k1_str, "-b", b_str, "-c", index, "-o", output]
+
+        subprocess.run(args, stderr=subprocess.DEVNULL, cwd="../Knowgly")
+        return
+
+    key = (queries_file, len(weights))
+    process = sweep_processes.get(key)
+    if process is None or process.poll() is not None:
+        process = subprocess.Popen(
+            ["java", "-jar", "../Knowgly/RunEvaluator.jar", "-q", queries_file, "-f", str(len(weights)), "-c", index,
+             "-s"],
+            stdin=subprocess.PIPE,
+            stdout=subprocess.PIPE,
+            stderr=subprocess.DEVNULL,
+            text=True,
+            cwd="../Knowgly")
+        sweep_processes[key] = process
+
+    process.stdin.write(" ".join(weights + [k1_str, b_str, output]) + "\n")
+    process.stdin.flush()
+
+    for line in process.stdout:
+        if line.startswith("SWEEP_DONE"):
+            return
+        if line.startswith("SWEEP_ERROR"):
+            raise RuntimeError(line.strip())
+
+    raise RuntimeError("The RunEvaluator sweep process exited unexpectedly")
+
+
 def search_with_field_weights_5(w0, w1, w2, w3, w4, k1, b, queries_file, qrels_file, index):
     score = 0.0
 
@@ -21,11 +62,8 @@ def search_with_field_weights_5(w0, w1, w2, w3, w4, k1, b, queries_file, qrels_f
     k1_str = truncate(k1, 4)
     b_str = truncate(b, 4)
 
-    subprocess.check_output(
-        ["java", "-jar", "../Knowgly/RunEvaluator.jar", "-q", queries_file, "-f", "5", "-w0", w0_str, "-w1",
-         w1_str, "-w2", w2_str, "-w3", w3_str, "-w4", w4_str, "-k1", k1_str, "-b", b_str, "-c", index, "-o", "evaluation/metrics_testing/metrics_aggregator_results/ca.run"],
-        stderr=subprocess.DEVNULL,
-        cwd="../Knowgly")
+    run_sweep_point([w0_str, w1_str, w2_str, w3_str, w4_str], k1_str, b_str, queries_file, index,
+                    "evaluation/metrics_testing/metrics_aggregator_results/ca.run")
 
     trec_eval_path = os.path.join(os.getcwd(), "../Knowgly/evaluation/metrics_testing/trec_eval")
     filename = "metrics_aggregator_results/ca.run"
@@ -50,11 +88,8 @@ def save_results_5(w0, w1, w2, w3, w4, k1, b, filename_prefix, queries_file, ind
     k1_str = truncate(k1, 4)
     b_str = truncate(b, 4)
 
-    subprocess.run(
-        ["java", "-jar", "../Knowgly/RunEvaluator.jar", "-q", queries_file, "-f", "5", "-w0", w0_str, "-w1",
-         w1_str, "-w2", w2_str, "-w3", w3_str, "-w4", w4_str, "-k1", k1_str, "-b", b_str, "-c", index, "-o", "evaluation/metrics_testing/metrics_aggregator_results/ca.run"],
-        stderr=subprocess.DEVNULL,
-        cwd="../Knowgly")
+    run_sweep_point([w0_str, w1_str, w2_str, w3_str, w4_str], k1_str, b_str, queries_file, index,
+                    "evaluation/metrics_testing/metrics_aggregator_results/ca.run")
 
     subprocess.check_output(["mv", "evaluation/metrics_testing/metrics_aggregator_results/ca.run",
                              f"{filename_prefix}_w0_{w0_str}_w1_{w1_str}_w2_{w2_str}_w3_{w3_str}_w4_{w4_str}_k1_{k1_str}_b_{b_str}.run"],
@@ -71,11 +106,8 @@ def search_with_field_weights_3(w0, w1, w2, k1, b, queries_file, qrels_file, ind
     k1_str = truncate(k1, 4)
     b_str = truncate(b, 4)
 
-    subprocess.run(
-        ["java", "-jar", "../Knowgly/RunEvaluator.jar", "-q", queries_file, "-f", "3", "-w0", w0_str, "-w1",
-         w1_str, "-w2", w2_str, "-k1", k1_str, "-b", b_str, "-c", index, "-o", "evaluation/metrics_testing/metrics_aggregator_results/ca.run"],
-        stderr=subprocess.DEVNULL,
-        cwd="../Knowgly")
+    run_sweep_point([w0_str, w1_str, w2_str], k1_str, b_str, queries_file, index,
+                    "evaluation/metrics_testing/metrics_aggregator_results/ca.run")
 
     trec_eval_path = os.path.join(os.getcwd(), "../Knowgly/evaluation/metrics_testing/trec_eval")
     filename = "metrics_aggregator_results/ca.run"
@@ -98,11 +130,8 @@ def save_results_3(w0, w1, w2, k1, b, filename_prefix, queries_file, index):
     k1_str = truncate(k1, 4)
     b_str = truncate(b, 4)
 
-    subprocess.run(
-        ["java", "-jar", "../Knowgly/RunEvaluator.jar", "-q", queries_file, "-f", "3", "-w0", w0_str, "-w1",
-         w1_str, "-w2", w2_str, "-w3", "-k1", k1_str, "-b", b_str, "-c", index, "-o", "evaluation/metrics_testing/metrics_aggregator_results/ca.run"],
-        stderr=subprocess.DEVNULL,
-        cwd="../Knowgly")
+    run_sweep_point([w0_str, w1_str, w2_str], k1_str, b_str, queries_file, index,
+                    "evaluation/metrics_testing/metrics_aggregator_results/ca.run")
 
     subprocess.check_output(["mv", "evaluation/metrics_testing/metrics_aggregator_results/ca.run",
                              f"{filename_prefix}_w0_{w0_str}_w1_{w1_str}_w2_{w2_str}_k1_{k1_str}_b_{b_str}.run"],
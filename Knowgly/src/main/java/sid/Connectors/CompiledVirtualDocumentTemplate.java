@@ -0,0 +1,97 @@
+package sid.Connectors;
+
+import sid.MetricsAggregation.Field;
+import sid.MetricsAggregation.VirtualDocumentTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled representation of a VirtualDocumentTemplate for document building, which routes each predicate URI to the
+ * fields it should be added to (alongside its repetitions), so that documents can be built with a single pass over the
+ * entity's own predicates instead of walking every field and predicate of the template for every entity
+ * <p>
+ * Built once per template by IndexConnector.createEntityDocument
+ */
+public class CompiledVirtualDocumentTemplate {
+    /**
+     * A destination for a predicate's objects
+     *
+     * @param fieldIndex          Index of the field in the template (and in fieldNames)
+     * @param repetitions         How many times the predicate (and its objects) should appear in the field
+     * @param predicateNameCopies How many times the predicate's name should be added before its objects, on each
+     *                            repetition (0 if it shouldn't be added)
+     */
+    public record Route(int fieldIndex, long repetitions, int predicateNameCopies) {
+    }
+
+    private static final Route[] NO_ROUTES = new Route[0];
+
+    private final String[] fieldNames;
+    private final boolean[] isForEntityLinking;
+    // Predicate URI -> fields it's routed to
+    private final Map<String, Route[]> routes;
+
+    /**
+     * @param t                     The template to compile
+     * @param addPredicateNames     Whether to add the predicate's name before its objects (except in entity linking
+     *                              fields)
+     * @param predicateNamePrefixes If not empty, only add the names of the predicates which contain any of these prefixes
+     *                              (once per prefix contained)
+     */
+    public CompiledVirtualDocumentTemplate(VirtualDocumentTemplate t, boolean addPredicateNames, List<String> predicateNamePrefixes) {
+        this.fieldNames = new String[t.fields.size()];
+        this.isForEntityLinking = new boolean[t.fields.size()];
+
+        Map<String, List<Route>> routesLists = new HashMap<>();
+
+        for (int fieldIndex = 0; fieldIndex < t.fields.size(); fieldIndex++) {
+            Field f = t.fields.get(fieldIndex);
+            fieldNames[fieldIndex] = f.name;
+            isForEntityLinking[fieldIndex] = f.isForEntityLinking;
+
+            for (var fieldElement : f.predicates) {
+                String predicateURI = fieldElement.getPredicateURI();
+
+                int predicateNameCopies = 0;
+                if (addPredicateNames && !f.isForEntityLinking) {
+                    if (predicateNamePrefixes.isEmpty()) { // Add all predicates
+                        predicateNameCopies = 1;
+                    } else { // Add only those predicates which contains any of the required prefixes
+                        for (String predicateNamePrefix : predicateNamePrefixes) {
+                            if (predicateURI.contains(predicateNamePrefix))
+                                predicateNameCopies++;
+                        }
+                    }
+                }
+
+                // Entity linking fields only contain the objects as-is, once
+                long repetitions = f.isForEntityLinking ? 1 : fieldElement.getRepetitions();
+
+                routesLists.computeIfAbsent(predicateURI, p -> new ArrayList<>())
+                        .add(new Route(fieldIndex, repetitions, predicateNameCopies));
+            }
+        }
+
+        this.routes = new HashMap<>(routesLists.size() * 2);
+        for (var entry : routesLists.entrySet())
+            routes.put(entry.getKey(), entry.getValue().toArray(new Route[0]));
+    }
+
+    /**
+     * @return The fields the given predicate is routed to, or an empty array if it doesn't belong to the template
+     */
+    public Route[] getRoutes(String predicateURI) {
+        return routes.getOrDefault(predicateURI, NO_ROUTES);
+    }
+
+    public String[] getFieldNames() {
+        return fieldNames;
+    }
+
+    public boolean isForEntityLinking(int fieldIndex) {
+        return isForEntityLinking[fieldIndex];
+    }
+}
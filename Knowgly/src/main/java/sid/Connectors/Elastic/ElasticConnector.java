@@ -16,7 +16,6 @@ import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.TransportUtils;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -27,15 +26,18 @@ import sid.Connectors.IndexConnector;
 import sid.Connectors.ScoredSearchResult;
 import sid.MetricsAggregation.Field;
 import sid.MetricsAggregation.VirtualDocumentTemplate;
+import sid.utils.ConfigurationSnapshot;
+import sid.utils.RequestExecutor;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static sid.MetricsAggregation.MetricsAggregator.*;
@@ -57,7 +59,7 @@ import static sid.MetricsAggregation.MetricsAggregator.*;
  * //TODO but then we should assume nobody else is using the index
  */
 public class ElasticConnector extends IndexConnector {
-    private static final String ENDPOINT_CONFIGURATION_FILE = "configuration/elasticEndpointConfiguration.json";
+    public static final String ENDPOINT_CONFIGURATION_FILE = "configuration/elasticEndpointConfiguration.json";
     private static final String PASSWORD_CONF = "password";
     private static final String ENDPOINT_CONF = "endpoint";
     private static final String CERTIFICATE_FINGERPRINT_CONF = "certificateFingerprint";
@@ -65,6 +67,7 @@ public class ElasticConnector extends IndexConnector {
     private static final String ELASTIC_INDEX_NAME_CONF = "elasticIndexName";
     private static final String USER_CONF = "user";
     private static final String CREATE_INDEX_CONF = "createIndex";
+    private static final String MAX_IN_FLIGHT_REQUESTS_CONF = "maxInFlightRequests"; // Optional
 
     private static final String INDEX_DEFINITION_FILE = "configuration/indexDefinition.json";
     private static final String INDEX_FIELD_DEFINITION_FILE = "configuration/indexFieldDefinition.json";
@@ -74,6 +77,9 @@ public class ElasticConnector extends IndexConnector {
 
     private static ElasticsearchClient client = null;
 
+    // Bulk updates and batch searches, sent concurrently up to the configured number of requests in flight
+    private final RequestExecutor requests;
+
     // Entity indexing
     final Deque<EntityDocument> documentsToIndex;
     final static int BULK_UPDATE_SIZE = 1000; // Elastic bulk requests should be smaller than 5 MiB
@@ -85,23 +91,36 @@ public class ElasticConnector extends IndexConnector {
      * @throws IOException If there is any IO error with the configuration file
      */
     public static ElasticConnector fromConfigurationFile() throws IOException {
-        byte[] mapDataEndpoint = Files.readAllBytes(Paths.get(ENDPOINT_CONFIGURATION_FILE));
+        return fromConfiguration(loadConnectorConfiguration(ENDPOINT_CONFIGURATION_FILE));
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNodeEndpoint = objectMapper.readTree(mapDataEndpoint);
+    /**
+     * Constructor from an already loaded configuration, which must contain IndexConnector.CONFIGURATION_FILES and
+     * elasticEndpointConfiguration.json
+     *
+     * @throws IOException If there is any IO error when creating the index
+     */
+    public static ElasticConnector fromConfiguration(ConfigurationSnapshot configuration) throws IOException {
+        configuration.requireKeys(ENDPOINT_CONFIGURATION_FILE, USER_CONF, PASSWORD_CONF, ENDPOINT_CONF, CERTIFICATE_FINGERPRINT_CONF, ENDPOINT_PORT_CONF,
+                ELASTIC_INDEX_NAME_CONF, CREATE_INDEX_CONF);
+        JsonNode rootNodeEndpoint = configuration.get(ENDPOINT_CONFIGURATION_FILE);
 
-        return new ElasticConnector(rootNodeEndpoint.get(USER_CONF).asText(),
+        return new ElasticConnector(configuration,
+                rootNodeEndpoint.get(USER_CONF).asText(),
                 rootNodeEndpoint.get(PASSWORD_CONF).asText(),
                 rootNodeEndpoint.get(ENDPOINT_CONF).asText(),
                 rootNodeEndpoint.get(CERTIFICATE_FINGERPRINT_CONF).asText(),
                 rootNodeEndpoint.get(ENDPOINT_PORT_CONF).asInt(),
                 rootNodeEndpoint.get(ELASTIC_INDEX_NAME_CONF).asText(),
-                rootNodeEndpoint.get(CREATE_INDEX_CONF).asBoolean());
+                rootNodeEndpoint.get(CREATE_INDEX_CONF).asBoolean(),
+                rootNodeEndpoint.has(MAX_IN_FLIGHT_REQUESTS_CONF) ?
+                        rootNodeEndpoint.get(MAX_IN_FLIGHT_REQUESTS_CONF).asInt() : RequestExecutor.DEFAULT_MAX_IN_FLIGHT_REQUESTS);
     }
 
     /**
      * Create an ElasticConnector using the configuration files.
      *
+     * @param configuration Configuration shared by all connectors (see IndexConnector.CONFIGURATION_FILES)
      * @param user        The elastic user
      * @param password    The elastic user's password
      * @param host        The elastic server's address (without the port)
@@ -109,6 +128,7 @@ public class ElasticConnector extends IndexConnector {
      * @param port        The elastic server's port
      * @param indexName   The elastic index where all operations will be done
      * @param createIndex Whether to attempt to create the index or not (will fail silently if it exists)
+     * @param maxInFlightRequests Maximum number of requests sent to the server at the same time
      * @throws IOException If there is any IO errors when reading the configuration files when creating the index
      */
     // If createIndex == true, it will create an index based on the indexDefinition (index general configuration,
@@ -117,15 +137,18 @@ public class ElasticConnector extends IndexConnector {
     // The first one needs to have a %s formatting specifier inside mappings.properties.fields.properties, where it will
     // create as many fields as specified following the indexFieldDefinition template, which needs to have its name as
     // an %s formatting specifier, enclosed in double quotation marks. See the provided example files for a working example.
-    private ElasticConnector(String user,
+    private ElasticConnector(ConfigurationSnapshot configuration,
+                             String user,
                              String password,
                              String host,
                              String fingerprint,
                              int port,
                              String indexName,
-                             boolean createIndex) throws IOException {
-        super();
+                             boolean createIndex,
+                             int maxInFlightRequests) throws IOException {
+        super(configuration);
         this.indexName = indexName;
+        this.requests = new RequestExecutor("elastic", maxInFlightRequests);
 
         SSLContext sslContext = TransportUtils.sslContextFromCaFingerprint(fingerprint);
 
@@ -139,6 +162,9 @@ public class ElasticConnector extends IndexConnector {
                 .setHttpClientConfigCallback(hc -> hc
                                 .setSSLContext(sslContext)
                                 .setDefaultCredentialsProvider(credsProv)
+                                // Enough connections for every request in flight (the defaults are 10 per host)
+                                .setMaxConnPerRoute(maxInFlightRequests)
+                                .setMaxConnTotal(maxInFlightRequests)
                         // To avoid possible timeout problems (not happening right now)
                         // https://github.com/elastic/elasticsearch/issues/65213
                         //.setKeepAliveStrategy((response, context) -> 300000/* 5 minutes*/)
@@ -231,66 +257,101 @@ public class ElasticConnector extends IndexConnector {
 
     @Override
     public void addDocumentToIndex(EntityDocument d) throws IOException {
+        List<EntityDocument> batch = null;
         lock.lock();
 
         try {
             documentsToIndex.add(d);
 
             if (documentsToIndex.size() >= BULK_UPDATE_SIZE)
-                doBulkUpdate();
+                batch = takeDocumentsToIndex();
 
         } finally {
             lock.unlock();
         }
+
+        // Sent outside the lock, so that other threads can keep adding documents while this one waits for a free
+        // request slot
+        if (batch != null)
+            sendBulkUpdate(batch);
     }
 
-    private void doBulkUpdate() throws IOException {
-        lock.lock();
+    private List<EntityDocument> takeDocumentsToIndex() {
+        List<EntityDocument> batch = new ArrayList<>(documentsToIndex.size());
+        while (!documentsToIndex.isEmpty())
+            batch.add(documentsToIndex.pop());
+
+        return batch;
+    }
 
+    private void sendBulkUpdate(List<EntityDocument> batch) throws IOException {
         try {
-            if (!documentsToIndex.isEmpty()) {
-                BulkRequest.Builder br = new BulkRequest.Builder();
-
-                while (!documentsToIndex.isEmpty()) {
-                    EntityDocument d = documentsToIndex.pop();
-                    br.operations(op -> op
-                            .index(idx -> idx
-                                    .index(indexName)
-                                    .id(d.getEntityName())
-                                    .document(d)
-                            )
-                    );
-                }
+            requests.submit(() -> {
+                doBulkUpdate(batch);
+                return null;
+            });
+        } catch (ExecutionException e) { // A previous bulk update failed
+            throw new IOException("Error when doing bulk indexing!", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to send a bulk update", e);
+        }
+    }
 
-                /*
-                 * Posible failures:
-                 *   - Date detection is enabled: It will attempt to create fields both containing Strings and Dates and fail (see above)
-                 *   - The entity name is empty: It will attempt to do an update (PUT) instead of an insertion (POST), and fail
-                 * */
-                var result = client.bulk(br.build());
-
-                // Log errors, if any
-                if (result.errors()) {
-                    String errors = "";
-                    for (BulkResponseItem item : result.items()) {
-                        if (item.error() != null) {
-                            errors = errors.concat(" " + item.error().reason());
-                            System.err.println("Error when indexing entityDocument: " + item.error().reason());
-                        }
-                    }
-
-                    throw new RuntimeException("Error when doing bulk indexing! \n" + errors);
+    private void doBulkUpdate(List<EntityDocument> batch) throws IOException {
+        BulkRequest.Builder br = new BulkRequest.Builder();
+
+        for (EntityDocument d : batch) {
+            br.operations(op -> op
+                    .index(idx -> idx
+                            .index(indexName)
+                            .id(d.getEntityName())
+                            .document(d)
+                    )
+            );
+        }
+
+        /*
+         * Posible failures:
+         *   - Date detection is enabled: It will attempt to create fields both containing Strings and Dates and fail (see above)
+         *   - The entity name is empty: It will attempt to do an update (PUT) instead of an insertion (POST), and fail
+         * */
+        var result = client.bulk(br.build());
+
+        // Log errors, if any
+        if (result.errors()) {
+            String errors = "";
+            for (BulkResponseItem item : result.items()) {
+                if (item.error() != null) {
+                    errors = errors.concat(" " + item.error().reason());
+                    System.err.println("Error when indexing entityDocument: " + item.error().reason());
                 }
             }
-        } finally {
-            lock.unlock();
+
+            throw new RuntimeException("Error when doing bulk indexing! \n" + errors);
         }
     }
 
     @Override
     public void finishIndexing() throws IOException, InterruptedException {
-        doBulkUpdate();
-        // No need for anything else
+        List<EntityDocument> batch;
+        lock.lock();
+
+        try {
+            batch = takeDocumentsToIndex();
+        } finally {
+            lock.unlock();
+        }
+
+        if (!batch.isEmpty())
+            sendBulkUpdate(batch);
+
+        // Wait for every bulk update still in flight
+        try {
+            requests.awaitCompletion();
+        } catch (ExecutionException e) {
+            throw new IOException("Error when doing bulk indexing!", e.getCause());
+        }
     }
 
     @Override
@@ -305,11 +366,18 @@ public class ElasticConnector extends IndexConnector {
     public Map<String, List<ScoredSearchResult>> scoredSearch(Map<String, String> queries,
                                                               VirtualDocumentTemplate template,
                                                               double k1,
-                                                              double b) throws IOException {
-        Map<String, List<ScoredSearchResult>> results = new HashMap<>();
+                                                              double b) throws IOException, ExecutionException, InterruptedException {
+        List<String> queryIDs = new ArrayList<>(queries.keySet());
 
-        for (var entry : queries.entrySet()) {
-            results.put(entry.getKey(), scoredSearch(entry.getValue(), template, k1, b));
+        List<Callable<List<ScoredSearchResult>>> searches = new ArrayList<>();
+        for (String queryID : queryIDs)
+            searches.add(() -> scoredSearch(queries.get(queryID), template, k1, b));
+
+        List<List<ScoredSearchResult>> responses = requests.invokeAll(searches);
+
+        Map<String, List<ScoredSearchResult>> results = new HashMap<>();
+        for (int i = 0; i < queryIDs.size(); i++) {
+            results.put(queryIDs.get(i), responses.get(i));
         }
 
         return results;
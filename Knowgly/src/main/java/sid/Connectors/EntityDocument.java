@@ -6,6 +6,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 /**
@@ -19,10 +20,16 @@ import java.util.List;
  * controlled from the IndexConnector.
  * <p>
  * All contents are string representations of literals or URIs
+ * <p>
+ * Documents can also be created with weighted terms, in which case each field holds (term, frequency) pairs instead of
+ * physically repeating each term as many times as it should appear. This is only used by connectors which can index
+ * term frequencies directly (see IndexConnector.supportsWeightedTerms), and their fields' lists remain empty
  */
 // Values to NOT be serialized (useful for ElasticConnector, which simply serializes everything)
 @JsonIgnoreProperties(value = {
         "entity",
+        "weightedFields",
+        "weighted",
 })
 public class EntityDocument {
     // Name of the entity which this document represents
@@ -48,20 +55,30 @@ public class EntityDocument {
     // List of every term added to any of the predicates
     public List<String> catchAll;
 
+    // Map of field name <-> (term <-> frequency), in insertion order. Only used in weighted documents
+    private final HashMap<String, LinkedHashMap<String, Long>> weightedFields;
+    private final boolean weighted;
+
     public EntityDocument() {
-        this.entity = "";
-        this.fields = new HashMap<>();
-        this.catchAll = new ArrayList<>();
-        this.types = new HashSet<>();
-        this.relations = new HashSet<>();
+        this("", false);
     }
 
     public EntityDocument(String entity) {
+        this(entity, false);
+    }
+
+    /**
+     * @param entity   Name of the entity
+     * @param weighted Whether to store terms as (term, frequency) pairs instead of repeating them
+     */
+    public EntityDocument(String entity, boolean weighted) {
         this.entity = entity;
         this.fields = new HashMap<>();
         this.catchAll = new ArrayList<>();
         this.types = new HashSet<>();
         this.relations = new HashSet<>();
+        this.weightedFields = new HashMap<>();
+        this.weighted = weighted;
     }
 
     /**
@@ -79,12 +96,15 @@ public class EntityDocument {
     }
 
     /**
-     * Add a term to the given field
+     * Add a term to the given field. In weighted documents, it's the same as adding it with a frequency of 1
      *
      * @return false if it was not inserted due to the predicate/field not having been inserted previously,
      * true otherwise
      */
     public boolean addTermToField(String field, String term, boolean addToCatchall) {
+        if (weighted)
+            return addTermToField(field, term, 1, addToCatchall);
+
         if (fields.containsKey(field)) {
             addTermToField(fields, field, term, addToCatchall);
             return true;
@@ -93,6 +113,30 @@ public class EntityDocument {
         }
     }
 
+    /**
+     * Add a term to the given field, as if it was added frequency times in a row. In weighted documents the term is
+     * only stored once, with its frequency accumulated if it was already present in the field. The catch-all field
+     * always gets it frequency times, as it isn't weighted
+     *
+     * @return false if it was not inserted due to the predicate/field not having been inserted previously,
+     * true otherwise
+     */
+    public boolean addTermToField(String field, String term, long frequency, boolean addToCatchall) {
+        if (!fields.containsKey(field))
+            return false;
+
+        if (weighted) {
+            weightedFields.get(field).merge(term, frequency, Long::sum);
+            if (addToCatchall)
+                for (long i = 0; i < frequency; i++) catchAll.add(term);
+        } else {
+            for (long i = 0; i < frequency; i++)
+                addTermToField(fields, field, term, addToCatchall);
+        }
+
+        return true;
+    }
+
     /**
      * Add a field
      *
@@ -101,6 +145,7 @@ public class EntityDocument {
     public boolean addField(String field) {
         if (!this.fields.containsKey(field)) {
             this.fields.put(field, new ArrayList<>());
+            if (weighted) this.weightedFields.put(field, new LinkedHashMap<>());
             return true;
         } else {
             return false;
@@ -116,6 +161,19 @@ public class EntityDocument {
         this.entity = entity;
     }
 
+    @JsonIgnore
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    /**
+     * @return Map of field name <-> (term <-> frequency), only filled in weighted documents
+     */
+    @JsonIgnore
+    public HashMap<String, LinkedHashMap<String, Long>> getWeightedFields() {
+        return weightedFields;
+    }
+
     private void addTermToField(HashMap<String, List<String>> fields, String fieldName, String term, boolean addToCatchall) {
         List<String> field = fields.get(fieldName);
         field.add(term);
@@ -1,13 +1,13 @@
 package sid.Connectors.Galago;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.FileUtils;
 import sid.Connectors.EntityDocument;
 import sid.Connectors.IndexConnector;
 import sid.Connectors.ScoredSearchResult;
 import sid.MetricsAggregation.Field;
 import sid.MetricsAggregation.VirtualDocumentTemplate;
+import sid.utils.ConfigurationSnapshot;
 
 import java.io.*;
 import java.net.URI;
@@ -15,7 +15,6 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -34,6 +33,9 @@ import static sid.MetricsAggregation.MetricsAggregator.*;
  * - Searching is also a 2-step process, although it has been integrated in this java executable, and will automatically
  *   call the run_queries_galago.sh script. As it will already create a .run file, it skips the EntitySearcher phase
  *   entirely
+ * <p>
+ * - The same ranking models can be run in-process over a Lucene index built from the same documents, without the
+ *   galago toolchain, via LuceneConnector's searchWith* methods
  */
 public class GalagoConnector extends IndexConnector {
     private static final String GALAGO_INDEX_PATH = "./galago_index";
@@ -169,7 +171,7 @@ public class GalagoConnector extends IndexConnector {
             }
             """;
 
-    private static final String ENDPOINT_CONFIGURATION_FILE = "configuration/galagoEndpointConfiguration.json";
+    public static final String ENDPOINT_CONFIGURATION_FILE = "configuration/galagoEndpointConfiguration.json";
     private static final String CREATE_INDEX_CONF = "createIndex";
 
     private final BufferedWriter docWriter;
@@ -184,23 +186,32 @@ public class GalagoConnector extends IndexConnector {
      * @throws IOException If there is any IO error with the configuration file
      */
     public static GalagoConnector fromConfigurationFile() throws IOException, URISyntaxException {
-        byte[] mapDataEndpoint = Files.readAllBytes(Paths.get(ENDPOINT_CONFIGURATION_FILE));
+        return fromConfiguration(loadConnectorConfiguration(ENDPOINT_CONFIGURATION_FILE));
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNodeEndpoint = objectMapper.readTree(mapDataEndpoint);
+    /**
+     * Constructor from an already loaded configuration, which must contain IndexConnector.CONFIGURATION_FILES and
+     * galagoEndpointConfiguration.json
+     *
+     * @throws IOException If there is any IO error when creating the index
+     */
+    public static GalagoConnector fromConfiguration(ConfigurationSnapshot configuration) throws IOException, URISyntaxException {
+        configuration.requireKeys(ENDPOINT_CONFIGURATION_FILE, CREATE_INDEX_CONF);
+        JsonNode rootNodeEndpoint = configuration.get(ENDPOINT_CONFIGURATION_FILE);
 
-        return new GalagoConnector(rootNodeEndpoint.get(CREATE_INDEX_CONF).asBoolean());
+        return new GalagoConnector(configuration, rootNodeEndpoint.get(CREATE_INDEX_CONF).asBoolean());
     }
 
     /**
      * Create a GalagoConnector using the configuration files.
      *
+     * @param configuration Configuration shared by all connectors (see IndexConnector.CONFIGURATION_FILES)
      * @param createIndex   Whether to attempt to create the index or not (will fail silently if it exists)
      * @throws IOException                 If there is any IO errors when reading the configuration files when creating the index
      * @throws java.net.URISyntaxException If the server's address URL cannot be parsed
      */
-    private GalagoConnector(boolean createIndex) throws IOException, URISyntaxException {
-        super();
+    private GalagoConnector(ConfigurationSnapshot configuration, boolean createIndex) throws IOException, URISyntaxException {
+        super(configuration);
 
         this.docWriter = new BufferedWriter(new FileWriter(GALAGO_DOCUMENTS_PATH + "/documents.trectext"));
 
@@ -3,18 +3,19 @@ package sid.Connectors;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.jena.rdf.model.Resource;
 import sid.EntityExtractor.EntityExtractorConfiguration;
 import sid.EntityExtractor.ExtractedEntity;
-import sid.MetricsAggregation.Field;
 import sid.MetricsAggregation.VirtualDocumentTemplate;
+import sid.utils.ConfigurationSnapshot;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
 
 import static sid.MetricsAggregation.MetricsAggregator.*;
@@ -59,14 +60,49 @@ public abstract class IndexConnector {
     protected final List<String> forbiddenSubfields;
     protected final int maxNumberOfResults;
 
+    // Configuration files read by every connector
+    public static final List<String> CONFIGURATION_FILES = List.of(INDEX_CONFIGURATION_FILE,
+            METRICS_AGGREGATOR_CONFIGURATION_FILE,
+            ENTITY_INDEXER_CONFIGURATION_FILE,
+            ENTITY_SEARCHER_CONFIGURATION_FILE);
+
+    // Compiled versions of the templates used in createEntityDocument. Templates don't override equals(), so they are
+    // compared by identity
+    private final Map<VirtualDocumentTemplate, CompiledVirtualDocumentTemplate> compiledTemplates = new WeakHashMap<>();
+
     protected IndexConnector() throws IOException {
-        byte[] mapDataIndex = Files.readAllBytes(Paths.get(INDEX_CONFIGURATION_FILE));
-        byte[] mapDataAggregator = Files.readAllBytes(Paths.get(METRICS_AGGREGATOR_CONFIGURATION_FILE));
+        this(ConfigurationSnapshot.fromConfigurationFiles(CONFIGURATION_FILES));
+    }
+
+    /**
+     * @return A snapshot of CONFIGURATION_FILES and the given connector-specific configuration file
+     * @throws IOException If there is any IO error with the configuration files
+     */
+    protected static ConfigurationSnapshot loadConnectorConfiguration(String endpointConfigurationFile) throws IOException {
+        List<String> files = new ArrayList<>(CONFIGURATION_FILES);
+        files.add(endpointConfigurationFile);
+
+        return ConfigurationSnapshot.fromConfigurationFiles(files);
+    }
+
+    /**
+     * @param configuration Already loaded configuration, containing (at least) CONFIGURATION_FILES
+     * @throws IllegalArgumentException If any configuration file or key is missing
+     */
+    protected IndexConnector(ConfigurationSnapshot configuration) {
+        configuration.requireKeys(INDEX_CONFIGURATION_FILE, FIELD_NAME_CONF, SUBFIELDS_CONF)
+                .requireKeys(METRICS_AGGREGATOR_CONFIGURATION_FILE,
+                        CLUSTERS_CONF,
+                        TYPE_PREDICATES_OVERRIDE_CONF,
+                        DIVIDE_DATATYPE_AND_OBJECT_PROPERTIES_CONF,
+                        CREATE_RELATIONS_FIELDS_CONF)
+                .requireKeys(ENTITY_INDEXER_CONFIGURATION_FILE, ADD_PREDICATE_NAMES_CONF, PREDICATE_NAME_PREFIXES_CONF)
+                .requireKeys(ENTITY_SEARCHER_CONFIGURATION_FILE, FORBIDDEN_SUBFIELDS_CONF, MAX_NUMBER_OF_RESULTS_CONF);
 
         ObjectMapper objectMapper = new ObjectMapper();
 
-        JsonNode rootNodeIndex = objectMapper.readTree(mapDataIndex);
-        JsonNode rootNodeAggregator = objectMapper.readTree(mapDataAggregator);
+        JsonNode rootNodeIndex = configuration.get(INDEX_CONFIGURATION_FILE);
+        JsonNode rootNodeAggregator = configuration.get(METRICS_AGGREGATOR_CONFIGURATION_FILE);
 
         Set<String> typePredicatesOverride = objectMapper.convertValue(rootNodeAggregator.get(TYPE_PREDICATES_OVERRIDE_CONF),
                 new TypeReference<HashSet<String>>() {
@@ -82,8 +118,7 @@ public abstract class IndexConnector {
         });
 
         // Entity indexer
-        byte[] mapData = Files.readAllBytes(Paths.get(ENTITY_INDEXER_CONFIGURATION_FILE));
-        JsonNode rootNode = objectMapper.readTree(mapData);
+        JsonNode rootNode = configuration.get(ENTITY_INDEXER_CONFIGURATION_FILE);
 
         this.addPredicateNames = rootNode.get(ADD_PREDICATE_NAMES_CONF).asBoolean();
         this.predicateNamePrefixes = objectMapper.convertValue(rootNode.get(PREDICATE_NAME_PREFIXES_CONF),
@@ -91,10 +126,7 @@ public abstract class IndexConnector {
                 });
 
         // Entity searcher
-        mapData = Files.readAllBytes(Paths.get(ENTITY_SEARCHER_CONFIGURATION_FILE));
-
-        objectMapper = new ObjectMapper();
-        rootNode = objectMapper.readTree(mapData);
+        rootNode = configuration.get(ENTITY_SEARCHER_CONFIGURATION_FILE);
 
         this.forbiddenSubfields = objectMapper.convertValue(rootNode.get(FORBIDDEN_SUBFIELDS_CONF),
                 new TypeReference<List<String>>() {
@@ -117,40 +149,54 @@ public abstract class IndexConnector {
 
         Map<String, String> predicateNames = e.getAllPredicateNamesMap(strategy);
 
-        EntityDocument d = new EntityDocument(e.name);
+        EntityDocument d = new EntityDocument(e.name, supportsWeightedTerms());
+
+        CompiledVirtualDocumentTemplate compiledTemplate = compileTemplate(t);
+        String[] fieldNames = compiledTemplate.getFieldNames();
+        for (String field : fieldNames)
+            d.addField(field);
+
+        // A single pass over the entity's own predicates, routing their objects to the fields they belong to. Their
+        // names should match with the full predicate URIs in the template's fields
+        for (Resource predicate : e.getAllPredicates()) {
+            String predicateURI = predicate.getURI();
+            CompiledVirtualDocumentTemplate.Route[] routes = compiledTemplate.getRoutes(predicateURI);
+            if (routes.length == 0) continue;
+
+            // Only extracted if needed by any of its routes
+            List<String> terms = null;
+            List<String> entityLinkingTerms = null;
 
-        for (Field f : t.fields) {
-            d.addField(f.name);
+            for (var route : routes) {
+                String field = fieldNames[route.fieldIndex()];
 
-            // A field can be empty, and their names should match with the full predicate URIs (which can be obtained from
-            // e.getAllPredicateURIs())
-            for (var fieldElement : f.predicates) {
-                if (f.isForEntityLinking) { // Do not add predicate names, only objects as-is (URIs)
-                    List<String> terms = e.getObjectsOfPredicate(fieldElement.getPredicateURI(), EntityExtractorConfiguration.URIRenamingStrategy.None);
+                if (compiledTemplate.isForEntityLinking(route.fieldIndex())) { // Do not add predicate names, only objects as-is (URIs)
+                    if (entityLinkingTerms == null)
+                        entityLinkingTerms = e.getObjectsOfPredicate(predicate, EntityExtractorConfiguration.URIRenamingStrategy.None);
 
-                    for (String term : terms) d.addTermToField(f.name, term, addToCatchall);
+                    for (String term : entityLinkingTerms) d.addTermToField(field, term, route.repetitions(), addToCatchall);
                 } else {
-                    List<String> terms = e.getObjectsOfPredicate(fieldElement.getPredicateURI(), strategy);
-
-                    for (int i = 0; i < fieldElement.getRepetitions(); i++) { // For as many times as the predicate (and its objects) should appear
-                        if (!terms.isEmpty()) {
-                            if (addPredicateNames) {
-                                if (predicateNamePrefixes.isEmpty()) { // Add all predicates
-                                    // Add the predicate's name once, before its objects
-                                    // In case it is a camelCase URI converted to text by extracting only its local name,
-                                    // we separate it into chunks
-                                    d.addTermToField(f.name, predicateNames.get(fieldElement.getPredicateURI()), addToCatchall);
-                                } else { // Add only those predicates which contains any of the required prefixes
-                                    for (String predicateNamePrefix : predicateNamePrefixes) {
-                                        if (fieldElement.getPredicateURI().contains(predicateNamePrefix)) {
-                                            d.addTermToField(f.name, predicateNames.get(fieldElement.getPredicateURI()), addToCatchall);
-                                        }
-                                    }
-                                }
-                            }
-
-                            for (String term : terms) d.addTermToField(f.name, term, addToCatchall);
-                        }
+                    if (terms == null)
+                        terms = e.getObjectsOfPredicate(predicate, strategy);
+                    if (terms.isEmpty()) continue;
+
+                    if (d.isWeighted()) { // Same contents, without physically repeating them
+                        if (route.predicateNameCopies() > 0)
+                            d.addTermToField(field, predicateNames.get(predicateURI),
+                                    route.repetitions() * route.predicateNameCopies(), addToCatchall);
+
+                        for (String term : terms) d.addTermToField(field, term, route.repetitions(), addToCatchall);
+                        continue;
+                    }
+
+                    for (long i = 0; i < route.repetitions(); i++) { // For as many times as the predicate (and its objects) should appear
+                        // Add the predicate's name before its objects
+                        // In case it is a camelCase URI converted to text by extracting only its local name,
+                        // we separate it into chunks
+                        for (int j = 0; j < route.predicateNameCopies(); j++)
+                            d.addTermToField(field, predicateNames.get(predicateURI), addToCatchall);
+
+                        for (String term : terms) d.addTermToField(field, term, addToCatchall);
                     }
                 }
             }
@@ -174,6 +220,27 @@ public abstract class IndexConnector {
         return d;
     }
 
+    /**
+     * Get the compiled version of the template, compiling it if it hasn't been used before. Compiled templates are
+     * cached until their template is no longer referenced
+     */
+    protected CompiledVirtualDocumentTemplate compileTemplate(VirtualDocumentTemplate t) {
+        synchronized (compiledTemplates) {
+            return compiledTemplates.computeIfAbsent(t, template ->
+                    new CompiledVirtualDocumentTemplate(template, addPredicateNames, predicateNamePrefixes));
+        }
+    }
+
+    /**
+     * Whether this connector can index (term, frequency) pairs directly. If so, createEntityDocument will create
+     * weighted documents instead of repeating each term as many times as indicated by the template
+     * <p>
+     * Term order is not kept within weighted fields, so connectors relying on term positions should not enable it
+     */
+    protected boolean supportsWeightedTerms() {
+        return false;
+    }
+
     public abstract void addDocumentToIndex(EntityDocument d) throws IOException;
 
     public abstract void finishIndexing() throws IOException, InterruptedException;
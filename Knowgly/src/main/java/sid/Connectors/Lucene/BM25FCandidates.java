@@ -0,0 +1,230 @@
+package sid.Connectors.Lucene;
+
+import org.apache.lucene.util.SmallFloat;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Candidate documents of a single query, alongside every statistic BM25F needs from them which doesn't depend on the
+ * field weights, k1 or b: per-field term frequencies and lengths, and the query terms' document frequencies and
+ * per-field collection statistics
+ * <p>
+ * Once collected (see LuceneRankingModels.collectBM25FCandidates), the query can be scored for any field weights and
+ * BM25 parameters without touching the index. Scores follow LuceneConnector.scoredSearch (a sum of one
+ * CombinedFieldQuery per term with Lucene's BM25Similarity), including its float arithmetic:
+ * <p>
+ * - Each term's idf uses its maximum document frequency across fields, and the maximum number of documents with any
+ * of the fields
+ * <p>
+ * - The average length is the weighted sum of the fields' total term frequencies over that number of documents
+ * <p>
+ * - A document's length is the weighted sum of its fields' lengths (as decoded from their norms), encoded again as a
+ * norm, and its term frequency is the weighted sum of the term's frequencies in each field
+ * <p>
+ * The only difference is the order in which those term frequencies are added up: Lucene's depends on the state of the
+ * fields' postings iterators, while here they're always added by field name. With non-integer weights, scores may then
+ * differ in their last bit
+ */
+public final class BM25FCandidates {
+    private static final float[] LENGTH_TABLE = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++)
+            LENGTH_TABLE[i] = SmallFloat.byte4ToInt((byte) i);
+    }
+
+    private final int nFields;
+    private final int nTerms;
+    // Maximum document frequency of each term across fields (0 if it's not in any of them)
+    private final long[] docFreqs;
+    // Maximum number of documents with each field
+    private final long docCount;
+    private final long[] sumTotalTermFreqs;
+    // Fields in the order CombinedFieldQuery visits them (by name), which matters for its float and long rounding
+    private final int[] fieldOrder;
+
+    private int size;
+    private int[] docs;
+    private int[] lengths; // [candidate][field]
+    private int[] freqs;   // [candidate][field][term]
+
+    /**
+     * @param docFreqs          Maximum document frequency of each term across fields
+     * @param docCount          Maximum number of documents with each field
+     * @param sumTotalTermFreqs Total term frequency of each field
+     * @param fieldOrder        Field indexes, sorted by field name
+     */
+    BM25FCandidates(long[] docFreqs, long docCount, long[] sumTotalTermFreqs, int[] fieldOrder) {
+        this.nFields = sumTotalTermFreqs.length;
+        this.nTerms = docFreqs.length;
+        this.docFreqs = docFreqs;
+        this.docCount = docCount;
+        this.sumTotalTermFreqs = sumTotalTermFreqs;
+        this.fieldOrder = fieldOrder;
+
+        this.docs = new int[16];
+        this.lengths = new int[16 * nFields];
+        this.freqs = new int[16 * nFields * nTerms];
+    }
+
+    /**
+     * @param doc            Global doc ID of the candidate
+     * @param fieldLengths   Length of each field, as decoded from its norm (0 if the document doesn't have it)
+     * @param fieldTermFreqs Frequency of each term in each field ([field][term])
+     */
+    void add(int doc, int[] fieldLengths, int[] fieldTermFreqs) {
+        if (size == docs.length) {
+            int capacity = docs.length * 2;
+            docs = Arrays.copyOf(docs, capacity);
+            lengths = Arrays.copyOf(lengths, capacity * nFields);
+            freqs = Arrays.copyOf(freqs, capacity * nFields * nTerms);
+        }
+
+        docs[size] = doc;
+        System.arraycopy(fieldLengths, 0, lengths, size * nFields, nFields);
+        System.arraycopy(fieldTermFreqs, 0, freqs, size * nFields * nTerms, nFields * nTerms);
+        size++;
+    }
+
+    /**
+     * Keep only the best maxCandidates candidates according to BM25F with a weight of 1 for every field and the
+     * usual k1 = 1.2 and b = 0.75, and release any unused capacity
+     */
+    void prune(int maxCandidates) {
+        if (maxCandidates > 0 && size > maxCandidates) {
+            double[] weights = new double[nFields];
+            Arrays.fill(weights, 1);
+
+            float[] scores = scores(weights, 1.2, 0.75);
+
+            float[] sortedScores = scores.clone();
+            Arrays.sort(sortedScores);
+            float threshold = sortedScores[size - maxCandidates];
+
+            int kept = 0;
+            for (int c = 0; c < size && kept < maxCandidates; c++) {
+                if (scores[c] < threshold) continue;
+
+                docs[kept] = docs[c];
+                System.arraycopy(lengths, c * nFields, lengths, kept * nFields, nFields);
+                System.arraycopy(freqs, c * nFields * nTerms, freqs, kept * nFields * nTerms, nFields * nTerms);
+                kept++;
+            }
+
+            size = kept;
+        }
+
+        docs = Arrays.copyOf(docs, size);
+        lengths = Arrays.copyOf(lengths, size * nFields);
+        freqs = Arrays.copyOf(freqs, size * nFields * nTerms);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Global doc ID of the given candidate. Candidates are in increasing doc ID order
+     */
+    public int getDoc(int candidate) {
+        return docs[candidate];
+    }
+
+    /**
+     * BM25F score of every candidate
+     *
+     * @param weights Weight of each field, in the same order used when collecting the candidates
+     */
+    public float[] scores(double[] weights, double k1, double b) {
+        float[] fieldWeights = new float[nFields];
+        for (int f = 0; f < nFields; f++)
+            fieldWeights[f] = (float) weights[f];
+
+        float avgLength = averageLength(fieldWeights, sumTotalTermFreqs, fieldOrder, docCount);
+
+        float[] idfs = new float[nTerms];
+        for (int t = 0; t < nTerms; t++)
+            idfs[t] = idf(docFreqs[t], docCount);
+
+        float[] normInverses = normInverses(k1, b, avgLength);
+
+        float[] scores = new float[size];
+        for (int c = 0; c < size; c++) {
+            int lengthsOffset = c * nFields;
+            int freqsOffset = c * nFields * nTerms;
+
+            float normInverse = normInverses[norm(fieldWeights, lengths, lengthsOffset, fieldOrder)];
+            double score = 0;
+
+            for (int t = 0; t < nTerms; t++) {
+                float tf = 0;
+                for (int f : fieldOrder)
+                    tf += fieldWeights[f] * freqs[freqsOffset + f * nTerms + t];
+
+                if (tf > 0)
+                    score += idfs[t] - idfs[t] / (1f + tf * normInverse);
+            }
+
+            scores[c] = (float) score;
+        }
+
+        return scores;
+    }
+
+    /**
+     * @return Field indexes, sorted by field name
+     */
+    static int[] fieldOrder(String[] fields) {
+        return IntStream.range(0, fields.length)
+                .boxed()
+                .sorted(Comparator.comparing(f -> fields[f]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Average length of the combined field. Its total term frequency is truncated to a long on every addition, as
+     * CombinedFieldQuery does
+     */
+    static float averageLength(float[] fieldWeights, long[] sumTotalTermFreqs, int[] fieldOrder, long docCount) {
+        long sumTotalTermFreq = 0;
+        for (int f : fieldOrder)
+            sumTotalTermFreq = (long) (sumTotalTermFreq + (double) fieldWeights[f] * sumTotalTermFreqs[f]);
+
+        return (float) (sumTotalTermFreq / (double) docCount);
+    }
+
+    /**
+     * @return The idf of a term with the given document frequency (0 if it's not in any document)
+     */
+    static float idf(long docFreq, long docCount) {
+        return docFreq > 0 ? (float) Math.log(1 + (docCount - docFreq + 0.5D) / (docFreq + 0.5D)) : 0;
+    }
+
+    /**
+     * @return 1 / length normalization, for every encoded length (see norm)
+     */
+    static float[] normInverses(double k1, double b, float avgLength) {
+        float k1f = (float) k1;
+        float bf = (float) b;
+        float[] normInverses = new float[256];
+        for (int i = 0; i < 256; i++)
+            normInverses[i] = 1f / (k1f * ((1 - bf) + bf * LENGTH_TABLE[i] / avgLength));
+
+        return normInverses;
+    }
+
+    /**
+     * @param lengths Length of each field, starting at offset
+     * @return The weighted sum of the fields' lengths, encoded as a norm
+     */
+    static int norm(float[] fieldWeights, int[] lengths, int offset, int[] fieldOrder) {
+        float length = 0;
+        for (int f : fieldOrder)
+            length += fieldWeights[f] * lengths[offset + f];
+
+        return Byte.toUnsignedInt(SmallFloat.intToByte4(Math.round(length)));
+    }
+}
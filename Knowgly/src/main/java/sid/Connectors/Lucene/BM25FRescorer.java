@@ -0,0 +1,146 @@
+package sid.Connectors.Lucene;
+
+import sid.Connectors.ScoredSearchResult;
+import sid.MetricsAggregation.Field;
+import sid.MetricsAggregation.VirtualDocumentTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BM25F re-scoring engine for parameter sweeps (field weights, k1 and b) over a fixed set of queries and fields
+ * <p>
+ * The candidates of every query are retrieved once, alongside their per-field term frequencies and lengths (see
+ * BM25FCandidates). Afterwards, each new set of parameters is scored in memory, without querying the index again.
+ * As long as the candidates are not pruned, rankings (including ties, by doc ID) are the same as
+ * LuceneConnector.scoredSearch's, and so are the scores, save for their last bit with non-integer field weights (see
+ * BM25FCandidates), so it can replace it in parameter sweeps (see RunEvaluator's sweep mode)
+ * <p>
+ * The URIs of the results are also cached on their first use, so that repeated sweeps don't read stored fields either
+ */
+public class BM25FRescorer {
+    private final LuceneRankingModels models;
+    private final List<String> fieldNames;
+    // Query ID -> its candidates
+    private final Map<String, BM25FCandidates> candidates = new ConcurrentHashMap<>();
+    // Global doc ID -> URI
+    private final Map<Integer, String> uris = new ConcurrentHashMap<>();
+
+    /**
+     * @param models        Ranking models over the index to query
+     * @param queries       Map of query ID <-> query text
+     * @param fieldNames    Fields to score. Weights will need to be given in this same order
+     * @param maxCandidates If > 0, maximum number of candidates to keep per query (the best ones with equal field
+     *                      weights). Otherwise, every document containing any of the query's terms is kept
+     */
+    public BM25FRescorer(LuceneRankingModels models,
+                         Map<String, String> queries,
+                         List<String> fieldNames,
+                         int maxCandidates) {
+        this.models = models;
+        this.fieldNames = List.copyOf(fieldNames);
+
+        Instant start = Instant.now();
+        String[] fields = fieldNames.toArray(new String[0]);
+
+        queries.entrySet().stream().parallel().forEach(query -> {
+            try {
+                candidates.put(query.getKey(), models.collectBM25FCandidates(query.getValue(), fields, maxCandidates));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        long totalCandidates = candidates.values().stream().mapToLong(BM25FCandidates::size).sum();
+        System.out.println("Collected " + totalCandidates + " BM25F candidates for " + candidates.size() + " queries. Time: "
+                + Duration.between(start, Instant.now()));
+    }
+
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * Re-score every query with the weights of the template's fields. Fields not in the template have a weight of 0
+     */
+    public Map<String, List<ScoredSearchResult>> rescore(VirtualDocumentTemplate template,
+                                                         double k1,
+                                                         double b,
+                                                         int maxResults) {
+        double[] weights = new double[fieldNames.size()];
+        for (Field f : template.fields) {
+            int fieldIndex = fieldNames.indexOf(f.name);
+            if (fieldIndex != -1)
+                weights[fieldIndex] = f.weight;
+        }
+
+        return rescore(weights, k1, b, maxResults);
+    }
+
+    /**
+     * Re-score every query
+     *
+     * @param weights Weight of each field, in the same order as getFieldNames()
+     */
+    public Map<String, List<ScoredSearchResult>> rescore(double[] weights, double k1, double b, int maxResults) {
+        if (weights.length != fieldNames.size())
+            throw new IllegalArgumentException("Expected " + fieldNames.size() + " field weights, got " + weights.length);
+
+        Map<String, List<ScoredSearchResult>> results = new ConcurrentHashMap<>();
+
+        candidates.entrySet().stream().parallel().forEach(query ->
+                results.put(query.getKey(), rescore(query.getValue(), weights, k1, b, maxResults)));
+
+        return results;
+    }
+
+    private List<ScoredSearchResult> rescore(BM25FCandidates queryCandidates,
+                                             double[] weights,
+                                             double k1,
+                                             double b,
+                                             int maxResults) {
+        float[] scores = queryCandidates.scores(weights, k1, b);
+
+        // Best maxResults candidates, as indexes in queryCandidates (which are sorted by doc ID). Ties are broken by
+        // doc ID, as Lucene does
+        Comparator<Integer> ranking = (c1, c2) -> scores[c1] != scores[c2] ?
+                Float.compare(scores[c1], scores[c2]) :
+                Integer.compare(c2, c1);
+        PriorityQueue<Integer> topCandidates = new PriorityQueue<>(maxResults + 1, ranking);
+
+        for (int c = 0; c < scores.length; c++) {
+            if (topCandidates.size() < maxResults) {
+                topCandidates.add(c);
+            } else if (maxResults > 0 && scores[c] > scores[topCandidates.peek()]) {
+                topCandidates.poll();
+                topCandidates.add(c);
+            }
+        }
+
+        List<Integer> ranked = new ArrayList<>(topCandidates);
+        ranked.sort(ranking.reversed());
+
+        List<ScoredSearchResult> results = new ArrayList<>(ranked.size());
+        for (int c : ranked)
+            results.add(new ScoredSearchResult(getURI(queryCandidates.getDoc(c)), scores[c]));
+
+        return results;
+    }
+
+    private String getURI(int doc) {
+        return uris.computeIfAbsent(doc, d -> {
+            try {
+                return models.getURI(d);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+}
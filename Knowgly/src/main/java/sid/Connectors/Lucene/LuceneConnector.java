@@ -1,19 +1,23 @@
 package sid.Connectors.Lucene;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.sandbox.search.CombinedFieldQuery;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.similarities.BM25Similarity;
@@ -25,6 +29,8 @@ import sid.Connectors.EntityDocument;
 import sid.Connectors.IndexConnector;
 import sid.Connectors.ScoredSearchResult;
 import sid.MetricsAggregation.VirtualDocumentTemplate;
+import sid.utils.ConfigurationSnapshot;
+import sid.utils.ExecutionRuntime;
 
 import java.io.IOException;
 import java.io.StringReader;
@@ -32,49 +38,140 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Connector for Lucene
  * <p>
  * Limitations: BM25F field weights must be > 1.0
+ * <p>
+ * If weightedTerms is enabled, repeated terms are indexed once with their frequency (see WeightedTermsTokenStream),
+ * and term positions are not indexed. Changing it requires recreating the index
+ * <p>
+ * If bulkLoad is enabled, the IndexWriter is tuned for building a write-once index as fast as possible: a big RAM
+ * buffer (ramBufferSizeMB), fewer and bigger merges which are not IO-throttled, no compound files, and an optional
+ * final force merge (forceMergeMaxSegments). Indexing statistics (throughput, merges and time spent on them) are
+ * reported when indexing finishes, regardless of the profile
+ * <p>
+ * Besides BM25F (scoredSearch), the searchWith* methods run the same ranking models as GalagoConnector (BM25, BM25F,
+ * with or without bigrams, and FSDM) in-process via LuceneRankingModels
  */
 public class LuceneConnector extends IndexConnector {
     public static final String LUCENE_INDEX_PATH = "./lucene_index";
 
-    private static final String ENDPOINT_CONFIGURATION_FILE = "configuration/luceneEndpointConfiguration.json";
+    public static final String ENDPOINT_CONFIGURATION_FILE = "configuration/luceneEndpointConfiguration.json";
+
+    // Name of the execution runtime's stage for batch searches
+    public static final String SEARCH_STAGE = "luceneSearch";
 
     private static final String CREATE_INDEX_CONF = "createIndex";
+    private static final String WEIGHTED_TERMS_CONF = "weightedTerms";
+    private static final String BULK_LOAD_CONF = "bulkLoad";
+    private static final String RAM_BUFFER_SIZE_MB_CONF = "ramBufferSizeMB";
+    private static final String FORCE_MERGE_MAX_SEGMENTS_CONF = "forceMergeMaxSegments";
+
+    static final double DEFAULT_BULK_RAM_BUFFER_SIZE_MB = 1024;
+
+    // Fields of weighted documents: term frequencies and norms, but no positions
+    private static final FieldType WEIGHTED_TERMS_FIELD_TYPE = new FieldType();
+
+    static {
+        WEIGHTED_TERMS_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+        WEIGHTED_TERMS_FIELD_TYPE.setTokenized(true);
+        WEIGHTED_TERMS_FIELD_TYPE.setStored(false);
+        WEIGHTED_TERMS_FIELD_TYPE.freeze();
+    }
+
+    // Thread-safe, as it reuses its components per thread
+    private static final Analyzer analyzer = new StandardAnalyzer();
 
     private static IndexWriter indexWriter;
     private static DirectoryReader ireader; // Shared reader for all (parallel) searchers
 
+    private final boolean weightedTerms;
+    private LuceneRankingModels rankingModels;
+    private final boolean bulkLoad;
+    private final double ramBufferSizeMB;
+    private final int forceMergeMaxSegments;
+
+    // Per-thread Document and Field instances, reused between documents
+    private final ThreadLocal<ReusableDocument> reusableDocuments = ThreadLocal.withInitial(ReusableDocument::new);
+
+    // Indexing statistics
+    private TimedMergeScheduler mergeScheduler;
+    private final AtomicLong indexedDocuments = new AtomicLong(0);
+    private volatile Instant indexingStart;
+
     /**
      * Constructor from configuration files
      *
      * @throws IOException If there is any IO error with the configuration file
      */
     public static LuceneConnector fromConfigurationFile() throws IOException, URISyntaxException {
-        byte[] mapDataEndpoint = Files.readAllBytes(Paths.get(ENDPOINT_CONFIGURATION_FILE));
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNodeEndpoint = objectMapper.readTree(mapDataEndpoint);
+        return fromConfiguration(loadConnectorConfiguration(ENDPOINT_CONFIGURATION_FILE));
+    }
 
-        return new LuceneConnector(rootNodeEndpoint.get(CREATE_INDEX_CONF).asBoolean());
+    /**
+     * Constructor from an already loaded configuration, which must contain IndexConnector.CONFIGURATION_FILES and
+     * luceneEndpointConfiguration.json
+     *
+     * @throws IOException If there is any IO error when opening the index
+     */
+    public static LuceneConnector fromConfiguration(ConfigurationSnapshot configuration) throws IOException, URISyntaxException {
+        configuration.requireKeys(ENDPOINT_CONFIGURATION_FILE, CREATE_INDEX_CONF);
+        JsonNode rootNodeEndpoint = configuration.get(ENDPOINT_CONFIGURATION_FILE);
+
+        boolean bulkLoad = rootNodeEndpoint.has(BULK_LOAD_CONF) && rootNodeEndpoint.get(BULK_LOAD_CONF).asBoolean();
+
+        double ramBufferSizeMB = bulkLoad ? DEFAULT_BULK_RAM_BUFFER_SIZE_MB : IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+        if (rootNodeEndpoint.has(RAM_BUFFER_SIZE_MB_CONF))
+            ramBufferSizeMB = rootNodeEndpoint.get(RAM_BUFFER_SIZE_MB_CONF).asDouble();
+
+        int forceMergeMaxSegments = 0;
+        if (rootNodeEndpoint.has(FORCE_MERGE_MAX_SEGMENTS_CONF))
+            forceMergeMaxSegments = rootNodeEndpoint.get(FORCE_MERGE_MAX_SEGMENTS_CONF).asInt();
+
+        return new LuceneConnector(configuration,
+                rootNodeEndpoint.get(CREATE_INDEX_CONF).asBoolean(),
+                rootNodeEndpoint.has(WEIGHTED_TERMS_CONF) && rootNodeEndpoint.get(WEIGHTED_TERMS_CONF).asBoolean(),
+                bulkLoad,
+                ramBufferSizeMB,
+                forceMergeMaxSegments);
     }
 
 
     /**
      * Create a LuceneConnector using the configuration files.
      *
-     * @param createIndex Whether to attempt to create the index or not (will fail silently if it exists)
+     * @param configuration         Configuration shared by all connectors (see IndexConnector.CONFIGURATION_FILES)
+     * @param createIndex   Whether to attempt to create the index or not (will fail silently if it exists)
+     * @param weightedTerms         Whether to index repeated terms once, with their frequency
+     * @param bulkLoad              Whether to tune the IndexWriter for bulk indexing
+     * @param ramBufferSizeMB       Size of the IndexWriter's RAM buffer, in MB
+     * @param forceMergeMaxSegments If > 0, force merge the index into at most this number of segments once indexing
+     *                              finishes
      * @throws IOException If there is any IO errors when reading the configuration files when creating the index
      */
-    private LuceneConnector(boolean createIndex) throws IOException, URISyntaxException {
-        super();
+    private LuceneConnector(ConfigurationSnapshot configuration,
+                            boolean createIndex,
+                            boolean weightedTerms,
+                            boolean bulkLoad,
+                            double ramBufferSizeMB,
+                            int forceMergeMaxSegments) throws IOException, URISyntaxException {
+        super(configuration);
+        this.weightedTerms = weightedTerms;
+        this.bulkLoad = bulkLoad;
+        this.ramBufferSizeMB = ramBufferSizeMB;
+        this.forceMergeMaxSegments = forceMergeMaxSegments;
 
         // Only created if there is an index inside
         createDirectoryReader();
@@ -95,12 +192,45 @@ public class LuceneConnector extends IndexConnector {
         if (!Files.exists(indexPath))
             indexPath = Files.createDirectory(indexPath);
 
-        Analyzer analyzer = new StandardAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        mergeScheduler = new TimedMergeScheduler();
+        IndexWriterConfig config = createIndexWriterConfig(bulkLoad, ramBufferSizeMB, mergeScheduler);
 
         LuceneConnector.indexWriter = new IndexWriter(FSDirectory.open(indexPath), config);
     }
 
+    /**
+     * IndexWriter configuration for the given profile (see the class' description)
+     *
+     * @param mergeScheduler Merge scheduler to use, tuned here if bulkLoad is enabled
+     */
+    static IndexWriterConfig createIndexWriterConfig(boolean bulkLoad,
+                                                     double ramBufferSizeMB,
+                                                     ConcurrentMergeScheduler mergeScheduler) {
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setRAMBufferSizeMB(ramBufferSizeMB);
+
+        if (bulkLoad) {
+            // Write-once index: merge less often but more segments at once, and don't waste time on compound files
+            TieredMergePolicy mergePolicy = new TieredMergePolicy();
+            mergePolicy.setSegmentsPerTier(20);
+            mergePolicy.setMaxMergeAtOnce(20);
+            mergePolicy.setFloorSegmentMB(Math.max(mergePolicy.getFloorSegmentMB(), ramBufferSizeMB / 4));
+            mergePolicy.setMaxMergedSegmentMB(10 * 1024);
+            mergePolicy.setNoCFSRatio(0.0);
+            config.setMergePolicy(mergePolicy);
+            config.setUseCompoundFile(false);
+
+            // Nothing else is reading from the disk, so merges don't need to be throttled
+            int mergeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+            mergeScheduler.setMaxMergesAndThreads(mergeThreads + 4, mergeThreads);
+            mergeScheduler.disableAutoIOThrottle();
+        }
+
+        config.setMergeScheduler(mergeScheduler);
+
+        return config;
+    }
+
     /**
      * Delete every document inside the index
      *
@@ -131,25 +261,54 @@ public class LuceneConnector extends IndexConnector {
      * @throws IOException If there is an error writing the document from Lucene's side
      */
     protected void indexDocument(EntityDocument entityDoc) throws IOException {
-        Document luceneDoc = new Document();
-        // StoredField is used for storing metadata for summary results, we use the
-        // entity's URI in this case
-        luceneDoc.add(new StoredField("URI", entityDoc.getEntityName()));
+        if (indexingStart == null)
+            indexingStart = Instant.now();
+
+        Document luceneDoc = toLuceneDocument(reusableDocuments.get(), entityDoc);
+        indexWriter.addDocument(luceneDoc);
 
-        for (var entry : entityDoc.fields.entrySet()) {
-            StringBuilder fieldContents = new StringBuilder();
+        long indexed = indexedDocuments.incrementAndGet();
+        if (indexed % 100000 == 0)
+            System.out.print("\rLucene: indexed " + indexed + " documents");
+    }
 
-            for (String s : entry.getValue()) {
-                fieldContents.append(s).append(' ');
+    /**
+     * Build the Lucene document of an entity, reusing the given thread's Document and Field instances
+     */
+    static Document toLuceneDocument(ReusableDocument reusableDoc, EntityDocument entityDoc) {
+        Document luceneDoc = reusableDoc.reset(entityDoc.getEntityName());
+
+        if (entityDoc.isWeighted()) {
+            for (var entry : entityDoc.getWeightedFields().entrySet()) {
+                Field field = reusableDoc.getWeightedField(entry.getKey());
+                field.setTokenStream(new WeightedTermsTokenStream(analyzer, entry.getKey(), entry.getValue()));
+                luceneDoc.add(field);
             }
+        } else {
+            StringBuilder fieldContents = reusableDoc.fieldContents;
+
+            for (var entry : entityDoc.fields.entrySet()) {
+                fieldContents.setLength(0);
+
+                for (String s : entry.getValue()) {
+                    fieldContents.append(s).append(' ');
+                }
 
-            if (!fieldContents.isEmpty())
-                fieldContents.deleteCharAt(fieldContents.length() - 1);
+                if (!fieldContents.isEmpty())
+                    fieldContents.deleteCharAt(fieldContents.length() - 1);
 
-            luceneDoc.add(new Field(entry.getKey(), fieldContents, TextField.TYPE_NOT_STORED));
+                Field field = reusableDoc.getTextField(entry.getKey());
+                field.setStringValue(fieldContents.toString());
+                luceneDoc.add(field);
+            }
         }
 
-        indexWriter.addDocument(luceneDoc);
+        return luceneDoc;
+    }
+
+    @Override
+    protected boolean supportsWeightedTerms() {
+        return weightedTerms;
     }
 
     @Override
@@ -159,8 +318,45 @@ public class LuceneConnector extends IndexConnector {
 
     @Override
     public void finishIndexing() throws IOException {
-        closeIndex();
+        Instant addingFinished = Instant.now();
+
+        if (forceMergeMaxSegments > 0) {
+            System.out.println("\nLucene: force merging the index into " + forceMergeMaxSegments + " segment(s)...");
+            indexWriter.forceMerge(forceMergeMaxSegments);
+        }
+
+        Instant forceMergeFinished = Instant.now();
+
+        closeIndex(); // Commits and waits for any pending merges
         createDirectoryReader(); // Allow querying it now
+
+        printIndexingStatistics(addingFinished, forceMergeFinished);
+    }
+
+    private void printIndexingStatistics(Instant addingFinished, Instant forceMergeFinished) {
+        if (indexingStart == null)
+            return;
+
+        Instant end = Instant.now();
+        Duration addingTime = Duration.between(indexingStart, addingFinished);
+        long documents = indexedDocuments.get();
+        double documentsPerSecond = documents / Math.max(0.001, addingTime.toMillis() / 1000.0);
+
+        System.out.println();
+        System.out.println("Lucene indexing statistics (" + (bulkLoad ? "bulk load" : "default") + " profile, RAM buffer: "
+                + ramBufferSizeMB + " MB):");
+        System.out.println("  Documents: " + documents + " (" + Math.round(documentsPerSecond) + " docs/s)");
+        System.out.println("  Adding documents: " + addingTime);
+        System.out.println("  Merges: " + mergeScheduler.getMerges() + " (cumulative merge time: "
+                + Duration.ofNanos(mergeScheduler.getMergeNanos()) + ")");
+        System.out.println("  Force merge: " + Duration.between(addingFinished, forceMergeFinished));
+        System.out.println("  Commit and pending merges: " + Duration.between(forceMergeFinished, end));
+        if (ireader != null)
+            System.out.println("  Segments: " + ireader.leaves().size());
+        System.out.println("Time: " + Duration.between(indexingStart, end));
+
+        indexingStart = null;
+        indexedDocuments.set(0);
     }
 
     private Query buildBM25FQuery(String query,
@@ -226,6 +422,133 @@ public class LuceneConnector extends IndexConnector {
         return runLuceneQuery(booleanQuery, k1, b);
     }
 
+    private interface QueryRunner {
+        List<ScoredSearchResult> run(String query) throws IOException;
+    }
+
+    /**
+     * @return The ranking models over the current reader, which keep their cached statistics while the reader doesn't
+     * change
+     */
+    private synchronized LuceneRankingModels getRankingModels() throws IOException {
+        LuceneConnector.indexWriter.close(); // We cannot write to the index anymore
+
+        if (rankingModels == null || rankingModels.getReader() != ireader)
+            rankingModels = new LuceneRankingModels(ireader, analyzer);
+
+        return rankingModels;
+    }
+
+    private static Map<String, Double> getFieldWeights(VirtualDocumentTemplate template) {
+        Map<String, Double> fieldWeights = new LinkedHashMap<>();
+        for (sid.MetricsAggregation.Field f : template.fields)
+            fieldWeights.put(f.name, f.weight);
+
+        return fieldWeights;
+    }
+
+    private static Map<String, Double> getFieldWeights(VirtualDocumentTemplate template, double weight) {
+        Map<String, Double> fieldWeights = new LinkedHashMap<>();
+        for (sid.MetricsAggregation.Field f : template.fields)
+            fieldWeights.put(f.name, weight * f.weight);
+
+        return fieldWeights;
+    }
+
+    /**
+     * BM25 over the whole document (every field with the same weight)
+     */
+    public Map<String, List<ScoredSearchResult>> searchWithBM25(Map<String, String> queries,
+                                                                double k1,
+                                                                double b,
+                                                                boolean bigrams) throws IOException, ExecutionException, InterruptedException {
+        LuceneRankingModels models = getRankingModels();
+        Map<String, Double> fieldWeights = models.getUnweightedFields();
+
+        return runQueries(queries, q -> models.searchBM25F(q, fieldWeights, k1, b, bigrams, this.maxNumberOfResults));
+    }
+
+    /**
+     * BM25F with the template's field weights. Unlike scoredSearch, it can also score the query's bigrams
+     */
+    public Map<String, List<ScoredSearchResult>> searchWithBM25F(Map<String, String> queries,
+                                                                 VirtualDocumentTemplate template,
+                                                                 double k1,
+                                                                 double b,
+                                                                 boolean bigrams) throws IOException, ExecutionException, InterruptedException {
+        LuceneRankingModels models = getRankingModels();
+        Map<String, Double> fieldWeights = getFieldWeights(template);
+
+        return runQueries(queries, q -> models.searchBM25F(q, fieldWeights, k1, b, bigrams, this.maxNumberOfResults));
+    }
+
+    /**
+     * FSDM with the same default component weights as GalagoConnector (0.8, 0.2, 0.2 times each field's weight)
+     */
+    public Map<String, List<ScoredSearchResult>> searchWithFSDM(Map<String, String> queries,
+                                                                VirtualDocumentTemplate template) throws IOException, ExecutionException, InterruptedException {
+        return searchWithFSDM(queries, template, 0.8, 0.2, 0.2);
+    }
+
+    public Map<String, List<ScoredSearchResult>> searchWithFSDM(Map<String, String> queries,
+                                                                VirtualDocumentTemplate template,
+                                                                double uni,
+                                                                double od,
+                                                                double uww) throws IOException, ExecutionException, InterruptedException {
+        return searchWithFSDM(queries,
+                getFieldWeights(template, uni),
+                getFieldWeights(template, od),
+                getFieldWeights(template, uww));
+    }
+
+    public Map<String, List<ScoredSearchResult>> searchWithFSDM(Map<String, String> queries,
+                                                                Map<String, Double> uniWeights,
+                                                                Map<String, Double> odWeights,
+                                                                Map<String, Double> uwwWeights) throws IOException, ExecutionException, InterruptedException {
+        LuceneRankingModels models = getRankingModels();
+
+        return runQueries(queries, q -> models.searchFSDM(q, uniWeights, odWeights, uwwWeights, this.maxNumberOfResults));
+    }
+
+    /**
+     * Create a BM25F re-scoring engine for the given queries over the template's fields, for sweeping over field
+     * weights, k1 and b without querying the index again for every combination. Results are limited to
+     * maxNumberOfResults, as in scoredSearch
+     *
+     * @param maxCandidates If > 0, maximum number of candidates to keep per query
+     */
+    public BM25FRescorer createBM25FRescorer(Map<String, String> queries,
+                                             VirtualDocumentTemplate template,
+                                             int maxCandidates) throws IOException {
+        List<String> fieldNames = new ArrayList<>();
+        for (sid.MetricsAggregation.Field f : template.fields)
+            fieldNames.add(f.name);
+
+        return new BM25FRescorer(getRankingModels(), queries, fieldNames, maxCandidates);
+    }
+
+    public Map<String, List<ScoredSearchResult>> rescore(BM25FRescorer rescorer,
+                                                         VirtualDocumentTemplate template,
+                                                         double k1,
+                                                         double b) {
+        return rescorer.rescore(template, k1, b, this.maxNumberOfResults);
+    }
+
+    private Map<String, List<ScoredSearchResult>> runQueries(Map<String, String> queries,
+                                                             QueryRunner runner) throws ExecutionException, InterruptedException {
+        ConcurrentHashMap<String, List<ScoredSearchResult>> results = new ConcurrentHashMap<>();
+
+        ExecutionRuntime.getDefault().stage(SEARCH_STAGE).forEach(queries.entrySet(), entry -> {
+            try {
+                results.put(entry.getKey(), runner.run(entry.getValue()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        return results;
+    }
+
     @Override
     public Map<String, List<ScoredSearchResult>> scoredSearch(Map<String, String> queries,
                                                               VirtualDocumentTemplate template,
@@ -235,28 +558,73 @@ public class LuceneConnector extends IndexConnector {
 
         ConcurrentHashMap<String, List<ScoredSearchResult>> results = new ConcurrentHashMap<>();
 
-        List<Future<Object>> futures;
-        try (ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
-            futures = queries.entrySet().stream()
-                    .map(entry -> executor.submit(() -> {
-                        String qid = entry.getKey();
-                        String q = entry.getValue();
-                        try {
-                            Query booleanQuery = buildBM25FQuery(q, template);
-                            results.put(qid, runLuceneQuery(booleanQuery, k1, b));
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-
-                        return null;
-                    }))
-                    .toList();
+        ExecutionRuntime.getDefault().stage(SEARCH_STAGE).forEach(queries.entrySet(), entry -> {
+            String qid = entry.getKey();
+            String q = entry.getValue();
+            try {
+                Query booleanQuery = buildBM25FQuery(q, template);
+                results.put(qid, runLuceneQuery(booleanQuery, k1, b));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Document and Field instances of a single indexing thread, reused between the documents it indexes instead of
+     * creating new ones for every entity. Lucene doesn't keep any reference to them once addDocument returns
+     */
+    static final class ReusableDocument {
+        private final Document document = new Document();
+        private final StoredField uriField = new StoredField("URI", "");
+        private final Map<String, Field> textFields = new HashMap<>();
+        private final Map<String, Field> weightedFields = new HashMap<>();
+        private final StringBuilder fieldContents = new StringBuilder();
+
+        Document reset(String uri) {
+            document.clear();
+            // StoredField is used for storing metadata for summary results, we use the
+            // entity's URI in this case
+            uriField.setStringValue(uri);
+            document.add(uriField);
+            return document;
         }
 
-        for (Future<Object> future : futures) {
-            future.get();
+        Field getTextField(String name) {
+            return textFields.computeIfAbsent(name, n -> new Field(n, "", TextField.TYPE_NOT_STORED));
         }
 
-        return results;
+        Field getWeightedField(String name) {
+            return weightedFields.computeIfAbsent(name, n -> new Field(n, "", WEIGHTED_TERMS_FIELD_TYPE));
+        }
+    }
+
+    /**
+     * ConcurrentMergeScheduler which keeps track of the number of merges and the time spent on them
+     */
+    static final class TimedMergeScheduler extends ConcurrentMergeScheduler {
+        private final AtomicInteger merges = new AtomicInteger(0);
+        private final AtomicLong mergeNanos = new AtomicLong(0);
+
+        @Override
+        protected void doMerge(MergeSource mergeSource, MergePolicy.OneMerge merge) throws IOException {
+            long start = System.nanoTime();
+            try {
+                super.doMerge(mergeSource, merge);
+            } finally {
+                mergeNanos.addAndGet(System.nanoTime() - start);
+                merges.incrementAndGet();
+            }
+        }
+
+        int getMerges() {
+            return merges.get();
+        }
+
+        long getMergeNanos() {
+            return mergeNanos.get();
+        }
     }
 }
@@ -0,0 +1,634 @@
+package sid.Connectors.Lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.SmallFloat;
+import sid.Connectors.ScoredSearchResult;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-JVM implementation of the ranking models GalagoConnector runs through Galago, over an index built by
+ * LuceneConnector from the same virtual documents:
+ * <p>
+ * - BM25F (and BM25, as BM25F over every field with a weight of 1), optionally adding the query's bigrams as ordered
+ * windows of width 1, as in GalagoConnector's bigram search configurations
+ * <p>
+ * - FSDM (Fielded Sequential Dependence Model), which mixes unigrams, ordered windows of width 1 and unordered windows
+ * of width 8. Each of them is scored as a weighted mixture of the fields' Dirichlet-smoothed language models
+ * <p>
+ * Candidates are the documents containing any of the query's terms in any field. They are scored by reading their
+ * positional postings directly, without any query parsing or external process. Collection statistics of windows are
+ * computed on their first use and cached, as the index doesn't change once it has been built
+ * <p>
+ * Field lengths are decoded from Lucene's norms, which are lossy for long fields (the same approximation Lucene's own
+ * BM25 makes). Windows need term positions, so bigrams and FSDM are not available on indexes built with weightedTerms
+ */
+public class LuceneRankingModels {
+    // Galago's default
+    public static final double DEFAULT_DIRICHLET_MU = 1500;
+    public static final int UNORDERED_WINDOW_WIDTH = 8;
+
+    private enum Window {
+        ORDERED,
+        UNORDERED
+    }
+
+    private final IndexReader reader;
+    private final IndexSearcher searcher;
+    private final Analyzer analyzer;
+    private final double mu;
+
+    // (field, window, first term, second term) -> {collection frequency, document frequency}
+    private final Map<String, long[]> windowStatistics = new ConcurrentHashMap<>();
+
+    public LuceneRankingModels(IndexReader reader, Analyzer analyzer) {
+        this(reader, analyzer, DEFAULT_DIRICHLET_MU);
+    }
+
+    /**
+     * @param reader   Reader over a Lucene index built by LuceneConnector
+     * @param analyzer Analyzer to apply to the queries (the same one used for indexing)
+     * @param mu       Dirichlet smoothing parameter for FSDM
+     */
+    public LuceneRankingModels(IndexReader reader, Analyzer analyzer, double mu) {
+        this.reader = reader;
+        this.searcher = new IndexSearcher(reader);
+        this.analyzer = analyzer;
+        this.mu = mu;
+    }
+
+    public IndexReader getReader() {
+        return reader;
+    }
+
+    /**
+     * @return The weights of a BM25 query over the whole document, which is BM25F over every indexed text field with
+     * the same weight
+     */
+    public Map<String, Double> getUnweightedFields() {
+        Map<String, Double> fieldWeights = new LinkedHashMap<>();
+
+        for (FieldInfo fieldInfo : FieldInfos.getMergedFieldInfos(reader)) {
+            if (fieldInfo.getIndexOptions() != IndexOptions.NONE)
+                fieldWeights.put(fieldInfo.name, 1.0);
+        }
+
+        return fieldWeights;
+    }
+
+    /**
+     * BM25F query, with the same pseudo-frequency and pseudo-length formulation as Lucene's CombinedFieldQuery
+     *
+     * @param query        Query text
+     * @param fieldWeights Map of field name <-> weight
+     * @param bigrams      Whether to add the query's bigrams (ordered windows of width 1) as additional terms
+     * @param maxResults   Maximum number of results to return
+     */
+    public List<ScoredSearchResult> searchBM25F(String query,
+                                                Map<String, Double> fieldWeights,
+                                                double k1,
+                                                double b,
+                                                boolean bigrams,
+                                                int maxResults) throws IOException {
+        List<String> terms = analyze(query);
+        String[] fields = fieldWeights.keySet().toArray(new String[0]);
+        if (terms.isEmpty() || fields.length == 0)
+            return new ArrayList<>();
+
+        // As CombinedFieldQuery, weights are floats
+        float[] weights = new float[fields.length];
+        for (int f = 0; f < fields.length; f++)
+            weights[f] = fieldWeights.get(fields[f]).floatValue();
+
+        if (bigrams)
+            checkPositions(fields);
+
+        // Collection statistics as in CombinedFieldQuery: the maximum number of documents with any of the fields,
+        // rather than the number of documents in the index
+        long docCount = 0;
+        long[] sumTotalTermFreqs = new long[fields.length];
+        for (int f = 0; f < fields.length; f++) {
+            docCount = Math.max(docCount, reader.getDocCount(fields[f]));
+            sumTotalTermFreqs[f] = Math.max(0, reader.getSumTotalTermFreq(fields[f]));
+        }
+
+        int[] fieldOrder = BM25FCandidates.fieldOrder(fields);
+        float[] normInverses = BM25FCandidates.normInverses(k1, b,
+                BM25FCandidates.averageLength(weights, sumTotalTermFreqs, fieldOrder, docCount));
+
+        // idf of every term and bigram (via the maximum document frequency across fields, as in CombinedFieldQuery)
+        float[] termIdfs = new float[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            long df = 0;
+            for (String field : fields)
+                df = Math.max(df, reader.docFreq(new Term(field, terms.get(i))));
+
+            termIdfs[i] = BM25FCandidates.idf(df, docCount);
+        }
+
+        int nBigrams = bigrams ? terms.size() - 1 : 0;
+        float[] bigramIdfs = new float[Math.max(0, nBigrams)];
+        for (int i = 0; i < nBigrams; i++) {
+            long df = 0;
+            for (String field : fields)
+                df = Math.max(df, getWindowStatistics(field, Window.ORDERED, terms.get(i), terms.get(i + 1))[1]);
+
+            bigramIdfs[i] = BM25FCandidates.idf(df, docCount);
+        }
+
+        int[] lengths = new int[fields.length];
+
+        // Scored as CombinedFieldQuery does, so that the results match LuceneConnector.scoredSearch's (see
+        // BM25FCandidates)
+        return search(terms, fields, bigrams, maxResults, postings -> {
+            for (int f = 0; f < fields.length; f++)
+                lengths[f] = postings[f].length;
+
+            float normInverse = normInverses[BM25FCandidates.norm(weights, lengths, 0, fieldOrder)];
+            double score = 0;
+
+            for (int i = 0; i < terms.size(); i++) {
+                float tf = 0;
+                for (int f : fieldOrder)
+                    tf += weights[f] * postings[f].freqs[i];
+
+                if (tf > 0)
+                    score += termIdfs[i] - termIdfs[i] / (1f + tf * normInverse);
+            }
+
+            for (int i = 0; i < nBigrams; i++) {
+                float tf = 0;
+                for (int f : fieldOrder)
+                    tf += weights[f] * postings[f].countWindows(i, Window.ORDERED);
+
+                if (tf > 0)
+                    score += bigramIdfs[i] - bigramIdfs[i] / (1f + tf * normInverse);
+            }
+
+            return (float) score;
+        });
+    }
+
+    /**
+     * Collect the candidates of a BM25F query (every document containing any of its terms in any of the fields), with
+     * every statistic needed to score them for any field weights, k1 and b as LuceneConnector.scoredSearch's
+     * CombinedFieldQuery does (see BM25FCandidates)
+     *
+     * @param query         Query text
+     * @param fields        Fields of the query, in the order their weights will be given when scoring
+     * @param maxCandidates If > 0, keep only this number of candidates (the best ones with equal field weights)
+     */
+    public BM25FCandidates collectBM25FCandidates(String query, String[] fields, int maxCandidates) throws IOException {
+        List<String> terms = analyze(query);
+
+        long docCount = 0;
+        long[] sumTotalTermFreqs = new long[fields.length];
+        for (int f = 0; f < fields.length; f++) {
+            docCount = Math.max(docCount, reader.getDocCount(fields[f]));
+            sumTotalTermFreqs[f] = Math.max(0, reader.getSumTotalTermFreq(fields[f]));
+        }
+
+        long[] docFreqs = new long[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            for (String field : fields)
+                docFreqs[i] = Math.max(docFreqs[i], reader.docFreq(new Term(field, terms.get(i))));
+        }
+
+        int[] fieldOrder = BM25FCandidates.fieldOrder(fields);
+
+        BM25FCandidates candidates = new BM25FCandidates(docFreqs, docCount, sumTotalTermFreqs, fieldOrder);
+        if (terms.isEmpty() || fields.length == 0)
+            return candidates;
+
+        int[] fieldLengths = new int[fields.length];
+        int[] fieldTermFreqs = new int[fields.length * terms.size()];
+
+        forEachCandidate(terms, fields, false, (doc, postings) -> {
+            for (int f = 0; f < fields.length; f++) {
+                fieldLengths[f] = postings[f].length;
+                System.arraycopy(postings[f].freqs, 0, fieldTermFreqs, f * terms.size(), terms.size());
+            }
+
+            candidates.add(doc, fieldLengths, fieldTermFreqs);
+        });
+
+        candidates.prune(maxCandidates);
+        return candidates;
+    }
+
+    /**
+     * @return The URI of a document, given its global doc ID
+     */
+    public String getURI(int doc) throws IOException {
+        return reader.storedFields().document(doc).get("URI");
+    }
+
+    /**
+     * FSDM query. Each component's field weights are normalized into a mixture, and the components are combined
+     * according to the sum of their weights (so that, for example, 0.8/0.1/0.1 times each field's weight results in
+     * the usual 0.8/0.1/0.1 combination of components)
+     *
+     * @param query       Query text
+     * @param uniWeights  Map of field name <-> weight for unigrams
+     * @param odWeights   Map of field name <-> weight for ordered windows (bigrams)
+     * @param uwwWeights  Map of field name <-> weight for unordered windows
+     * @param maxResults  Maximum number of results to return
+     */
+    public List<ScoredSearchResult> searchFSDM(String query,
+                                               Map<String, Double> uniWeights,
+                                               Map<String, Double> odWeights,
+                                               Map<String, Double> uwwWeights,
+                                               int maxResults) throws IOException {
+        List<String> terms = analyze(query);
+
+        Map<String, Integer> fieldIndexes = new LinkedHashMap<>();
+        for (var weights : List.of(uniWeights, odWeights, uwwWeights))
+            for (String field : weights.keySet())
+                fieldIndexes.putIfAbsent(field, fieldIndexes.size());
+
+        String[] fields = fieldIndexes.keySet().toArray(new String[0]);
+        if (terms.isEmpty() || fields.length == 0)
+            return new ArrayList<>();
+
+        checkPositions(fields);
+
+        double[] uni = toMixture(uniWeights, fieldIndexes);
+        double[] od = toMixture(odWeights, fieldIndexes);
+        double[] uww = toMixture(uwwWeights, fieldIndexes);
+
+        double uniLambda = sum(uniWeights.values());
+        double odLambda = sum(odWeights.values());
+        double uwwLambda = sum(uwwWeights.values());
+        double lambdaSum = uniLambda + odLambda + uwwLambda;
+        if (lambdaSum <= 0)
+            return new ArrayList<>();
+
+        uniLambda /= lambdaSum;
+        odLambda /= lambdaSum;
+        uwwLambda /= lambdaSum;
+
+        // Background probabilities (collection frequency / collection length) per field
+        double[] collectionLengths = new double[fields.length];
+        for (int f = 0; f < fields.length; f++)
+            collectionLengths[f] = Math.max(0, reader.getSumTotalTermFreq(fields[f]));
+
+        int nBigrams = terms.size() - 1;
+        double[][] termBackground = new double[fields.length][terms.size()];
+        double[][] odBackground = new double[fields.length][Math.max(0, nBigrams)];
+        double[][] uwwBackground = new double[fields.length][Math.max(0, nBigrams)];
+
+        for (int f = 0; f < fields.length; f++) {
+            if (collectionLengths[f] == 0) continue;
+
+            for (int i = 0; i < terms.size(); i++)
+                termBackground[f][i] = reader.totalTermFreq(new Term(fields[f], terms.get(i))) / collectionLengths[f];
+
+            for (int i = 0; i < nBigrams; i++) {
+                if (od[f] > 0)
+                    odBackground[f][i] = getWindowStatistics(fields[f], Window.ORDERED, terms.get(i), terms.get(i + 1))[0]
+                            / collectionLengths[f];
+                if (uww[f] > 0)
+                    uwwBackground[f][i] = getWindowStatistics(fields[f], Window.UNORDERED, terms.get(i), terms.get(i + 1))[0]
+                            / collectionLengths[f];
+            }
+        }
+
+        final double finalUniLambda = uniLambda;
+        final double finalOdLambda = odLambda;
+        final double finalUwwLambda = uwwLambda;
+
+        return search(terms, fields, nBigrams > 0, maxResults, postings -> {
+            double uniScore = 0;
+            for (int i = 0; i < terms.size(); i++) {
+                double p = 0;
+                for (int f = 0; f < fields.length; f++) {
+                    if (uni[f] > 0 && termBackground[f][i] > 0)
+                        p += uni[f] * smoothed(postings[f].freqs[i], termBackground[f][i], postings[f].length);
+                }
+
+                if (p > 0) uniScore += Math.log(p); // Terms not in the collection don't contribute
+            }
+
+            double odScore = 0;
+            double uwwScore = 0;
+            for (int i = 0; i < nBigrams; i++) {
+                double pOd = 0;
+                double pUww = 0;
+
+                for (int f = 0; f < fields.length; f++) {
+                    if (odBackground[f][i] > 0)
+                        pOd += od[f] * smoothed(postings[f].countWindows(i, Window.ORDERED), odBackground[f][i], postings[f].length);
+                    if (uwwBackground[f][i] > 0)
+                        pUww += uww[f] * smoothed(postings[f].countWindows(i, Window.UNORDERED), uwwBackground[f][i], postings[f].length);
+                }
+
+                if (pOd > 0) odScore += Math.log(pOd);
+                if (pUww > 0) uwwScore += Math.log(pUww);
+            }
+
+            return finalUniLambda * uniScore + finalOdLambda * odScore + finalUwwLambda * uwwScore;
+        });
+    }
+
+    private double smoothed(int frequency, double background, int length) {
+        return (frequency + mu * background) / (length + mu);
+    }
+
+    private static double idf(long df, long docCount) {
+        return Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+    }
+
+    private static double[] toMixture(Map<String, Double> weights, Map<String, Integer> fieldIndexes) {
+        double[] mixture = new double[fieldIndexes.size()];
+        double total = sum(weights.values());
+        if (total <= 0)
+            return mixture;
+
+        for (var entry : weights.entrySet())
+            mixture[fieldIndexes.get(entry.getKey())] = entry.getValue() / total;
+
+        return mixture;
+    }
+
+    private static double sum(Iterable<Double> values) {
+        double sum = 0;
+        for (double value : values)
+            sum += Math.max(0, value);
+
+        return sum;
+    }
+
+    private interface DocumentScorer {
+        double score(FieldPostings[] postings) throws IOException;
+    }
+
+    private interface CandidateConsumer {
+        void accept(int doc, FieldPostings[] postings) throws IOException;
+    }
+
+    private record ScoredDocument(int doc, double score) {
+    }
+
+    /**
+     * Score every document containing any of the terms in any of the fields, and return the best maxResults
+     */
+    private List<ScoredSearchResult> search(List<String> terms,
+                                            String[] fields,
+                                            boolean withPositions,
+                                            int maxResults,
+                                            DocumentScorer scorer) throws IOException {
+        PriorityQueue<ScoredDocument> topDocuments = new PriorityQueue<>(maxResults + 1,
+                (d1, d2) -> Double.compare(d1.score(), d2.score()));
+
+        forEachCandidate(terms, fields, withPositions, (doc, postings) -> {
+            double score = scorer.score(postings);
+            if (topDocuments.size() < maxResults) {
+                topDocuments.add(new ScoredDocument(doc, score));
+            } else if (maxResults > 0 && score > topDocuments.peek().score()) {
+                topDocuments.poll();
+                topDocuments.add(new ScoredDocument(doc, score));
+            }
+        });
+
+        List<ScoredSearchResult> results = new ArrayList<>(topDocuments.size());
+        var storedFields = searcher.storedFields();
+        for (ScoredDocument scoredDocument : topDocuments)
+            results.add(new ScoredSearchResult(storedFields.document(scoredDocument.doc()).get("URI"), scoredDocument.score()));
+
+        results.sort(Collections.reverseOrder());
+        return results;
+    }
+
+    /**
+     * Visit every (live) document containing any of the terms in any of the fields, in increasing global doc ID order,
+     * with the postings positioned on it
+     */
+    private void forEachCandidate(List<String> terms,
+                                  String[] fields,
+                                  boolean withPositions,
+                                  CandidateConsumer consumer) throws IOException {
+        BooleanQuery.Builder candidatesQuery = new BooleanQuery.Builder();
+        for (String field : fields)
+            for (String term : terms)
+                candidatesQuery.add(new TermQuery(new Term(field, term)), BooleanClause.Occur.SHOULD);
+
+        Weight candidatesWeight = searcher.createWeight(searcher.rewrite(candidatesQuery.build()),
+                ScoreMode.COMPLETE_NO_SCORES, 1);
+
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Scorer candidates = candidatesWeight.scorer(leaf);
+            if (candidates == null) continue;
+
+            LeafReader leafReader = leaf.reader();
+            Bits liveDocs = leafReader.getLiveDocs();
+
+            FieldPostings[] postings = new FieldPostings[fields.length];
+            for (int f = 0; f < fields.length; f++)
+                postings[f] = new FieldPostings(leafReader, fields[f], terms, withPositions);
+
+            DocIdSetIterator iterator = candidates.iterator();
+            for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                if (liveDocs != null && !liveDocs.get(doc)) continue;
+
+                for (FieldPostings fieldPostings : postings)
+                    fieldPostings.load(doc);
+
+                consumer.accept(leaf.docBase + doc, postings);
+            }
+        }
+    }
+
+    /**
+     * Collection frequency and document frequency of a window in a field, computed over the whole index on its first
+     * use
+     */
+    private long[] getWindowStatistics(String field, Window window, String first, String second) {
+        String key = field + '\u0000' + window + '\u0000' + first + '\u0000' + second;
+
+        return windowStatistics.computeIfAbsent(key, k -> {
+            long collectionFrequency = 0;
+            long documentFrequency = 0;
+
+            try {
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    LeafReader leafReader = leaf.reader();
+                    FieldPostings postings = new FieldPostings(leafReader, field, List.of(first, second), true);
+                    PostingsEnum firstPostings = postings.postings[0];
+                    PostingsEnum secondPostings = postings.postings[1];
+                    if (firstPostings == null || secondPostings == null) continue;
+
+                    Bits liveDocs = leafReader.getLiveDocs();
+
+                    // Leapfrog over the documents containing both terms
+                    int doc = firstPostings.nextDoc();
+                    while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                        int otherDoc = secondPostings.advance(doc);
+                        if (otherDoc == DocIdSetIterator.NO_MORE_DOCS) break;
+
+                        if (otherDoc != doc) {
+                            doc = firstPostings.advance(otherDoc);
+                            continue;
+                        }
+
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            postings.load(doc);
+                            int count = postings.countWindows(0, window);
+                            collectionFrequency += count;
+                            if (count > 0) documentFrequency++;
+                        }
+
+                        doc = firstPostings.nextDoc();
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            return new long[]{collectionFrequency, documentFrequency};
+        });
+    }
+
+    private void checkPositions(String[] fields) {
+        FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(reader);
+
+        for (String field : fields) {
+            FieldInfo fieldInfo = fieldInfos.fieldInfo(field);
+            if (fieldInfo != null && fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) < 0)
+                throw new RuntimeException("Field " + field + " has no term positions, which are needed for bigrams " +
+                        "and FSDM. Rebuild the index without weightedTerms");
+        }
+    }
+
+    private List<String> analyze(String query) throws IOException {
+        List<String> terms = new ArrayList<>();
+
+        try (TokenStream tokenStream = analyzer.tokenStream(null, new StringReader(query))) {
+            CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+
+            while (tokenStream.incrementToken())
+                terms.add(charTermAttribute.toString());
+
+            tokenStream.end();
+        }
+
+        return terms;
+    }
+
+    /**
+     * Postings of the query's terms in a single field of a leaf, positioned on the current candidate document
+     */
+    private static final class FieldPostings {
+        private final PostingsEnum[] postings; // null if the term doesn't appear in the field
+        private final NumericDocValues norms;
+        private final boolean withPositions;
+
+        private final int[] freqs;
+        private final int[][] positions;
+        private int length;
+
+        FieldPostings(LeafReader leafReader, String field, List<String> terms, boolean withPositions) throws IOException {
+            this.postings = new PostingsEnum[terms.size()];
+            for (int i = 0; i < terms.size(); i++)
+                postings[i] = leafReader.postings(new Term(field, terms.get(i)),
+                        withPositions ? PostingsEnum.POSITIONS : PostingsEnum.FREQS);
+
+            this.norms = leafReader.getNormValues(field);
+            this.withPositions = withPositions;
+            this.freqs = new int[terms.size()];
+            this.positions = new int[terms.size()][withPositions ? 16 : 0];
+        }
+
+        void load(int doc) throws IOException {
+            length = 0;
+            if (norms != null && norms.advanceExact(doc))
+                length = SmallFloat.byte4ToInt((byte) norms.longValue());
+
+            for (int i = 0; i < postings.length; i++) {
+                freqs[i] = 0;
+
+                PostingsEnum termPostings = postings[i];
+                if (termPostings == null) continue;
+
+                if (termPostings.docID() < doc)
+                    termPostings.advance(doc);
+                if (termPostings.docID() != doc) continue;
+
+                freqs[i] = termPostings.freq();
+
+                if (withPositions) {
+                    if (positions[i].length < freqs[i])
+                        positions[i] = Arrays.copyOf(positions[i], Math.max(freqs[i], positions[i].length * 2));
+
+                    for (int j = 0; j < freqs[i]; j++)
+                        positions[i][j] = termPostings.nextPosition();
+                }
+            }
+        }
+
+        /**
+         * Number of (non-overlapping) windows of the terms i and i + 1 in the current document, following Galago's
+         * #od:1 and #uw:8 semantics
+         */
+        int countWindows(int i, Window window) {
+            int[] first = positions[i];
+            int[] second = positions[i + 1];
+            int nFirst = freqs[i];
+            int nSecond = freqs[i + 1];
+
+            int count = 0;
+            int a = 0;
+            int b = 0;
+
+            while (a < nFirst && b < nSecond) {
+                int firstPosition = first[a];
+                int secondPosition = second[b];
+
+                boolean matches = window == Window.ORDERED
+                        ? secondPosition == firstPosition + 1
+                        : firstPosition != secondPosition && Math.abs(firstPosition - secondPosition) < UNORDERED_WINDOW_WIDTH;
+
+                if (matches) {
+                    count++;
+                    a++;
+                    b++;
+                } else if (secondPosition <= firstPosition) {
+                    b++;
+                } else {
+                    a++;
+                }
+            }
+
+            return count;
+        }
+    }
+}
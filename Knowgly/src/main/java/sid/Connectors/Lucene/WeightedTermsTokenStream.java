@@ -0,0 +1,87 @@
+package sid.Connectors.Lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermFrequencyAttribute;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * TokenStream over the (term, frequency) pairs of a weighted EntityDocument field
+ * <p>
+ * Each term is analyzed with the given analyzer, and every token it produces is emitted once with the term's
+ * frequency as its TermFrequencyAttribute, instead of being emitted frequency times. Lucene accumulates the
+ * frequencies of repeated tokens and uses their sum as the field's length, so BM25(F) scores are the same as if the
+ * terms had been repeated
+ * <p>
+ * Custom term frequencies can't be indexed alongside positions, so fields using it must be indexed with
+ * IndexOptions.DOCS_AND_FREQS
+ */
+public final class WeightedTermsTokenStream extends TokenStream {
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final TermFrequencyAttribute termFrequencyAttribute = addAttribute(TermFrequencyAttribute.class);
+
+    private final Analyzer analyzer;
+    private final String fieldName;
+    private final Iterator<Map.Entry<String, Long>> terms;
+
+    // Analyzed stream of the current term
+    private TokenStream currentStream;
+    private CharTermAttribute currentTermAttribute;
+    private int currentFrequency;
+
+    /**
+     * @param analyzer  Analyzer to apply to each term
+     * @param fieldName Name of the field being indexed
+     * @param terms     Map of term <-> frequency
+     */
+    public WeightedTermsTokenStream(Analyzer analyzer, String fieldName, Map<String, Long> terms) {
+        this.analyzer = analyzer;
+        this.fieldName = fieldName;
+        this.terms = terms.entrySet().iterator();
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        while (true) {
+            if (currentStream == null) {
+                if (!terms.hasNext())
+                    return false;
+
+                var term = terms.next();
+                if (term.getValue() <= 0) continue;
+
+                currentStream = analyzer.tokenStream(fieldName, term.getKey());
+                currentTermAttribute = currentStream.addAttribute(CharTermAttribute.class);
+                currentFrequency = (int) Math.min(term.getValue(), Integer.MAX_VALUE);
+                currentStream.reset();
+            }
+
+            if (currentStream.incrementToken()) {
+                clearAttributes();
+                termAttribute.copyBuffer(currentTermAttribute.buffer(), 0, currentTermAttribute.length());
+                termFrequencyAttribute.setTermFrequency(currentFrequency);
+                return true;
+            }
+
+            closeCurrentStream();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (currentStream != null)
+            closeCurrentStream();
+
+        super.close();
+    }
+
+    private void closeCurrentStream() throws IOException {
+        currentStream.end();
+        currentStream.close();
+        currentStream = null;
+    }
+}
@@ -9,6 +9,8 @@ import sid.Connectors.IndexConnector;
 import sid.Connectors.ScoredSearchResult;
 import sid.MetricsAggregation.Field;
 import sid.MetricsAggregation.VirtualDocumentTemplate;
+import sid.utils.ConfigurationSnapshot;
+import sid.utils.RequestExecutor;
 
 import java.io.*;
 import java.net.HttpURLConnection;
@@ -16,10 +18,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static sid.MetricsAggregation.MetricsAggregator.*;
@@ -72,12 +74,21 @@ public class TerrierConnector extends IndexConnector {
                 "weights": %s
             }""";
 
-    private static final String ENDPOINT_CONFIGURATION_FILE = "configuration/terrierEndpointConfiguration.json";
+    public static final String ENDPOINT_CONFIGURATION_FILE = "configuration/terrierEndpointConfiguration.json";
     private static final String SERVER_ADDRESS_CONF = "serverAddress";
     private static final String CREATE_INDEX_CONF = "createIndex";
+    private static final String MAX_IN_FLIGHT_REQUESTS_CONF = "maxInFlightRequests"; // Optional
+
+    // pyTerrier's scripts may not handle concurrent requests, so by default only one is sent at a time. Even then,
+    // bulk updates are sent in the background while the next ones are being filled
+    private static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 1;
+
+    // Maximum number of queries per bulk search request. Bigger batches are split, and sent concurrently
+    private static final int SEARCH_BULK_SIZE = 100;
 
     private final URL serverAddress;
     private final ObjectMapper objectMapper;
+    private final RequestExecutor requests;
 
     // Entity indexing
     final Deque<EntityDocument> documentsToIndex;
@@ -90,20 +101,33 @@ public class TerrierConnector extends IndexConnector {
      * @throws IOException If there is any IO error with the configuration file
      */
     public static TerrierConnector fromConfigurationFile() throws IOException, URISyntaxException {
-        byte[] mapDataEndpoint = Files.readAllBytes(Paths.get(ENDPOINT_CONFIGURATION_FILE));
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNodeEndpoint = objectMapper.readTree(mapDataEndpoint);
+        return fromConfiguration(loadConnectorConfiguration(ENDPOINT_CONFIGURATION_FILE));
+    }
 
-        return new TerrierConnector(rootNodeEndpoint.get(SERVER_ADDRESS_CONF).asText(),
-                rootNodeEndpoint.get(CREATE_INDEX_CONF).asBoolean());
+    /**
+     * Constructor from an already loaded configuration, which must contain IndexConnector.CONFIGURATION_FILES and
+     * terrierEndpointConfiguration.json
+     *
+     * @throws IOException If there is any IO error when creating the index
+     */
+    public static TerrierConnector fromConfiguration(ConfigurationSnapshot configuration) throws IOException, URISyntaxException {
+        configuration.requireKeys(ENDPOINT_CONFIGURATION_FILE, SERVER_ADDRESS_CONF, CREATE_INDEX_CONF);
+        JsonNode rootNodeEndpoint = configuration.get(ENDPOINT_CONFIGURATION_FILE);
+
+        return new TerrierConnector(configuration,
+                rootNodeEndpoint.get(SERVER_ADDRESS_CONF).asText(),
+                rootNodeEndpoint.get(CREATE_INDEX_CONF).asBoolean(),
+                rootNodeEndpoint.has(MAX_IN_FLIGHT_REQUESTS_CONF) ?
+                        rootNodeEndpoint.get(MAX_IN_FLIGHT_REQUESTS_CONF).asInt() : DEFAULT_MAX_IN_FLIGHT_REQUESTS);
     }
 
     /**
      * Create a TerrierConnector  using the configuration files.
      *
+     * @param configuration Configuration shared by all connectors (see IndexConnector.CONFIGURATION_FILES)
      * @param serverAddress URL for pyTerrier's server
      * @param createIndex   Whether to attempt to create the index or not (will fail silently if it exists)
+     * @param maxInFlightRequests Maximum number of requests sent to pyTerrier's server at the same time
      * @throws IOException If there is any IO errors when reading the configuration files when creating the index
      */
     // If createIndex == true, it will create an index based on the indexDefinition (index general configuration,
@@ -112,12 +136,15 @@ public class TerrierConnector extends IndexConnector {
     // The first one needs to have a %s formatting specifier inside mappings.properties.fields.properties, where it will
     // create as many fields as specified following the indexFieldDefinition template, which needs to have its name as
     // an %s formatting specifier, enclosed in double quotation marks. See the provided example files for a working example.
-    private TerrierConnector(String serverAddress,
-                             boolean createIndex) throws IOException, URISyntaxException {
-        super();
+    private TerrierConnector(ConfigurationSnapshot configuration,
+                             String serverAddress,
+                             boolean createIndex,
+                             int maxInFlightRequests) throws IOException, URISyntaxException {
+        super(configuration);
 
         this.serverAddress = new URI(serverAddress).toURL();
         this.objectMapper = new ObjectMapper();
+        this.requests = new RequestExecutor("terrier", maxInFlightRequests);
 
         if (createIndex) {
             createIndex(fieldName, numberOfFields, createTypesOverrideField, createRelationsFields);
@@ -162,7 +189,7 @@ public class TerrierConnector extends IndexConnector {
         createIndex(fieldName, numberOfFields, createTypesOverrideField, createRelationsFields);
     }
 
-    public void indexDocuments(Deque<EntityDocument> documentsToIndex) throws IOException {
+    public void indexDocuments(Collection<EntityDocument> documentsToIndex) throws IOException {
         String docsJSON = "[";
 
         var docsToIndexIter = documentsToIndex.iterator();
@@ -184,7 +211,41 @@ public class TerrierConnector extends IndexConnector {
         return getResultsResponse(resp);
     }
 
-    public Map<String, List<ScoredSearchResult>> searchWithBM25Bulk(Map<String, String> queries) throws IOException {
+    /**
+     * Search every query with BM25, sending them in bulk requests of up to SEARCH_BULK_SIZE queries each
+     */
+    public Map<String, List<ScoredSearchResult>> searchWithBM25Bulk(Map<String, String> queries) throws IOException, ExecutionException, InterruptedException {
+        List<Callable<Map<String, List<ScoredSearchResult>>>> searches = new ArrayList<>();
+        for (Map<String, String> batch : splitQueries(queries))
+            searches.add(() -> sendBM25Bulk(batch));
+
+        Map<String, List<ScoredSearchResult>> results = new HashMap<>();
+        for (var batchResults : requests.invokeAll(searches))
+            results.putAll(batchResults);
+
+        return results;
+    }
+
+    private static List<Map<String, String>> splitQueries(Map<String, String> queries) {
+        List<Map<String, String>> batches = new ArrayList<>();
+        Map<String, String> batch = new LinkedHashMap<>();
+
+        for (var query : queries.entrySet()) {
+            batch.put(query.getKey(), query.getValue());
+
+            if (batch.size() == SEARCH_BULK_SIZE) {
+                batches.add(batch);
+                batch = new LinkedHashMap<>();
+            }
+        }
+
+        if (!batch.isEmpty())
+            batches.add(batch);
+
+        return batches;
+    }
+
+    private Map<String, List<ScoredSearchResult>> sendBM25Bulk(Map<String, String> queries) throws IOException {
         String queriesString = "[";
 
         var queriesIter = queries.entrySet().iterator();
@@ -346,35 +407,68 @@ public class TerrierConnector extends IndexConnector {
 
     @Override
     public void addDocumentToIndex(EntityDocument d) throws IOException {
+        List<EntityDocument> batch = null;
         lock.lock();
 
         try {
             documentsToIndex.add(d);
 
             if (documentsToIndex.size() >= BULK_UPDATE_SIZE)
-                doBulkUpdate();
+                batch = takeDocumentsToIndex();
 
         } finally {
             lock.unlock();
         }
+
+        // Sent outside the lock, so that other threads can keep adding documents while this one waits for a free
+        // request slot
+        if (batch != null)
+            sendBulkUpdate(batch);
+    }
+
+    private List<EntityDocument> takeDocumentsToIndex() {
+        List<EntityDocument> batch = new ArrayList<>(documentsToIndex.size());
+        while (!documentsToIndex.isEmpty())
+            batch.add(documentsToIndex.pop());
+
+        return batch;
+    }
+
+    private void sendBulkUpdate(List<EntityDocument> batch) throws IOException {
+        try {
+            requests.submit(() -> {
+                indexDocuments(batch);
+                return null;
+            });
+        } catch (ExecutionException e) { // A previous bulk update failed
+            throw new IOException("Error when doing bulk indexing!", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to send a bulk update", e);
+        }
     }
 
-    private void doBulkUpdate() throws IOException {
+    @Override
+    public void finishIndexing() throws IOException, InterruptedException {
+        List<EntityDocument> batch;
         lock.lock();
 
         try {
-            if (!documentsToIndex.isEmpty()) {
-                indexDocuments(documentsToIndex);
-                documentsToIndex.clear();
-            }
+            batch = takeDocumentsToIndex();
         } finally {
             lock.unlock();
         }
-    }
 
-    @Override
-    public void finishIndexing() throws IOException {
-        doBulkUpdate();
+        if (!batch.isEmpty())
+            sendBulkUpdate(batch);
+
+        // Every bulk update needs to be done before closing the index
+        try {
+            requests.awaitCompletion();
+        } catch (ExecutionException e) {
+            throw new IOException("Error when doing bulk indexing!", e.getCause());
+        }
+
         closeIndex();
     }
 
@@ -390,7 +484,7 @@ public class TerrierConnector extends IndexConnector {
     public Map<String, List<ScoredSearchResult>> scoredSearch(Map<String, String> queries,
                                                               VirtualDocumentTemplate t,
                                                               double k1,
-                                                              double b) throws IOException {
+                                                              double b) throws IOException, ExecutionException, InterruptedException {
         return searchWithBM25Bulk(queries);
     }
 }
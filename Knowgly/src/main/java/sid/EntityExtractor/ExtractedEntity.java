@@ -8,8 +8,10 @@ import org.apache.jena.rdf.model.ResourceFactory;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Intermediate representation of an Entity, filled by an EntityExtractor, which
@@ -203,6 +205,22 @@ public class ExtractedEntity {
         return predicateNames;
     }
 
+    /**
+     * Get every predicate of this entity which has any object that getObjectsOfPredicate would return, without
+     * duplicates
+     */
+    public Set<Resource> getAllPredicates() {
+        Set<Resource> predicates = new LinkedHashSet<>(relations.keySet());
+        predicates.addAll(attributes.keySet());
+
+        for (Resource typePredicate : types.keySet()) {
+            if (EntityExtractorConfiguration.typePredicates.contains(typePredicate))
+                predicates.add(typePredicate);
+        }
+
+        return predicates;
+    }
+
     /**
      * Get every predicate URI found for this entity, without duplicates, as Strings
      */
@@ -218,9 +236,15 @@ public class ExtractedEntity {
      * and without its additional enclosing quotes and language indicator if applicable
      */
     public List<String> getObjectsOfPredicate(String predicate, EntityExtractorConfiguration.URIRenamingStrategy strategy) {
-        List<String> objects = new ArrayList<>();
+        return getObjectsOfPredicate(ResourceFactory.createResource(predicate), strategy);
+    }
 
-        Resource predicateResource = ResourceFactory.createResource(predicate);
+    /**
+     * Same as getObjectsOfPredicate(String, URIRenamingStrategy), for a predicate that is already a Resource (for
+     * example, one obtained from getAllPredicates())
+     */
+    public List<String> getObjectsOfPredicate(Resource predicateResource, EntityExtractorConfiguration.URIRenamingStrategy strategy) {
+        List<String> objects = new ArrayList<>();
 
         if (relations.containsKey(predicateResource)) {
             for (Resource object : relations.get(predicateResource)) {
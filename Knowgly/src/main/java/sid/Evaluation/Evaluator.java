@@ -24,6 +24,13 @@ public class Evaluator {
     private final Map<String, String> prefixes;
     private final IndexConnector connector;
 
+    /**
+     * A search over every query at once, for ranking models other than the connector's BM25F scoredSearch
+     */
+    public interface BatchSearch {
+        Map<String, List<ScoredSearchResult>> search(Map<String, String> queries) throws IOException, ExecutionException, InterruptedException;
+    }
+
     public Evaluator(String queriesFile, IndexConnector connector) {
         queries = new HashMap<>();
         this.queriesFile = queriesFile;
@@ -95,6 +102,27 @@ public class Evaluator {
         writeResultsToFile(runID, output, iter, resultsList);
     }
 
+    /**
+     * Same as runQueriesAndSaveAsTRECResultsFile(fileName, truncate, template, runID, k1, b), but running the queries
+     * with the given search instead of the connector's BM25F scoredSearch
+     */
+    public void runQueriesAndSaveAsTRECResultsFile(String fileName,
+                                                   boolean truncate,
+                                                   String runID,
+                                                   BatchSearch search) throws IOException, ExecutionException, InterruptedException {
+
+        System.out.println("Loading queries...");
+        loadQueries(queriesFile);
+
+        BufferedWriter output = new BufferedWriter(new FileWriter(fileName, !truncate));
+        String iter = "Q0";
+        if (runID == null || runID.isEmpty()) runID = "Knowgly";
+
+        Map<String, List<ScoredSearchResult>> resultsList = search.search(queries);
+
+        writeResultsToFile(runID, output, iter, resultsList);
+    }
+
     private void loadQueries(String file) {
         queries.clear();
 
@@ -2,6 +2,7 @@ package sid.MetricsAggregation;
 
 import org.apache.commons.math3.exception.ConvergenceException;
 import sid.SPARQLEndpoint.SPARQLEndpoint;
+import sid.utils.ConfigurationSnapshot;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
@@ -19,6 +20,11 @@ public class DummyMetricsAggregator extends MetricsAggregator {
         this.vdocToReturn = vdocToReturn;
     }
 
+    public DummyMetricsAggregator(VirtualDocumentTemplate vdocToReturn, ConfigurationSnapshot configuration) {
+        super(configuration);
+        this.vdocToReturn = vdocToReturn;
+    }
+
     public DummyMetricsAggregator(int kMeansClusters, int kMeansIterations) {
         super(kMeansClusters, kMeansIterations);
         this.vdocToReturn = null;
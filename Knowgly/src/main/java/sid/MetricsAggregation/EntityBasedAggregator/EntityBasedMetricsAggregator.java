@@ -18,6 +18,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.LongPredicate;
 import java.util.stream.LongStream;
 
 
@@ -94,6 +95,7 @@ public abstract class EntityBasedMetricsAggregator extends MetricsAggregator {
         long idOfPredicateURI = endpoint.hdt.getDictionary().stringToId(ImportanceMetricsGenerator.PREDICATE_URI, TripleComponentRole.PREDICATE);
         long idOfTypeURI = endpoint.hdt.getDictionary().stringToId(ImportanceMetricsGenerator.TYPE_URI, TripleComponentRole.PREDICATE);
         IteratorTripleID predicateTypeQuery = endpoint.hdt.getTriples().search(new TripleID(0, idOfRDFTypeURI, idOfPredicateTypeURI));
+        LongPredicate typeIDFilter = getTypeIDFilter(endpoint.hdt.getDictionary());
 
         // Metrics cache
         while (predicateTypeQuery.hasNext()) {
@@ -106,8 +108,7 @@ public abstract class EntityBasedMetricsAggregator extends MetricsAggregator {
             if (typeQuery.hasNext()) {
                 t = typeQuery.next().getObject();
 
-                String tString = endpoint.hdt.getDictionary().idToString(t, TripleComponentRole.OBJECT).toString();
-                if (!isTypeAllowed(ResourceFactory.createResource(tString))) continue;
+                if (!typeIDFilter.test(t)) continue;
             } else {
                 continue;
             }
@@ -159,7 +160,7 @@ public abstract class EntityBasedMetricsAggregator extends MetricsAggregator {
             long t = typesQuery.next().getObject();
 
             if (!allowedTypesCache.contains(t))
-                if (isTypeAllowed(ResourceFactory.createResource(endpoint.hdt.getDictionary().idToString(t, TripleComponentRole.OBJECT).toString())))
+                if (typeIDFilter.test(t))
                     allowedTypesCache.add(t);
         }
 
@@ -1,6 +1,5 @@
 package sid.MetricsAggregation.EntityBasedAggregator;
 
-import org.apache.jena.rdf.model.ResourceFactory;
 import org.rdfhdt.hdt.enums.TripleComponentRole;
 import org.rdfhdt.hdt.triples.IteratorTripleID;
 import org.rdfhdt.hdt.triples.TripleID;
@@ -13,6 +12,7 @@ import sid.SPARQLEndpoint.SPARQLEndpoint;
 import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.LongPredicate;
 import java.util.stream.LongStream;
 
 
@@ -51,6 +51,7 @@ public class EntityBasedWeightedEntropyEntityTypeImportanceMetricsAggregator ext
         long idOfPredicateURI = endpoint.hdt.getDictionary().stringToId(ImportanceMetricsGenerator.PREDICATE_URI, TripleComponentRole.PREDICATE);
         long idOfTypeURI = endpoint.hdt.getDictionary().stringToId(ImportanceMetricsGenerator.TYPE_URI, TripleComponentRole.PREDICATE);
         IteratorTripleID predicateTypeQuery = endpoint.hdt.getTriples().search(new TripleID(0, idOfRDFTypeURI, idOfPredicateTypeURI));
+        LongPredicate typeIDFilter = getTypeIDFilter(endpoint.hdt.getDictionary());
 
         // Metrics cache
         while (predicateTypeQuery.hasNext()) {
@@ -65,8 +66,7 @@ public class EntityBasedWeightedEntropyEntityTypeImportanceMetricsAggregator ext
             if (typeQuery.hasNext()) {
                 t = typeQuery.next().getObject();
 
-                String tString = endpoint.hdt.getDictionary().idToString(t, TripleComponentRole.OBJECT).toString();
-                if (!isTypeAllowed(ResourceFactory.createResource(tString))) continue;
+                if (!typeIDFilter.test(t)) continue;
             } else {
                 continue;
             }
@@ -132,7 +132,7 @@ public class EntityBasedWeightedEntropyEntityTypeImportanceMetricsAggregator ext
             long t = typesQuery.next().getObject();
 
             if (!allowedTypesCache.contains(t))
-                if (isTypeAllowed(ResourceFactory.createResource(endpoint.hdt.getDictionary().idToString(t, TripleComponentRole.OBJECT).toString())))
+                if (typeIDFilter.test(t))
                     allowedTypesCache.add(t);
         }
 
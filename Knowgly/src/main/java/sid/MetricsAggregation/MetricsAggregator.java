@@ -9,21 +9,24 @@ import org.apache.commons.math3.ml.clustering.Clusterable;
 import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
 import org.apache.commons.math3.ml.clustering.MultiKMeansPlusPlusClusterer;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.rdfhdt.hdt.dictionary.Dictionary;
 import org.rdfhdt.hdt.enums.TripleComponentRole;
-import org.rdfhdt.hdt.triples.IteratorTripleID;
-import org.rdfhdt.hdt.triples.TripleID;
 import sid.MetricsGeneration.MetricsGenerator;
+import sid.MetricsGeneration.util.DictionaryRangeLocator;
+import sid.MetricsGeneration.util.LiteralRange;
+import sid.MetricsGeneration.util.PredicateScanner;
 import sid.SPARQLEndpoint.LocalHDTSPARQLEndpoint;
 import sid.SPARQLEndpoint.SPARQLEndpoint;
+import sid.utils.ConfigurationSnapshot;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.LongPredicate;
 import java.util.stream.Collectors;
-import java.util.stream.LongStream;
 
 /**
  * An endpoint-independent metrics aggregator, which creates VirtualDocumentTemplate instances based on the metrics
@@ -121,6 +124,9 @@ public abstract class MetricsAggregator implements Cloneable {
     public static final String RELATIONS_FIELDS_WEIGHTS = "relationsFieldWeights";
     public static final String RELUSTERIZE_CONF = "reclusterize";
 
+    // Configuration files read by metrics aggregators
+    public static final List<String> CONFIGURATION_FILES = List.of(CONFIGURATION_FILE, INDEX_CONFIGURATION_FILE);
+
     public static final String GET_DATA_TYPE_PROPERTIES_QUERY = "get_data_type_properties.sparql";
     public static final String GET_OBJECT_PROPERTIES_QUERY = "get_object_properties.sparql";
 
@@ -144,6 +150,9 @@ public abstract class MetricsAggregator implements Cloneable {
     // If createRelationsFields
     private List<Double> relationsFieldWeights;
 
+    // Configuration this aggregator was created with (null if created via the kMeansClusters/kMeansIterations constructor)
+    private ConfigurationSnapshot configuration = null;
+
     // Predicates to directly add to the highest priority cluster, without runnning them through KMeans
     //
     // They are filtered by the allowedPredicates list
@@ -163,6 +172,11 @@ public abstract class MetricsAggregator implements Cloneable {
     // in the pipeline, so that we have a different clusterization for each)
     private Set<String> allowedPredicates;
 
+    // Object and datatype properties of the KG, if they have already been computed (shared across clones, see
+    // setPrecomputedPropertyKinds)
+    private Set<String> precomputedObjectProperties = null;
+    private Set<String> precomputedDataTypeProperties = null;
+
     // Clusterize datatype properties and object properties separately, creating a set of fields for each (essentially
     // duplicating them)
     private boolean divideDataTypeAndObjectProperties;
@@ -183,13 +197,13 @@ public abstract class MetricsAggregator implements Cloneable {
     // Only used for subsuming predicates
     //private Set<String> subsumedPredicates = new HashSet<>();
 
-    private void fromConfigurationFile() throws IOException {
-        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
-        byte[] mapDataIndex = Files.readAllBytes(Paths.get(INDEX_CONFIGURATION_FILE));
+    private void fromConfiguration(ConfigurationSnapshot configuration) {
+        validateConfiguration(configuration);
+        this.configuration = configuration;
 
         ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(mapData);
-        JsonNode rootNodeIndex = objectMapper.readTree(mapDataIndex);
+        JsonNode rootNode = configuration.get(CONFIGURATION_FILE);
+        JsonNode rootNodeIndex = configuration.get(INDEX_CONFIGURATION_FILE);
 
         this.kMeansClusters = rootNode.get(CLUSTERS_CONF).asInt();
         this.kMeansIterations = rootNode.get(K_MEANS_ITERATIONS_CONF).asInt();
@@ -238,22 +252,42 @@ public abstract class MetricsAggregator implements Cloneable {
         }*/
     }
 
-    private static boolean divideDataTypeAndObjectProperties() throws IOException {
-        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(mapData);
-
-        return rootNode.get(DIVIDE_DATATYPE_AND_OBJECT_PROPERTIES_CONF).asBoolean();
+    /**
+     * Ensure that the configuration contains every key needed by metrics aggregators
+     *
+     * @throws IllegalArgumentException If any configuration file or key is missing
+     */
+    public static void validateConfiguration(ConfigurationSnapshot configuration) {
+        configuration.requireKeys(CONFIGURATION_FILE,
+                CLUSTERS_CONF,
+                K_MEANS_ITERATIONS_CONF,
+                FIELD_WEIGHTS_CONF,
+                DATATYPE_PROPERTIES_WEIGHTS,
+                OBJECT_PROPERTIES_WEIGHTS,
+                RELATIONS_FIELDS_WEIGHTS,
+                PREDICATES_OVERRIDE_CONF,
+                TYPE_PREDICATES_OVERRIDE_CONF,
+                TYPE_PREDICATES_OVERRIDE_FIELD_WEIGHT_CONF,
+                TYPE_PREFIXES_CONF,
+                DIVIDE_DATATYPE_AND_OBJECT_PROPERTIES_CONF,
+                CREATE_RELATIONS_FIELDS_CONF,
+                RELUSTERIZE_CONF);
+        configuration.requireKeys(INDEX_CONFIGURATION_FILE, FIELD_NAME_CONF);
     }
 
-    private static boolean createRelationsFields() throws IOException {
-        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(mapData);
+    /**
+     * @return A snapshot of the configuration files read by metrics aggregators
+     * @throws IOException If there is any IO error with the configuration files
+     */
+    public static ConfigurationSnapshot loadConfiguration() throws IOException {
+        return ConfigurationSnapshot.fromConfigurationFiles(CONFIGURATION_FILES);
+    }
 
-        return rootNode.get(CREATE_RELATIONS_FIELDS_CONF).asBoolean();
+    /**
+     * @return The configuration this aggregator was created with, or null if it wasn't created from one
+     */
+    public ConfigurationSnapshot getConfiguration() {
+        return configuration;
     }
 
     /**
@@ -266,6 +300,27 @@ public abstract class MetricsAggregator implements Cloneable {
         this.allowedPredicates = allowedPredicates;
     }
 
+    public Set<String> getAllowedPredicates() {
+        return allowedPredicates;
+    }
+
+    /**
+     * Set the KG's object and datatype properties, so that createVirtualDocumentTemplate doesn't need to query them
+     * again. Useful when creating many templates with clones of the same instance (such as type-based ones), as
+     * clones share them
+     */
+    public void setPrecomputedPropertyKinds(Set<String> objectProperties, Set<String> dataTypeProperties) {
+        this.precomputedObjectProperties = objectProperties;
+        this.precomputedDataTypeProperties = dataTypeProperties;
+    }
+
+    /**
+     * @return Whether createVirtualDocumentTemplate needs the KG's object and datatype properties
+     */
+    public boolean usesPropertyKinds() {
+        return divideDataTypeAndObjectProperties || createRelationsFields;
+    }
+
     /**
      * Set the predicates to directly add to the highest priority cluster, without runnning them through KMeans
      * <p>
@@ -283,7 +338,16 @@ public abstract class MetricsAggregator implements Cloneable {
      * @throws IOException If there is any IO error with the configuration file
      */
     public MetricsAggregator() throws IOException {
-        fromConfigurationFile();
+        this(loadConfiguration());
+    }
+
+    /**
+     * Constructor from an already loaded configuration (see loadConfiguration)
+     *
+     * @throws IllegalArgumentException If any configuration file or key is missing
+     */
+    public MetricsAggregator(ConfigurationSnapshot configuration) {
+        fromConfiguration(configuration);
     }
 
     public MetricsAggregator(int kMeansClusters, int kMeansIterations) {
@@ -322,12 +386,19 @@ public abstract class MetricsAggregator implements Cloneable {
      * @throws IOException If there is any IO error with the configuration file
      */
     public static VirtualDocumentTemplate getEmptyVirtualDocumentTemplate() throws IOException {
-        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
-        byte[] mapDataIndex = Files.readAllBytes(Paths.get(INDEX_CONFIGURATION_FILE));
+        return getEmptyVirtualDocumentTemplate(loadConfiguration());
+    }
 
+    /**
+     * Same as getEmptyVirtualDocumentTemplate(), using an already loaded configuration (see loadConfiguration)
+     */
+    public static VirtualDocumentTemplate getEmptyVirtualDocumentTemplate(ConfigurationSnapshot configuration) {
         ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(mapData);
-        JsonNode rootNodeIndex = objectMapper.readTree(mapDataIndex);
+        JsonNode rootNode = configuration.get(CONFIGURATION_FILE);
+        JsonNode rootNodeIndex = configuration.get(INDEX_CONFIGURATION_FILE);
+
+        boolean divideDataTypeAndObjectProperties = rootNode.get(DIVIDE_DATATYPE_AND_OBJECT_PROPERTIES_CONF).asBoolean();
+        boolean createRelationsFields = rootNode.get(CREATE_RELATIONS_FIELDS_CONF).asBoolean();
 
         int kMeansClusters = rootNode.get(CLUSTERS_CONF).asInt();
         String fieldName = rootNodeIndex.get(FIELD_NAME_CONF).asText();
@@ -359,7 +430,7 @@ public abstract class MetricsAggregator implements Cloneable {
         List<Field> fields = new ArrayList<>();
 
         for (int i = 0; i < kMeansClusters; i++) {
-            if (divideDataTypeAndObjectProperties()) {
+            if (divideDataTypeAndObjectProperties) {
                 fields.add(new Field(fieldName + i + DATATYPE_PROPERTIES_SUFFIX,
                         new HashSet<>(),
                         datatypePropertiesFieldWeights.get(i),
@@ -378,7 +449,7 @@ public abstract class MetricsAggregator implements Cloneable {
                         false));
             }
 
-            if (createRelationsFields()) {
+            if (createRelationsFields) {
                 fields.add(new Field(RELATIONS_FIELD_NAME + i,
                         new HashSet<>(),
                         relationsFieldWeights.get(i),
@@ -418,8 +489,8 @@ public abstract class MetricsAggregator implements Cloneable {
             //
             // If that happens, it will be considered a datatype property and get assigned a random metric
 
-            var objectProperties = getObjectProperties(endpoint);
-            var datatypeProperties = getDataTypeProperties(endpoint);
+            var objectProperties = getObjectPropertiesOrPrecomputed(endpoint);
+            var datatypeProperties = getDataTypePropertiesOrPrecomputed(endpoint);
 
             var allowedPredicatesBackup = new HashSet<>(allowedPredicates);
 
@@ -457,7 +528,7 @@ public abstract class MetricsAggregator implements Cloneable {
 
         // Add the relations fields on top of the final vdoc
         if (createRelationsFields) {
-            var objectProperties = getObjectProperties(endpoint);
+            var objectProperties = getObjectPropertiesOrPrecomputed(endpoint);
 
             var allowedPredicatesBackup = new HashSet<>(allowedPredicates);
 
@@ -566,9 +637,10 @@ public abstract class MetricsAggregator implements Cloneable {
     }
 
     // Create a VirtualDocumentTemplate with its fields duplicated, separating datatype properties from object properties
-    private static VirtualDocumentTemplate joinPropertyTypeVdocs(VirtualDocumentTemplate vdocForObjectProperties,
-                                                                 VirtualDocumentTemplate vdocForDatatypeProperties) throws IOException {
-        VirtualDocumentTemplate result = getEmptyVirtualDocumentTemplate();
+    private VirtualDocumentTemplate joinPropertyTypeVdocs(VirtualDocumentTemplate vdocForObjectProperties,
+                                                          VirtualDocumentTemplate vdocForDatatypeProperties) throws IOException {
+        VirtualDocumentTemplate result = (configuration != null) ?
+                getEmptyVirtualDocumentTemplate(configuration) : getEmptyVirtualDocumentTemplate();
 
         for (Field f : result.fields) {
             if (f.isForObjectProperties) {
@@ -652,6 +724,19 @@ public abstract class MetricsAggregator implements Cloneable {
         return unfilteredResults;
     }
 
+    /**
+     * Same as runKMeansWithoutAggregator, but using this aggregator's KMeans configuration instead of reading it from
+     * the configuration file on every call. Note: This is only exposed for the IndexingPipeline, metrics aggregators
+     * should be used in any other case
+     *
+     * @param clusterInput List of ResourceWrappers containing every predicate we want to cluster
+     * @return The KMeansPlusPlusClusterer results
+     * @throws ConvergenceException If KMeans fails to converge
+     */
+    public List<CentroidCluster<ResourceWrapper>> runKMeansWithoutReclustering(List<ResourceWrapper> clusterInput) throws ConvergenceException {
+        return runKMeans(clusterInput, false);
+    }
+
     /**
      * Run KMeans based on a list of scores for each predicate. Note: This is only exposed for the IndexingPipeline,
      * metrics aggregators should be used in any other case
@@ -662,10 +747,15 @@ public abstract class MetricsAggregator implements Cloneable {
      * @throws IOException          If any IO error occurs when reading the configuration file
      */
     public static List<CentroidCluster<ResourceWrapper>> runKMeansWithoutAggregator(List<ResourceWrapper> clusterInput) throws ConvergenceException, IOException {
-        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
+        return runKMeansWithoutAggregator(clusterInput, loadConfiguration());
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(mapData);
+    /**
+     * Same as runKMeansWithoutAggregator(clusterInput), using an already loaded configuration (see loadConfiguration)
+     */
+    public static List<CentroidCluster<ResourceWrapper>> runKMeansWithoutAggregator(List<ResourceWrapper> clusterInput,
+                                                                                   ConfigurationSnapshot configuration) throws ConvergenceException {
+        JsonNode rootNode = configuration.get(CONFIGURATION_FILE);
 
         int kMeansClusters = rootNode.get(CLUSTERS_CONF).asInt();
         int kMeansIterations = rootNode.get(K_MEANS_ITERATIONS_CONF).asInt();
@@ -776,6 +866,23 @@ public abstract class MetricsAggregator implements Cloneable {
         }
     }
 
+    // The returned sets are modified by the caller, so the precomputed ones are copied
+    private Set<String> getObjectPropertiesOrPrecomputed(SPARQLEndpoint endpoint) throws ExecutionException,
+            InterruptedException, IOException {
+        if (precomputedObjectProperties != null)
+            return new HashSet<>(precomputedObjectProperties);
+        else
+            return getObjectProperties(endpoint);
+    }
+
+    private Set<String> getDataTypePropertiesOrPrecomputed(SPARQLEndpoint endpoint) throws ExecutionException,
+            InterruptedException, IOException {
+        if (precomputedDataTypeProperties != null)
+            return new HashSet<>(precomputedDataTypeProperties);
+        else
+            return getDataTypeProperties(endpoint);
+    }
+
     // Return a set containing all predicates which are associated with at least one literal object
     public static Set<String> getDataTypeProperties(SPARQLEndpoint endpoint) throws ExecutionException,
             InterruptedException, IOException {
@@ -799,34 +906,17 @@ public abstract class MetricsAggregator implements Cloneable {
         return datatypeProperties;
     }
 
-    private static Set<String> getDataTypePropertiesHDT(LocalHDTSPARQLEndpoint endpoint) throws InterruptedException {
+    private static Set<String> getDataTypePropertiesHDT(LocalHDTSPARQLEndpoint endpoint) throws ExecutionException,
+            InterruptedException {
         Set<String> datatypeProperties = ConcurrentHashMap.newKeySet();
 
-        LongStream predicatesStream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1);
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        LiteralRange literals = LiteralRange.of(endpoint.hdt.getDictionary());
+        PredicateScanner predicates = new PredicateScanner(endpoint.hdt);
 
-        for (Iterator<Long> it = predicatesStream.iterator(); it.hasNext(); ) {
-            long predicateID = it.next();
-
-            completionService.submit(() -> {
-                IteratorTripleID objectsOfP = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
-                while (objectsOfP.hasNext()) {
-                    TripleID next = objectsOfP.next();
-                    if (endpoint.hdt.getDictionary().idToString(next.getObject(), TripleComponentRole.OBJECT).charAt(0) == '"') {
-                        datatypeProperties.add(endpoint.hdt.getDictionary().idToString(predicateID, TripleComponentRole.PREDICATE).toString());
-                        break;
-                    }
-                }
-                return null;
-            });
-        }
-        executor.shutdown();
-
-        if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.HOURS)) {
-            throw new RuntimeException("Timeout when waiting for the indexing task to complete!");
-        }
-        executor.shutdownNow();
+        predicates.forEachPredicate(predicateID -> {
+            if (predicates.anyObject(predicateID, literals::contains))
+                datatypeProperties.add(endpoint.hdt.getDictionary().idToString(predicateID, TripleComponentRole.PREDICATE).toString());
+        });
 
         return datatypeProperties;
     }
@@ -854,40 +944,17 @@ public abstract class MetricsAggregator implements Cloneable {
         return objectProperties;
     }
 
-    private static Set<String> getObjectPropertiesHDT(LocalHDTSPARQLEndpoint endpoint) throws InterruptedException {
+    private static Set<String> getObjectPropertiesHDT(LocalHDTSPARQLEndpoint endpoint) throws ExecutionException,
+            InterruptedException {
         Set<String> objectProperties = ConcurrentHashMap.newKeySet();
 
-        LongStream predicatesStream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1);
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        LiteralRange literals = LiteralRange.of(endpoint.hdt.getDictionary());
+        PredicateScanner predicates = new PredicateScanner(endpoint.hdt);
 
-        for (Iterator<Long> it = predicatesStream.iterator(); it.hasNext(); ) {
-            long predicateID = it.next();
-
-            completionService.submit(() -> {
-                boolean isObjectProperty = true;
-
-                IteratorTripleID objectsOfP = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
-                while (objectsOfP.hasNext()) {
-                    TripleID next = objectsOfP.next();
-                    if (endpoint.hdt.getDictionary().idToString(next.getObject(), TripleComponentRole.OBJECT).charAt(0) == '"') {
-                        isObjectProperty = false;
-                        break;
-                    }
-                }
-
-                if (isObjectProperty)
-                    objectProperties.add(endpoint.hdt.getDictionary().idToString(predicateID, TripleComponentRole.PREDICATE).toString());
-
-                return null;
-            });
-        }
-        executor.shutdown();
-
-        if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.HOURS)) {
-            throw new RuntimeException("Timeout when waiting for the indexing task to complete!");
-        }
-        executor.shutdownNow();
+        predicates.forEachPredicate(predicateID -> {
+            if (!predicates.anyObject(predicateID, literals::contains))
+                objectProperties.add(endpoint.hdt.getDictionary().idToString(predicateID, TripleComponentRole.PREDICATE).toString());
+        });
 
         return objectProperties;
     }
@@ -929,6 +996,58 @@ public abstract class MetricsAggregator implements Cloneable {
         return false;
     }
 
+    /**
+     * ID-level version of isTypeAllowed, for types (in the object role) of an HDT dictionary
+     * <p>
+     * Types whose URI starts with any of the typePrefixes are accepted by checking the ID ranges of those prefixes in
+     * the dictionary (see DictionaryRangeLocator), without extracting their strings. The rest are only extracted and
+     * checked with isTypeAllowed once, since a prefix may also appear elsewhere in the URI
+     *
+     * @param dictionary Dictionary of the HDT file the type IDs belong to
+     * @return A thread-safe filter of type IDs
+     */
+    public LongPredicate getTypeIDFilter(Dictionary dictionary) {
+        if (!allowedTypes.isEmpty()) {
+            Set<Long> allowedTypeIDs = getObjectIDs(dictionary, allowedTypes);
+            return allowedTypeIDs::contains;
+        }
+
+        Set<Long> ignoredTypeIDs = getObjectIDs(dictionary, typesToIgnore);
+        if (typePrefixes.isEmpty())
+            return typeID -> !ignoredTypeIDs.contains(typeID);
+
+        DictionaryRangeLocator locator = new DictionaryRangeLocator(dictionary);
+        List<DictionaryRangeLocator.Range> prefixRanges = new ArrayList<>();
+        for (String typePrefix : typePrefixes)
+            prefixRanges.addAll(locator.locate(TripleComponentRole.OBJECT, typePrefix));
+
+        Map<Long, Boolean> checkedTypes = new ConcurrentHashMap<>();
+
+        return typeID -> {
+            if (ignoredTypeIDs.contains(typeID))
+                return false;
+
+            for (var range : prefixRanges) {
+                if (range.contains(typeID))
+                    return true;
+            }
+
+            return checkedTypes.computeIfAbsent(typeID, t -> isTypeAllowed(ResourceFactory.createResource(
+                    dictionary.idToString(t, TripleComponentRole.OBJECT).toString())));
+        };
+    }
+
+    private static Set<Long> getObjectIDs(Dictionary dictionary, Set<String> uris) {
+        Set<Long> ids = new HashSet<>();
+        for (String uri : uris) {
+            long id = dictionary.stringToId(uri, TripleComponentRole.OBJECT);
+            if (id > 0)
+                ids.add(id);
+        }
+
+        return ids;
+    }
+
     public Set<String> getTypesToIgnore() {
         return typesToIgnore;
     }
@@ -1,10 +1,8 @@
 package sid.MetricsAggregation.TypeBasedAggregator;
 
 import sid.MetricsAggregation.MetricsAggregator;
-import sid.SPARQLEndpoint.SPARQLEndpoint;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Metrics aggregator equivalent to EntityTypeImportanceMetricsAggregator, for a single type
@@ -74,10 +72,17 @@ public class TypeBasedEntityTypeImportanceMetricsAggregator extends TypeBasedMet
     }
 
     @Override
-    public OptionalClusterInputOrTemplate getOptionalClusterInput(SPARQLEndpoint endpoint, boolean forceReturnClusterInput) throws IOException, ExecutionException, InterruptedException {
-        return super.getClusterInput(endpoint,
-                ENTITY_TYPE_IMPORTANCE_FOR_TYPE_SPARQL,
-                ENTITY_TYPE_IMPORTANCE_FOR_TYPE_SPARQL_NO_SUBGRAPH,
-                "entityTypeImportance");
+    protected String getQueryFile() {
+        return ENTITY_TYPE_IMPORTANCE_FOR_TYPE_SPARQL;
+    }
+
+    @Override
+    protected String getQueryFileWithoutSubgraph() {
+        return ENTITY_TYPE_IMPORTANCE_FOR_TYPE_SPARQL_NO_SUBGRAPH;
+    }
+
+    @Override
+    protected String getMetricVariableName() {
+        return "entityTypeImportance";
     }
 }
@@ -1,10 +1,8 @@
 package sid.MetricsAggregation.TypeBasedAggregator;
 
 import sid.MetricsAggregation.MetricsAggregator;
-import sid.SPARQLEndpoint.SPARQLEndpoint;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Metrics aggregator equivalent to EntityTypeImportanceMetricsAggregator, for a single type
@@ -74,10 +72,17 @@ public class TypeBasedEntropyTypeImportanceMetricsAggregator extends TypeBasedMe
     }
 
     @Override
-    public OptionalClusterInputOrTemplate getOptionalClusterInput(SPARQLEndpoint endpoint, boolean forceReturnClusterInput) throws IOException, ExecutionException, InterruptedException {
-        return super.getClusterInput(endpoint,
-                ENTROPY_TYPE_IMP_FOR_TYPE_SPARQL,
-                ENTROPY_TYPE_IMP_FOR_TYPE_SPARQL_NO_SUBGRAPH,
-                "entropyTypeImportance");
+    protected String getQueryFile() {
+        return ENTROPY_TYPE_IMP_FOR_TYPE_SPARQL;
+    }
+
+    @Override
+    protected String getQueryFileWithoutSubgraph() {
+        return ENTROPY_TYPE_IMP_FOR_TYPE_SPARQL_NO_SUBGRAPH;
+    }
+
+    @Override
+    protected String getMetricVariableName() {
+        return "entropyTypeImportance";
     }
 }
@@ -1,19 +1,9 @@
 package sid.MetricsAggregation.TypeBasedAggregator;
 
-import org.apache.jena.query.QuerySolution;
-import org.apache.jena.query.ResultSet;
-import org.apache.jena.rdf.model.Literal;
-import org.apache.jena.rdf.model.Resource;
 import sid.MetricsAggregation.MetricsAggregator;
 import sid.MetricsAggregation.PredicateBasedAggregator.PredicateInfoRankMetricsAggregator;
-import sid.SPARQLEndpoint.SPARQLEndpoint;
-import sid.SPARQLEndpoint.SPARQLEndpointWithNamedGraphs;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * Metrics aggregator equivalent to PredicateGmeansGeometricMeanMetricsAggregator, for a single type
@@ -83,48 +73,28 @@ public class TypeBasedGmeansGeometricMeanMetricsAggregator extends TypeBasedMetr
     }
 
     @Override
-    public OptionalClusterInputOrTemplate getOptionalClusterInput(SPARQLEndpoint endpoint, boolean forceReturnClusterInput) throws IOException {
-        String gmeansQuery;
-        if (endpoint instanceof SPARQLEndpointWithNamedGraphs)
-            gmeansQuery = MetricsAggregator.getQueryString(G_MEANS_SPARQL).formatted(typeURI);
-        else
-            gmeansQuery = MetricsAggregator.getQueryString(G_MEANS_SPARQL_NO_SUBGRAPH).formatted(typeURI);
-
-        ResultSet rs = endpoint.runSelectQuery(gmeansQuery);
-
-        Map<Resource, Double> gmeansPerPredicate = new HashMap<>();
-
-        while (rs.hasNext()) {
-            QuerySolution qs = rs.next();
-
-            Resource p = qs.getResource("pred");
-            Literal gmeans = qs.getLiteral("gmeans");
-
-            gmeansPerPredicate.put(p, Math.pow(gmeans.getDouble(), 1 / 3f));
-        }
-
-        List<ResourceWrapper> clusterInput = new ArrayList<>(gmeansPerPredicate.size());
+    protected String getQueryFile() {
+        return G_MEANS_SPARQL;
+    }
 
+    @Override
+    protected String getQueryFileWithoutSubgraph() {
+        return G_MEANS_SPARQL_NO_SUBGRAPH;
+    }
 
-        if (combinationAggregator != null) {
-            List<ResourceWrapper> combinationClusterInput = new PredicateInfoRankMetricsAggregator().getOptionalClusterInput(endpoint, true).getClusterInput();
-            for (var entry : gmeansPerPredicate.entrySet()) {
-                for (var combinationEntry : combinationClusterInput) {
-                    if (combinationEntry.getResource().equals(entry.getKey())) {
-                        double gmeans = entry.getValue();
-                        double irP = combinationEntry.getPoint()[0];
-                        double combinedScore = Math.pow(gmeans, combinationWeight) * Math.pow(irP, (1 - combinationWeight));
+    @Override
+    protected String getMetricVariableName() {
+        return "gmeans";
+    }
 
-                        clusterInput.add(new ResourceWrapper(entry.getKey(), combinedScore));
-                        break;
-                    }
-                }
-            }
-        } else {
-            for (var entry : gmeansPerPredicate.entrySet())
-                clusterInput.add(new ResourceWrapper(entry.getKey(), entry.getValue()));
-        }
+    @Override
+    protected double transformMetric(double gmeans) {
+        return Math.pow(gmeans, 1 / 3f);
+    }
 
-        return new OptionalClusterInputOrTemplate(clusterInput);
+    // Always combined with InfoRank
+    @Override
+    protected MetricsAggregator getCombinationInputAggregator() throws IOException {
+        return new PredicateInfoRankMetricsAggregator();
     }
 }
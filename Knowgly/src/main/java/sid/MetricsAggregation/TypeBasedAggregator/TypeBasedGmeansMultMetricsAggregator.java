@@ -1,10 +1,8 @@
 package sid.MetricsAggregation.TypeBasedAggregator;
 
 import sid.MetricsAggregation.MetricsAggregator;
-import sid.SPARQLEndpoint.SPARQLEndpoint;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Metrics aggregator equivalent to PredicateGmeansMultMetricsAggregator, for a single type
@@ -74,10 +72,17 @@ public class TypeBasedGmeansMultMetricsAggregator extends TypeBasedMetricsAggreg
     }
 
     @Override
-    public OptionalClusterInputOrTemplate getOptionalClusterInput(SPARQLEndpoint endpoint, boolean forceReturnClusterInput) throws IOException, ExecutionException, InterruptedException {
-        return super.getClusterInput(endpoint,
-                G_MEANS_FOR_TYPE_SPARQL,
-                G_MEANS_FOR_TYPE_SPARQL_NO_SUBGRAPH,
-                "gmeans");
+    protected String getQueryFile() {
+        return G_MEANS_FOR_TYPE_SPARQL;
+    }
+
+    @Override
+    protected String getQueryFileWithoutSubgraph() {
+        return G_MEANS_FOR_TYPE_SPARQL_NO_SUBGRAPH;
+    }
+
+    @Override
+    protected String getMetricVariableName() {
+        return "gmeans";
     }
 }
@@ -11,6 +11,7 @@ import sid.SPARQLEndpoint.SPARQLEndpointWithNamedGraphs;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -25,9 +26,14 @@ import java.util.concurrent.ExecutionException;
  * internally via its children constructors
  */
 public abstract class TypeBasedMetricsAggregator extends MetricsAggregator {
+    private static final String TYPE_URI_PLACEHOLDER = "<%s>";
+    private static final String ALL_TYPES_VARIABLE_NAME = "type";
+
     public String typeURI;
     protected MetricsAggregator combinationAggregator = null;
     protected double combinationWeight;
+    // Cluster input for typeURI, if it has already been computed. Only set in clones (see cloneForType)
+    private List<ResourceWrapper> precomputedClusterInput = null;
 
     // Basic constructor. Initializes the clustering configuration via its configuration file
     protected TypeBasedMetricsAggregator(String typeURI) throws IOException {
@@ -49,25 +55,43 @@ public abstract class TypeBasedMetricsAggregator extends MetricsAggregator {
     }
 
     /**
-     * Generic clusterInput method for any children aggregator which does not need to modify the metrics retrieved by its
-     * query
-     *
-     * @param endpoint                 Metrics endpoint
-     * @param queryFile                SPARQL query file to be formatted with the typeURI, which returns pairs of "pred" and metricVariableName
-     * @param queryFileWithoutSubgraph Same query file, without using subgraphs (for HDT endpoints)
-     * @param metricVariableName       metric variable name used in the SPARQL query
-     * @return The cluster input to be used by the MetricsAggregator internal methods
+     * @return SPARQL query file to be formatted with the typeURI, which returns pairs of "pred" and
+     * getMetricVariableName()
      */
-    protected OptionalClusterInputOrTemplate getClusterInput(SPARQLEndpoint endpoint,
-                                                             String queryFile,
-                                                             String queryFileWithoutSubgraph,
-                                                             String metricVariableName) throws IOException, ExecutionException, InterruptedException {
-        String query;
-        if (endpoint instanceof SPARQLEndpointWithNamedGraphs)
-            query = MetricsAggregator.getQueryString(queryFile).formatted(typeURI);
-        else
-            query = MetricsAggregator.getQueryString(queryFileWithoutSubgraph).formatted(typeURI);
+    protected abstract String getQueryFile();
+
+    /**
+     * @return Same query file as getQueryFile(), without using subgraphs (for HDT endpoints)
+     */
+    protected abstract String getQueryFileWithoutSubgraph();
+
+    /**
+     * @return Metric variable name used in the SPARQL query
+     */
+    protected abstract String getMetricVariableName();
+
+    /**
+     * Transformation to apply to the metric values returned by the query. None by default
+     */
+    protected double transformMetric(double metric) {
+        return metric;
+    }
 
+    /**
+     * @return The aggregator whose cluster input is combined with this one's, if combined
+     */
+    protected MetricsAggregator getCombinationInputAggregator() throws IOException {
+        return combinationAggregator;
+    }
+
+    @Override
+    public OptionalClusterInputOrTemplate getOptionalClusterInput(SPARQLEndpoint endpoint,
+                                                                  boolean forceReturnClusterInput) throws IOException, ExecutionException, InterruptedException {
+        // Already computed for every type at once by a TypeBasedTemplateBuilder
+        if (precomputedClusterInput != null)
+            return new OptionalClusterInputOrTemplate(new ArrayList<>(precomputedClusterInput));
+
+        String query = getQueryForType(endpoint).formatted(typeURI);
         ResultSet rs = endpoint.runSelectQuery(query);
 
         // Map of predicate -> metric value
@@ -77,36 +101,120 @@ public abstract class TypeBasedMetricsAggregator extends MetricsAggregator {
             QuerySolution qs = rs.next();
 
             Resource p = qs.getResource("pred");
-            Literal metric = qs.getLiteral(metricVariableName);
+            Literal metric = qs.getLiteral(getMetricVariableName());
 
-            predicateMetrics.put(p, metric.getDouble());
+            predicateMetrics.put(p, transformMetric(metric.getDouble()));
         }
 
-        List<ResourceWrapper> clusterInput = new ArrayList<>(predicateMetrics.size());
-
+        Map<Resource, Double> combinationMetrics = null;
         if (combinationAggregator != null) {
-            if (combinationAggregator instanceof TypeBasedMetricsAggregator)
-                ((TypeBasedMetricsAggregator) combinationAggregator).typeURI = this.typeURI;
-
-            List<ResourceWrapper> combinationClusterInput = combinationAggregator.getOptionalClusterInput(endpoint, true).getClusterInput();
-            for (var entry : predicateMetrics.entrySet()) {
-                for (var combinationEntry : combinationClusterInput) {
-                    if (combinationEntry.getResource().equals(entry.getKey())) {
-                        double predicateMetric = entry.getValue();
-                        double combinationMetric = combinationEntry.getPoint()[0];
-                        double combinedScore = Math.pow(predicateMetric, combinationWeight) * Math.pow(combinationMetric, (1 - combinationWeight));
-
-                        clusterInput.add(new ResourceWrapper(entry.getKey(), combinedScore));
-                        break;
-                    }
-                }
-            }
-        } else {
-            for (var entry : predicateMetrics.entrySet())
-                clusterInput.add(new ResourceWrapper(entry.getKey(), entry.getValue()));
+            MetricsAggregator combinationInputAggregator = getCombinationInputAggregator();
+            if (combinationInputAggregator instanceof TypeBasedMetricsAggregator)
+                ((TypeBasedMetricsAggregator) combinationInputAggregator).typeURI = this.typeURI;
+
+            combinationMetrics = toMetricsMap(combinationInputAggregator.getOptionalClusterInput(endpoint, true).getClusterInput());
         }
 
-        return new OptionalClusterInputOrTemplate(clusterInput);
+        return new OptionalClusterInputOrTemplate(toClusterInput(combine(predicateMetrics, combinationMetrics)));
+    }
+
+    /**
+     * Get the (transformed) metrics of every type at once, with a single query, instead of querying them type by type
+     *
+     * @return Map of type URI -> (predicate -> metric value)
+     */
+    public Map<String, Map<Resource, Double>> getMetricsOfAllTypes(SPARQLEndpoint endpoint) throws IOException {
+        String query = toAllTypesQuery(getQueryForType(endpoint));
+        ResultSet rs = endpoint.runSelectQuery(query);
+
+        Map<String, Map<Resource, Double>> metricsPerType = new HashMap<>();
+
+        while (rs.hasNext()) {
+            QuerySolution qs = rs.next();
+
+            String type = qs.getResource(ALL_TYPES_VARIABLE_NAME).getURI();
+            Resource p = qs.getResource("pred");
+            Literal metric = qs.getLiteral(getMetricVariableName());
+
+            metricsPerType.computeIfAbsent(type, t -> new HashMap<>()).put(p, transformMetric(metric.getDouble()));
+        }
+
+        return metricsPerType;
+    }
+
+    private String getQueryForType(SPARQLEndpoint endpoint) throws IOException {
+        if (endpoint instanceof SPARQLEndpointWithNamedGraphs)
+            return MetricsAggregator.getQueryString(getQueryFile());
+        else
+            return MetricsAggregator.getQueryString(getQueryFileWithoutSubgraph());
+    }
+
+    /**
+     * Turn a query for a single type (with a <%s> placeholder for its URI) into a query for every type, which also
+     * returns the type via ALL_TYPES_VARIABLE_NAME
+     */
+    private static String toAllTypesQuery(String queryForType) {
+        if (!queryForType.contains(TYPE_URI_PLACEHOLDER) || !queryForType.contains("SELECT"))
+            throw new RuntimeException("Type-based query without a " + TYPE_URI_PLACEHOLDER + " placeholder: " + queryForType);
+
+        return queryForType.replace(TYPE_URI_PLACEHOLDER, "?" + ALL_TYPES_VARIABLE_NAME)
+                .replaceFirst("SELECT", "SELECT ?" + ALL_TYPES_VARIABLE_NAME);
+    }
+
+    /**
+     * Combine the predicates' metrics with those of the combination aggregator via a weighted geometric mean (hash
+     * join on the predicate). Predicates without a combination metric are left out
+     *
+     * @param combinationMetrics Metrics of the combination aggregator, or null if not combined
+     */
+    protected Map<Resource, Double> combine(Map<Resource, Double> predicateMetrics, Map<Resource, Double> combinationMetrics) {
+        if (combinationMetrics == null)
+            return predicateMetrics;
+
+        Map<Resource, Double> combinedMetrics = new HashMap<>(predicateMetrics.size() * 2);
+
+        for (var entry : predicateMetrics.entrySet()) {
+            Double combinationMetric = combinationMetrics.get(entry.getKey());
+            if (combinationMetric == null) continue;
+
+            double combinedScore = Math.pow(entry.getValue(), combinationWeight) * Math.pow(combinationMetric, (1 - combinationWeight));
+            combinedMetrics.put(entry.getKey(), combinedScore);
+        }
+
+        return combinedMetrics;
+    }
+
+    protected static List<ResourceWrapper> toClusterInput(Map<Resource, Double> metrics) {
+        List<ResourceWrapper> clusterInput = new ArrayList<>(metrics.size());
+        for (var entry : metrics.entrySet())
+            clusterInput.add(new ResourceWrapper(entry.getKey(), entry.getValue()));
+
+        return clusterInput;
+    }
+
+    /**
+     * @return Map of predicate -> first dimension of its point (the first one, if repeated)
+     */
+    protected static Map<Resource, Double> toMetricsMap(List<ResourceWrapper> clusterInput) {
+        Map<Resource, Double> metrics = new HashMap<>(clusterInput.size() * 2);
+        for (var entry : clusterInput)
+            metrics.putIfAbsent(entry.getResource(), entry.getPoint()[0]);
+
+        return metrics;
+    }
+
+    /**
+     * Clone this aggregator for a different type, with its cluster input already computed (see
+     * TypeBasedTemplateBuilder). The clone gets its own copy of the allowed predicates, which are modified while
+     * creating its template
+     */
+    public TypeBasedMetricsAggregator cloneForType(String typeURI, List<ResourceWrapper> clusterInput) {
+        TypeBasedMetricsAggregator clone = (TypeBasedMetricsAggregator) this.clone();
+        clone.typeURI = typeURI;
+        clone.precomputedClusterInput = clusterInput;
+        clone.setAllowedPredicates(new HashSet<>(getAllowedPredicates()));
+
+        return clone;
     }
 
     public boolean isCombined() {
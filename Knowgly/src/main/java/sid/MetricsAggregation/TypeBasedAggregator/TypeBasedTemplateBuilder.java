@@ -0,0 +1,144 @@
+package sid.MetricsAggregation.TypeBasedAggregator;
+
+import org.apache.jena.rdf.model.Resource;
+import sid.MetricsAggregation.MetricsAggregator;
+import sid.MetricsAggregation.VirtualDocumentTemplate;
+import sid.SPARQLEndpoint.SPARQLEndpoint;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch builder of type-based templates, which generates the templates of many types at once with a
+ * TypeBasedMetricsAggregator
+ * <p>
+ * Instead of running the aggregator's queries (and those of its combination aggregator) and querying the KG's
+ * object and datatype properties once per type, everything that can be shared is computed once:
+ * <ul>
+ * <li> The metrics of every type, with a single query </li>
+ * <li> The combination aggregator's metrics, with a single query for every type if it's type-based, or once for all
+ * types if it's not </li>
+ * <li> The object and datatype properties, if the aggregator needs them </li>
+ * </ul>
+ * Afterwards, each type's template is created in parallel from a clone of the aggregator with its cluster input
+ * already computed (see TypeBasedMetricsAggregator.cloneForType), so only KMeans is run per type
+ */
+public class TypeBasedTemplateBuilder {
+    private final SPARQLEndpoint endpoint;
+    private final TypeBasedMetricsAggregator engine;
+    private final int nThreads;
+
+    public TypeBasedTemplateBuilder(SPARQLEndpoint endpoint, TypeBasedMetricsAggregator engine) {
+        this(endpoint, engine, Runtime.getRuntime().availableProcessors());
+    }
+
+    public TypeBasedTemplateBuilder(SPARQLEndpoint endpoint, TypeBasedMetricsAggregator engine, int nThreads) {
+        this.endpoint = endpoint;
+        this.engine = engine;
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Generate the template of every given type. Types whose template can't be created (usually because their KMeans
+     * run didn't have enough entries and couldn't converge) are left out of the result
+     *
+     * @param typeURIs Types to generate templates for
+     * @return Map of type URI <-> template
+     * @throws InterruptedException If the threaded execution is interrupted
+     */
+    public Map<String, VirtualDocumentTemplate> build(Collection<String> typeURIs) throws IOException,
+            ExecutionException, InterruptedException {
+        Instant start = Instant.now();
+
+        Map<String, Map<Resource, Double>> clusterInputs = getMetricsOfAllTypes(engine, endpoint);
+        System.out.println("Obtained the metrics of " + clusterInputs.size() + " types. Time: " + Duration.between(start, Instant.now()));
+
+        MetricsAggregator sharedEngine = engine.clone();
+        if (engine.usesPropertyKinds()) {
+            sharedEngine.setPrecomputedPropertyKinds(
+                    Collections.unmodifiableSet(MetricsAggregator.getObjectProperties(endpoint)),
+                    Collections.unmodifiableSet(MetricsAggregator.getDataTypeProperties(endpoint)));
+        }
+        TypeBasedMetricsAggregator typeBasedSharedEngine = (TypeBasedMetricsAggregator) sharedEngine;
+
+        Map<String, VirtualDocumentTemplate> typeBasedTemplates = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+
+        AtomicInteger count = new AtomicInteger(1);
+        AtomicInteger countFailed = new AtomicInteger(0);
+
+        for (String typeURI : typeURIs) {
+            completionService.submit(() -> {
+                try {
+                    List<MetricsAggregator.ResourceWrapper> clusterInput = TypeBasedMetricsAggregator.toClusterInput(clusterInputs.getOrDefault(typeURI, Map.of()));
+                    MetricsAggregator clonedEngine = typeBasedSharedEngine.cloneForType(typeURI, clusterInput);
+
+                    typeBasedTemplates.put(typeURI, clonedEngine.createVirtualDocumentTemplate(endpoint));
+                    System.out.print("Generated template for type " + count.getAndIncrement() + " of " + typeURIs.size() + '\r');
+                } catch (Exception e) {
+                    countFailed.getAndIncrement();
+                    count.getAndIncrement();
+
+                    // Its KMeans run probably didn't have enough entries and couldn't converge
+                    System.err.println("Warning: Couldn't create a template for type " + typeURI + ", reason: " + e);
+                }
+
+                return null;
+            });
+        }
+
+        executor.shutdown();
+
+        if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.HOURS)) {
+            throw new RuntimeException("Timeout when waiting for the type-based template generation tasks to complete!");
+        }
+
+        System.out.println("Finished waiting for type-based template generation jobs...");
+        System.out.println("Failed types: " + countFailed + "/" + typeURIs.size());
+        System.out.println("Time: " + Duration.between(start, Instant.now()));
+
+        executor.shutdownNow();
+
+        return typeBasedTemplates;
+    }
+
+    /**
+     * @return Map of type URI <-> (predicate <-> metric), already combined with those of the aggregator's combination
+     * aggregator, if any
+     */
+    private static Map<String, Map<Resource, Double>> getMetricsOfAllTypes(TypeBasedMetricsAggregator aggregator,
+                                                                           SPARQLEndpoint endpoint) throws IOException,
+            ExecutionException, InterruptedException {
+        Map<String, Map<Resource, Double>> metricsPerType = aggregator.getMetricsOfAllTypes(endpoint);
+
+        if (aggregator.combinationAggregator == null)
+            return metricsPerType;
+
+        MetricsAggregator combinationInputAggregator = aggregator.getCombinationInputAggregator();
+        Map<String, Map<Resource, Double>> combinedMetricsPerType = new HashMap<>(metricsPerType.size() * 2);
+
+        if (combinationInputAggregator instanceof TypeBasedMetricsAggregator) {
+            // Different combination metrics per type
+            var combinationMetricsPerType = getMetricsOfAllTypes((TypeBasedMetricsAggregator) combinationInputAggregator, endpoint);
+
+            for (var entry : metricsPerType.entrySet())
+                combinedMetricsPerType.put(entry.getKey(),
+                        aggregator.combine(entry.getValue(), combinationMetricsPerType.getOrDefault(entry.getKey(), Map.of())));
+        } else {
+            // The same combination metrics for every type
+            var combinationMetrics = TypeBasedMetricsAggregator.toMetricsMap(
+                    combinationInputAggregator.getOptionalClusterInput(endpoint, true).getClusterInput());
+
+            for (var entry : metricsPerType.entrySet())
+                combinedMetricsPerType.put(entry.getKey(), aggregator.combine(entry.getValue(), combinationMetrics));
+        }
+
+        return combinedMetricsPerType;
+    }
+}
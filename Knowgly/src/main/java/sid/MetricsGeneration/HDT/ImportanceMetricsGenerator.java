@@ -9,7 +9,9 @@ import org.rdfhdt.hdt.exceptions.ParserException;
 import org.rdfhdt.hdt.triples.IteratorTripleID;
 import org.rdfhdt.hdt.triples.TripleID;
 import sid.MetricsGeneration.MetricsGenerator;
+import sid.MetricsGeneration.util.PredicateScanner;
 import sid.SPARQLEndpoint.LocalHDTSPARQLEndpoint;
+import sid.utils.ExecutionRuntime;
 import sid.utils.Pair;
 
 import java.io.BufferedReader;
@@ -21,15 +23,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.LongStream;
 
 import static sid.MetricsGeneration.SPARQL.ImportanceMetricsGenerator.*;
 
@@ -43,16 +45,32 @@ import static sid.MetricsGeneration.SPARQL.ImportanceMetricsGenerator.*;
 public class ImportanceMetricsGenerator implements MetricsGenerator {
     private static final String CONFIGURATION_FILE = "configuration/metricsConfiguration.json";
     public static final String METRICS_HDT_FILE_CONF = "metricsToHDTFile";
+    public static final String DEFERRED_MERGE_CONF = "deferredMetricsMerge";
+    public static final String FUSED_METRICS_CONF = "fusedImportanceMetrics";
 
     // Maximum (Approx.) number of triples to write into a single HDT file. Writes to HDT files are batched and then
     // concatenated
     private static final int TRIPLES_PER_BATCH = 1000000;
 
+    // Name of the execution runtime's stage for the metrics' computations
+    public static final String STAGE = "importanceMetrics";
+
     private final LocalHDTSPARQLEndpoint endpoint;
 
+    // Workers for the metrics' computations, shared with the rest of the pipeline
+    private final ExecutionRuntime.Stage workers;
+
     // HDT file to which we save all the metrics
     private final String destinationHDTFile;
 
+    // If true, each metric is written to its own HDT part and all parts are merged (and indexed) in a single k-way
+    // concatenation at the end, instead of concatenating each of them to the destination file as soon as it's written
+    private final boolean deferredMerge;
+
+    // If true, all metrics are derived from the statistics gathered by ImportanceMetricsStatistics in two passes over
+    // the HDT, instead of computing each of them (and their intermediate metrics) separately
+    private final boolean fusedMetrics;
+
     // Only for subsuming predicates
     //private final HashMap<Long, Set<Long>> subsumingPredicates;
     //private final Set<Long> subsumedPredicates;
@@ -64,12 +82,24 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         JsonNode rootNode = objectMapper.readTree(mapData);
 
         return new ImportanceMetricsGenerator(endpoint,
-                rootNode.get(METRICS_HDT_FILE_CONF).asText());
+                rootNode.get(METRICS_HDT_FILE_CONF).asText(),
+                rootNode.has(DEFERRED_MERGE_CONF) && rootNode.get(DEFERRED_MERGE_CONF).asBoolean(),
+                rootNode.has(FUSED_METRICS_CONF) && rootNode.get(FUSED_METRICS_CONF).asBoolean());
     }
 
     public ImportanceMetricsGenerator(LocalHDTSPARQLEndpoint endpoint, String destinationHDTFile) throws IOException {
+        this(endpoint, destinationHDTFile, false, false);
+    }
+
+    public ImportanceMetricsGenerator(LocalHDTSPARQLEndpoint endpoint,
+                                      String destinationHDTFile,
+                                      boolean deferredMerge,
+                                      boolean fusedMetrics) throws IOException {
         this.endpoint = endpoint;
+        this.workers = ExecutionRuntime.getDefault().stage(STAGE);
         this.destinationHDTFile = destinationHDTFile;
+        this.deferredMerge = deferredMerge;
+        this.fusedMetrics = fusedMetrics;
 
         // Only for subsuming predicates
         /*Pair<HashMap<Long, Set<Long>>, Set<Long>> pair = getSubsumedPredicates(this.endpoint);
@@ -84,6 +114,14 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
             Files.deleteIfExists(Path.of(destinationHDTFile + ".index.v1-1"));
 
             Instant start;
+            // Only used in deferred merge mode
+            List<LocalHDTSPARQLEndpoint> metricsHDTParts = new ArrayList<>();
+
+            if (fusedMetrics) {
+                runFused(metricsHDTParts);
+                return;
+            }
+
             // We calculate intermediate metrics sequentially, and save to the metrics HDT the ones we are actually going
             // to use
             // Most intermediate metrics could be collapsed inside the functions that use them, but I have left them
@@ -170,7 +208,9 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
 
             LocalHDTSPARQLEndpoint metricsHDT = writeTypeImportancesToHDT(typeImportances);
             // Concatenate the first results over the existing metrics file
-            if (Files.exists(Path.of(destinationHDTFile)))
+            if (deferredMerge)
+                metricsHDTParts.add(metricsHDT);
+            else if (Files.exists(Path.of(destinationHDTFile)))
                 metricsHDT = new LocalHDTSPARQLEndpoint(destinationHDTFile, BASE_IMPORTANCE_SUBGRAPH_URI, false).concatenate(metricsHDT, destinationHDTFile, true, false);
 
             start = Instant.now();
@@ -178,7 +218,7 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
             Map<Long, Map<Long, Double>> predicateEntropyTypes = calculatePredicateEntropyTypeIntegrated();
             System.out.println("Time: " + Duration.between(start, Instant.now()));
 
-            metricsHDT = metricsHDT.concatenate(writePredicateEntropyTypesToHDT(predicateEntropyTypes), destinationHDTFile, true, false);
+            metricsHDT = addMetricsHDTPart(metricsHDT, writePredicateEntropyTypesToHDT(predicateEntropyTypes), metricsHDTParts);
 
             start = Instant.now();
             System.out.println("Calculating Entropy Type Importance...");
@@ -188,7 +228,7 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
             typeImportances.clear();
             System.gc(); // Hint that it can purge the entire map
 
-            metricsHDT = metricsHDT.concatenate(writePredicateEntropyTypeImportancesToHDT(entropyTypeImportances), destinationHDTFile, true, false);
+            metricsHDT = addMetricsHDTPart(metricsHDT, writePredicateEntropyTypeImportancesToHDT(entropyTypeImportances), metricsHDTParts);
 
             entropyTypeImportances.clear();
             System.gc(); // Hint that it can purge the entire map
@@ -200,7 +240,7 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
 
             entityFreqTypes.clear();
             System.gc(); // Hint that it can purge the entire map
-            metricsHDT = metricsHDT.concatenate(writeEntityTypeImportancesToHDT(entityTypeImportances), destinationHDTFile, true, false);
+            metricsHDT = addMetricsHDTPart(metricsHDT, writeEntityTypeImportancesToHDT(entityTypeImportances), metricsHDTParts);
 
             start = Instant.now();
             System.out.println("Calculating Entropy Entity Type Importance...");
@@ -211,7 +251,9 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
             entityTypeImportances.clear();
 
             System.out.println("Finished! Generating the final HDT (this may take a while...)");
-            metricsHDT.concatenate(writeEntropyEntityTypeImportancesToHDT(entropyEntityTypeImportances), destinationHDTFile, true, false);
+            metricsHDT = addMetricsHDTPart(metricsHDT, writeEntropyEntityTypeImportancesToHDT(entropyEntityTypeImportances), metricsHDTParts);
+            if (deferredMerge)
+                mergeMetricsHDTParts(metricsHDTParts);
 
             entropyEntityTypeImportances.clear();
             System.gc(); // Hint that it can purge the entire map
@@ -220,6 +262,86 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         }
     }
 
+    /**
+     * Calculate all metrics from the statistics gathered by ImportanceMetricsStatistics, and write them in the same
+     * order as run()
+     */
+    private void runFused(List<LocalHDTSPARQLEndpoint> metricsHDTParts) throws ExecutionException, InterruptedException, IOException, ParserException, NotFoundException {
+        Instant start = Instant.now();
+        System.out.println("Gathering the statistics for all importance metrics (this will take more time)...");
+        ImportanceMetricsStatistics statistics = new ImportanceMetricsStatistics(endpoint.hdt,
+                endpoint.hdt.getDictionary().stringToId(RDF_TYPE_URI, TripleComponentRole.PREDICATE),
+                workers);
+        statistics.compute();
+        System.out.println("Time: " + Duration.between(start, Instant.now()));
+
+        // Each metric is derived right before being written, so that only one of them is kept in memory at a time
+        Map<Long, Map<Long, Double>> metric = statistics.getTypeImportances();
+        LocalHDTSPARQLEndpoint metricsHDT = writeTypeImportancesToHDT(metric);
+        // Concatenate the first results over the existing metrics file
+        if (deferredMerge)
+            metricsHDTParts.add(metricsHDT);
+        else if (Files.exists(Path.of(destinationHDTFile)))
+            metricsHDT = new LocalHDTSPARQLEndpoint(destinationHDTFile, BASE_IMPORTANCE_SUBGRAPH_URI, false).concatenate(metricsHDT, destinationHDTFile, true, false);
+
+        metric = statistics.getPredicateEntropyTypes();
+        metricsHDT = addMetricsHDTPart(metricsHDT, writePredicateEntropyTypesToHDT(metric), metricsHDTParts);
+
+        metric = statistics.getEntropyTypeImportances();
+        metricsHDT = addMetricsHDTPart(metricsHDT, writePredicateEntropyTypeImportancesToHDT(metric), metricsHDTParts);
+
+        metric = statistics.getEntityTypeImportances();
+        metricsHDT = addMetricsHDTPart(metricsHDT, writeEntityTypeImportancesToHDT(metric), metricsHDTParts);
+
+        metric = statistics.getEntropyEntityTypeImportances();
+        System.out.println("Finished! Generating the final HDT (this may take a while...)");
+        addMetricsHDTPart(metricsHDT, writeEntropyEntityTypeImportancesToHDT(metric), metricsHDTParts);
+        if (deferredMerge)
+            mergeMetricsHDTParts(metricsHDTParts);
+
+        metric.clear();
+        System.gc(); // Hint that it can purge the entire map
+    }
+
+    /**
+     * Concatenate a metric's HDT part to the metrics HDT, or keep it for the final merge if the deferred merge mode is
+     * enabled
+     *
+     * @param metricsHDT      The current metrics HDT
+     * @param part            The metric's HDT part
+     * @param metricsHDTParts List of parts pending to be merged, only used in deferred merge mode
+     * @return The resulting metrics HDT (the same one in deferred merge mode)
+     */
+    private LocalHDTSPARQLEndpoint addMetricsHDTPart(LocalHDTSPARQLEndpoint metricsHDT,
+                                                     LocalHDTSPARQLEndpoint part,
+                                                     List<LocalHDTSPARQLEndpoint> metricsHDTParts) throws IOException {
+        if (deferredMerge) {
+            metricsHDTParts.add(part);
+            return metricsHDT;
+        } else {
+            return metricsHDT.concatenate(part, destinationHDTFile, true, false);
+        }
+    }
+
+    /**
+     * Merge all the metrics' HDT parts (and the existing metrics file, if any) into the destination HDT file with a
+     * single k-way concatenation, deleting the parts afterwards. The index is generated only once, at the end
+     */
+    private void mergeMetricsHDTParts(List<LocalHDTSPARQLEndpoint> metricsHDTParts) throws IOException {
+        Instant start = Instant.now();
+        System.out.println("Merging " + metricsHDTParts.size() + " metrics HDT parts...");
+
+        LocalHDTSPARQLEndpoint base;
+        if (Files.exists(Path.of(destinationHDTFile)))
+            base = new LocalHDTSPARQLEndpoint(destinationHDTFile, BASE_IMPORTANCE_SUBGRAPH_URI, false);
+        else
+            base = metricsHDTParts.remove(0);
+
+        base.concatenate(metricsHDTParts, destinationHDTFile, true, true);
+
+        System.out.println("Time: " + Duration.between(start, Instant.now()));
+    }
+
     private LocalHDTSPARQLEndpoint writeTypeImportancesToHDT(
             // Map of predicate ID -> Map of type ID -> type importance
             Map<Long, Map<Long, Double>> predTypeImportances) throws IOException, ParserException, NotFoundException {
@@ -381,174 +503,134 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
     }
 
     private Map<Long, HashMap<Long, Long>> calculateFactFrequency() throws ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
-
-
         // Map of predicate ID -> Frequencies for each object
         ConcurrentHashMap<Long, HashMap<Long, Long>> factFrequencies = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(predicateID -> {
-                    IteratorTripleID factsQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
+        workers.forRange(1, endpoint.hdt.getDictionary().getNpredicates() + 1, predicateID -> {
+            IteratorTripleID factsQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
 
-                    HashMap<Long, Long> objectFrequencies = new HashMap<>();
+            HashMap<Long, Long> objectFrequencies = new HashMap<>();
 
-                    while (factsQuery.hasNext()) {
-                        objectFrequencies.merge(factsQuery.next().getObject(), 1L, Long::sum);
-                    }
-
-                    factFrequencies.put(predicateID, objectFrequencies);
-                })).get();
+            while (factsQuery.hasNext()) {
+                objectFrequencies.merge(factsQuery.next().getObject(), 1L, Long::sum);
+            }
 
-        workers.close();
+            factFrequencies.put(predicateID, objectFrequencies);
+        });
 
 
         return factFrequencies;
     }
 
     private Map<Long, Long> calculateFactFrequencyP() throws ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
-
-
         // Map of predicate ID -> Frequencies for each object
         ConcurrentHashMap<Long, Long> factFrequenciesP = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(predicateID -> {
-                    IteratorTripleID factsQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
+        workers.forRange(1, endpoint.hdt.getDictionary().getNpredicates() + 1, predicateID -> {
+            IteratorTripleID factsQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
 
-                    long count = 0;
-                    while (factsQuery.hasNext()) {
-                        factsQuery.next();
-                        count++;
-                    }
+            long count = 0;
+            while (factsQuery.hasNext()) {
+                factsQuery.next();
+                count++;
+            }
 
-                    factFrequenciesP.put(predicateID, count);
-                })).get();
-
-        workers.close();
+            factFrequenciesP.put(predicateID, count);
+        });
 
         return factFrequenciesP;
     }
 
     private Map<Long, Long> calculateFactFrequencyO() throws ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNobjects() + 1).parallel();
-
         // Map of predicate ID -> Frequencies for each object
         ConcurrentHashMap<Long, Long> factFrequenciesO = new ConcurrentHashMap<>();
 
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(objectID -> {
-                    IteratorTripleID objQuery = endpoint.hdt.getTriples().search(new TripleID(0, 0, objectID));
-
-                    long count = 0;
-                    while (objQuery.hasNext()) {
-                        objQuery.next();
-                        count++;
-                    }
+        workers.forRange(1, endpoint.hdt.getDictionary().getNobjects() + 1, objectID -> {
+            IteratorTripleID objQuery = endpoint.hdt.getTriples().search(new TripleID(0, 0, objectID));
 
-                    factFrequenciesO.put(objectID, count);
-                })).get();
+            long count = 0;
+            while (objQuery.hasNext()) {
+                objQuery.next();
+                count++;
+            }
 
-        workers.close();
+            factFrequenciesO.put(objectID, count);
+        });
 
         return factFrequenciesO;
     }
 
 
     private Map<Long, HashMap<Long, Long>> calculateEntityFrequency() throws ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
-
         // Map of predicate ID -> Map of object -> entity frequency
         ConcurrentHashMap<Long, HashMap<Long, Long>> entityFrequencies = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(predicateID -> {
-                    HashMap<Long, Long> subjectFrequencies = new HashMap<>();
-
-                    HashSet<Long> objectsForPredicate = new HashSet<>();
-                    IteratorTripleID objectsForPredicateQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
-                    while (objectsForPredicateQuery.hasNext()) {
-                        objectsForPredicate.add(objectsForPredicateQuery.next().getObject());
-                    }
+        workers.forRange(1, endpoint.hdt.getDictionary().getNpredicates() + 1, predicateID -> {
+            HashMap<Long, Long> subjectFrequencies = new HashMap<>();
 
-                    for (long o : objectsForPredicate) {
-                        IteratorTripleID entitiesForFactQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, o));
+            HashSet<Long> objectsForPredicate = new HashSet<>();
+            IteratorTripleID objectsForPredicateQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
+            while (objectsForPredicateQuery.hasNext()) {
+                objectsForPredicate.add(objectsForPredicateQuery.next().getObject());
+            }
 
-                        HashSet<Long> entities = new HashSet<>();
-                        while (entitiesForFactQuery.hasNext()) {
-                            entities.add(entitiesForFactQuery.next().getSubject());
-                        }
+            for (long o : objectsForPredicate) {
+                IteratorTripleID entitiesForFactQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, o));
 
-                        subjectFrequencies.put(o, (long) entities.size());
-                    }
+                HashSet<Long> entities = new HashSet<>();
+                while (entitiesForFactQuery.hasNext()) {
+                    entities.add(entitiesForFactQuery.next().getSubject());
+                }
 
-                    entityFrequencies.put(predicateID, subjectFrequencies);
-                })).get();
+                subjectFrequencies.put(o, (long) entities.size());
+            }
 
-        workers.close();
+            entityFrequencies.put(predicateID, subjectFrequencies);
+        });
 
         return entityFrequencies;
     }
 
     private Map<Long, Long> calculateEntityFrequencyP() throws ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
-
         // Map of predicate ID -> Map of object -> entity frequency
         ConcurrentHashMap<Long, Long> entityFrequenciesP = new ConcurrentHashMap<>();
 
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(predicateID -> {
-                    IteratorTripleID entitiesForFactQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
-
-                    HashSet<Long> entities = new HashSet<>();
-                    while (entitiesForFactQuery.hasNext()) {
-                        entities.add(entitiesForFactQuery.next().getSubject());
-                    }
+        workers.forRange(1, endpoint.hdt.getDictionary().getNpredicates() + 1, predicateID -> {
+            IteratorTripleID entitiesForFactQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
 
-                    entityFrequenciesP.put(predicateID, (long) entities.size());
-                })).get();
+            HashSet<Long> entities = new HashSet<>();
+            while (entitiesForFactQuery.hasNext()) {
+                entities.add(entitiesForFactQuery.next().getSubject());
+            }
 
-        workers.close();
+            entityFrequenciesP.put(predicateID, (long) entities.size());
+        });
 
         return entityFrequenciesP;
     }
 
     private Map<Long, Long> calculateEntityFrequencyO() throws ParserException, IOException, ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNobjects() + 1).parallel();
-
         // Map of predicate ID -> Map of object -> entity frequency
         ConcurrentHashMap<Long, Long> entityFrequenciesO = new ConcurrentHashMap<>();
 
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(objectID -> {
-                    IteratorTripleID subjectsForObjectQuery = endpoint.hdt.getTriples().search(new TripleID(0, 0, objectID));
-
-                    HashSet<Long> subjects = new HashSet<>();
-                    while (subjectsForObjectQuery.hasNext()) {
-                        subjects.add(subjectsForObjectQuery.next().getSubject());
-                    }
+        workers.forRange(1, endpoint.hdt.getDictionary().getNobjects() + 1, objectID -> {
+            IteratorTripleID subjectsForObjectQuery = endpoint.hdt.getTriples().search(new TripleID(0, 0, objectID));
 
-                    entityFrequenciesO.put(objectID, (long) subjects.size());
-                })).get();
+            HashSet<Long> subjects = new HashSet<>();
+            while (subjectsForObjectQuery.hasNext()) {
+                subjects.add(subjectsForObjectQuery.next().getSubject());
+            }
 
-        workers.close();
+            entityFrequenciesO.put(objectID, (long) subjects.size());
+        });
 
         return entityFrequenciesO;
     }
 
     private Map<Long, HashMap<Long, Long>> calculateEntityTypeFrequency() throws ExecutionException, InterruptedException {
-        LongStream subjectsStream = LongStream.range(1, endpoint.hdt.getDictionary().getNsubjects() + 1).parallel();
-        LongStream predicatesStream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
         long idOfTypePredicate = endpoint.hdt.getDictionary().stringToId(RDF_TYPE_URI, TripleComponentRole.PREDICATE);
 
         // Map of predicate ID -> Map of type ID -> subject frequency
@@ -557,47 +639,40 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         ConcurrentHashMap<Long, HashSet<Long>> subjectsAndTypes = new ConcurrentHashMap<>();
 
         AtomicInteger sCount = new AtomicInteger(1);
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                subjectsStream.forEach(subjectID -> {
-                    System.out.print("\rSubject " + sCount.getAndIncrement() + "/" + endpoint.hdt.getDictionary().getNsubjects() + " processed...");
-                    HashSet<Long> types = new HashSet<>();
-                    IteratorTripleID typesOfSubjectQuery = endpoint.hdt.getTriples().search(new TripleID(subjectID, idOfTypePredicate, 0));
-                    while (typesOfSubjectQuery.hasNext()) {
-                        types.add(typesOfSubjectQuery.next().getObject());
-                    }
+        workers.forRange(1, endpoint.hdt.getDictionary().getNsubjects() + 1, subjectID -> {
+            System.out.print("\rSubject " + sCount.getAndIncrement() + "/" + endpoint.hdt.getDictionary().getNsubjects() + " processed...");
+            HashSet<Long> types = new HashSet<>();
+            IteratorTripleID typesOfSubjectQuery = endpoint.hdt.getTriples().search(new TripleID(subjectID, idOfTypePredicate, 0));
+            while (typesOfSubjectQuery.hasNext()) {
+                types.add(typesOfSubjectQuery.next().getObject());
+            }
 
-                    if (!types.isEmpty())
-                        subjectsAndTypes.put(subjectID, types);
-                })).get();
-        workers.close();
+            if (!types.isEmpty())
+                subjectsAndTypes.put(subjectID, types);
+        });
 
         System.out.println();
 
         AtomicInteger pCount = new AtomicInteger(1);
-        workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                predicatesStream.forEach(predicateID -> {
-                    System.out.print("\rPredicate " + pCount.getAndIncrement() + "/" + endpoint.hdt.getDictionary().getNpredicates() + " processed...");
-                    HashMap<Long, Long> typesWithSubjectFrequencies = new HashMap<>();
-
-                    for (var entry : subjectsAndTypes.entrySet()) {
-                        long s = entry.getKey();
-
-                        // If it appears somewhere with this predicate, increment the count for each one of its types
-                        IteratorTripleID subjectWithPredQuery = endpoint.hdt.getTriples().search(new TripleID(s, predicateID, 0));
-                        if (subjectWithPredQuery.hasNext()) {
-                            for (long type : entry.getValue()) {
-                                typesWithSubjectFrequencies.merge(type, 1L, Long::sum);
-                            }
-                        }
+        workers.forRange(1, endpoint.hdt.getDictionary().getNpredicates() + 1, predicateID -> {
+            System.out.print("\rPredicate " + pCount.getAndIncrement() + "/" + endpoint.hdt.getDictionary().getNpredicates() + " processed...");
+            HashMap<Long, Long> typesWithSubjectFrequencies = new HashMap<>();
+
+            for (var entry : subjectsAndTypes.entrySet()) {
+                long s = entry.getKey();
+
+                // If it appears somewhere with this predicate, increment the count for each one of its types
+                IteratorTripleID subjectWithPredQuery = endpoint.hdt.getTriples().search(new TripleID(s, predicateID, 0));
+                if (subjectWithPredQuery.hasNext()) {
+                    for (long type : entry.getValue()) {
+                        typesWithSubjectFrequencies.merge(type, 1L, Long::sum);
                     }
+                }
+            }
 
-                    if (!typesWithSubjectFrequencies.isEmpty())
-                        entityTypeFrequencies.put(predicateID, typesWithSubjectFrequencies);
-                })).get();
-
-        workers.close();
+            if (!typesWithSubjectFrequencies.isEmpty())
+                entityTypeFrequencies.put(predicateID, typesWithSubjectFrequencies);
+        });
 
         System.out.println();
 
@@ -607,55 +682,61 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
     private Map<Long, Long> calculateTypeFrequencyP() throws ExecutionException, InterruptedException {
         long idOfTypePredicate = endpoint.hdt.getDictionary().stringToId(RDF_TYPE_URI, TripleComponentRole.PREDICATE);
 
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
+        PredicateScanner predicates = new PredicateScanner(endpoint.hdt);
 
         // Map of predicate ID -> type frequency
         ConcurrentHashMap<Long, Long> typeFrequencyPs = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(predicateID -> {
-                    IteratorTripleID subjectsWithPred = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
+        predicates.forEachPredicate(new PredicateScanner.PartialAggregation<SubjectTypes>() {
+            @Override
+            public SubjectTypes newPartial(long predicateID) {
+                return new SubjectTypes();
+            }
 
-                    HashSet<Long> subjects = new HashSet<>();
-                    while (subjectsWithPred.hasNext()) {
-                        subjects.add(subjectsWithPred.next().getSubject());
-                    }
+            @Override
+            public void accept(SubjectTypes partial, long subject, long object) {
+                // Subjects are returned sorted, so each one is only visited once (per part) without having to store them
+                if (subject == partial.lastSubject)
+                    return;
 
-                    HashSet<Long> types = new HashSet<>();
-                    for (long subject : subjects) {
-                        IteratorTripleID typesOfSubject = endpoint.hdt.getTriples().search(new TripleID(subject, idOfTypePredicate, 0));
-                        while (typesOfSubject.hasNext()) {
-                            types.add(typesOfSubject.next().getObject());
-                        }
-                    }
+                partial.lastSubject = subject;
+                IteratorTripleID typesOfSubject = endpoint.hdt.getTriples().search(new TripleID(subject, idOfTypePredicate, 0));
+                while (typesOfSubject.hasNext()) {
+                    partial.types.add(typesOfSubject.next().getObject());
+                }
+            }
 
-                    // Only used for subsuming
-                    /*if (subsumingPredicates.containsKey(predicateID)) {
-                        var predicatesToSubsume = subsumingPredicates.get(predicateID);
+            @Override
+            public void merge(long predicateID, List<SubjectTypes> partials) {
+                Set<Long> types = partials.get(0).types;
+                for (int i = 1; i < partials.size(); i++)
+                    types.addAll(partials.get(i).types);
 
-                        for (long predicateToSubsumeID : predicatesToSubsume) {
-                            subjectsWithPred = endpoint.hdt.getTriples().search(new TripleID(0, predicateToSubsumeID, 0));
+                // Only used for subsuming
+                /*if (subsumingPredicates.containsKey(predicateID)) {
+                    var predicatesToSubsume = subsumingPredicates.get(predicateID);
 
-                            HashSet<Long> subjectsSubsumed = new HashSet<>();
-                            while (subjectsWithPred.hasNext()) {
-                                subjectsSubsumed.add(subjectsWithPred.next().getSubject());
-                            }
+                    for (long predicateToSubsumeID : predicatesToSubsume) {
+                        subjectsWithPred = endpoint.hdt.getTriples().search(new TripleID(0, predicateToSubsumeID, 0));
 
-                            for (long subject : subjectsSubsumed) {
-                                IteratorTripleID typesOfSubject = endpoint.hdt.getTriples().search(new TripleID(subject, idOfTypePredicate, 0));
-                                while (typesOfSubject.hasNext()) {
-                                    types.add(typesOfSubject.next().getObject());
-                                }
-                            }
+                        HashSet<Long> subjectsSubsumed = new HashSet<>();
+                        while (subjectsWithPred.hasNext()) {
+                            subjectsSubsumed.add(subjectsWithPred.next().getSubject());
                         }
-                    }*/
 
-                    if (!types.isEmpty()) // Predicates with 0 type frequency are redundant
-                        typeFrequencyPs.put(predicateID, (long) types.size());
-                })).get();
+                        for (long subject : subjectsSubsumed) {
+                            IteratorTripleID typesOfSubject = endpoint.hdt.getTriples().search(new TripleID(subject, idOfTypePredicate, 0));
+                            while (typesOfSubject.hasNext()) {
+                                types.add(typesOfSubject.next().getObject());
+                            }
+                        }
+                    }
+                }*/
 
-        workers.close();
+                if (!types.isEmpty()) // Predicates with 0 type frequency are redundant
+                    typeFrequencyPs.put(predicateID, (long) types.size());
+            }
+        });
 
         return typeFrequencyPs;
     }
@@ -672,69 +753,27 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         // Map of predicate ID -> Map of type ID -> type importance
         Map<Long, Map<Long, Double>> predTypeImportances = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                entityFreqTypes.keySet().stream().parallel().forEach(predicateID -> {
-                    long typeFrequencyP = typeFrequencyPs.getOrDefault(predicateID, 0L);
-
-                    // Map of type ID -> type importance
-                    Map<Long, Double> typeImportancesForP = new HashMap<>();
-
-                    for (var entryForFact : entityFreqTypes.get(predicateID).entrySet()) {
-                        long typeID = entryForFact.getKey();
-                        long entityFrequency = entryForFact.getValue();
-
-                        double typeImportance = 0.0;
-                        if (typeFrequencyP != 0)
-                            typeImportance = (double) entityFrequency * Math.log(((double) nTypes) / (double) typeFrequencyP);
-
-                        typeImportancesForP.put(typeID, typeImportance);
-                    }
-
-                    predTypeImportances.put(predicateID, typeImportancesForP);
-                })).get();
-
-        workers.close();
+        workers.forEach(entityFreqTypes.keySet(), predicateID -> {
+            long typeFrequencyP = typeFrequencyPs.getOrDefault(predicateID, 0L);
 
-        return predTypeImportances;
-    }
+            // Map of type ID -> type importance
+            Map<Long, Double> typeImportancesForP = new HashMap<>();
 
-    private Map<Long, Long> getSubjectCountsForType(Map<Long, HashSet<Long>> typesPerSubject, long predicateID) {
-        Map<Long, Long> subjectCountsForType = new HashMap<>();
+            for (var entryForFact : entityFreqTypes.get(predicateID).entrySet()) {
+                long typeID = entryForFact.getKey();
+                long entityFrequency = entryForFact.getValue();
 
-        // Now we don't care whether they are duplicate or not, so we don't store them in a Set
-        IteratorTripleID subjectsWithFact = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
-        while (subjectsWithFact.hasNext()) {
-            long subjectID = subjectsWithFact.next().getSubject();
+                double typeImportance = 0.0;
+                if (typeFrequencyP != 0)
+                    typeImportance = (double) entityFrequency * Math.log(((double) nTypes) / (double) typeFrequencyP);
 
-            HashSet<Long> typesForSubject = typesPerSubject.get(subjectID);
-            if (typesForSubject != null) {
-                for (long type : typesForSubject) {
-                    subjectCountsForType.merge(type, 1L, Long::sum);
-                }
+                typeImportancesForP.put(typeID, typeImportance);
             }
-        }
-
-        // Only used for subsuming
-        /*if (subsumingPredicates.containsKey(predicateID)) {
-            var predicatesToSubsume = subsumingPredicates.get(predicateID);
 
-            for (long predicateToSubsumeID : predicatesToSubsume) {
-                subjectsWithFact = endpoint.hdt.getTriples().search(new TripleID(0, predicateToSubsumeID, 0));
-                while (subjectsWithFact.hasNext()) {
-                    long subjectID = subjectsWithFact.next().getSubject();
-
-                    HashSet<Long> typesForSubject = typesPerSubject.get(subjectID);
-                    if (typesForSubject != null) {
-                        for (long type : typesForSubject) {
-                            subjectCountsForType.merge(type, 1L, Long::sum);
-                        }
-                    }
-                }
-            }
-        }*/
+            predTypeImportances.put(predicateID, typeImportancesForP);
+        });
 
-        return subjectCountsForType;
+        return predTypeImportances;
     }
 
     private static Map<Long, Map<Long, Double>> getFactTypeProbabilitiesForP(Map<Long, Long> factFrequencyP, Map<Long, Map<Long, Long>> factTypeFrequenciesForP) {
@@ -762,46 +801,45 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         return factTypeProbabilitiesForP;
     }
 
-    private Map<Long, Map<Long, Long>> getFactTypeFrequenciesForP(Map<Long, HashSet<Long>> typesPerSubject, long predicateID) {
-        // Map of object -> typeID -> frequencies
-        Map<Long, Map<Long, Long>> factTypeFrequenciesForP = new HashMap<>();
+    // Types of the subjects of a predicate, or of a part of its triples
+    private static class SubjectTypes {
+        private long lastSubject = -1;
+        private final Set<Long> types = new HashSet<>();
+    }
 
-        HashSet<Long> objects = new HashSet<>();
-        IteratorTripleID objectsForPredicateQuery = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
-        while (objectsForPredicateQuery.hasNext()) {
-            objects.add(objectsForPredicateQuery.next().getObject());
-        }
+    // Type frequencies of the facts of a predicate, or of a part of its triples
+    private static class FactTypeFrequencies {
+        // Map of Type t -> Number of subjects of type t within a fact containing the predicate
+        private final Map<Long, Long> factFrequencyP = new HashMap<>();
 
-        // We iterate like this as we want the count of types among all subjects associated with the fact <predicateID, objectID>
-        for (long objectID : objects) {
-            IteratorTripleID subjectsForFact = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, objectID));
-            // Map of typeID -> frequencies
-            Map<Long, Long> typeFrequenciesForFact = new HashMap<>();
+        // Map of object ID -> Map of typeID -> frequencies
+        private final Map<Long, Map<Long, Long>> factTypeFrequenciesForP = new HashMap<>();
 
-            while (subjectsForFact.hasNext()) {
-                long subjectID = subjectsForFact.next().getSubject();
+        // We want the count of types among all subjects associated with each fact <predicateID, objectID>. Since
+        // triples are unique, a single pass over the predicate's triples visits each of those subjects once
+        private void add(Set<Long> typesForSubject, long objectID) {
+            // Map of typeID -> frequencies
+            Map<Long, Long> typeFrequenciesForFact = factTypeFrequenciesForP.computeIfAbsent(objectID, o -> new HashMap<>());
+            for (long typeID : typesForSubject) {
+                factFrequencyP.merge(typeID, 1L, Long::sum);
+                typeFrequenciesForFact.merge(typeID, 1L, Long::sum);
+            }
+        }
 
-                Set<Long> typesForSubject = typesPerSubject.get(subjectID);
+        private void merge(FactTypeFrequencies other) {
+            other.factFrequencyP.forEach((typeID, frequency) -> factFrequencyP.merge(typeID, frequency, Long::sum));
 
-                if (typesForSubject != null) { // Make sure that this subject is typed, otherwise it's redundant
-                    for (long typeID : typesForSubject) {
-                        typeFrequenciesForFact.merge(typeID, 1L, Long::sum);
-                    }
-                }
+            for (var fact : other.factTypeFrequenciesForP.entrySet()) {
+                Map<Long, Long> typeFrequenciesForFact = factTypeFrequenciesForP.putIfAbsent(fact.getKey(), fact.getValue());
+                if (typeFrequenciesForFact != null)
+                    fact.getValue().forEach((typeID, frequency) -> typeFrequenciesForFact.merge(typeID, frequency, Long::sum));
             }
-
-            if (!typeFrequenciesForFact.isEmpty())
-                factTypeFrequenciesForP.put(objectID, typeFrequenciesForFact);
         }
-
-        objects.clear();
-        return factTypeFrequenciesForP;
     }
 
     // calculatePredicateEntropyType, but calculating FactTypeProbability online, for every predicate (in order to avoid OOMs)
     private Map<Long, Map<Long, Double>> calculatePredicateEntropyTypeIntegrated() throws ExecutionException, InterruptedException {
         //long idOfVirtualType = endpoint.hdt.getDictionary().stringToId(endpoint.VIRTUAL_TYPE, TripleComponentRole.OBJECT);
-        LongStream subjectsStream = LongStream.range(1, endpoint.hdt.getDictionary().getNsubjects() + 1).parallel();
         long idOfTypePredicate = endpoint.hdt.getDictionary().stringToId(RDF_TYPE_URI, TripleComponentRole.PREDICATE);
 
         // Map of subject ID -> type IDs
@@ -809,90 +847,102 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
 
         System.out.println("Caching subject types...");
         AtomicInteger sCount = new AtomicInteger(1);
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                subjectsStream.forEach(subjectID -> {
-                    System.out.print("\rSubject " + sCount.getAndIncrement() + "/" + endpoint.hdt.getDictionary().getNsubjects() + " processed...");
-                    HashSet<Long> types = new HashSet<>();
-                    IteratorTripleID typesOfSubjectQuery = endpoint.hdt.getTriples().search(new TripleID(subjectID, idOfTypePredicate, 0));
-                    while (typesOfSubjectQuery.hasNext()) {
-                        types.add(typesOfSubjectQuery.next().getObject());
-                    }
+        workers.forRange(1, endpoint.hdt.getDictionary().getNsubjects() + 1, subjectID -> {
+            System.out.print("\rSubject " + sCount.getAndIncrement() + "/" + endpoint.hdt.getDictionary().getNsubjects() + " processed...");
+            HashSet<Long> types = new HashSet<>();
+            IteratorTripleID typesOfSubjectQuery = endpoint.hdt.getTriples().search(new TripleID(subjectID, idOfTypePredicate, 0));
+            while (typesOfSubjectQuery.hasNext()) {
+                types.add(typesOfSubjectQuery.next().getObject());
+            }
 
-                    if (!types.isEmpty())
-                        subjectsAndTypes.put(subjectID, types);
-                })).get();
-        workers.close();
+            if (!types.isEmpty())
+                subjectsAndTypes.put(subjectID, types);
+        });
 
-        LongStream predicatesStream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
+        PredicateScanner predicates = new PredicateScanner(endpoint.hdt);
 
         // Map of predicate ID -> type ID -> shannon's entropy
         Map<Long, Map<Long, Double>> predTypeEntropies = new ConcurrentHashMap<>();
 
         AtomicInteger pCount = new AtomicInteger(1);
 
-        workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                predicatesStream.forEach(predicateID -> {
-                    System.out.print("\rPredicate " + pCount.getAndIncrement() + "/" + endpoint.hdt.getDictionary().getNpredicates() + " processed...");
-
-                    // Map of type ID -> shannon's entropy
-                    Map<Long, Double> typeEntropiesForP = new HashMap<>();
-
-                    // Map of Type  t -> Number of subjects of type t within a fact containing predicateID
-                    Map<Long, Long> factFrequencyP = getSubjectCountsForType(subjectsAndTypes, predicateID);
-
-                    // Map of object ID -> Map of typeID -> frequencies
-                    Map<Long, Map<Long, Long>> factTypeFrequenciesForP = getFactTypeFrequenciesForP(subjectsAndTypes, predicateID);
-
-                    // Only used for subsuming
-                    /*if (subsumingPredicates.containsKey(predicateID)) {
-                        var predicatesToSubsume = subsumingPredicates.get(predicateID);
-
-                        for (long predicateToSubsumeID : predicatesToSubsume) {
-                             Map<Long, Map<Long, Long>> factTypeFrequenciesForPSubsumed = getFactTypeFrequenciesForP(subjectsAndTypes, predicateToSubsumeID);
-                             for (long objectID : factTypeFrequenciesForPSubsumed.keySet()) {
-                                 if (factTypeFrequenciesForP.containsKey(objectID)) {
-                                     for (var typeID : factTypeFrequenciesForPSubsumed.get(objectID).keySet()) {
-                                         factTypeFrequenciesForP.get(objectID).merge(typeID, factTypeFrequenciesForPSubsumed.get(objectID).get(typeID), Long::sum);
-                                     }
-                                 } else {
-                                     factTypeFrequenciesForP.put(objectID, factTypeFrequenciesForPSubsumed.get(objectID));
+        predicates.forEachPredicate(new PredicateScanner.PartialAggregation<FactTypeFrequencies>() {
+            @Override
+            public FactTypeFrequencies newPartial(long predicateID) {
+                return new FactTypeFrequencies();
+            }
+
+            @Override
+            public void accept(FactTypeFrequencies partial, long subject, long object) {
+                HashSet<Long> typesForSubject = subjectsAndTypes.get(subject);
+                if (typesForSubject != null) // Make sure that this subject is typed, otherwise it's redundant
+                    partial.add(typesForSubject, object);
+            }
+
+            @Override
+            public void merge(long predicateID, List<FactTypeFrequencies> partials) {
+                System.out.print("\rPredicate " + pCount.getAndIncrement() + "/" + endpoint.hdt.getDictionary().getNpredicates() + " processed...");
+
+                FactTypeFrequencies frequencies = partials.get(0);
+                for (int i = 1; i < partials.size(); i++)
+                    frequencies.merge(partials.get(i));
+
+                // Map of type ID -> shannon's entropy
+                Map<Long, Double> typeEntropiesForP = new HashMap<>();
+
+                // Map of Type  t -> Number of subjects of type t within a fact containing predicateID
+                Map<Long, Long> factFrequencyP = frequencies.factFrequencyP;
+
+                // Map of object ID -> Map of typeID -> frequencies
+                Map<Long, Map<Long, Long>> factTypeFrequenciesForP = frequencies.factTypeFrequenciesForP;
+
+                // Only used for subsuming
+                /*if (subsumingPredicates.containsKey(predicateID)) {
+                    var predicatesToSubsume = subsumingPredicates.get(predicateID);
+
+                    for (long predicateToSubsumeID : predicatesToSubsume) {
+                         Map<Long, Map<Long, Long>> factTypeFrequenciesForPSubsumed = getFactTypeFrequenciesForP(subjectsAndTypes, predicates, predicateToSubsumeID);
+                         for (long objectID : factTypeFrequenciesForPSubsumed.keySet()) {
+                             if (factTypeFrequenciesForP.containsKey(objectID)) {
+                                 for (var typeID : factTypeFrequenciesForPSubsumed.get(objectID).keySet()) {
+                                     factTypeFrequenciesForP.get(objectID).merge(typeID, factTypeFrequenciesForPSubsumed.get(objectID).get(typeID), Long::sum);
                                  }
+                             } else {
+                                 factTypeFrequenciesForP.put(objectID, factTypeFrequenciesForPSubsumed.get(objectID));
                              }
-                        }
-                    }*/
+                         }
+                    }
+                }*/
 
-                    // Map of object ID -> type ID -> factTypeProbability
-                    Map<Long, Map<Long, Double>> factTypeProbabilitiesForP = getFactTypeProbabilitiesForP(factFrequencyP, factTypeFrequenciesForP);
+                // Map of object ID -> type ID -> factTypeProbability
+                Map<Long, Map<Long, Double>> factTypeProbabilitiesForP = getFactTypeProbabilitiesForP(factFrequencyP, factTypeFrequenciesForP);
 
-                    factFrequencyP.clear();
-                    factTypeFrequenciesForP.clear();
+                factFrequencyP.clear();
+                factTypeFrequenciesForP.clear();
 
 
-                    // Check all types associated to facts containing this predicate
-                    for (var factType : factTypeProbabilitiesForP.entrySet()) {
-                        //long objectID = factType.getKey();
+                // Check all types associated to facts containing this predicate
+                for (var factType : factTypeProbabilitiesForP.entrySet()) {
+                    //long objectID = factType.getKey();
 
-                        for (var typeProbability : factType.getValue().entrySet()) {
-                            long typeID = typeProbability.getKey();
-                            double factTypeProbability = typeProbability.getValue();
+                    for (var typeProbability : factType.getValue().entrySet()) {
+                        long typeID = typeProbability.getKey();
+                        double factTypeProbability = typeProbability.getValue();
 
-                            double singleEntropy = Math.log(factTypeProbability) / Math.log(2);
-                            typeEntropiesForP.merge(typeID, factTypeProbability * singleEntropy, Double::sum); // p(x) * log_2(p(x))
-                        }
+                        double singleEntropy = Math.log(factTypeProbability) / Math.log(2);
+                        typeEntropiesForP.merge(typeID, factTypeProbability * singleEntropy, Double::sum); // p(x) * log_2(p(x))
                     }
+                }
 
-                    factTypeProbabilitiesForP.clear();
-
-                    // Negate all sums
-                    typeEntropiesForP.replaceAll((typeID, v) -> -typeEntropiesForP.get(typeID));
+                factTypeProbabilitiesForP.clear();
 
-                    if (!typeEntropiesForP.isEmpty())
-                        predTypeEntropies.put(predicateID, typeEntropiesForP);
-                })).get();
+                // Negate all sums
+                typeEntropiesForP.replaceAll((typeID, v) -> -typeEntropiesForP.get(typeID));
 
-        workers.close();
+                if (!typeEntropiesForP.isEmpty())
+                    predTypeEntropies.put(predicateID, typeEntropiesForP);
+            }
+        });
 
         return predTypeEntropies;
     }
@@ -905,23 +955,19 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         // Map of predicate ID -> type ID -> entropyTypeImportance
         Map<Long, Map<Long, Double>> entropyTypeImportances = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                predTypeEntropies.keySet().stream().parallel().forEach(predicateID -> {
-                    Map<Long, Double> entropyTypeImportancesForP = new HashMap<>();
+        workers.forEach(predTypeEntropies.keySet(), predicateID -> {
+            Map<Long, Double> entropyTypeImportancesForP = new HashMap<>();
 
-                    for (var typeEntropy : predTypeEntropies.get(predicateID).entrySet()) {
-                        long typeID = typeEntropy.getKey();
-                        double predTypeEntropy = typeEntropy.getValue();
-                        double predTypeImportance = predTypeImportances.get(predicateID).get(typeID);
+            for (var typeEntropy : predTypeEntropies.get(predicateID).entrySet()) {
+                long typeID = typeEntropy.getKey();
+                double predTypeEntropy = typeEntropy.getValue();
+                double predTypeImportance = predTypeImportances.get(predicateID).get(typeID);
 
-                        entropyTypeImportancesForP.put(typeID, predTypeEntropy * predTypeImportance);
-                    }
-
-                    entropyTypeImportances.put(predicateID, entropyTypeImportancesForP);
-                })).get();
+                entropyTypeImportancesForP.put(typeID, predTypeEntropy * predTypeImportance);
+            }
 
-        workers.close();
+            entropyTypeImportances.put(predicateID, entropyTypeImportancesForP);
+        });
 
         return entropyTypeImportances;
     }
@@ -938,34 +984,28 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         // Map of type ID -> no. of distinct subjects associated with the type
         ConcurrentHashMap<Long, Long> subjectsWithType = new ConcurrentHashMap<>();
         long idOfTypePredicateInKG = endpoint.hdt.getDictionary().stringToId(RDF_TYPE_URI, TripleComponentRole.PREDICATE);
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                types.stream().parallel().forEach(type -> {
-                    HashSet<Long> uniqueSubjects = new HashSet<>();
-                    IteratorTripleID subjectsWithTypeQuery = endpoint.hdt.getTriples().search(new TripleID(0, idOfTypePredicateInKG, type));
-                    while (subjectsWithTypeQuery.hasNext()) {
-                        uniqueSubjects.add(subjectsWithTypeQuery.next().getSubject());
-                    }
+        workers.forEach(types, type -> {
+            HashSet<Long> uniqueSubjects = new HashSet<>();
+            IteratorTripleID subjectsWithTypeQuery = endpoint.hdt.getTriples().search(new TripleID(0, idOfTypePredicateInKG, type));
+            while (subjectsWithTypeQuery.hasNext()) {
+                uniqueSubjects.add(subjectsWithTypeQuery.next().getSubject());
+            }
 
-                    subjectsWithType.put(type, (long) uniqueSubjects.size());
-                })).get();
-        workers.close();
+            subjectsWithType.put(type, (long) uniqueSubjects.size());
+        });
 
-        workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                entityFreqTypes.keySet().stream().parallel().forEach(predicateID -> {
-                    Map<Long, Double> entityTypeImportancesForP = new HashMap<>();
+        workers.forEach(entityFreqTypes.keySet(), predicateID -> {
+            Map<Long, Double> entityTypeImportancesForP = new HashMap<>();
 
-                    for (var entityFreqType : entityFreqTypes.get(predicateID).entrySet()) {
-                        long typeID = entityFreqType.getKey();
-                        long subjectFrequency = entityFreqType.getValue();
+            for (var entityFreqType : entityFreqTypes.get(predicateID).entrySet()) {
+                long typeID = entityFreqType.getKey();
+                long subjectFrequency = entityFreqType.getValue();
 
-                        entityTypeImportancesForP.put(typeID, subjectFrequency * Math.log((double) subjectsWithType.get(typeID) / (double) subjectFrequency));
-                    }
+                entityTypeImportancesForP.put(typeID, subjectFrequency * Math.log((double) subjectsWithType.get(typeID) / (double) subjectFrequency));
+            }
 
-                    entityTypeImportances.put(predicateID, entityTypeImportancesForP);
-                })).get();
-        workers.close();
+            entityTypeImportances.put(predicateID, entityTypeImportancesForP);
+        });
 
         return entityTypeImportances;
     }
@@ -979,24 +1019,20 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         // Map of predicate ID -> type ID -> entropyEntityTypeImportance
         Map<Long, Map<Long, Double>> entropyEntityTypeImportances = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                entityTypeImportances.keySet().stream().parallel().forEach(predicateID -> {
-                    // Map of type ID -> entropyEntityTypeImportance
-                    Map<Long, Double> entropyEntityTypeImportancesForP = new HashMap<>();
+        workers.forEach(entityTypeImportances.keySet(), predicateID -> {
+            // Map of type ID -> entropyEntityTypeImportance
+            Map<Long, Double> entropyEntityTypeImportancesForP = new HashMap<>();
 
-                    for (var entry : entityTypeImportances.get(predicateID).entrySet()) {
-                        long typeID = entry.getKey();
-                        double entityTypeImportance = entry.getValue();
-                        double predicateEntropyType = predicateEntropyTypes.get(predicateID).get(typeID);
+            for (var entry : entityTypeImportances.get(predicateID).entrySet()) {
+                long typeID = entry.getKey();
+                double entityTypeImportance = entry.getValue();
+                double predicateEntropyType = predicateEntropyTypes.get(predicateID).get(typeID);
 
-                        entropyEntityTypeImportancesForP.put(typeID, entityTypeImportance * predicateEntropyType);
-                    }
-
-                    entropyEntityTypeImportances.put(predicateID, entropyEntityTypeImportancesForP);
-                })).get();
+                entropyEntityTypeImportancesForP.put(typeID, entityTypeImportance * predicateEntropyType);
+            }
 
-        workers.close();
+            entropyEntityTypeImportances.put(predicateID, entropyEntityTypeImportancesForP);
+        });
 
         return entropyEntityTypeImportances;
     }
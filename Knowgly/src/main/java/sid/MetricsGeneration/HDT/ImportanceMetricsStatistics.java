@@ -0,0 +1,358 @@
+package sid.MetricsGeneration.HDT;
+
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.triples.IteratorTripleID;
+import org.rdfhdt.hdt.triples.TripleID;
+import sid.utils.ExecutionRuntime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fused computation of all the type-based importance metrics of ImportanceMetricsGenerator (typeImportance,
+ * predicateEntropyType, entropyTypeImportance, entityTypeImportance and entropyEntityTypeImportance)
+ * <p>
+ * Instead of computing each metric (and its intermediate maps) from its own scans of the HDT, all their sufficient
+ * statistics are gathered in two passes, and every metric is derived from them afterwards:
+ * <p>
+ * 1. SPO scan over all subjects. Since all triples of a subject are contiguous, its types and predicates are known once
+ * they have been scanned, so we get, for each (predicate p, type t) pair:
+ * - entityFreq(p, t): number of distinct subjects of type t with p
+ * - N(p, t): number of triples with p whose subject is of type t
+ * And, for each type t, the number of distinct subjects of type t. The types of every subject are kept in compact
+ * per-range arrays for the second pass
+ * <p>
+ * 2. Object-major scan (via the object index) over all objects, grouping the triples of each (p, o) fact to get
+ * c(p, o, t), the number of subjects of type t within the fact. Only S(p, t) = sum_o(c * log2(c)) is accumulated, since
+ * the entropy can be rewritten as:
+ * -sum_o(c/N * log2(c/N)) = log2(N) - S/N
+ * <p>
+ * The type frequency of each predicate is the number of types t with entityFreq(p, t) > 0, and the number of types in
+ * the KG is the number of distinct types found in the first pass
+ */
+public class ImportanceMetricsStatistics {
+    // Number of subjects or objects in each range processed by a worker
+    private static final int RANGE_SIZE = 1 << 16;
+
+    private final HDT hdt;
+    private final long typePredicateID;
+    private final ExecutionRuntime.Stage workers;
+
+    // Type ID (object role) -> compact type index, and its inverse
+    private final Map<Long, Integer> typeIndexes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTypeIndex = new AtomicInteger(0);
+    private long[] typeIDs;
+
+    // Types of each subject, per range of RANGE_SIZE subjects, in CSR format (the types of the i-th subject of the
+    // range are typesOfSubjects[offsets[i]] ... typesOfSubjects[offsets[i + 1] - 1], as compact type indexes)
+    private int[][] typeOffsetsPerRange;
+    private int[][] typesPerRange;
+
+    // Accumulators for each (p, t) pair, keyed by pairKey(p, t)
+    private Map<Long, Long> entityFrequencies;
+    private Map<Long, Long> subjectCounts;
+    private Map<Long, Double> factTypeSums;
+    // Compact type index -> number of distinct subjects with the type
+    private long[] subjectsWithType;
+
+    public ImportanceMetricsStatistics(HDT hdt, long typePredicateID) {
+        this(hdt, typePredicateID, ExecutionRuntime.getDefault().stage(ImportanceMetricsGenerator.STAGE));
+    }
+
+    /**
+     * @param workers Stage of the execution runtime to run the scans in
+     */
+    public ImportanceMetricsStatistics(HDT hdt, long typePredicateID, ExecutionRuntime.Stage workers) {
+        this.hdt = hdt;
+        this.typePredicateID = typePredicateID;
+        this.workers = workers;
+    }
+
+    public void compute() throws ExecutionException, InterruptedException {
+        // 1. SPO scan
+        long nSubjects = hdt.getDictionary().getNsubjects();
+        int nSubjectRanges = (int) ((nSubjects + RANGE_SIZE - 1) / RANGE_SIZE);
+        typeOffsetsPerRange = new int[nSubjectRanges][];
+        typesPerRange = new int[nSubjectRanges][];
+
+        AtomicLong processedSubjects = new AtomicLong(0);
+        List<Callable<SubjectPassResult>> subjectPassParts = new ArrayList<>(nSubjectRanges);
+        for (int range = 0; range < nSubjectRanges; range++) {
+            int finalRange = range;
+            subjectPassParts.add(() -> {
+                SubjectPassResult result = scanSubjects(finalRange, nSubjects);
+                System.out.print("\rSubject " + Math.min(nSubjects, processedSubjects.addAndGet(RANGE_SIZE)) + "/" + nSubjects + " processed...");
+                return result;
+            });
+        }
+
+        entityFrequencies = new HashMap<>();
+        subjectCounts = new HashMap<>();
+        Map<Integer, Long> subjectsWithTypeMap = new HashMap<>();
+        for (SubjectPassResult result : workers.invokeAll(subjectPassParts)) {
+            result.entityFrequencies.forEach((key, value) -> entityFrequencies.merge(key, value, Long::sum));
+            result.subjectCounts.forEach((key, value) -> subjectCounts.merge(key, value, Long::sum));
+            result.subjectsWithType.forEach((key, value) -> subjectsWithTypeMap.merge(key, value, Long::sum));
+        }
+        System.out.println();
+
+        typeIDs = new long[typeIndexes.size()];
+        typeIndexes.forEach((typeID, index) -> typeIDs[index] = typeID);
+
+        subjectsWithType = new long[typeIndexes.size()];
+        subjectsWithTypeMap.forEach((index, count) -> subjectsWithType[index] = count);
+
+        // 2. Object-major scan
+        long nObjects = hdt.getDictionary().getNobjects();
+        int nObjectRanges = (int) ((nObjects + RANGE_SIZE - 1) / RANGE_SIZE);
+
+        AtomicLong processedObjects = new AtomicLong(0);
+        List<Callable<Map<Long, Double>>> objectPassParts = new ArrayList<>(nObjectRanges);
+        for (int range = 0; range < nObjectRanges; range++) {
+            long firstObject = (long) range * RANGE_SIZE + 1;
+            long lastObject = Math.min(nObjects, firstObject + RANGE_SIZE - 1);
+            objectPassParts.add(() -> {
+                Map<Long, Double> result = scanObjects(firstObject, lastObject);
+                System.out.print("\rObject " + Math.min(nObjects, processedObjects.addAndGet(RANGE_SIZE)) + "/" + nObjects + " processed...");
+                return result;
+            });
+        }
+
+        factTypeSums = new HashMap<>();
+        for (var part : workers.invokeAll(objectPassParts))
+            part.forEach((key, value) -> factTypeSums.merge(key, value, Double::sum));
+        System.out.println();
+
+        // The per-subject types are not needed anymore
+        typeOffsetsPerRange = null;
+        typesPerRange = null;
+        System.gc(); // Hint that it can purge the arrays
+    }
+
+    private record SubjectPassResult(Map<Long, Long> entityFrequencies,
+                                     Map<Long, Long> subjectCounts,
+                                     Map<Integer, Long> subjectsWithType) {
+    }
+
+    private SubjectPassResult scanSubjects(int range, long nSubjects) {
+        long firstSubject = (long) range * RANGE_SIZE + 1;
+        long lastSubject = Math.min(nSubjects, firstSubject + RANGE_SIZE - 1);
+
+        Map<Long, Long> localEntityFrequencies = new HashMap<>();
+        Map<Long, Long> localSubjectCounts = new HashMap<>();
+        Map<Integer, Long> localSubjectsWithType = new HashMap<>();
+
+        int[] offsets = new int[(int) (lastSubject - firstSubject) + 2];
+        List<Integer> types = new ArrayList<>();
+
+        // Predicate ID -> number of triples, for the current subject
+        Map<Long, Long> predicatesOfSubject = new HashMap<>();
+        List<Integer> typesOfSubject = new ArrayList<>();
+
+        for (long subjectID = firstSubject; subjectID <= lastSubject; subjectID++) {
+            IteratorTripleID outgoingLinks = hdt.getTriples().search(new TripleID(subjectID, 0, 0));
+
+            predicatesOfSubject.clear();
+            typesOfSubject.clear();
+
+            while (outgoingLinks.hasNext()) {
+                TripleID next = outgoingLinks.next();
+                long p = next.getPredicate();
+
+                predicatesOfSubject.merge(p, 1L, Long::sum);
+
+                if (p == typePredicateID) {
+                    int typeIndex = typeIndexes.computeIfAbsent(next.getObject(), typeID -> nextTypeIndex.getAndIncrement());
+                    if (!typesOfSubject.contains(typeIndex))
+                        typesOfSubject.add(typeIndex);
+                }
+            }
+
+            types.addAll(typesOfSubject);
+            offsets[(int) (subjectID - firstSubject) + 1] = types.size();
+
+            for (int typeIndex : typesOfSubject) {
+                localSubjectsWithType.merge(typeIndex, 1L, Long::sum);
+
+                for (var predicate : predicatesOfSubject.entrySet()) {
+                    long key = pairKey(predicate.getKey(), typeIndex);
+                    localEntityFrequencies.merge(key, 1L, Long::sum);
+                    localSubjectCounts.merge(key, predicate.getValue(), Long::sum);
+                }
+            }
+        }
+
+        int[] typesArray = new int[types.size()];
+        for (int i = 0; i < typesArray.length; i++)
+            typesArray[i] = types.get(i);
+
+        typeOffsetsPerRange[range] = offsets;
+        typesPerRange[range] = typesArray;
+
+        return new SubjectPassResult(localEntityFrequencies, localSubjectCounts, localSubjectsWithType);
+    }
+
+    private Map<Long, Double> scanObjects(long firstObject, long lastObject) {
+        Map<Long, Double> localFactTypeSums = new HashMap<>();
+
+        // pairKey(p, t) -> c(p, o, t), for the current object
+        Map<Long, Long> factTypeFrequencies = new HashMap<>();
+
+        for (long objectID = firstObject; objectID <= lastObject; objectID++) {
+            IteratorTripleID incomingLinks = hdt.getTriples().search(new TripleID(0, 0, objectID));
+            factTypeFrequencies.clear();
+
+            while (incomingLinks.hasNext()) {
+                TripleID next = incomingLinks.next();
+                long subjectID = next.getSubject();
+                long p = next.getPredicate();
+
+                int range = (int) ((subjectID - 1) / RANGE_SIZE);
+                int position = (int) ((subjectID - 1) % RANGE_SIZE);
+                int[] offsets = typeOffsetsPerRange[range];
+                int[] types = typesPerRange[range];
+
+                for (int i = offsets[position]; i < offsets[position + 1]; i++)
+                    factTypeFrequencies.merge(pairKey(p, types[i]), 1L, Long::sum);
+            }
+
+            for (var factTypeFrequency : factTypeFrequencies.entrySet()) {
+                long c = factTypeFrequency.getValue();
+                if (c > 1) // c * log2(c) == 0 for c == 1
+                    localFactTypeSums.merge(factTypeFrequency.getKey(), c * (Math.log(c) / Math.log(2)), Double::sum);
+            }
+        }
+
+        return localFactTypeSums;
+    }
+
+    private static long pairKey(long predicateID, int typeIndex) {
+        return (predicateID << 32) | typeIndex;
+    }
+
+    private static long predicateOf(long pairKey) {
+        return pairKey >>> 32;
+    }
+
+    private static int typeIndexOf(long pairKey) {
+        return (int) pairKey;
+    }
+
+    /**
+     * @return The number of distinct types in the KG
+     */
+    public long getNumberOfTypes() {
+        return typeIDs.length;
+    }
+
+    /**
+     * @return Map of predicate ID -> Map of type ID -> number of distinct subjects of the type with the predicate
+     */
+    public Map<Long, Map<Long, Long>> getEntityTypeFrequencies() {
+        Map<Long, Map<Long, Long>> result = new HashMap<>();
+        entityFrequencies.forEach((key, value) ->
+                result.computeIfAbsent(predicateOf(key), p -> new HashMap<>()).put(typeIDs[typeIndexOf(key)], value));
+
+        return result;
+    }
+
+    /**
+     * @return Map of predicate ID -> number of distinct types among the subjects with the predicate
+     */
+    public Map<Long, Long> getTypeFrequencyPs() {
+        Map<Long, Long> result = new HashMap<>();
+        for (long key : entityFrequencies.keySet())
+            result.merge(predicateOf(key), 1L, Long::sum);
+
+        return result;
+    }
+
+    /**
+     * @return Map of predicate ID -> Map of type ID -> type importance
+     */
+    public Map<Long, Map<Long, Double>> getTypeImportances() {
+        Map<Long, Long> typeFrequencyPs = getTypeFrequencyPs();
+        long nTypes = getNumberOfTypes();
+
+        return derive((key, entityFrequency) -> {
+            long typeFrequencyP = typeFrequencyPs.getOrDefault(predicateOf(key), 0L);
+            if (typeFrequencyP == 0)
+                return 0.0;
+
+            return (double) entityFrequency * Math.log(((double) nTypes) / (double) typeFrequencyP);
+        });
+    }
+
+    /**
+     * @return Map of predicate ID -> Map of type ID -> Shannon's entropy of the objects of the predicate, for the type
+     */
+    public Map<Long, Map<Long, Double>> getPredicateEntropyTypes() {
+        return derive((key, entityFrequency) -> entropy(key));
+    }
+
+    /**
+     * @return Map of predicate ID -> Map of type ID -> entropyTypeImportance
+     */
+    public Map<Long, Map<Long, Double>> getEntropyTypeImportances() {
+        Map<Long, Long> typeFrequencyPs = getTypeFrequencyPs();
+        long nTypes = getNumberOfTypes();
+
+        return derive((key, entityFrequency) -> {
+            long typeFrequencyP = typeFrequencyPs.getOrDefault(predicateOf(key), 0L);
+            double typeImportance = 0.0;
+            if (typeFrequencyP != 0)
+                typeImportance = (double) entityFrequency * Math.log(((double) nTypes) / (double) typeFrequencyP);
+
+            return entropy(key) * typeImportance;
+        });
+    }
+
+    /**
+     * @return Map of predicate ID -> Map of type ID -> entityTypeImportance
+     */
+    public Map<Long, Map<Long, Double>> getEntityTypeImportances() {
+        return derive(this::entityTypeImportance);
+    }
+
+    /**
+     * @return Map of predicate ID -> Map of type ID -> entropyEntityTypeImportance
+     */
+    public Map<Long, Map<Long, Double>> getEntropyEntityTypeImportances() {
+        return derive((key, entityFrequency) -> entityTypeImportance(key, entityFrequency) * entropy(key));
+    }
+
+    private double entityTypeImportance(long key, long entityFrequency) {
+        return entityFrequency * Math.log((double) subjectsWithType[typeIndexOf(key)] / (double) entityFrequency);
+    }
+
+    // -sum_o(c/N * log2(c/N)) == log2(N) - sum_o(c * log2(c)) / N
+    private double entropy(long key) {
+        long n = subjectCounts.getOrDefault(key, 0L);
+        if (n == 0)
+            return 0.0;
+
+        double entropy = Math.log(n) / Math.log(2) - factTypeSums.getOrDefault(key, 0.0) / n;
+        return Math.max(entropy, 0.0); // Avoid tiny negative values due to rounding errors
+    }
+
+    private interface PairMetric {
+        double apply(long key, long entityFrequency);
+    }
+
+    // Compute a metric for every (p, t) pair, and return it as a Map of predicate ID -> Map of type ID -> metric
+    private Map<Long, Map<Long, Double>> derive(PairMetric metric) {
+        Map<Long, Map<Long, Double>> result = new HashMap<>();
+        entityFrequencies.forEach((key, entityFrequency) ->
+                result.computeIfAbsent(predicateOf(key), p -> new HashMap<>())
+                        .put(typeIDs[typeIndexOf(key)], metric.apply(key, entityFrequency)));
+
+        return result;
+    }
+}
@@ -10,7 +10,10 @@ import org.rdfhdt.hdt.triples.IteratorTripleID;
 import org.rdfhdt.hdt.triples.TripleID;
 import sid.MetricsGeneration.MetricsGenerator;
 import sid.MetricsGeneration.PageRank.HDT.WeightedPageRankMetricsGenerator;
+import sid.MetricsGeneration.util.OffHeapIntArray;
+import sid.SPARQLEndpoint.DiskBackedHDTConverter;
 import sid.SPARQLEndpoint.LocalHDTSPARQLEndpoint;
+import sid.utils.ExecutionRuntime;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -19,12 +22,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
-import java.util.stream.LongStream;
 
 import static sid.MetricsGeneration.SPARQL.InfoRankMetricsGenerator.*;
 
@@ -47,9 +47,15 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
 
     public static final String INFORANK_NAMED_GRAPH_URI = "http://sid-unizar-search.com/infoRank";
 
+    // Name of the execution runtime's stage for the metrics' computations
+    public static final String STAGE = "infoRankMetrics";
+
     private LocalHDTSPARQLEndpoint endpoint;
     private WeightedPageRankMetricsGenerator pagerank;
 
+    // Workers for the metrics' computations, shared with the rest of the pipeline
+    private final ExecutionRuntime.Stage workers;
+
     // HDT file to which we save all the metrics (Inforank intermediate metrics + Pagerank + InfoRank)
     private final String destinationHDTFile;
 
@@ -71,6 +77,7 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
                                     String destinationHDTFile) {
         this.endpoint = endpoint;
         this.pagerank = pagerank;
+        this.workers = ExecutionRuntime.getDefault().stage(STAGE);
         this.destinationHDTFile = destinationHDTFile;
     }
 
@@ -81,24 +88,16 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
             Files.deleteIfExists(Path.of(destinationHDTFile + ".index.v1-1"));
 
             Instant start = Instant.now();
-            System.out.println("Calculating IW(r)...");
-            Map<Long, Long> iws = calculateIW();
-
-            System.out.println("Time: " + Duration.between(start, Instant.now()));
-
-            start = Instant.now();
-            System.out.println("Calculating absolute informativeness of each class...");
-            Map<Long, Long> absCs = calculateAbsC(iws);
-            System.out.println("Time: " + Duration.between(start, Instant.now()));
-
-            start = Instant.now();
-            System.out.println("Calculating absolute informativeness of each object property...");
-            Map<Long, Long> absPs = calculateAbsP(iws);
-            System.out.println("Time: " + Duration.between(start, Instant.now()));
-
-            start = Instant.now();
-            System.out.println("Calculating absolute informativeness of each datatype property...");
-            Map<Long, Long> absDs = calculateAbsD();
+            System.out.println("Calculating IW(r) and the absolute informativeness of each class, object property and datatype property...");
+            InfoRankStatistics statistics = new InfoRankStatistics(endpoint.hdt,
+                    endpoint.hdt.getDictionary().stringToId(TYPE_URI, TripleComponentRole.PREDICATE),
+                    workers);
+            statistics.compute();
+
+            OffHeapIntArray iws = statistics.getIWs();
+            Map<Long, Long> absCs = statistics.getAbsCs();
+            Map<Long, Long> absPs = statistics.getAbsPs();
+            Map<Long, Long> absDs = statistics.getAbsDs();
             System.out.println("Time: " + Duration.between(start, Instant.now()));
 
             start = Instant.now();
@@ -144,8 +143,9 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
             System.out.println("Calculating Inforanks..");
             LocalHDTSPARQLEndpoint inforankEndpoint = calculateInfoRank(metricsHDT.hdt, iws);
 
-            iws.clear();
-            System.gc(); // Hint that it can purge the entire map
+            iws = null;
+            statistics = null;
+            System.gc(); // Hint that it can purge the entire array
 
             System.out.println("Finished! Generating the final HDT (this may take a while...)");
             metricsHDT.concatenate(inforankEndpoint, destinationHDTFile, true, false);
@@ -154,160 +154,15 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
         }
     }
 
-    private Map<Long, Long> calculateIW() throws ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNsubjects() + 1).parallel();
-
-        Map<Long, Long> iws = new ConcurrentHashMap<>();
-
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(id -> { // For each possible subject
-                    IteratorTripleID outgoingLinks = endpoint.hdt.getTriples().search(new TripleID(id, 0, 0));
-
-                    long literalCount = 0;
-
-                    while (outgoingLinks.hasNext()) {
-                        TripleID nextLink = outgoingLinks.next();
-
-                        long o = nextLink.getObject();
-
-                        if (isObjectLiteral(o)) {
-                            literalCount++;
-                        }
-                    }
-
-                    iws.put(id, literalCount);
-                })).get();
-
-        workers.close();
-
-        return iws;
-    }
-
-    private Map<Long, Long> calculateAbsC(Map<Long, Long> iws) throws ExecutionException, InterruptedException {
-        long idOfTypePredicate = endpoint.hdt.getDictionary().stringToId(TYPE_URI, TripleComponentRole.PREDICATE);
-
-        HashSet<Long> types = new HashSet<>();
-        IteratorTripleID typesQuery = endpoint.hdt.getTriples().search(new TripleID(0, idOfTypePredicate, 0));
-        while (typesQuery.hasNext()) {
-            TripleID next = typesQuery.next();
-            types.add(next.getObject());
-        }
-
-        Map<Long, Long> absCs = new ConcurrentHashMap<>();
-
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                types.stream().parallel().forEach(classID -> { // For each known class
-                    IteratorTripleID subjectsWithClass = endpoint.hdt.getTriples().search(new TripleID(0, idOfTypePredicate, classID));
-
-                    long maxIW = 0;
-
-                    while (subjectsWithClass.hasNext()) {
-                        long subjectID = subjectsWithClass.next().getSubject();
-
-                        // Look for this subject's IW
-                        if (iws.containsKey(subjectID)) {
-                            long iw = iws.get(subjectID);
-
-                            if (iw > maxIW) {
-                                maxIW = iw;
-                            }
-                        }
-                    }
-
-                    absCs.put(classID, maxIW);
-                })).get();
-
-        workers.close();
-
-        return absCs;
-    }
-
-    private Map<Long, Long> calculateAbsP(Map<Long, Long> iws) throws ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
-        Map<Long, Long> absPs = new ConcurrentHashMap<>();
-
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(predicateID -> { // For each predicate
-                    IteratorTripleID triplesWithPredicate = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
-
-                    // We want to find max(IW(r) + IW(s)) of all <r, p, s> triples, where p == predicateID
-                    long maxSumOfIWs = -1;
-
-                    while (triplesWithPredicate.hasNext()) {
-                        TripleID next = triplesWithPredicate.next();
-                        long subjectID = next.getSubject();
-                        long objectID = next.getObject();
-
-                        long iwSubject = iws.getOrDefault(subjectID, -1L);
-                        long iwObject = -1;
-
-                        // The same for the object, making sure that it's not a literal
-                        if (!isObjectLiteral(objectID)) {
-                            iwObject = iws.getOrDefault(objectID, -1L);
-                        }
-
-                        if (iwSubject != -1 && iwObject != -1) {
-                            long sum = iwSubject + iwObject;
-                            if (sum > maxSumOfIWs)
-                                maxSumOfIWs = sum;
-                        }
-
-                    }
-
-                    if (maxSumOfIWs != -1)
-                        absPs.put(predicateID, maxSumOfIWs);
-                })).get();
-
-        workers.close();
-
-        return absPs;
-    }
-
-    private Map<Long, Long> calculateAbsD() throws ExecutionException, InterruptedException {
-        LongStream stream = LongStream.range(1, endpoint.hdt.getDictionary().getNpredicates() + 1).parallel();
-
-        Map<Long, Long> absDs = new ConcurrentHashMap<>();
-
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                stream.forEach(predicateID -> { // For each predicate
-                    IteratorTripleID objectsForPredicate = endpoint.hdt.getTriples().search(new TripleID(0, predicateID, 0));
-
-                    // We want to get the count of non-duplicate literals, so we have to keep track of them
-                    HashSet<Long> objects = new HashSet<>();
-                    while (objectsForPredicate.hasNext()) {
-                        TripleID next = objectsForPredicate.next();
-                        long object = next.getObject();
-
-                        if (isObjectLiteral(object))
-                            objects.add(next.getObject());
-                    }
-
-                    if (objects.size() > 0)
-                        absDs.put(predicateID, (long) objects.size());
-                })).get();
-
-        workers.close();
-
-        return absDs;
-    }
-
     private LocalHDTSPARQLEndpoint calculateIR(Map<Long, Long> abs, TripleComponentRole role, String IrURI) throws ParserException, IOException, ExecutionException, InterruptedException, NotFoundException {
         long maxAbs = abs.values().stream().mapToLong(absValue -> absValue).max().orElse(0);
 
         Map<Long, Double> irs = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                abs.keySet().stream().parallel().forEach(entry -> {
-                    double ir = (double) abs.get(entry) / (double) maxAbs;
-                    irs.put(entry, ir);
-                })).get();
-
-        workers.close();
+        workers.forEach(abs.keySet(), entry -> {
+            double ir = (double) abs.get(entry) / (double) maxAbs;
+            irs.put(entry, ir);
+        });
 
         return writeIRs(irs,
                 IrURI,
@@ -316,33 +171,29 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
                 false);
     }
 
-    private LocalHDTSPARQLEndpoint calculateInfoRank(HDT metricsHDT, Map<Long, Long> iws) throws ParserException, IOException, ExecutionException, InterruptedException {
+    private LocalHDTSPARQLEndpoint calculateInfoRank(HDT metricsHDT, OffHeapIntArray iws) throws ParserException, IOException, ExecutionException, InterruptedException {
         long idOfPageRankPredicate = metricsHDT.getDictionary().stringToId(PAGERANK_URI, TripleComponentRole.PREDICATE);
 
         ConcurrentHashMap<Long, Double> infoRanks = new ConcurrentHashMap<>();
 
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        workers.submit(() ->
-                iws.keySet().stream().parallel().forEach(subjectID -> {
-                    long idOfSubjectInMetrics = metricsHDT.getDictionary().stringToId(
-                            endpoint.hdt.getDictionary().idToString(subjectID, TripleComponentRole.SUBJECT),
-                            TripleComponentRole.SUBJECT);
-
-                    double pagerank = -1;
-                    // Get its PageRank
-                    IteratorTripleID pageRankForSubjectQuery = metricsHDT.getTriples().search(new TripleID(idOfSubjectInMetrics, idOfPageRankPredicate, 0));
-                    if (pageRankForSubjectQuery.hasNext()) {
-                        TripleID next = pageRankForSubjectQuery.next();
-                        pagerank = MetricsGenerator.floatLiteralToDouble(metricsHDT, next);
-                    }
-
-                    if (pagerank != -1) { // It exists
-                        double inforank = iws.get(subjectID) * pagerank; // IW(s) * PR(s)
-                        infoRanks.put(subjectID, inforank);
-                    }
-                })).get();
-
-        workers.close();
+        workers.forRange(1, endpoint.hdt.getDictionary().getNsubjects() + 1, subjectID -> {
+            long idOfSubjectInMetrics = metricsHDT.getDictionary().stringToId(
+                    endpoint.hdt.getDictionary().idToString(subjectID, TripleComponentRole.SUBJECT),
+                    TripleComponentRole.SUBJECT);
+
+            double pagerank = -1;
+            // Get its PageRank
+            IteratorTripleID pageRankForSubjectQuery = metricsHDT.getTriples().search(new TripleID(idOfSubjectInMetrics, idOfPageRankPredicate, 0));
+            if (pageRankForSubjectQuery.hasNext()) {
+                TripleID next = pageRankForSubjectQuery.next();
+                pagerank = MetricsGenerator.floatLiteralToDouble(metricsHDT, next);
+            }
+
+            if (pagerank != -1) { // It exists
+                double inforank = iws.get(subjectID) * pagerank; // IW(s) * PR(s)
+                infoRanks.put(subjectID, inforank);
+            }
+        });
 
         return writeIRs(infoRanks,
                 INFORANK_URI,
@@ -351,22 +202,6 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
                 true);
     }
 
-    private boolean isObjectLiteral(long id) {
-        if (id <= endpoint.hdt.getDictionary().getNshared()) return false; // We know it acts as a subject somewhere
-
-        // We know it acts as an object, but not wether it's an URI or a literal
-        CharSequence objectValue = endpoint.hdt.getDictionary().idToString(id, TripleComponentRole.OBJECT); // We ask for objects!
-
-        // We can only do this if we are 100% sure that the ID is in the objects dict, otherwise we may get false
-        // positives as the subjects+shared and object dict ranges overlap
-        //CharSequence objectValue = endpoint.hdt.getDictionary().getObjects().extract(id);
-        //if (objectValue == null) return false;
-
-        //System.out.println("Is " + objectValue + " a literal?");
-
-        return objectValue.charAt(0) == '"';
-    }
-
     // If split == true, create the HDT file via CatTree (allows conversion of huge RDF files)
     private LocalHDTSPARQLEndpoint writeIRs(Map<Long, Double> map,
                                             String predicateURI,
@@ -387,13 +222,14 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
         tempFile.close();
 
         if (split) { // Only used when writing InfoRanks
-            return LocalHDTSPARQLEndpoint.fromRDFCatTree(
+            return LocalHDTSPARQLEndpoint.fromRDFDiskBacked(
                     hdtFileLocation + "_ir_temp.rdf",
                     hdtFileLocation,
                     "unused",
                     "ntriples",
                     false,
-                    false);
+                    false,
+                    DiskBackedHDTConverter.defaultHeapBudget());
         } else {
             return LocalHDTSPARQLEndpoint.fromRDF(
                     hdtFileLocation + "_ir_temp.rdf",
@@ -0,0 +1,254 @@
+package sid.MetricsGeneration.HDT;
+
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.triples.IteratorTripleID;
+import org.rdfhdt.hdt.triples.TripleID;
+import sid.MetricsGeneration.util.LiteralRange;
+import sid.MetricsGeneration.util.OffHeapIntArray;
+import sid.MetricsGeneration.util.TriplesScanner;
+import sid.utils.ExecutionRuntime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Fused computation of the InfoRank intermediate statistics (IW(r), absC, absP and absD) over an HDT file, which
+ * replaces the four separate passes (and per-subject ConcurrentHashMaps) of InfoRankMetricsGenerator
+ * <p>
+ * All statistics are accumulated into primitive arrays by workers that own disjoint ID ranges, and merged at the end.
+ * SPO scans walk the triples sequentially via TriplesScanner, over subject ranges with a similar number of triples
+ * each. Literals are detected by their object ID range instead of extracting their strings from the dictionary:
+ * <p>
+ * 1. SPO scan over all subjects: IW(s) (number of literal objects of s) and, since IW(s) is complete once its triples
+ * have been scanned, absC(t) = max(IW(s)) for each type t of s
+ * <p>
+ * 2. SPO scan over all subjects: absP(p) = max(IW(s) + IW(o)) for every non-literal object o which is also a subject.
+ * It needs IW for both ends of each triple, so it can't be folded into the first scan
+ * <p>
+ * 3. Scan over the literals' object ID range only: absD(p) = number of distinct literals used as objects of p
+ */
+public class InfoRankStatistics {
+    private final HDT hdt;
+    private final TriplesScanner scanner;
+    private final LiteralRange literals;
+    private final long typePredicateID;
+
+    private final ExecutionRuntime.Stage workers;
+    private final int parallelism;
+
+    private OffHeapIntArray iws;
+    private Map<Long, Long> absCs;
+    private Map<Long, Long> absPs;
+    private Map<Long, Long> absDs;
+
+    /**
+     * @param hdt             HDT file to compute the statistics for. It needs to be indexed (absD uses the object index)
+     * @param typePredicateID ID of the type predicate in the HDT file, or a value <= 0 if there isn't any
+     */
+    public InfoRankStatistics(HDT hdt, long typePredicateID) {
+        this(hdt, typePredicateID, ExecutionRuntime.getDefault().stage(InfoRankMetricsGenerator.STAGE));
+    }
+
+    /**
+     * @param hdt             HDT file to compute the statistics for. It needs to be indexed (absD uses the object index)
+     * @param typePredicateID ID of the type predicate in the HDT file, or a value <= 0 if there isn't any
+     * @param workers         Stage of the execution runtime to run the scans in
+     */
+    public InfoRankStatistics(HDT hdt, long typePredicateID, ExecutionRuntime.Stage workers) {
+        this.hdt = hdt;
+        this.scanner = new TriplesScanner(hdt);
+        this.literals = LiteralRange.of(hdt.getDictionary());
+        this.typePredicateID = typePredicateID;
+        this.workers = workers;
+        this.parallelism = workers.getParallelism();
+    }
+
+    public void compute() throws ExecutionException, InterruptedException, IOException {
+        long nSubjects = hdt.getDictionary().getNsubjects();
+        int nPredicates = (int) hdt.getDictionary().getNpredicates();
+
+        iws = new OffHeapIntArray(nSubjects + 1);
+
+        // 1. IW and absC
+        List<Callable<Map<Long, Long>>> absCParts = new ArrayList<>();
+        for (long[] range : scanner.splitSubjects(parallelism * 8))
+            absCParts.add(() -> computeIWAndAbsC(range[0], range[1]));
+
+        absCs = new HashMap<>();
+        for (var part : workers.invokeAll(absCParts))
+            part.forEach((type, maxIW) -> absCs.merge(type, maxIW, Math::max));
+
+        // 2. absP
+        List<Callable<long[]>> absPParts = new ArrayList<>();
+        for (long[] range : scanner.splitSubjects(parallelism * 8))
+            absPParts.add(() -> computeAbsP(range[0], range[1], nPredicates));
+
+        long[] maxSumsOfIWs = mergeWith(workers.invokeAll(absPParts), nPredicates, true);
+
+        // 3. absD
+        List<Callable<long[]>> absDParts = new ArrayList<>();
+        if (!literals.isEmpty()) {
+            for (long[] range : splitRange(literals.first(), literals.last()))
+                absDParts.add(() -> computeAbsD(range[0], range[1], nPredicates));
+        }
+
+        long[] distinctLiterals = mergeWith(workers.invokeAll(absDParts), nPredicates, false);
+
+        absPs = new HashMap<>();
+        absDs = new HashMap<>();
+        for (int predicateID = 1; predicateID <= nPredicates; predicateID++) {
+            if (maxSumsOfIWs[predicateID] != -1)
+                absPs.put((long) predicateID, maxSumsOfIWs[predicateID]);
+
+            if (distinctLiterals[predicateID] > 0)
+                absDs.put((long) predicateID, distinctLiterals[predicateID]);
+        }
+    }
+
+    private Map<Long, Long> computeIWAndAbsC(long firstSubject, long lastSubject) {
+        Map<Long, Long> localAbsCs = new HashMap<>();
+        List<Long> typesOfSubject = new ArrayList<>();
+
+        TriplesScanner.Cursor cursor = scanner.cursor(firstSubject, lastSubject);
+        long subjectID = firstSubject;
+        int literalCount = 0;
+
+        while (cursor.next()) {
+            if (cursor.getSubject() != subjectID) {
+                setIWAndAbsCs(subjectID, literalCount, typesOfSubject, localAbsCs);
+
+                subjectID = cursor.getSubject();
+                literalCount = 0;
+                typesOfSubject.clear();
+            }
+
+            long o = cursor.getObject();
+
+            if (literals.contains(o))
+                literalCount++;
+            else if (cursor.getPredicate() == typePredicateID)
+                typesOfSubject.add(o);
+        }
+
+        if (firstSubject <= lastSubject)
+            setIWAndAbsCs(subjectID, literalCount, typesOfSubject, localAbsCs);
+
+        return localAbsCs;
+    }
+
+    private void setIWAndAbsCs(long subjectID, int literalCount, List<Long> typesOfSubject, Map<Long, Long> localAbsCs) {
+        iws.set(subjectID, literalCount);
+
+        for (long typeID : typesOfSubject)
+            localAbsCs.merge(typeID, (long) literalCount, Math::max);
+    }
+
+    private long[] computeAbsP(long firstSubject, long lastSubject, int nPredicates) {
+        long nShared = hdt.getDictionary().getNshared();
+
+        // We want to find max(IW(r) + IW(s)) of all <r, p, s> triples
+        long[] localMaxSumsOfIWs = new long[nPredicates + 1];
+        Arrays.fill(localMaxSumsOfIWs, -1);
+
+        TriplesScanner.Cursor cursor = scanner.cursor(firstSubject, lastSubject);
+        while (cursor.next()) {
+            long o = cursor.getObject();
+
+            // Only objects which also act as subjects (shared IDs) have an IW. Object-only IDs are not
+            // valid subject IDs, even if they fall within the subjects' range
+            if (o > nShared)
+                continue;
+
+            int p = (int) cursor.getPredicate();
+            long sum = iws.get(cursor.getSubject()) + iws.get(o);
+            if (sum > localMaxSumsOfIWs[p])
+                localMaxSumsOfIWs[p] = sum;
+        }
+
+        return localMaxSumsOfIWs;
+    }
+
+    private long[] computeAbsD(long firstLiteral, long lastLiteral, int nPredicates) {
+        long[] localDistinctLiterals = new long[nPredicates + 1];
+        // Predicates already seen for the current literal (usually very few of them)
+        List<Long> predicatesOfLiteral = new ArrayList<>();
+
+        for (long objectID = firstLiteral; objectID <= lastLiteral; objectID++) {
+            IteratorTripleID incomingLinks = hdt.getTriples().search(new TripleID(0, 0, objectID));
+            predicatesOfLiteral.clear();
+
+            while (incomingLinks.hasNext()) {
+                long p = incomingLinks.next().getPredicate();
+
+                if (!predicatesOfLiteral.contains(p)) {
+                    predicatesOfLiteral.add(p);
+                    localDistinctLiterals[(int) p]++;
+                }
+            }
+        }
+
+        return localDistinctLiterals;
+    }
+
+    // Split [first, last] into several ranges per worker, so that skewed ranges don't leave workers idle
+    private List<long[]> splitRange(long first, long last) {
+        List<long[]> ranges = new ArrayList<>();
+        long n = last - first + 1;
+        if (n <= 0)
+            return ranges;
+
+        long rangeSize = Math.max(1, n / (parallelism * 8L));
+        for (long start = first; start <= last; start += rangeSize)
+            ranges.add(new long[]{start, Math.min(last, start + rangeSize - 1)});
+
+        return ranges;
+    }
+
+    // Merge the per-range arrays via max (or sum)
+    private static long[] mergeWith(List<long[]> parts, int nPredicates, boolean max) {
+        long[] result = new long[nPredicates + 1];
+        if (max)
+            Arrays.fill(result, -1);
+
+        for (long[] values : parts) {
+            for (int i = 0; i < values.length; i++)
+                result[i] = max ? Math.max(result[i], values[i]) : result[i] + values[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * @return IW(s) for every subject ID (index 0 is unused)
+     */
+    public OffHeapIntArray getIWs() {
+        return iws;
+    }
+
+    /**
+     * @return Map of class ID (object role) -> absC
+     */
+    public Map<Long, Long> getAbsCs() {
+        return absCs;
+    }
+
+    /**
+     * @return Map of predicate ID -> absP, for predicates with at least a non-literal object acting as a subject
+     */
+    public Map<Long, Long> getAbsPs() {
+        return absPs;
+    }
+
+    /**
+     * @return Map of predicate ID -> absD, for predicates with at least a literal object
+     */
+    public Map<Long, Long> getAbsDs() {
+        return absDs;
+    }
+}
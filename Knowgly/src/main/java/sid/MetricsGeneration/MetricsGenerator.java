@@ -23,10 +23,20 @@ public interface MetricsGenerator {
     class Metric {
         public String query;
         public String name;
+        // Optional variable by whose values the query can be split into partitions (one of its GROUP BY keys), and
+        // SELECT query which returns them as ?key. See PartitionedUpdateRunner
+        public String partitionVariable;
+        public String partitionKeysQuery;
 
         public Metric(String query, String name) {
+            this(query, name, null, null);
+        }
+
+        public Metric(String query, String name, String partitionVariable, String partitionKeysQuery) {
             this.query = query;
             this.name = name;
+            this.partitionVariable = partitionVariable;
+            this.partitionKeysQuery = partitionKeysQuery;
         }
     }
 
@@ -14,11 +14,13 @@ import org.rdfhdt.hdt.triples.IteratorTripleID;
 import org.rdfhdt.hdt.triples.TripleID;
 import sid.MetricsGeneration.PageRank.SPARQL.PageRankMetricsGenerator;
 import sid.MetricsGeneration.SPARQL.InfoRankMetricsGenerator;
-import sid.MetricsGeneration.util.BigDoubleArray;
-import sid.MetricsGeneration.util.BigIntArray;
-import sid.MetricsGeneration.util.BinarySearch;
+import sid.MetricsGeneration.util.LiteralRange;
+import sid.MetricsGeneration.util.OffHeapDoubleArray;
+import sid.MetricsGeneration.util.OffHeapIntArray;
+import sid.SPARQLEndpoint.DiskBackedHDTConverter;
 import sid.SPARQLEndpoint.LocalHDTSPARQLEndpoint;
 import sid.SPARQLEndpoint.SPARQLEndpoint;
+import sid.utils.ExecutionRuntime;
 import sid.utils.Pair;
 
 import java.io.FileNotFoundException;
@@ -30,7 +32,7 @@ import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongConsumer;
 import java.util.stream.LongStream;
 
 /**
@@ -46,6 +48,9 @@ public class WeightedPageRankMetricsGenerator extends PageRankMetricsGenerator {
     private static final String CONFIGURATION_FILE = "configuration/metricsConfiguration.json";
     public static final String METRICS_HDT_FILE_CONF = "metricsToHDTFile";
 
+    // Name of the execution runtime's stage for the PageRank iterations
+    public static final String STAGE = "pageRank";
+
     public static final String W_SPARQL = "configuration/queries/metrics_aggregator_queries/w.sparql";
     public static final String ALL_W_SPARQL = "configuration/queries/metrics_aggregator_queries/all_w.sparql";
 
@@ -55,12 +60,12 @@ public class WeightedPageRankMetricsGenerator extends PageRankMetricsGenerator {
     // HDT file containing, as a minimum, the contents of the infoRank subgraph generated by InfoRankMetricsGenerator
     // (This should have been generated automatically by it)
     private HDT metricsHDT;
-    private BigIntArray numberOutgoing;
+    private OffHeapIntArray numberOutgoing;
     // we use this one to store the reference and do the swap
-    private BigDoubleArray pageRankScoresShared;
-    private BigDoubleArray pageRankScoresPrev;
-    private BigDoubleArray pageRankScoresNext;
-    private BigDoubleArray pageRankScoresObjects;
+    private OffHeapDoubleArray pageRankScoresShared;
+    private OffHeapDoubleArray pageRankScoresPrev;
+    private OffHeapDoubleArray pageRankScoresNext;
+    private OffHeapDoubleArray pageRankScoresObjects;
 
     // Used to identify all literals, since the entries in the dictionary are ordered, an interval suffices
     private long start_literals_objects = -1;
@@ -189,7 +194,7 @@ public class WeightedPageRankMetricsGenerator extends PageRankMetricsGenerator {
     }
 
     @Override
-    public void compute() throws ExecutionException, InterruptedException {
+    public void compute() throws ExecutionException, InterruptedException, IOException {
         System.out.println("Computing PageRank: " + numberOfIterations +
                 " iterations, damping factor " + dampingFactor +
                 ", start value " + startValue +
@@ -213,28 +218,25 @@ public class WeightedPageRankMetricsGenerator extends PageRankMetricsGenerator {
         start_literals_objects = -1;
         end_literals_objects = -1;
         if (!considerLiterals) {
-            start_literals_objects = BinarySearch.first(KGHDT.getDictionary(), nShared + 1, nObjects, "\"");
-            end_literals_objects = BinarySearch.last(KGHDT.getDictionary(), nShared + 1, nObjects, nObjects, "\"");
+            LiteralRange literals = LiteralRange.of(KGHDT.getDictionary());
+            start_literals_objects = literals.first();
+            end_literals_objects = literals.last();
         }
 
         numberNonLiterals = nObjects - (end_literals_objects - start_literals_objects);
 
         // We only have to store the prev and next values of the shared elements,
         // the rest of elements are just sinks
-        pageRankScoresPrev = new BigDoubleArray((int) KGHDT.getDictionary().getNsubjects() + 1);
-        pageRankScoresNext = new BigDoubleArray((int) KGHDT.getDictionary().getNsubjects() + 1);
-        pageRankScoresObjects = new BigDoubleArray(numberNonLiterals + 1);
+        pageRankScoresPrev = new OffHeapDoubleArray(KGHDT.getDictionary().getNsubjects() + 1);
+        pageRankScoresNext = new OffHeapDoubleArray(KGHDT.getDictionary().getNsubjects() + 1);
+        pageRankScoresObjects = new OffHeapDoubleArray(numberNonLiterals + 1);
 
         // Initialize the start page rank scores (only the prev set)
-        for (int id = 1; id <= nShared; id++) {
-            pageRankScoresPrev.set(id, startValue);
-        }
-        for (int k = 0; k < numberNonLiterals; k++) {
-            pageRankScoresObjects.set(k, startValue);
-        }
+        pageRankScoresPrev.fill(1, nShared + 1, startValue);
+        pageRankScoresObjects.fill(0, numberNonLiterals, startValue);
 
         // Compute the number of outgoing links
-        numberOutgoing = new BigIntArray(KGHDT.getDictionary().getNsubjects() + 1);
+        numberOutgoing = new OffHeapIntArray(KGHDT.getDictionary().getNsubjects() + 1);
         numberOutgoing.set(0, 0);
         for (long id = 1; id <= nSubjects; id++) {
             IteratorTripleID iteratorTripleID = KGHDT.getTriples().search(new TripleID(id, 0, 0));
@@ -249,6 +251,9 @@ public class WeightedPageRankMetricsGenerator extends PageRankMetricsGenerator {
             numberOutgoing.set(id, count);
         }
 
+        // The same workers are used for every iteration
+        ExecutionRuntime.Stage workers = ExecutionRuntime.getDefault().stage(STAGE);
+
         System.out.println("Iterations:");
 
         for (int j = 0; j < numberOfIterations; j++) {
@@ -257,73 +262,65 @@ public class WeightedPageRankMetricsGenerator extends PageRankMetricsGenerator {
             // accessed only in readOnly mode, and in fact, the set position always affects different
             // elements. The only "problematic" call could be HDT binary search, but I assume that it's a read
             // only operation, with no side effect at all
-            LongStream stream;
-
-            if (parallelize) {
-                stream = LongStream.range(1, nSubjects + 1).parallel();
-            } else {
-                stream = LongStream.range(1, nSubjects + 1);
-            }
-
-            ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-            workers.submit(() ->
-                    stream.forEach(id -> {
-                        IteratorTripleID outgoingLinks = KGHDT.getTriples().search(new TripleID(id, 0, 0));
-                        IteratorTripleID incomingLinks = KGHDT.getTriples().search(new TripleID(0, 0, id));
-
-                        // Map of non-duplicate <subject, predicate> IDs seen in links from both directions
-                        Map<Long, Long> subjectPreds = new HashMap<>();
-                        while (outgoingLinks.hasNext()) {
-                            TripleID nextLink = outgoingLinks.next();
-
-                            long o = nextLink.getObject();
-                            long p = nextLink.getPredicate();
-
-                            // We only want objects which are valid URIs AND appear as subjects somewhere else in the KG.
-                            // Since it is appearing as an object, it must be in the (0, nShared) range.
-                            if (o <= nShared) {
-                                subjectPreds.put(o, p);
-                            }
-                        }
+            LongConsumer computePageRank = id -> {
+                IteratorTripleID outgoingLinks = KGHDT.getTriples().search(new TripleID(id, 0, 0));
+                IteratorTripleID incomingLinks = KGHDT.getTriples().search(new TripleID(0, 0, id));
+
+                // Map of non-duplicate <subject, predicate> IDs seen in links from both directions
+                Map<Long, Long> subjectPreds = new HashMap<>();
+                while (outgoingLinks.hasNext()) {
+                    TripleID nextLink = outgoingLinks.next();
+
+                    long o = nextLink.getObject();
+                    long p = nextLink.getPredicate();
+
+                    // We only want objects which are valid URIs AND appear as subjects somewhere else in the KG.
+                    // Since it is appearing as an object, it must be in the (0, nShared) range.
+                    if (o <= nShared) {
+                        subjectPreds.put(o, p);
+                    }
+                }
 
-                        while (incomingLinks.hasNext()) {
-                            TripleID nextLink = incomingLinks.next();
+                while (incomingLinks.hasNext()) {
+                    TripleID nextLink = incomingLinks.next();
 
-                            long s = nextLink.getSubject();
-                            long p = nextLink.getPredicate();
+                    long s = nextLink.getSubject();
+                    long p = nextLink.getPredicate();
 
-                            // Let it be known that, in 2023-03-20, I wondered for 3 hours why HDT was throwing incoherent
-                            // triples at me, since I was doing this...
-                            //long s = incomingLinks.next().getSubject();
-                            //long p = incomingLinks.next().getPredicate();
-                            //long o = incomingLinks.next().getObject();
+                    // Let it be known that, in 2023-03-20, I wondered for 3 hours why HDT was throwing incoherent
+                    // triples at me, since I was doing this...
+                    //long s = incomingLinks.next().getSubject();
+                    //long p = incomingLinks.next().getPredicate();
+                    //long o = incomingLinks.next().getObject();
 
-                            subjectPreds.put(s, p);
-                        }
+                    subjectPreds.put(s, p);
+                }
 
-                        double pageRank = (1.0D - dampingFactor);
-                        for (var entry : subjectPreds.entrySet()) {
-                            // subject in <id, p, s> or <s, p, id>, where id is the entity whose PR we are calculating
-                            long s = entry.getKey();
-                            long p = entry.getValue();
+                double pageRank = (1.0D - dampingFactor);
+                for (var entry : subjectPreds.entrySet()) {
+                    // subject in <id, p, s> or <s, p, id>, where id is the entity whose PR we are calculating
+                    long s = entry.getKey();
+                    long p = entry.getValue();
 
-                            double pageRankIn;
+                    double pageRankIn;
 
-                            pageRankIn = pageRankScoresPrev.get(s);
+                    pageRankIn = pageRankScoresPrev.get(s);
 
-                            int numberOut = numberOutgoing.get(s); // Outgoing links from s
+                    int numberOut = numberOutgoing.get(s); // Outgoing links from s
 
-                            if (numberOut != 0) { // Avoid infinites
-                                // Now we also add PageRank's weight (for the entity id!)
-                                pageRank += dampingFactor * (pageRankIn / numberOut) * getWeight(id, p);
-                            }
-                        }
+                    if (numberOut != 0) { // Avoid infinites
+                        // Now we also add PageRank's weight (for the entity id!)
+                        pageRank += dampingFactor * (pageRankIn / numberOut) * getWeight(id, p);
+                    }
+                }
 
-                        pageRankScoresNext.set(id, pageRank);
-                    })
-            ).get();
+                pageRankScoresNext.set(id, pageRank);
+            };
 
-            workers.close();
+            if (parallelize)
+                workers.forRange(1, nSubjects + 1, computePageRank);
+            else
+                LongStream.range(1, nSubjects + 1).forEach(computePageRank);
 
             // CBL: we swap Prev and Next storages
             // I take advantage of the already existing variable to
@@ -516,12 +513,13 @@ public class WeightedPageRankMetricsGenerator extends PageRankMetricsGenerator {
         writePageRankScoresAsNtriples();
 
         // If the number of subjects is big enough (more than in the 2016-10 dump of the DBpedia),
-        // normal HDT constructors will not work with the RDF file, so we use catTree as an alternative
-        return LocalHDTSPARQLEndpoint.fromRDFCatTree(RDFOutputFile,
+        // normal HDT constructors will not work with the RDF file, so we convert it by chunks on disk
+        return LocalHDTSPARQLEndpoint.fromRDFDiskBacked(RDFOutputFile,
                 HDTOutputFile,
                 "unused", // All URIs are well-formed and no more data is going to be inserted
                 "ntriples",
-                true,
-                false); // Delete the input file too
+                true, // Delete the input file too
+                false,
+                DiskBackedHDTConverter.defaultHeapBudget());
     }
 }
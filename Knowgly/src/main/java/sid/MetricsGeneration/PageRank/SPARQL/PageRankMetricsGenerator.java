@@ -65,7 +65,7 @@ public abstract class PageRankMetricsGenerator {
         public Double pageRank;
     }
 
-    public abstract void compute() throws ExecutionException, InterruptedException;
+    public abstract void compute() throws ExecutionException, InterruptedException, IOException;
 
     public abstract void writePageRankScoresAsNtriples() throws FileNotFoundException;
 
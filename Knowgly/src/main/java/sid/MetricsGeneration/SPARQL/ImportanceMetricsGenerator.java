@@ -6,6 +6,7 @@ import sid.SPARQLEndpoint.SPARQLEndpointWithNamedGraphs;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * SPARQL specialization for the importance metrics. Not recommended for efficiency reasons,
@@ -55,35 +56,47 @@ public class ImportanceMetricsGenerator implements MetricsGenerator {
         }
     }
 
-    private void addImportanceMetrics() throws IOException {
-        List<Metric> metrics = Arrays.asList(
-                new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_SPARQL), "Fact frequency"),
-                new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_P_SPARQL), "Fact frequency_p"),
+    private void addImportanceMetrics() throws IOException, ExecutionException, InterruptedException {
+        PartitionedUpdateRunner.fromConfigurationFile(endpoint).run(getMetrics());
+    }
+
+    /**
+     * @return Every importance metric, in order
+     */
+    static List<Metric> getMetrics() throws IOException {
+        return Arrays.asList(
+                new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_SPARQL), "Fact frequency",
+                        "p", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
+                new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_P_SPARQL), "Fact frequency_p",
+                        "uri", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
                 new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_O_SPARQL), "Fact frequency_o"),
 
-                new Metric(MetricsGenerator.getQueryString(ENTITY_FREQUENCY_SPARQL), "Entity frequency"),
-                new Metric(MetricsGenerator.getQueryString(ENTITY_FREQUENCY_P_SPARQL), "Entity frequency_p"),
+                new Metric(MetricsGenerator.getQueryString(ENTITY_FREQUENCY_SPARQL), "Entity frequency",
+                        "p", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
+                new Metric(MetricsGenerator.getQueryString(ENTITY_FREQUENCY_P_SPARQL), "Entity frequency_p",
+                        "uri", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
                 new Metric(MetricsGenerator.getQueryString(ENTITY_FREQUENCY_O_SPARQL), "Entity frequency_o"),
-                new Metric(MetricsGenerator.getQueryString(ENTITY_TYPE_FREQUENCY_SPARQL), "Entity type frequency"),
+                new Metric(MetricsGenerator.getQueryString(ENTITY_TYPE_FREQUENCY_SPARQL), "Entity type frequency",
+                        "uri", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
 
-                new Metric(MetricsGenerator.getQueryString(TYPE_FREQUENCY_PREDICATE_SPARQL), "Type frequency of predicate"),
+                new Metric(MetricsGenerator.getQueryString(TYPE_FREQUENCY_PREDICATE_SPARQL), "Type frequency of predicate",
+                        "uri", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
 
                 new Metric(MetricsGenerator.getQueryString(TYPE_IMPORTANCE_SPARQL), "Type importance"),
 
-                new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_TYPE_SPARQL), "Fact type frequency"),
-                new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_TYPE_P_SPARQL), "Fact type frequency for predicate"),
+                new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_TYPE_SPARQL), "Fact type frequency",
+                        "p", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
+                new Metric(MetricsGenerator.getQueryString(FACT_FREQUENCY_TYPE_P_SPARQL), "Fact type frequency for predicate",
+                        "uri", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
 
-                new Metric(MetricsGenerator.getQueryString(FACT_PROB_TYPE_SPARQL), "fact probabilities for each predicate and type"),
-                new Metric(MetricsGenerator.getQueryString(PREDICATE_ENTROPY_TYPE_SPARQL), "Predicate entropies for each type"),
+                new Metric(MetricsGenerator.getQueryString(FACT_PROB_TYPE_SPARQL), "fact probabilities for each predicate and type",
+                        "predicate", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
+                new Metric(MetricsGenerator.getQueryString(PREDICATE_ENTROPY_TYPE_SPARQL), "Predicate entropies for each type",
+                        "predURI", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
 
                 new Metric(MetricsGenerator.getQueryString(ENTROPY_TYPE_IMPORTANCE_SPARQL), "Entropy-type importances for each type"),
                 new Metric(MetricsGenerator.getQueryString(ENTITY_TYPE_IMPORTANCE_SPARQL), "Entity type importances"),
                 new Metric(MetricsGenerator.getQueryString(ENTROPY_ENTITY_TYPE_IMPORTANCE_SPARQL), "Entropy-entity type importances")
         );
-
-        for (Metric metric : metrics) {
-            System.out.println("Calculating " + metric.name + "...");
-            endpoint.runUpdate(metric.query);
-        }
     }
 }
@@ -13,6 +13,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * SPARQL specialization for the InfoRank metrics. Not recommended for efficiency reasons,
@@ -47,6 +48,7 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
 
     private final SPARQLEndpointWithNamedGraphs endpoint;
     private WeightedPageRankMetricsGenerator pagerank;
+    private PartitionedUpdateRunner updates;
 
     // HDT file to which we save the metrics prior to PageRank's computation
     private final String hdtFile;
@@ -75,6 +77,9 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
     @Override
     public void run() {
         try {
+            if (updates == null)
+                updates = PartitionedUpdateRunner.fromConfigurationFile(endpoint);
+
             addInfoRankFeatures();
 
             if (pagerank == null) {
@@ -94,32 +99,44 @@ public class InfoRankMetricsGenerator implements MetricsGenerator {
             System.out.println("Adding PageRank results...");
             endpoint.addNamedModel(BASE_INFORANK_SUBGRAPH_URI, new LocalSPARQLEndpoint(pagerank.getRDFOutputFile()).model); // Add PageRank results to the infoRank subgraph
 
-            System.out.println("Calculating InfoRank...");
-            endpoint.runUpdate(MetricsGenerator.getQueryString(INFORANK_SPARQL));
+            updates.run(getInfoRankMetric());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void addInfoRankFeatures() throws IOException {
-        List<Metric> metrics = Arrays.asList(
-                new Metric(MetricsGenerator.getQueryString(IW), "IW(r)"),
+    private void addInfoRankFeatures() throws IOException, ExecutionException, InterruptedException {
+        updates.run(getFeatureMetrics());
+    }
+
+    static Metric getInfoRankMetric() throws IOException {
+        return new Metric(MetricsGenerator.getQueryString(INFORANK_SPARQL), "InfoRank",
+                "s", PartitionedUpdateRunner.SUBJECT_KEYS_QUERY);
+    }
 
-                new Metric(MetricsGenerator.getQueryString(ABSC_SPARQL), "Absolute informativeness of each class"),
-                new Metric(MetricsGenerator.getQueryString(ABSP_SPARQL), "Absolute informativeness of each object property"),
-                new Metric(MetricsGenerator.getQueryString(ABSD_SPARQL), "Absolute informativeness of each datatype property"),
+    /**
+     * @return The metrics InfoRank is calculated from (except PageRank), in order
+     */
+    static List<Metric> getFeatureMetrics() throws IOException {
+        return Arrays.asList(
+                new Metric(MetricsGenerator.getQueryString(IW), "IW(r)",
+                        "r", PartitionedUpdateRunner.SUBJECT_KEYS_QUERY),
+
+                new Metric(MetricsGenerator.getQueryString(ABSC_SPARQL), "Absolute informativeness of each class",
+                        "c", PartitionedUpdateRunner.CLASS_KEYS_QUERY),
+                new Metric(MetricsGenerator.getQueryString(ABSP_SPARQL), "Absolute informativeness of each object property",
+                        "p", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
+                new Metric(MetricsGenerator.getQueryString(ABSD_SPARQL), "Absolute informativeness of each datatype property",
+                        "d", PartitionedUpdateRunner.PREDICATE_KEYS_QUERY),
 
                 new Metric(MetricsGenerator.getQueryString(IR_C_SPARQL), "IR(c) for each class"),
                 new Metric(MetricsGenerator.getQueryString(IR_P_SPARQL), "IR(p) for each object property"),
                 new Metric(MetricsGenerator.getQueryString(IR_D_SPARQL), "IR(p) for each data property"),
-                new Metric(MetricsGenerator.getQueryString(W_LEFT_SPARQL), "W(r,p) for each data entity r and p associated to it (\"left side\")"),
-                new Metric(MetricsGenerator.getQueryString(W_RIGHT_SPARQL), "W(r,p) for each data entity r and p associated to it (\"right side\")")
+                // By ?r, which their nested subqueries group by
+                new Metric(MetricsGenerator.getQueryString(W_LEFT_SPARQL), "W(r,p) for each data entity r and p associated to it (\"left side\")",
+                        "r", PartitionedUpdateRunner.SUBJECT_KEYS_QUERY),
+                new Metric(MetricsGenerator.getQueryString(W_RIGHT_SPARQL), "W(r,p) for each data entity r and p associated to it (\"right side\")",
+                        "r", PartitionedUpdateRunner.OBJECT_KEYS_QUERY)
         );
-
-
-        for (Metric metric : metrics) {
-            System.out.println("Calculating " + metric.name + "...");
-            endpoint.runUpdate(metric.query);
-        }
     }
 }
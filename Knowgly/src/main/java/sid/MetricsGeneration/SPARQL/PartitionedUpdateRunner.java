@@ -0,0 +1,301 @@
+package sid.MetricsGeneration.SPARQL;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.*;
+import org.apache.jena.update.Update;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import sid.MetricsGeneration.MetricsGenerator.Metric;
+import sid.SPARQLEndpoint.SPARQLEndpoint;
+import sid.utils.RequestExecutor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the SPARQL metrics' update queries, optionally split into partitions
+ * <p>
+ * A metric with a partition variable (see Metric) is run once per partition: a block of partitionSize values of that
+ * variable (such as predicates or subjects), obtained via its keys query and injected as a VALUES block in the update's
+ * WHERE clause. If the WHERE clause is a subquery, the VALUES block is injected inside it (so that it applies before its
+ * aggregations), as well as in any nested subquery which projects the variable. The partition variable must therefore
+ * be one of the GROUP BY keys of any aggregation, so that each group is computed entirely within a single partition,
+ * and the results of all partitions are simply the union of their INSERTs
+ * <p>
+ * Partitions are sent to the endpoint with at most parallelism of them at the same time, while the keys of the next
+ * ones are read, so that neither the endpoint nor this process needs to hold a whole-graph query at once. Keys are read
+ * in pages of keysPageSize (via LIMIT/OFFSET), so that the keys query doesn't need to hold them all at once either
+ * <p>
+ * If a checkpoint file is given (it's disabled by default), every finished partition and metric is recorded in it, and
+ * skipped when running them again (such as after a crash or a timeout). Since the updates only INSERT triples,
+ * partitions which were interrupted halfway are simply run again. The checkpoint is never cleared, so it must be deleted
+ * before calculating the metrics of a new dataset
+ */
+public class PartitionedUpdateRunner {
+    private static final String CONFIGURATION_FILE = "configuration/metricsConfiguration.json";
+    // Configuration keys (all of them optional)
+    public static final String PARTITION_SIZE_CONF = "sparqlPartitionSize";
+    public static final String PARALLELISM_CONF = "sparqlPartitionParallelism";
+    public static final String CHECKPOINT_FILE_CONF = "sparqlCheckpointFile";
+    public static final String KEYS_PAGE_SIZE_CONF = "sparqlKeysPageSize";
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_KEYS_PAGE_SIZE = 100000;
+
+    // Keys queries, which must return the partition values as ?key, in a deterministic order
+    public static final String SUBJECT_KEYS_QUERY = "SELECT DISTINCT ?key WHERE { ?key ?p ?o } ORDER BY ?key";
+    public static final String OBJECT_KEYS_QUERY = "SELECT DISTINCT ?key WHERE { ?s ?p ?key } ORDER BY ?key";
+    public static final String PREDICATE_KEYS_QUERY = "SELECT DISTINCT ?key WHERE { ?s ?key ?o } ORDER BY ?key";
+    public static final String CLASS_KEYS_QUERY = "SELECT DISTINCT ?key WHERE { ?s a ?key } ORDER BY ?key";
+
+    private final SPARQLEndpoint endpoint;
+    private final int partitionSize;
+    private final int parallelism;
+    private final int keysPageSize;
+
+    // Finished metrics and partitions, and the file they are recorded in (if any)
+    private final Set<String> finished = new HashSet<>();
+    private final BufferedWriter checkpoint;
+
+    public static PartitionedUpdateRunner fromConfigurationFile(SPARQLEndpoint endpoint) throws IOException {
+        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode rootNode = objectMapper.readTree(mapData);
+
+        return new PartitionedUpdateRunner(endpoint,
+                rootNode.has(PARTITION_SIZE_CONF) ? rootNode.get(PARTITION_SIZE_CONF).asInt() : 0,
+                rootNode.has(PARALLELISM_CONF) ? rootNode.get(PARALLELISM_CONF).asInt() : DEFAULT_PARALLELISM,
+                rootNode.has(KEYS_PAGE_SIZE_CONF) ? rootNode.get(KEYS_PAGE_SIZE_CONF).asInt() : DEFAULT_KEYS_PAGE_SIZE,
+                rootNode.hasNonNull(CHECKPOINT_FILE_CONF) ? rootNode.get(CHECKPOINT_FILE_CONF).asText() : null);
+    }
+
+    /**
+     * @param partitionSize  Number of values of the partition variable per partition. If <= 0, every query is run
+     *                       as a single statement
+     * @param parallelism    Maximum number of partitions being run at the same time
+     * @param keysPageSize   Number of keys read from each keys query at a time. If <= 0, they're all read at once
+     * @param checkpointFile File to record finished metrics and partitions in, in order to resume them. Can be null
+     * @throws IOException If the checkpoint file can't be read or opened
+     */
+    public PartitionedUpdateRunner(SPARQLEndpoint endpoint, int partitionSize, int parallelism, int keysPageSize, String checkpointFile) throws IOException {
+        this.endpoint = endpoint;
+        this.partitionSize = partitionSize;
+        this.parallelism = parallelism;
+        this.keysPageSize = keysPageSize;
+
+        if (checkpointFile != null) {
+            Path checkpointPath = Path.of(checkpointFile);
+            if (Files.exists(checkpointPath))
+                finished.addAll(Files.readAllLines(checkpointPath));
+
+            this.checkpoint = Files.newBufferedWriter(checkpointPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } else {
+            this.checkpoint = null;
+        }
+    }
+
+    /**
+     * Run every metric, in order
+     */
+    public void run(List<Metric> metrics) throws ExecutionException, InterruptedException, IOException {
+        for (Metric metric : metrics)
+            run(metric);
+    }
+
+    public void run(Metric metric) throws ExecutionException, InterruptedException, IOException {
+        if (finished.contains(metric.name)) {
+            System.out.println("Skipping " + metric.name + " (already calculated)");
+            return;
+        }
+
+        if (partitionSize <= 0 || metric.partitionVariable == null) {
+            System.out.println("Calculating " + metric.name + "...");
+            endpoint.runUpdate(metric.query);
+        } else {
+            System.out.println("Calculating " + metric.name + " in partitions of " + partitionSize + " ?" + metric.partitionVariable + "...");
+            runPartitioned(metric);
+        }
+
+        markFinished(metric.name);
+    }
+
+    private void runPartitioned(Metric metric) throws ExecutionException, InterruptedException, IOException {
+        Var var = Var.alloc(metric.partitionVariable);
+        AtomicLong partitionsDone = new AtomicLong(0);
+
+        try (RequestExecutor requests = new RequestExecutor("sparql-metrics", parallelism)) {
+            Query keysQuery = QueryFactory.create(metric.partitionKeysQuery);
+            if (keysPageSize > 0)
+                keysQuery.setLimit(keysPageSize);
+
+            List<Node> partition = new ArrayList<>(partitionSize);
+            int[] partitionIndex = {0};
+            long offset = 0;
+            long pageKeys;
+
+            do {
+                keysQuery.setOffset(offset);
+                ResultSet keys = endpoint.runSelectQuery(keysQuery);
+                pageKeys = 0;
+
+                while (keys.hasNext()) {
+                    QuerySolution solution = keys.next();
+                    partition.add(solution.get("key").asNode());
+                    pageKeys++;
+
+                    if (partition.size() == partitionSize)
+                        submitPartition(requests, metric, var, partition, partitionIndex, partitionsDone);
+                }
+
+                offset += pageKeys;
+            } while (keysPageSize > 0 && pageKeys == keysPageSize);
+
+            if (!partition.isEmpty())
+                submitPartition(requests, metric, var, partition, partitionIndex, partitionsDone);
+
+            requests.awaitCompletion();
+            System.out.println();
+        }
+    }
+
+    // Submit the partition (unless it's already finished), and clear it for the next one
+    private void submitPartition(RequestExecutor requests,
+                                 Metric metric,
+                                 Var var,
+                                 List<Node> partition,
+                                 int[] partitionIndex,
+                                 AtomicLong partitionsDone) throws ExecutionException, InterruptedException {
+        String partitionID = metric.name + "#" + partitionIndex[0] + ":" + Integer.toHexString(partition.hashCode());
+        List<Node> values = List.copyOf(partition);
+        partition.clear();
+        partitionIndex[0]++;
+
+        if (finished.contains(partitionID))
+            return;
+
+        // Blocks while there are too many partitions being run
+        requests.submit(() -> {
+            endpoint.runUpdate(restrictTo(metric.query, var, values));
+            markFinished(partitionID);
+
+            System.out.print("\rPartitions done: " + partitionsDone.incrementAndGet());
+            return null;
+        });
+    }
+
+    private synchronized void markFinished(String id) throws IOException {
+        finished.add(id);
+
+        if (checkpoint != null) {
+            checkpoint.write(id);
+            checkpoint.newLine();
+            checkpoint.flush();
+        }
+    }
+
+    /**
+     * @return The update, restricted to the given values of the variable (see the class' documentation)
+     * @throws IllegalArgumentException If it isn't an INSERT/DELETE ... WHERE update, or the variable is aggregated
+     *                                  away by a subquery
+     */
+    static String restrictTo(String update, Var var, List<Node> values) {
+        UpdateRequest request = UpdateFactory.create(update);
+
+        for (Update operation : request.getOperations()) {
+            if (!(operation instanceof UpdateModify modify))
+                throw new IllegalArgumentException("Only INSERT/DELETE ... WHERE updates can be partitioned");
+
+            Element target = modify.getWherePattern();
+
+            // INSERT { ... } WHERE { SELECT ... }: restrict the subquery itself, before its aggregations
+            ElementSubQuery subQuery;
+            while ((subQuery = asSubQuery(target)) != null) {
+                Query query = subQuery.getQuery();
+                if (aggregatesAway(query, var))
+                    throw new IllegalArgumentException("Can't partition by ?" + var.getVarName() + ", since it isn't a GROUP BY key of the update's subquery");
+
+                target = query.getQueryPattern();
+            }
+
+            if (!(target instanceof ElementGroup group))
+                throw new IllegalArgumentException("Unsupported WHERE clause for partitioning: " + target);
+
+            group.getElements().add(0, valuesOf(var, values));
+            restrictSubQueries(group, var, values);
+        }
+
+        return request.toString();
+    }
+
+    // The subquery an element consists of, if any. Depending on its syntax, a WHERE clause with just a subquery is
+    // parsed either as the subquery itself or as a group with it as its only element
+    private static ElementSubQuery asSubQuery(Element element) {
+        if (element instanceof ElementSubQuery subQuery)
+            return subQuery;
+
+        if (element instanceof ElementGroup group && group.size() == 1 && group.get(0) instanceof ElementSubQuery subQuery)
+            return subQuery;
+
+        return null;
+    }
+
+    // Restrict every nested subquery which projects the variable
+    private static void restrictSubQueries(Element element, Var var, List<Node> values) {
+        if (element instanceof ElementGroup group) {
+            for (Element child : group.getElements())
+                restrictSubQueries(child, var, values);
+        } else if (element instanceof ElementOptional optional) {
+            restrictSubQueries(optional.getOptionalElement(), var, values);
+        } else if (element instanceof ElementMinus minus) {
+            restrictSubQueries(minus.getMinusElement(), var, values);
+        } else if (element instanceof ElementUnion union) {
+            for (Element child : union.getElements())
+                restrictSubQueries(child, var, values);
+        } else if (element instanceof ElementNamedGraph namedGraph) {
+            restrictSubQueries(namedGraph.getElement(), var, values);
+        } else if (element instanceof ElementSubQuery subQuery) {
+            Query query = subQuery.getQuery();
+
+            if (query.getProjectVars().contains(var) && !aggregatesAway(query, var) &&
+                    query.getQueryPattern() instanceof ElementGroup group) {
+                group.getElements().add(0, valuesOf(var, values));
+                restrictSubQueries(group, var, values);
+            }
+        }
+    }
+
+    // Whether the query aggregates over groups which don't have the variable as a key
+    private static boolean aggregatesAway(Query query, Var var) {
+        return (query.hasGroupBy() || query.hasAggregators()) && !query.getGroupBy().getVars().contains(var);
+    }
+
+    private static ElementData valuesOf(Var var, List<Node> values) {
+        ElementData data = new ElementData();
+        data.add(var);
+
+        for (Node value : values)
+            data.add(BindingFactory.binding(var, value));
+
+        return data;
+    }
+}
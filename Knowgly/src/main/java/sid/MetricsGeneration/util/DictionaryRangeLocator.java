@@ -0,0 +1,194 @@
+package sid.MetricsGeneration.util;
+
+import org.rdfhdt.hdt.dictionary.Dictionary;
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+import org.rdfhdt.hdt.util.string.CharSequenceComparator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.LongStream;
+
+/**
+ * Locator of the ID ranges of an HDT dictionary whose strings start with a given prefix (literals, URI namespaces...)
+ * <p>
+ * Each dictionary section is sorted and stored with Plain Front Coding: strings are grouped in blocks of blockSize
+ * entries, where the first one (the block header) is stored in full and the rest as deltas from the previous one. Thus,
+ * extracting a block header is cheap, while extracting any other string needs to decode its block up to it
+ * <p>
+ * Range boundaries are found with an iterative binary search over the block headers only, followed by a scan inside the
+ * single block which contains the boundary. Results are correct for any block size, which only affects how many
+ * strings are decoded
+ * <p>
+ * Since prefixes are matched against the dictionary's sort order, only the start of the strings can be located: for
+ * example, every literal (prefix ") or every URI in a namespace, but not every literal with a given language tag
+ */
+public class DictionaryRangeLocator {
+    // Block size used by hdt-java's PFC dictionary sections, unless specified otherwise when generating the HDT file
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+
+    private static final CharSequenceComparator comparator = new CharSequenceComparator();
+
+    /**
+     * Inclusive range of IDs of a dictionary section
+     *
+     * @param first First ID, or -1 if the range is empty
+     * @param last  Last ID, or -1 if the range is empty
+     */
+    public record Range(long first, long last) {
+        public static final Range EMPTY = new Range(-1, -1);
+
+        public boolean isEmpty() {
+            return first == -1;
+        }
+
+        public boolean contains(long id) {
+            return id >= first && id <= last;
+        }
+
+        public long size() {
+            return isEmpty() ? 0 : last - first + 1;
+        }
+
+        public LongStream ids() {
+            return isEmpty() ? LongStream.empty() : LongStream.rangeClosed(first, last);
+        }
+    }
+
+    private final Dictionary dictionary;
+    private final int blockSize;
+
+    public DictionaryRangeLocator(Dictionary dictionary) {
+        this(dictionary, DEFAULT_BLOCK_SIZE);
+    }
+
+    public DictionaryRangeLocator(Dictionary dictionary, int blockSize) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+
+        this.dictionary = dictionary;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return The ID ranges of the sorted dictionary sections of the given role. Subjects and objects have two
+     * sections (shared and non-shared), each one sorted independently
+     */
+    public List<Range> getSections(TripleComponentRole role) {
+        long nShared = dictionary.getNshared();
+
+        List<Range> sections = new ArrayList<>();
+        switch (role) {
+            case SUBJECT -> {
+                addSection(sections, 1, nShared);
+                addSection(sections, nShared + 1, dictionary.getNsubjects());
+            }
+            case OBJECT -> {
+                addSection(sections, 1, nShared);
+                addSection(sections, nShared + 1, dictionary.getNobjects());
+            }
+            case PREDICATE -> addSection(sections, 1, dictionary.getNpredicates());
+            default -> throw new IllegalArgumentException("Unsupported role: " + role);
+        }
+
+        return sections;
+    }
+
+    private static void addSection(List<Range> sections, long first, long last) {
+        if (last >= first)
+            sections.add(new Range(first, last));
+    }
+
+    /**
+     * @return The non-empty ranges, one per section of the given role at most, of the strings starting with prefix
+     */
+    public List<Range> locate(TripleComponentRole role, String prefix) {
+        List<Range> ranges = new ArrayList<>();
+        for (Range section : getSections(role)) {
+            Range range = locate(section, role, prefix);
+            if (!range.isEmpty())
+                ranges.add(range);
+        }
+
+        return ranges;
+    }
+
+    /**
+     * @param section A whole dictionary section (see getSections), since block headers are located from its start
+     * @return The range of the section's strings starting with prefix, which may be empty
+     */
+    public Range locate(Range section, TripleComponentRole role, String prefix) {
+        long first = firstMatching(section, role, prefix, c -> c >= 0);
+        if (first > section.last())
+            return Range.EMPTY;
+
+        long end = firstMatching(section, role, prefix, c -> c > 0);
+        if (end == first)
+            return Range.EMPTY;
+
+        return new Range(first, end - 1);
+    }
+
+    /**
+     * @return The IDs of every string of the given role starting with prefix, in ascending order
+     */
+    public LongStream ids(TripleComponentRole role, String prefix) {
+        return locate(role, prefix).stream().flatMapToLong(Range::ids);
+    }
+
+    /**
+     * @return The range of literal object IDs, which are always in the non-shared objects section
+     */
+    public Range getLiterals() {
+        long nShared = dictionary.getNshared();
+        long nObjects = dictionary.getNobjects();
+
+        if (nObjects <= nShared)
+            return Range.EMPTY;
+
+        return locate(new Range(nShared + 1, nObjects), TripleComponentRole.OBJECT, "\"");
+    }
+
+    /**
+     * Find the first ID of the section whose string, truncated to the prefix's length and compared to it, satisfies
+     * the given condition. The condition must be monotonic over the section's sort order
+     *
+     * @return The first matching ID, or section.last() + 1 if there is none
+     */
+    private long firstMatching(Range section, TripleComponentRole role, String prefix, IntPredicate condition) {
+        // Block headers are the IDs section.first() + k * blockSize. Find the last one not matching the condition
+        long low = 0;
+        long high = (section.last() - section.first()) / blockSize;
+        long block = -1;
+
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+
+            if (condition.test(compareToPrefix(section.first() + mid * blockSize, role, prefix))) {
+                high = mid - 1;
+            } else {
+                block = mid;
+                low = mid + 1;
+            }
+        }
+
+        if (block == -1)
+            return section.first();
+
+        // The boundary is either inside that block or at the next block's header
+        long id = section.first() + block * blockSize + 1;
+        long blockEnd = Math.min(section.first() + (block + 1) * blockSize - 1, section.last());
+
+        for (; id <= blockEnd; id++) {
+            if (condition.test(compareToPrefix(id, role, prefix)))
+                return id;
+        }
+
+        return id;
+    }
+
+    private int compareToPrefix(long id, TripleComponentRole role, String prefix) {
+        CharSequence s = dictionary.idToString(id, role);
+        return comparator.compare(s.subSequence(0, Math.min(s.length(), prefix.length())), prefix);
+    }
+}
@@ -0,0 +1,32 @@
+package sid.MetricsGeneration.util;
+
+import org.rdfhdt.hdt.dictionary.Dictionary;
+
+/**
+ * Range of object IDs of an HDT dictionary which correspond to literals
+ * <p>
+ * Literals can only appear in the object-only section of the dictionary, and since they all start with " they are
+ * stored contiguously, so checking if an object is a literal is just a range check, without having to extract its
+ * string from the dictionary
+ *
+ * @param first First literal object ID, or -1 if there are no literals
+ * @param last  Last literal object ID, or -1 if there are no literals
+ */
+public record LiteralRange(long first, long last) {
+    public static LiteralRange of(Dictionary dictionary) {
+        DictionaryRangeLocator.Range range = new DictionaryRangeLocator(dictionary).getLiterals();
+        return new LiteralRange(range.first(), range.last());
+    }
+
+    public boolean isEmpty() {
+        return first == -1;
+    }
+
+    public long size() {
+        return isEmpty() ? 0 : last - first + 1;
+    }
+
+    public boolean contains(long objectID) {
+        return objectID >= first && objectID <= last && !isEmpty();
+    }
+}
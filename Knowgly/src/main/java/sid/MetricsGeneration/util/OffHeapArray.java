@@ -0,0 +1,159 @@
+package sid.MetricsGeneration.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base class of the off-heap, long-indexed primitive arrays used by the metrics generators (PageRank, InfoRank's
+ * statistics...), which may need more than 2^31 - 1 entries, or more memory than the heap has
+ * <p>
+ * The array is stored in a file, memory-mapped in chunks of CHUNK_SIZE bytes. Since CHUNK_SIZE is a power of two and a
+ * multiple of every element size, elements never cross chunk boundaries, and finding the chunk and position of an index
+ * is just a shift and a mask over its byte offset
+ * <p>
+ * Arrays can be:
+ * <p>
+ * - Temporary (the default): backed by a file in java.io.tmpdir which is deleted right after being mapped. The memory
+ * is released when the array is garbage collected, as with on-heap arrays
+ * <p>
+ * - Persistent: backed by the given file, which is kept (and can be reopened) afterwards. flush() or close() need to be
+ * called to ensure that every write has reached the disk
+ * <p>
+ * New entries are always initialized to 0. Values are stored in the platform's native byte order, so persistent files
+ * are not portable between platforms with different endianness
+ */
+public abstract class OffHeapArray implements Closeable {
+    private static final int CHUNK_SHIFT = 30;
+    protected static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // 1 GiB
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final String TEMPORARY_FILE_PREFIX = "offheap-array-";
+
+    private final long size;
+    private final int elementShift;
+    private final Path file; // null if temporary
+    protected final MappedByteBuffer[] chunks;
+
+    /**
+     * @param size         Number of elements
+     * @param elementShift log2 of the size of each element in bytes
+     * @param file         File to store the array in, or null for a temporary array. If it already exists, its contents
+     *                     are kept (and extended with 0s if needed)
+     * @throws IOException If there is any IO error when creating or mapping the file
+     */
+    protected OffHeapArray(long size, int elementShift, Path file) throws IOException {
+        if (size < 0)
+            throw new IllegalArgumentException("Invalid array size: " + size);
+
+        this.size = size;
+        this.elementShift = elementShift;
+        this.file = file;
+
+        long bytes = size << elementShift;
+        int nChunks = (int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+        this.chunks = new MappedByteBuffer[nChunks];
+
+        Path backingFile = (file != null) ? file : Files.createTempFile(TEMPORARY_FILE_PREFIX, ".bin");
+
+        // Mappings stay valid after the channel is closed. For temporary arrays, DELETE_ON_CLOSE unlinks the file
+        // right away, so its space is freed as soon as the mappings are
+        try (FileChannel channel = (file != null) ?
+                FileChannel.open(backingFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE) :
+                FileChannel.open(backingFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            for (int i = 0; i < nChunks; i++) {
+                long position = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(CHUNK_SIZE, bytes - position));
+            }
+        }
+    }
+
+    /**
+     * @return The number of elements stored in the given persistent array file
+     */
+    protected static long sizeOf(Path file, int elementShift) throws IOException {
+        return Files.size(file) >>> elementShift;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isPersistent() {
+        return file != null;
+    }
+
+    /**
+     * @return The file backing this array, or null if it's temporary
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    protected final int chunk(long index) {
+        return (int) ((index << elementShift) >>> CHUNK_SHIFT);
+    }
+
+    protected final int position(long index) {
+        return (int) ((index << elementShift) & CHUNK_MASK);
+    }
+
+    protected final void checkRange(long from, long to) {
+        if (from < 0 || to > size || from > to)
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + ") for an array of size " + size);
+    }
+
+    /**
+     * Copy length elements from src (starting at srcIndex) to this array (starting at destIndex). Both arrays may be the
+     * same one, as long as the ranges don't overlap
+     */
+    protected final void copyFrom(OffHeapArray src, long srcIndex, long destIndex, long length) {
+        if (src.elementShift != elementShift)
+            throw new IllegalArgumentException("Can't copy between arrays with different element sizes");
+
+        src.checkRange(srcIndex, srcIndex + length);
+        checkRange(destIndex, destIndex + length);
+
+        long srcOffset = srcIndex << elementShift;
+        long destOffset = destIndex << elementShift;
+        long remaining = length << elementShift;
+
+        while (remaining > 0) {
+            int srcPosition = (int) (srcOffset & CHUNK_MASK);
+            int destPosition = (int) (destOffset & CHUNK_MASK);
+            int n = (int) Math.min(remaining, Math.min(CHUNK_SIZE - srcPosition, CHUNK_SIZE - destPosition));
+
+            ByteBuffer srcChunk = src.chunks[(int) (srcOffset >>> CHUNK_SHIFT)];
+            chunks[(int) (destOffset >>> CHUNK_SHIFT)].put(destPosition, srcChunk, srcPosition, n);
+
+            srcOffset += n;
+            destOffset += n;
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Ensure that every write has reached the backing file. Does nothing for temporary arrays
+     */
+    public void flush() {
+        if (file == null)
+            return;
+
+        for (MappedByteBuffer chunk : chunks)
+            chunk.force();
+    }
+
+    /**
+     * Flush the array if it's persistent. The mappings themselves are released once the array is garbage collected,
+     * so it shouldn't be used afterwards
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+}
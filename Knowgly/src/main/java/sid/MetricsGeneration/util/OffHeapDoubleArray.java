@@ -0,0 +1,101 @@
+package sid.MetricsGeneration.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Off-heap, long-indexed array of doubles (see OffHeapArray)
+ * <p>
+ * Besides plain reads and writes, it supports atomic additions and compare-and-set, so that several threads can
+ * accumulate into the same array
+ */
+public class OffHeapDoubleArray extends OffHeapArray {
+    private static final VarHandle DOUBLE = MethodHandles.byteBufferViewVarHandle(double[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Create a temporary array of the given size
+     *
+     * @throws IOException If the temporary file can't be created
+     */
+    public OffHeapDoubleArray(long size) throws IOException {
+        super(size, 3, null);
+    }
+
+    /**
+     * Create (or reopen and resize) a persistent array stored in the given file
+     *
+     * @throws IOException If there is any IO error with the file
+     */
+    public OffHeapDoubleArray(long size, Path file) throws IOException {
+        super(size, 3, file);
+    }
+
+    /**
+     * Reopen an existing persistent array, with the size given by its file
+     *
+     * @throws IOException If there is any IO error with the file
+     */
+    public static OffHeapDoubleArray open(Path file) throws IOException {
+        return new OffHeapDoubleArray(sizeOf(file, 3), file);
+    }
+
+    public double get(long index) {
+        return (double) DOUBLE.get(chunks[chunk(index)], position(index));
+    }
+
+    public void set(long index, double value) {
+        DOUBLE.set(chunks[chunk(index)], position(index), value);
+    }
+
+    /**
+     * Atomically add delta to the given element
+     *
+     * @return The new value
+     */
+    public double addAndGet(long index, double delta) {
+        var chunk = chunks[chunk(index)];
+        int position = position(index);
+
+        while (true) {
+            double current = (double) DOUBLE.getVolatile(chunk, position);
+            double next = current + delta;
+
+            if (DOUBLE.compareAndSet(chunk, position, current, next))
+                return next;
+        }
+    }
+
+    /**
+     * Atomically set the given element to value if it's currently equal to expected (compared by their bits, as in
+     * Double.doubleToRawLongBits)
+     *
+     * @return Whether it was set
+     */
+    public boolean compareAndSet(long index, double expected, double value) {
+        return DOUBLE.compareAndSet(chunks[chunk(index)], position(index), expected, value);
+    }
+
+    /**
+     * Set every element in [from, to) to value
+     */
+    public void fill(long from, long to, double value) {
+        checkRange(from, to);
+
+        for (long i = from; i < to; i++)
+            DOUBLE.set(chunks[chunk(i)], position(i), value);
+    }
+
+    public void fill(double value) {
+        fill(0, size(), value);
+    }
+
+    /**
+     * Copy length elements from src, starting at srcIndex, to this array, starting at destIndex
+     */
+    public void copyFrom(OffHeapDoubleArray src, long srcIndex, long destIndex, long length) {
+        super.copyFrom(src, srcIndex, destIndex, length);
+    }
+}
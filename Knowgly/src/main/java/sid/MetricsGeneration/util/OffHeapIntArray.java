@@ -0,0 +1,91 @@
+package sid.MetricsGeneration.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Off-heap, long-indexed array of ints (see OffHeapArray)
+ * <p>
+ * Besides plain reads and writes, it supports atomic additions and compare-and-set, so that several threads can
+ * accumulate into the same array
+ */
+public class OffHeapIntArray extends OffHeapArray {
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Create a temporary array of the given size
+     *
+     * @throws IOException If the temporary file can't be created
+     */
+    public OffHeapIntArray(long size) throws IOException {
+        super(size, 2, null);
+    }
+
+    /**
+     * Create (or reopen and resize) a persistent array stored in the given file
+     *
+     * @throws IOException If there is any IO error with the file
+     */
+    public OffHeapIntArray(long size, Path file) throws IOException {
+        super(size, 2, file);
+    }
+
+    /**
+     * Reopen an existing persistent array, with the size given by its file
+     *
+     * @throws IOException If there is any IO error with the file
+     */
+    public static OffHeapIntArray open(Path file) throws IOException {
+        return new OffHeapIntArray(sizeOf(file, 2), file);
+    }
+
+    public int get(long index) {
+        return (int) INT.get(chunks[chunk(index)], position(index));
+    }
+
+    public void set(long index, int value) {
+        INT.set(chunks[chunk(index)], position(index), value);
+    }
+
+    /**
+     * Atomically add delta to the given element
+     *
+     * @return The new value
+     */
+    public int addAndGet(long index, int delta) {
+        return (int) INT.getAndAdd(chunks[chunk(index)], position(index), delta) + delta;
+    }
+
+    /**
+     * Atomically set the given element to value if it's currently equal to expected
+     *
+     * @return Whether it was set
+     */
+    public boolean compareAndSet(long index, int expected, int value) {
+        return INT.compareAndSet(chunks[chunk(index)], position(index), expected, value);
+    }
+
+    /**
+     * Set every element in [from, to) to value
+     */
+    public void fill(long from, long to, int value) {
+        checkRange(from, to);
+
+        for (long i = from; i < to; i++)
+            INT.set(chunks[chunk(i)], position(i), value);
+    }
+
+    public void fill(int value) {
+        fill(0, size(), value);
+    }
+
+    /**
+     * Copy length elements from src, starting at srcIndex, to this array, starting at destIndex
+     */
+    public void copyFrom(OffHeapIntArray src, long srcIndex, long destIndex, long length) {
+        super.copyFrom(src, srcIndex, destIndex, length);
+    }
+}
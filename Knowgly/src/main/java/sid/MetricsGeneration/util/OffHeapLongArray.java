@@ -0,0 +1,91 @@
+package sid.MetricsGeneration.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Off-heap, long-indexed array of longs (see OffHeapArray)
+ * <p>
+ * Besides plain reads and writes, it supports atomic additions and compare-and-set, so that several threads can
+ * accumulate into the same array
+ */
+public class OffHeapLongArray extends OffHeapArray {
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Create a temporary array of the given size
+     *
+     * @throws IOException If the temporary file can't be created
+     */
+    public OffHeapLongArray(long size) throws IOException {
+        super(size, 3, null);
+    }
+
+    /**
+     * Create (or reopen and resize) a persistent array stored in the given file
+     *
+     * @throws IOException If there is any IO error with the file
+     */
+    public OffHeapLongArray(long size, Path file) throws IOException {
+        super(size, 3, file);
+    }
+
+    /**
+     * Reopen an existing persistent array, with the size given by its file
+     *
+     * @throws IOException If there is any IO error with the file
+     */
+    public static OffHeapLongArray open(Path file) throws IOException {
+        return new OffHeapLongArray(sizeOf(file, 3), file);
+    }
+
+    public long get(long index) {
+        return (long) LONG.get(chunks[chunk(index)], position(index));
+    }
+
+    public void set(long index, long value) {
+        LONG.set(chunks[chunk(index)], position(index), value);
+    }
+
+    /**
+     * Atomically add delta to the given element
+     *
+     * @return The new value
+     */
+    public long addAndGet(long index, long delta) {
+        return (long) LONG.getAndAdd(chunks[chunk(index)], position(index), delta) + delta;
+    }
+
+    /**
+     * Atomically set the given element to value if it's currently equal to expected
+     *
+     * @return Whether it was set
+     */
+    public boolean compareAndSet(long index, long expected, long value) {
+        return LONG.compareAndSet(chunks[chunk(index)], position(index), expected, value);
+    }
+
+    /**
+     * Set every element in [from, to) to value
+     */
+    public void fill(long from, long to, long value) {
+        checkRange(from, to);
+
+        for (long i = from; i < to; i++)
+            LONG.set(chunks[chunk(i)], position(i), value);
+    }
+
+    public void fill(long value) {
+        fill(0, size(), value);
+    }
+
+    /**
+     * Copy length elements from src, starting at srcIndex, to this array, starting at destIndex
+     */
+    public void copyFrom(OffHeapLongArray src, long srcIndex, long destIndex, long length) {
+        super.copyFrom(src, srcIndex, destIndex, length);
+    }
+}
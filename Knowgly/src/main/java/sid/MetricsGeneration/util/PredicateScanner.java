@@ -0,0 +1,312 @@
+package sid.MetricsGeneration.util;
+
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.triples.IteratorTripleID;
+import org.rdfhdt.hdt.triples.TripleID;
+import sid.utils.ExecutionRuntime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+/**
+ * Predicate-partitioned access to the triples of an HDT file, for metrics computed per predicate
+ * <p>
+ * All accesses are ?P? searches, which HDT answers with its predicate index, so the work done for each predicate is
+ * proportional to its number of occurrences instead of to the number of subjects. Results are returned in SPO order:
+ * each (subject, predicate) pair appears once in the triples' Y sequence, so subjects come sorted and without
+ * duplicates other than consecutive ones (one per object), which allows counting distinct subjects without storing them
+ * <p>
+ * The number of occurrences of each predicate is also used as its cost estimate when processing all of them in
+ * parallel (see forEachPredicate), so that the most expensive predicates are started first instead of being left for
+ * the end. Aggregations which can be computed in parts (PartialAggregation) also have their most expensive predicates
+ * split into chunks, processed in parallel and merged
+ */
+public class PredicateScanner {
+    /**
+     * Consumer of the (subject, object) pairs of a predicate
+     */
+    public interface PairConsumer {
+        void accept(long subject, long object);
+    }
+
+    /**
+     * Aggregation over the (subject, object) pairs of each predicate which can be computed in parts, each one with its
+     * own partial result, and merged afterwards (see forEachPredicate(PartialAggregation))
+     */
+    public interface PartialAggregation<T> {
+        T newPartial(long predicateID);
+
+        /**
+         * Add a pair to a partial result. Each partial result is only used by one thread at a time
+         */
+        void accept(T partial, long subject, long object);
+
+        /**
+         * Merge the partial results of a predicate, once all of them are complete. Called exactly once per predicate,
+         * with at least one partial result, but possibly from several threads at the same time for different predicates
+         */
+        void merge(long predicateID, List<T> partials);
+    }
+
+    // Name of the execution runtime's stage used by default
+    public static final String STAGE = "predicateScan";
+
+    // Splitting parameters for forEachPredicate(PartialAggregation), in (subject, object) pairs
+    private static final long MIN_CHUNK_SIZE = 1 << 16;
+    private static final long MAX_CHUNK_SIZE = 1 << 22;
+    private static final int CHUNKS_PER_THREAD = 8;
+
+    private final HDT hdt;
+    private final ExecutionRuntime runtime;
+    private final ExecutionRuntime.Stage stage;
+
+    public PredicateScanner(HDT hdt) {
+        this(hdt, ExecutionRuntime.getDefault());
+    }
+
+    public PredicateScanner(HDT hdt, ExecutionRuntime runtime) {
+        this.hdt = hdt;
+        this.runtime = runtime;
+        this.stage = runtime.stage(STAGE);
+    }
+
+    public long getNumberOfPredicates() {
+        return hdt.getDictionary().getNpredicates();
+    }
+
+    private IteratorTripleID search(long predicateID) {
+        return hdt.getTriples().search(new TripleID(0, predicateID, 0));
+    }
+
+    /**
+     * @return The estimated number of triples with the given predicate, as given by HDT's predicate index
+     */
+    public long estimateCost(long predicateID) {
+        return search(predicateID).estimatedNumResults();
+    }
+
+    // Cost estimate of every predicate, indexed by ID
+    private long[] getCosts() {
+        long nPredicates = getNumberOfPredicates();
+        long[] costs = new long[(int) nPredicates + 1];
+        for (int p = 1; p <= nPredicates; p++)
+            costs[p] = estimateCost(p);
+
+        return costs;
+    }
+
+    /**
+     * @return Every predicate ID, sorted by descending cost estimate
+     */
+    public long[] getPredicatesByCost() {
+        return sortByCost(getCosts());
+    }
+
+    private static long[] sortByCost(long[] costs) {
+        return LongStream.range(1, costs.length)
+                .boxed()
+                .sorted(Comparator.comparingLong((Long p) -> costs[p.intValue()]).reversed())
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    /**
+     * Iterate over the (subject, object) pairs of the given predicate, in SPO order
+     */
+    public void forEach(long predicateID, PairConsumer consumer) {
+        IteratorTripleID triples = search(predicateID);
+        while (triples.hasNext()) {
+            TripleID triple = triples.next();
+            consumer.accept(triple.getSubject(), triple.getObject());
+        }
+    }
+
+    /**
+     * Iterate over the distinct subjects of the given predicate, in ascending order
+     */
+    public void forEachSubject(long predicateID, LongConsumer consumer) {
+        IteratorTripleID triples = search(predicateID);
+        long previousSubject = -1;
+
+        while (triples.hasNext()) {
+            long subject = triples.next().getSubject();
+            if (subject != previousSubject) {
+                consumer.accept(subject);
+                previousSubject = subject;
+            }
+        }
+    }
+
+    /**
+     * @return The number of distinct subjects of the given predicate
+     */
+    public long countDistinctSubjects(long predicateID) {
+        long[] count = {0};
+        forEachSubject(predicateID, s -> count[0]++);
+
+        return count[0];
+    }
+
+    /**
+     * @return The distinct objects of the given predicate, in ascending order
+     */
+    public long[] getDistinctObjects(long predicateID) {
+        IteratorTripleID triples = search(predicateID);
+        long[] objects = new long[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, triples.estimatedNumResults()))];
+        int n = 0;
+
+        while (triples.hasNext()) {
+            if (n == objects.length)
+                objects = Arrays.copyOf(objects, (int) Math.min(Integer.MAX_VALUE - 8, objects.length * 2L));
+
+            objects[n++] = triples.next().getObject();
+        }
+
+        return Arrays.stream(objects, 0, n).sorted().distinct().toArray();
+    }
+
+    /**
+     * @return Whether any object of the given predicate matches the condition. Stops at the first match
+     */
+    public boolean anyObject(long predicateID, LongPredicate condition) {
+        IteratorTripleID triples = search(predicateID);
+        while (triples.hasNext()) {
+            if (condition.test(triples.next().getObject()))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Run the given work for every predicate in parallel, starting with the most expensive ones (see
+     * getPredicatesByCost). Each worker of the stage takes the next pending predicate as soon as it finishes the
+     * previous one
+     *
+     * @throws ExecutionException   If the work throws any exception
+     * @throws InterruptedException If the threaded execution is interrupted
+     */
+    public void forEachPredicate(LongConsumer work) throws ExecutionException, InterruptedException {
+        long[] predicates = getPredicatesByCost();
+        stage.forRange(0, predicates.length, 1, i -> work.accept(predicates[(int) i]));
+    }
+
+    /**
+     * Compute the given aggregation for every predicate in parallel, splitting the most expensive ones so that they
+     * don't keep a single thread busy long after the rest have finished
+     * <p>
+     * Predicates are started by descending cost. Those whose cost is above the chunk size (the total cost divided by
+     * CHUNKS_PER_THREAD chunks per CPU thread, with a minimum of MIN_CHUNK_SIZE) are read sequentially by a single
+     * worker, which hands each chunk of chunk size pairs to a task of the runtime's CPU pool with its own partial result.
+     * Chunks don't respect subject boundaries, so a high-degree subject may be split across several partial results.
+     * Once all the chunks of a predicate are done, its partial results are merged
+     * <p>
+     * At most two chunks per CPU thread are handed to the pool at the same time, across all predicates. Once there are
+     * that many, workers aggregate their next chunks themselves, until some of them are done
+     *
+     * @throws ExecutionException   If the aggregation throws any exception
+     * @throws InterruptedException If the threaded execution is interrupted
+     */
+    public <T> void forEachPredicate(PartialAggregation<T> aggregation) throws ExecutionException, InterruptedException {
+        long[] costs = getCosts();
+        long[] predicates = sortByCost(costs);
+
+        int nThreads = runtime.getCPUThreads();
+        long totalCost = Arrays.stream(costs).sum();
+        int chunkSize = (int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, totalCost / ((long) nThreads * CHUNKS_PER_THREAD)));
+
+        // Chunks handed to the pool and not collected yet, by any predicate
+        Semaphore chunksInFlight = new Semaphore(nThreads * 2);
+
+        stage.forRange(0, predicates.length, 1, i -> {
+            long predicateID = predicates[(int) i];
+            aggregate(predicateID, costs[(int) predicateID] > chunkSize, chunkSize, chunksInFlight, aggregation);
+        });
+    }
+
+    private <T> void aggregate(long predicateID,
+                               boolean split,
+                               int chunkSize,
+                               Semaphore chunksInFlight,
+                               PartialAggregation<T> aggregation) {
+        if (!split) {
+            T partial = aggregation.newPartial(predicateID);
+            forEach(predicateID, (subject, object) -> aggregation.accept(partial, subject, object));
+            aggregation.merge(predicateID, List.of(partial));
+            return;
+        }
+
+        List<T> partials = new ArrayList<>();
+        Deque<ForkJoinTask<T>> pendingChunks = new ArrayDeque<>();
+
+        IteratorTripleID triples = search(predicateID);
+        long[] chunk = new long[chunkSize * 2];
+        int n = 0;
+
+        while (triples.hasNext()) {
+            TripleID triple = triples.next();
+            chunk[n++] = triple.getSubject();
+            chunk[n++] = triple.getObject();
+
+            if (n == chunk.length) {
+                collectDoneChunks(pendingChunks, partials, chunksInFlight);
+
+                // Bound the number of chunks kept in memory across all predicates. Instead of waiting for a free slot
+                // (which could leave every thread of the pool waiting), aggregate the chunk right away if there's none
+                if (chunksInFlight.tryAcquire()) {
+                    long[] fullChunk = chunk;
+                    pendingChunks.add(runtime.getCPUPool().submit(() -> aggregateChunk(predicateID, fullChunk, fullChunk.length, aggregation)));
+
+                    chunk = new long[chunkSize * 2];
+                } else {
+                    partials.add(aggregateChunk(predicateID, chunk, n, aggregation));
+                }
+
+                n = 0;
+            }
+        }
+
+        if (n > 0)
+            partials.add(aggregateChunk(predicateID, chunk, n, aggregation));
+
+        while (!pendingChunks.isEmpty()) {
+            partials.add(pendingChunks.poll().join());
+            chunksInFlight.release();
+        }
+
+        aggregation.merge(predicateID, partials);
+    }
+
+    // Collect the partial results of the chunks which are already done, releasing their slots (their tasks keep the
+    // chunks referenced until then)
+    private static <T> void collectDoneChunks(Deque<ForkJoinTask<T>> pendingChunks, List<T> partials, Semaphore chunksInFlight) {
+        for (Iterator<ForkJoinTask<T>> it = pendingChunks.iterator(); it.hasNext(); ) {
+            ForkJoinTask<T> task = it.next();
+
+            if (task.isDone()) {
+                partials.add(task.join());
+                it.remove();
+                chunksInFlight.release();
+            }
+        }
+    }
+
+    private static <T> T aggregateChunk(long predicateID, long[] chunk, int n, PartialAggregation<T> aggregation) {
+        T partial = aggregation.newPartial(predicateID);
+        for (int i = 0; i < n; i += 2)
+            aggregation.accept(partial, chunk[i], chunk[i + 1]);
+
+        return partial;
+    }
+}
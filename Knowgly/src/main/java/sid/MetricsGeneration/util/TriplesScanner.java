@@ -0,0 +1,255 @@
+package sid.MetricsGeneration.util;
+
+import org.rdfhdt.hdt.compact.bitmap.AdjacencyList;
+import org.rdfhdt.hdt.compact.bitmap.Bitmap;
+import org.rdfhdt.hdt.compact.sequence.Sequence;
+import org.rdfhdt.hdt.enums.TripleComponentOrder;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.triples.IteratorTripleID;
+import org.rdfhdt.hdt.triples.TripleID;
+import org.rdfhdt.hdt.triples.impl.BitmapTriples;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sequential scanner of all the triples of an HDT file in SPO order, meant for full-graph passes of the metrics
+ * generators, instead of running a search (and allocating an iterator) for each subject
+ * <p>
+ * If the triples are stored as SPO BitmapTriples (the default in HDT files), cursors walk the Y (predicates) and Z
+ * (objects) sequences directly: the object at each Z position is paired with the current Y position's predicate, and
+ * the bitmaps mark where each predicate's object list and each subject's predicate list end. This means no rank/select
+ * operations or allocations per triple. Otherwise, cursors fall back to a search per subject
+ * <p>
+ * The graph can be split into subject ranges with roughly the same number of triples each (splitSubjects), so that
+ * each worker of a parallel pass can scan its own range with its own cursor
+ */
+public class TriplesScanner {
+    /**
+     * Cursor over a range of triples, which yields their IDs as primitives. Not thread-safe: each worker needs its own
+     */
+    public interface Cursor {
+        /**
+         * Advance to the next triple
+         *
+         * @return false if there are no more triples in the cursor's range
+         */
+        boolean next();
+
+        long getSubject();
+
+        long getPredicate();
+
+        long getObject();
+    }
+
+    private final HDT hdt;
+    private final long nSubjects;
+
+    // Only if the triples are SPO BitmapTriples
+    private final Sequence seqY;
+    private final Sequence seqZ;
+    private final Bitmap bitmapY;
+    private final Bitmap bitmapZ;
+    private final AdjacencyList adjY;
+    private final AdjacencyList adjZ;
+
+    public TriplesScanner(HDT hdt) {
+        this.hdt = hdt;
+        this.nSubjects = hdt.getDictionary().getNsubjects();
+
+        if (hdt.getTriples() instanceof BitmapTriples triples && triples.getOrder() == TripleComponentOrder.SPO) {
+            this.seqY = triples.getSeqY();
+            this.seqZ = triples.getSeqZ();
+            this.bitmapY = triples.getBitmapY();
+            this.bitmapZ = triples.getBitmapZ();
+            this.adjY = new AdjacencyList(seqY, bitmapY);
+            this.adjZ = new AdjacencyList(seqZ, bitmapZ);
+        } else {
+            this.seqY = null;
+            this.seqZ = null;
+            this.bitmapY = null;
+            this.bitmapZ = null;
+            this.adjY = null;
+            this.adjZ = null;
+        }
+    }
+
+    /**
+     * @return Whether cursors walk the BitmapTriples structures directly, instead of searching each subject
+     */
+    public boolean isBitmapBased() {
+        return seqZ != null;
+    }
+
+    /**
+     * @return A cursor over every triple
+     */
+    public Cursor cursor() {
+        return cursor(1, nSubjects);
+    }
+
+    /**
+     * @return A cursor over the triples of the subjects in [firstSubject, lastSubject]
+     */
+    public Cursor cursor(long firstSubject, long lastSubject) {
+        if (firstSubject < 1 || lastSubject > nSubjects || firstSubject > lastSubject + 1)
+            throw new IllegalArgumentException("Invalid subject range [" + firstSubject + ", " + lastSubject + "]");
+
+        if (!isBitmapBased() || firstSubject > lastSubject)
+            return new SearchCursor(firstSubject, lastSubject);
+
+        // Subjects are 1-based, while the lists of the adjacency lists are 0-based
+        long firstY = adjY.find(firstSubject - 1);
+        long firstZ = adjZ.find(firstY);
+        long endZ = (lastSubject == nSubjects) ? seqZ.getNumberOfElements() : adjZ.find(adjY.find(lastSubject));
+
+        return new BitmapCursor(firstSubject, firstY, firstZ, endZ);
+    }
+
+    /**
+     * Split all subjects into at most n contiguous ranges. If the triples are BitmapTriples, ranges have roughly the
+     * same number of triples each. Otherwise, they have the same number of subjects
+     *
+     * @return List of [first subject, last subject] ranges, in ascending order
+     */
+    public List<long[]> splitSubjects(int n) {
+        List<long[]> ranges = new ArrayList<>();
+        if (nSubjects == 0)
+            return ranges;
+
+        long first = 1;
+        for (int k = 1; k < n; k++) {
+            long boundary; // First subject of the next range
+            if (isBitmapBased()) {
+                long nTriples = seqZ.getNumberOfElements();
+                long z = nTriples / n * k + nTriples % n * k / n;
+                if (z == 0)
+                    continue;
+
+                // Z position -> its Y list (the predicate) -> its subject list, aligned to the subject's start
+                long y = adjZ.findListIndex(z);
+                boundary = adjY.findListIndex(y) + 1;
+            } else {
+                boundary = 1 + nSubjects / n * k + nSubjects % n * k / n;
+            }
+
+            if (boundary > first && boundary <= nSubjects) {
+                ranges.add(new long[]{first, boundary - 1});
+                first = boundary;
+            }
+        }
+
+        ranges.add(new long[]{first, nSubjects});
+        return ranges;
+    }
+
+    private class BitmapCursor implements Cursor {
+        private final long endZ;
+        private long posY;
+        private long posZ;
+
+        // Subject and predicate of the current Y position
+        private long currentSubject;
+        private long currentPredicate;
+
+        private long subject;
+        private long predicate;
+        private long object;
+
+        private BitmapCursor(long firstSubject, long firstY, long firstZ, long endZ) {
+            this.endZ = endZ;
+            this.posY = firstY;
+            this.posZ = firstZ;
+            this.currentSubject = firstSubject;
+
+            if (firstZ < endZ)
+                this.currentPredicate = seqY.get(firstY);
+        }
+
+        @Override
+        public boolean next() {
+            if (posZ >= endZ)
+                return false;
+
+            subject = currentSubject;
+            predicate = currentPredicate;
+            object = seqZ.get(posZ);
+
+            // Last object of the predicate: move to the next predicate, and to the next subject if it was its last one
+            if (bitmapZ.access(posZ)) {
+                if (bitmapY.access(posY))
+                    currentSubject++;
+
+                posY++;
+                if (posZ + 1 < endZ)
+                    currentPredicate = seqY.get(posY);
+            }
+
+            posZ++;
+            return true;
+        }
+
+        @Override
+        public long getSubject() {
+            return subject;
+        }
+
+        @Override
+        public long getPredicate() {
+            return predicate;
+        }
+
+        @Override
+        public long getObject() {
+            return object;
+        }
+    }
+
+    private class SearchCursor implements Cursor {
+        private final long lastSubject;
+        private long nextSubject;
+        private IteratorTripleID iterator = null;
+
+        private long subject;
+        private long predicate;
+        private long object;
+
+        private SearchCursor(long firstSubject, long lastSubject) {
+            this.lastSubject = lastSubject;
+            this.nextSubject = firstSubject;
+        }
+
+        @Override
+        public boolean next() {
+            while (iterator == null || !iterator.hasNext()) {
+                if (nextSubject > lastSubject)
+                    return false;
+
+                iterator = hdt.getTriples().search(new TripleID(nextSubject++, 0, 0));
+            }
+
+            TripleID triple = iterator.next();
+            subject = triple.getSubject();
+            predicate = triple.getPredicate();
+            object = triple.getObject();
+
+            return true;
+        }
+
+        @Override
+        public long getSubject() {
+            return subject;
+        }
+
+        @Override
+        public long getPredicate() {
+            return predicate;
+        }
+
+        @Override
+        public long getObject() {
+            return object;
+        }
+    }
+}
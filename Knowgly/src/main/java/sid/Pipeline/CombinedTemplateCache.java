@@ -0,0 +1,122 @@
+package sid.Pipeline;
+
+import sid.MetricsAggregation.VirtualDocumentTemplate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of combined type-based templates, used by the IndexingPipeline to avoid combining the same
+ * type-based templates (and, for some combination methods, running KMeans) again for every entity
+ * <p>
+ * Entries are keyed by the entity's sorted type IDs and, for the combination methods whose result depends on the
+ * entity's own predicates, its sorted predicate IDs. Both sets are usually shared by many entities, so there are far
+ * fewer distinct keys than entities
+ * <p>
+ * Each combined template is only computed once, even if many threads request it at the same time: the first one
+ * computes it while the others wait for its result. Failed combinations (such as KMeans not converging) are not cached
+ */
+public class CombinedTemplateCache {
+    /**
+     * Sorted type IDs and predicate IDs of an entity. The predicate IDs may be empty if the combination method doesn't
+     * depend on them
+     */
+    public static final class Key {
+        private final long[] typeIDs;
+        private final long[] predicateIDs;
+        private final int hash;
+
+        public Key(long[] typeIDs, long[] predicateIDs) {
+            this.typeIDs = typeIDs;
+            this.predicateIDs = predicateIDs;
+            this.hash = 31 * Arrays.hashCode(typeIDs) + Arrays.hashCode(predicateIDs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+
+            return hash == other.hash && Arrays.equals(typeIDs, other.typeIDs) && Arrays.equals(predicateIDs, other.predicateIDs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Map<Key, FutureTask<VirtualDocumentTemplate>> templates;
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * @param maxSize Maximum number of combined templates to keep. The least recently used ones are evicted first
+     */
+    public CombinedTemplateCache(int maxSize) {
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<VirtualDocumentTemplate>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the combined template for the given key, combining it with the given function if it isn't cached
+     */
+    public VirtualDocumentTemplate get(Key key, Callable<VirtualDocumentTemplate> combination) throws IOException,
+            InterruptedException {
+        FutureTask<VirtualDocumentTemplate> task;
+        boolean mustCombine = false;
+
+        synchronized (templates) {
+            task = templates.get(key);
+            if (task == null) {
+                task = new FutureTask<>(combination);
+                templates.put(key, task);
+                mustCombine = true;
+            }
+        }
+
+        if (mustCombine) {
+            misses.getAndIncrement();
+            task.run();
+        } else {
+            hits.getAndIncrement();
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            synchronized (templates) {
+                templates.remove(key, task);
+            }
+
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            if (cause instanceof IOException ioException) throw ioException;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+}
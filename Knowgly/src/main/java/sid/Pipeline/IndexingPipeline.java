@@ -22,23 +22,26 @@ import sid.MetricsAggregation.EntityBasedAggregator.EntityBasedMetricsAggregator
 import sid.MetricsAggregation.Field;
 import sid.MetricsAggregation.MetricsAggregator;
 import sid.MetricsAggregation.TypeBasedAggregator.TypeBasedMetricsAggregator;
+import sid.MetricsAggregation.TypeBasedAggregator.TypeBasedTemplateBuilder;
 import sid.MetricsAggregation.VirtualDocumentTemplate;
 import sid.MetricsGeneration.MetricsGenerator;
 import sid.MetricsGeneration.SPARQL.ImportanceMetricsGenerator;
 import sid.MetricsGeneration.SPARQL.InfoRankMetricsGenerator;
 import sid.SPARQLEndpoint.EmbeddedSPARQLServerEndpoint;
+import sid.SPARQLEndpoint.FederatedHDTSPARQLEndpoint;
 import sid.SPARQLEndpoint.LocalHDTSPARQLEndpoint;
 import sid.SPARQLEndpoint.RemoteSPARQLEndpoint;
 import sid.SPARQLEndpoint.SPARQLEndpoint;
+import sid.utils.ConfigurationSnapshot;
 import sid.utils.Pair;
+import sid.utils.RequestExecutor;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -77,9 +80,11 @@ public class IndexingPipeline {
     private static final String DESTINATION_CONF = "destination";
     private static final String MUST_HAVE_PREDICATES_CONF = "mustHavePredicates";
     private static final String TYPE_BASED_COMBINATION_METHOD_CONF = "typeBasedCombinationMethod";
+    private static final String TYPE_BASED_TEMPLATE_CACHE_SIZE_CONF = "typeBasedTemplateCacheSize";
 
     // Options
     private static final String HDT_OPTION = "HDT";
+    private static final String FEDERATED_HDT_OPTION = "FederatedHDT";
     private static final String ELASTIC_OPTION = "elastic";
     private static final String TERRIER_OPTION = "terrier";
     private static final String GALAGO_OPTION = "galago";
@@ -96,6 +101,9 @@ public class IndexingPipeline {
     // Maximum amount of time to wait for indexing to finish (on DBPedia-entity using HDT, it takes ~5 hours)
     private static final long INDEXING_TIMEOUT = Long.MAX_VALUE;
 
+    // Maximum number of combined type-based templates to cache by default
+    private static final int DEFAULT_TYPE_BASED_TEMPLATE_CACHE_SIZE = 10000;
+
 
     private final SPARQLEndpoint endpoint;
     private final IndexConnector indexConnector;
@@ -105,16 +113,22 @@ public class IndexingPipeline {
     private final List<String> mustHavePredicateURIs;
     private final TypeBasedTemplateCombinationMethod method;
     private VirtualDocumentTemplate fallback = null;
+    // Configuration the pipeline was created from, if any. Used to avoid reading the configuration files again
+    private ConfigurationSnapshot configuration = null;
+    // Maximum number of combined type-based templates to cache (0 to disable the cache)
+    private int typeBasedTemplateCacheSize = DEFAULT_TYPE_BASED_TEMPLATE_CACHE_SIZE;
 
     // Non-null if we are doing type-based indexing for a single type ("index slices")
     private String indexOnlyTypeURI = null;
     private TypeBasedMetricsAggregator indexOnlyTypeURIAggregator = null;
 
     public static List<String> getMustHavePredicateURIs() throws IOException {
-        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
+        return getMustHavePredicateURIs(ConfigurationSnapshot.fromConfigurationFiles(CONFIGURATION_FILE));
+    }
 
+    public static List<String> getMustHavePredicateURIs(ConfigurationSnapshot configuration) {
         ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(mapData);
+        JsonNode rootNode = configuration.get(CONFIGURATION_FILE);
 
         return objectMapper.convertValue(rootNode.get(MUST_HAVE_PREDICATES_CONF), new TypeReference<List<String>>() {
         });
@@ -128,27 +142,62 @@ public class IndexingPipeline {
      */
     public static IndexingPipeline fromConfigurationFile(MetricsAggregator engine, VirtualDocumentTemplate fallback) throws IOException,
             NotFoundException, ClassNotFoundException, InstantiationException, IllegalAccessException, URISyntaxException {
-        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
+        return fromConfiguration(loadConfiguration(), engine, fallback);
+    }
+
+    /**
+     * Load a snapshot of every configuration file used while indexing: this pipeline's, the metrics aggregators',
+     * the index connectors' and the destination's endpoint configuration. Its source's configuration is read by
+     * the endpoint itself
+     *
+     * @throws IOException If there is any IO error with the configuration files
+     */
+    public static ConfigurationSnapshot loadConfiguration() throws IOException {
+        ConfigurationSnapshot pipelineConfiguration = ConfigurationSnapshot.fromConfigurationFiles(CONFIGURATION_FILE)
+                .requireKeys(CONFIGURATION_FILE, SOURCE_CONF, DESTINATION_CONF, MUST_HAVE_PREDICATES_CONF);
+
+        String destination = pipelineConfiguration.get(CONFIGURATION_FILE).get(DESTINATION_CONF).asText();
+        String endpointConfigurationFile = switch (destination) {
+            case ELASTIC_OPTION -> ElasticConnector.ENDPOINT_CONFIGURATION_FILE;
+            case TERRIER_OPTION -> TerrierConnector.ENDPOINT_CONFIGURATION_FILE;
+            case GALAGO_OPTION -> GalagoConnector.ENDPOINT_CONFIGURATION_FILE;
+            case LUCENE_OPTION -> LuceneConnector.ENDPOINT_CONFIGURATION_FILE;
+            default -> throw new RuntimeException("Unknown option for destination: " + destination);
+        };
+
+        List<String> files = new ArrayList<>(MetricsAggregator.CONFIGURATION_FILES);
+        files.addAll(IndexConnector.CONFIGURATION_FILES);
+        files.add(endpointConfigurationFile);
+
+        return pipelineConfiguration.merge(ConfigurationSnapshot.fromConfigurationFiles(files));
+    }
+
+    /**
+     * IndexingPipeline with one MetricsAggregator, from an already loaded configuration (see loadConfiguration)
+     *
+     * @param fallback Fallback template in case of clustering issues, only for type-based indexing (e.g. cases where
+     *                 there are less predicates associated to a type t than there are fields)
+     */
+    public static IndexingPipeline fromConfiguration(ConfigurationSnapshot configuration,
+                                                     MetricsAggregator engine,
+                                                     VirtualDocumentTemplate fallback) throws IOException,
+            NotFoundException, ClassNotFoundException, InstantiationException, IllegalAccessException, URISyntaxException {
+        configuration.requireKeys(CONFIGURATION_FILE, SOURCE_CONF, DESTINATION_CONF, MUST_HAVE_PREDICATES_CONF, TYPE_BASED_COMBINATION_METHOD_CONF);
+        MetricsAggregator.validateConfiguration(configuration);
 
         ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(mapData);
+        JsonNode rootNode = configuration.get(CONFIGURATION_FILE);
 
         String source = rootNode.get(SOURCE_CONF).asText();
         SPARQLEndpoint endpoint = switch (source) {
             case HDT_OPTION -> LocalHDTSPARQLEndpoint.fromConfigurationFile();
+            case FEDERATED_HDT_OPTION -> FederatedHDTSPARQLEndpoint.fromConfigurationFile();
             case EMBEDDED_SPARQL_ENDPOINT_OPTION -> EmbeddedSPARQLServerEndpoint.fromConfigurationFile();
             case REMOTE_SPARQL_ENDPOINT_OPTION -> RemoteSPARQLEndpoint.fromConfigurationFile();
             default -> throw new RuntimeException("Unknown option for source: " + source);
         };
 
-        String destination = rootNode.get(DESTINATION_CONF).asText();
-        IndexConnector indexer = switch (destination) {
-            case ELASTIC_OPTION -> ElasticConnector.fromConfigurationFile();
-            case TERRIER_OPTION -> TerrierConnector.fromConfigurationFile();
-            case GALAGO_OPTION -> GalagoConnector.fromConfigurationFile();
-            case LUCENE_OPTION -> LuceneConnector.fromConfigurationFile();
-            default -> throw new RuntimeException("Unknown option for destination: " + destination);
-        };
+        IndexConnector indexer = getIndexConnector(configuration);
 
         String methodOption = rootNode.get(TYPE_BASED_COMBINATION_METHOD_CONF).asText();
 
@@ -163,13 +212,31 @@ public class IndexingPipeline {
             default -> throw new RuntimeException("Unknown option for typeBasedCombinationMethod: " + methodOption);
         };
 
-        return new IndexingPipeline(endpoint,
+        IndexingPipeline pipeline = new IndexingPipeline(endpoint,
                 indexer,
                 engine,
                 objectMapper.convertValue(rootNode.get(MUST_HAVE_PREDICATES_CONF), new TypeReference<List<String>>() {
                 }),
                 method,
                 fallback);
+
+        if (rootNode.has(TYPE_BASED_TEMPLATE_CACHE_SIZE_CONF))
+            pipeline.setTypeBasedTemplateCacheSize(rootNode.get(TYPE_BASED_TEMPLATE_CACHE_SIZE_CONF).asInt());
+
+        pipeline.configuration = configuration;
+        return pipeline;
+    }
+
+    // Instance the destination's index connector from the configuration
+    private static IndexConnector getIndexConnector(ConfigurationSnapshot configuration) throws IOException, URISyntaxException {
+        String destination = configuration.get(CONFIGURATION_FILE).get(DESTINATION_CONF).asText();
+        return switch (destination) {
+            case ELASTIC_OPTION -> ElasticConnector.fromConfiguration(configuration);
+            case TERRIER_OPTION -> TerrierConnector.fromConfiguration(configuration);
+            case GALAGO_OPTION -> GalagoConnector.fromConfiguration(configuration);
+            case LUCENE_OPTION -> LuceneConnector.fromConfiguration(configuration);
+            default -> throw new RuntimeException("Unknown option for destination: " + destination);
+        };
     }
 
     /**
@@ -181,35 +248,46 @@ public class IndexingPipeline {
                                                          MetricsAggregator engine2,
                                                          double weight) throws IOException,
             NotFoundException, ClassNotFoundException, InstantiationException, IllegalAccessException, URISyntaxException {
-        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
+        return fromConfiguration(loadConfiguration(), engine1, engine2, weight);
+    }
+
+    /**
+     * IndexingPipeline with two metrics aggregators, from an already loaded configuration (see loadConfiguration)
+     * Warning: Combining type-based engines is not supported. If the first engine is type-based,
+     * the second engine will be ignored. Subsequently, if the second engine is type-based, it will be ignored.
+     */
+    public static IndexingPipeline fromConfiguration(ConfigurationSnapshot configuration,
+                                                     MetricsAggregator engine1,
+                                                     MetricsAggregator engine2,
+                                                     double weight) throws IOException,
+            NotFoundException, ClassNotFoundException, InstantiationException, IllegalAccessException, URISyntaxException {
+        configuration.requireKeys(CONFIGURATION_FILE, SOURCE_CONF, DESTINATION_CONF, MUST_HAVE_PREDICATES_CONF);
+        MetricsAggregator.validateConfiguration(configuration);
 
         ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(mapData);
+        JsonNode rootNode = configuration.get(CONFIGURATION_FILE);
 
         String source = rootNode.get(SOURCE_CONF).asText();
         SPARQLEndpoint endpoint = switch (source) {
             case HDT_OPTION -> LocalHDTSPARQLEndpoint.fromConfigurationFile();
+            case FEDERATED_HDT_OPTION -> FederatedHDTSPARQLEndpoint.fromConfigurationFile();
             case EMBEDDED_SPARQL_ENDPOINT_OPTION -> EmbeddedSPARQLServerEndpoint.fromConfigurationFile();
             case REMOTE_SPARQL_ENDPOINT_OPTION -> RemoteSPARQLEndpoint.fromConfigurationFile();
             default -> throw new RuntimeException("Unknown option for source: " + source);
         };
 
-        String destination = rootNode.get(DESTINATION_CONF).asText();
-        IndexConnector indexer = switch (destination) {
-            case ELASTIC_OPTION -> ElasticConnector.fromConfigurationFile();
-            case TERRIER_OPTION -> TerrierConnector.fromConfigurationFile();
-            case GALAGO_OPTION -> GalagoConnector.fromConfigurationFile();
-            case LUCENE_OPTION -> LuceneConnector.fromConfigurationFile();
-            default -> throw new RuntimeException("Unknown option for destination: " + destination);
-        };
+        IndexConnector indexer = getIndexConnector(configuration);
 
-        return new IndexingPipeline(endpoint,
+        IndexingPipeline pipeline = new IndexingPipeline(endpoint,
                 indexer,
                 engine1,
                 engine2,
                 weight,
                 objectMapper.convertValue(rootNode.get(MUST_HAVE_PREDICATES_CONF), new TypeReference<List<String>>() {
                 }));
+
+        pipeline.configuration = configuration;
+        return pipeline;
     }
 
     /**
@@ -264,6 +342,14 @@ public class IndexingPipeline {
         this.fallback = fallback;
     }
 
+    /**
+     * Set the maximum number of combined type-based templates to cache during type-based indexing (0 to disable the
+     * cache)
+     */
+    public void setTypeBasedTemplateCacheSize(int typeBasedTemplateCacheSize) {
+        this.typeBasedTemplateCacheSize = typeBasedTemplateCacheSize;
+    }
+
     public void indexOnlyTypeURI(String typeURI, TypeBasedMetricsAggregator indexOnlyTypeURIAggregator) {
         this.indexOnlyTypeURI = typeURI;
         this.indexOnlyTypeURIAggregator = indexOnlyTypeURIAggregator;
@@ -319,9 +405,18 @@ public class IndexingPipeline {
         LocalHDTSPARQLEndpoint endpointHDT = (LocalHDTSPARQLEndpoint) endpoint;
 
         Map<Long, VirtualDocumentTemplate> typeBasedTemplates;
+        MetricsAggregator templateAggregator = null;
+        CombinedTemplateCache combinedTemplateCache = null;
         if (!globalVdocs) {
             if (aggregator1 instanceof TypeBasedMetricsAggregator) { // Type-based aggregator, cache all type-based templates now
                 typeBasedTemplates = getTypeBasedTemplates(endpointHDT, (TypeBasedMetricsAggregator) aggregator1);
+
+                // Shared by all entities, so that the configuration is only read once
+                ConfigurationSnapshot aggregatorConfiguration = (configuration != null) ? configuration : MetricsAggregator.loadConfiguration();
+                templateAggregator = new DummyMetricsAggregator(MetricsAggregator.getEmptyVirtualDocumentTemplate(aggregatorConfiguration),
+                        aggregatorConfiguration);
+                if (typeBasedTemplateCacheSize > 0)
+                    combinedTemplateCache = new CombinedTemplateCache(typeBasedTemplateCacheSize);
             } else { // Entity-based aggregator, cache all metrics now
                 typeBasedTemplates = null;
                 ((EntityBasedMetricsAggregator) aggregator1).cacheAllMetrics(endpointHDT, fallback);
@@ -355,6 +450,8 @@ public class IndexingPipeline {
             long entityID = it.next();
 
             VirtualDocumentTemplate finalTemplate = template;
+            MetricsAggregator finalTemplateAggregator = templateAggregator;
+            CombinedTemplateCache finalCombinedTemplateCache = combinedTemplateCache;
             completionService.submit(() -> {
                 try {
                     String entityURI = endpointHDT.hdt.getDictionary().idToString(entityID, TripleComponentRole.SUBJECT).toString();
@@ -369,7 +466,9 @@ public class IndexingPipeline {
                                         endpointHDT,
                                         typeBasedTemplates,
                                         method,
-                                        fallback);
+                                        fallback,
+                                        finalTemplateAggregator,
+                                        finalCombinedTemplateCache);
                             else { // Entity-based aggregator
                                 EntityBasedMetricsAggregator clonedAggregator = (EntityBasedMetricsAggregator) aggregator1.clone();
                                 clonedAggregator.setEntityURI(entityURI);
@@ -426,6 +525,10 @@ public class IndexingPipeline {
         waitAndFinishIndexing(executor);
 
         System.out.println("Finished indexing! Entities indexed: " + count.get() + "/" + endpointHDT.hdt.getDictionary().getNsubjects());
+
+        if (combinedTemplateCache != null)
+            System.out.println("Combined type-based templates: " + combinedTemplateCache.getMisses() + " (reused "
+                    + combinedTemplateCache.getHits() + " times)");
     }
 
 
@@ -482,41 +585,63 @@ public class IndexingPipeline {
         List<Resource> entities = entityExtractor.getAllEntityURIs();
         AtomicInteger count = new AtomicInteger(1);
 
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        if (endpoint instanceof RemoteSPARQLEndpoint remoteEndpoint) {
+            // Extracting an entity from a remote endpoint mostly waits for its responses, so instead of one thread per
+            // processor, extract as many entities at the same time as requests can be in flight, each one in its own
+            // virtual thread. Once the endpoint is saturated, new entities wait for the previous ones (backpressure)
+            try (RequestExecutor extractions = new RequestExecutor("entity-extraction",
+                    remoteEndpoint.getRequestExecutor().getMaxInFlightRequests())) {
+                for (Resource entity : entities)
+                    extractions.submit(() -> indexSPARQLEntity(entityExtractor, template, entity, count, entities.size()));
+
+                extractions.awaitCompletion();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e);
+            }
 
-        // Submit a task for each entity, since the entities list's parallelStream() will split its contents into even
-        // chunks, leaving some threads doing nothing while a few of them do all the hard work for big entities (the
-        // indexing task time heavily depends on each entity: the more relations and properties, the worse)
-        for (Resource entity : entities) {
-            completionService.submit(() -> {
-                        try {
-                            ExtractedEntity extractedEntity = entityExtractor.extractEntity(entity);
+            System.out.println("Running last bulk update...");
+            indexConnector.finishIndexing();
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+
+            // Submit a task for each entity, since the entities list's parallelStream() will split its contents into even
+            // chunks, leaving some threads doing nothing while a few of them do all the hard work for big entities (the
+            // indexing task time heavily depends on each entity: the more relations and properties, the worse)
+            for (Resource entity : entities) {
+                completionService.submit(() -> indexSPARQLEntity(entityExtractor, template, entity, count, entities.size()));
+            }
 
-                            // Create and index a vdoc for the entity, using the inferred vdoc template and its extracted entity
-                            indexConnector.addDocumentToIndex(indexConnector.createEntityDocument(
-                                    extractedEntity,
-                                    template,
-                                    // Use the extractor's URI renaming strategy, which was defined in its config file
-                                    entityExtractor.config.uriRenamingStrategy));
+            waitAndFinishIndexing(executor);
+        }
 
-                            System.out.print("Indexed entity " + count.getAndIncrement() + " of " + entities.size() + '\r');
-                        } catch (Exception e) {
-                            // Count it as indexed anyway!
-                            // Reasons it can fail:
-                            //      Its URI is too long (>512 characters, which is the maximum for a docID in elastic)
-                            System.out.print("Indexed entity " + count.getAndIncrement() + " of " + entities.size() + '\r');
-                            return null;
-                        }
+        System.out.println("Finished indexing!");
+    }
 
-                        return null;
-                    }
-            );
+    private Void indexSPARQLEntity(SPARQLEntityExtractor entityExtractor,
+                                   VirtualDocumentTemplate template,
+                                   Resource entity,
+                                   AtomicInteger count,
+                                   int nEntities) {
+        try {
+            ExtractedEntity extractedEntity = entityExtractor.extractEntity(entity);
+
+            // Create and index a vdoc for the entity, using the inferred vdoc template and its extracted entity
+            indexConnector.addDocumentToIndex(indexConnector.createEntityDocument(
+                    extractedEntity,
+                    template,
+                    // Use the extractor's URI renaming strategy, which was defined in its config file
+                    entityExtractor.config.uriRenamingStrategy));
+
+            System.out.print("Indexed entity " + count.getAndIncrement() + " of " + nEntities + '\r');
+        } catch (Exception e) {
+            // Count it as indexed anyway!
+            // Reasons it can fail:
+            //      Its URI is too long (>512 characters, which is the maximum for a docID in elastic)
+            System.out.print("Indexed entity " + count.getAndIncrement() + " of " + nEntities + '\r');
         }
 
-        waitAndFinishIndexing(executor);
-
-        System.out.println("Finished indexing!");
+        return null;
     }
 
     private void waitAndFinishIndexing(ExecutorService executor) throws InterruptedException, IOException {
@@ -570,6 +695,60 @@ public class IndexingPipeline {
         return joinTypeBasedVdocTemplates(entityID, endpoint, templatesForEntity, method);
     }
 
+    /**
+     * Same as generateTypeBasedTemplateForEntity, but reusing the combined templates of previous entities with the same
+     * types via the given cache. Unless the Union combination method is used, the entity's predicates are also part of
+     * the cache key, as the combined templates only contain the predicates of the entity
+     *
+     * @param templateAggregator    Aggregator used to run KMeans and build the templates for the combination methods
+     *                              which need it
+     * @param combinedTemplateCache Cache of combined templates. If null, templates are combined for every entity
+     */
+    public static VirtualDocumentTemplate generateTypeBasedTemplateForEntity(long entityID,
+                                                                             long typePredicateID,
+                                                                             LocalHDTSPARQLEndpoint endpoint,
+                                                                             Map<Long, VirtualDocumentTemplate> typeBasedTemplates,
+                                                                             TypeBasedTemplateCombinationMethod method,
+                                                                             VirtualDocumentTemplate fallback,
+                                                                             MetricsAggregator templateAggregator,
+                                                                             CombinedTemplateCache combinedTemplateCache) throws IOException, InterruptedException {
+        // Get all types for this entity which have a template, sorted
+        Set<Long> entityTypes = new TreeSet<>();
+        var typesQuery = endpoint.hdt.getTriples().search(new TripleID(entityID, typePredicateID, 0));
+        while (typesQuery.hasNext()) {
+            long typeID = typesQuery.next().getObject();
+            if (typeBasedTemplates.containsKey(typeID))
+                entityTypes.add(typeID);
+        }
+
+        // Return at least the fallback if the entity had no types (ignoring the virtualType)
+        if (entityTypes.isEmpty())
+            return fallback;
+
+        List<VirtualDocumentTemplate> templatesForEntity = new ArrayList<>(entityTypes.size());
+        for (long typeID : entityTypes)
+            templatesForEntity.add(typeBasedTemplates.get(typeID));
+
+        if (combinedTemplateCache == null)
+            return joinTypeBasedVdocTemplates(entityID, endpoint, templatesForEntity, method, templateAggregator);
+
+        long[] typeIDs = entityTypes.stream().mapToLong(Long::longValue).toArray();
+        long[] predicateIDs = (method == TypeBasedTemplateCombinationMethod.Union) ? new long[0] : getPredicateIDs(entityID, endpoint);
+
+        return combinedTemplateCache.get(new CombinedTemplateCache.Key(typeIDs, predicateIDs),
+                () -> joinTypeBasedVdocTemplates(entityID, endpoint, templatesForEntity, method, templateAggregator));
+    }
+
+    // Sorted IDs of all distinct predicates of the entity
+    private static long[] getPredicateIDs(long entityID, LocalHDTSPARQLEndpoint endpoint) {
+        LongStream.Builder predicateIDs = LongStream.builder();
+        var predicatesForEntityQuery = endpoint.hdt.getTriples().search(new TripleID(entityID, 0, 0));
+        while (predicatesForEntityQuery.hasNext())
+            predicateIDs.add(predicatesForEntityQuery.next().getPredicate());
+
+        return predicateIDs.build().distinct().sorted().toArray();
+    }
+
     /**
      * Join a list of type-based VirtualDocumentTemplates assigned to an entity
      * <p>
@@ -583,6 +762,20 @@ public class IndexingPipeline {
                                                                      LocalHDTSPARQLEndpoint endpoint,
                                                                      List<VirtualDocumentTemplate> templates,
                                                                      TypeBasedTemplateCombinationMethod method) throws IOException {
+        return joinTypeBasedVdocTemplates(entityID, endpoint, templates, method, null);
+    }
+
+    /**
+     * Same as joinTypeBasedVdocTemplates, using the given aggregator to run KMeans and build the templates for the
+     * combination methods which need it (maximumValues and geometricMean)
+     *
+     * @param templateAggregator Aggregator to use. If null, a new one will be created from the configuration file
+     */
+    public static VirtualDocumentTemplate joinTypeBasedVdocTemplates(long entityID,
+                                                                     LocalHDTSPARQLEndpoint endpoint,
+                                                                     List<VirtualDocumentTemplate> templates,
+                                                                     TypeBasedTemplateCombinationMethod method,
+                                                                     MetricsAggregator templateAggregator) throws IOException {
         // Avoid parsing it from the configuration file (avoids I/O penalties)
         VirtualDocumentTemplate tCombined = new VirtualDocumentTemplate();
         for (Field f : templates.get(0).fields)
@@ -593,9 +786,9 @@ public class IndexingPipeline {
         } else if (method == TypeBasedTemplateCombinationMethod.Union) {
             return combineTemplatesWithUnion(templates, tCombined);
         } else if (method == TypeBasedTemplateCombinationMethod.MaximumValues) {
-            return combineTemplatesWithMaximumValues(entityID, endpoint, templates);
+            return combineTemplatesWithMaximumValues(entityID, endpoint, templates, templateAggregator);
         } else if (method == TypeBasedTemplateCombinationMethod.GeometricMean) {
-            return combineTemplatesWithGeometricMean(entityID, endpoint, templates);
+            return combineTemplatesWithGeometricMean(entityID, endpoint, templates, templateAggregator);
         } else if (method == TypeBasedTemplateCombinationMethod.Repetitions) {
             return combineTemplatesWithRepetitions(entityID, endpoint, templates, tCombined);
         }
@@ -649,7 +842,7 @@ public class IndexingPipeline {
         return tCombined;
     }
 
-    private static VirtualDocumentTemplate combineTemplatesWithGeometricMean(long entityID, LocalHDTSPARQLEndpoint endpoint, List<VirtualDocumentTemplate> templates) throws IOException {
+    private static VirtualDocumentTemplate combineTemplatesWithGeometricMean(long entityID, LocalHDTSPARQLEndpoint endpoint, List<VirtualDocumentTemplate> templates, MetricsAggregator templateAggregator) throws IOException {
         Set<String> predicatesForEntity = new HashSet<>();
         var predicatesForEntityQuery = endpoint.hdt.getTriples().search(new TripleID(entityID, 0, 0));
         while (predicatesForEntityQuery.hasNext()) {
@@ -697,12 +890,10 @@ public class IndexingPipeline {
             kMeansEntries.add(new MetricsAggregator.ResourceWrapper(ResourceFactory.createResource(entry.getKey()), gmean));
         }
 
-        MetricsAggregator dummyAggregator = new DummyMetricsAggregator(MetricsAggregator.getEmptyVirtualDocumentTemplate());
-
-        return dummyAggregator.getVirtualDocumentTemplate(MetricsAggregator.runKMeansWithoutAggregator(kMeansEntries));
+        return getTemplateFromKMeans(kMeansEntries, templateAggregator);
     }
 
-    private static VirtualDocumentTemplate combineTemplatesWithMaximumValues(long entityID, LocalHDTSPARQLEndpoint endpoint, List<VirtualDocumentTemplate> templates) throws IOException {
+    private static VirtualDocumentTemplate combineTemplatesWithMaximumValues(long entityID, LocalHDTSPARQLEndpoint endpoint, List<VirtualDocumentTemplate> templates, MetricsAggregator templateAggregator) throws IOException {
         Set<String> predicatesForEntity = new HashSet<>();
         var predicatesForEntityQuery = endpoint.hdt.getTriples().search(new TripleID(entityID, 0, 0));
         while (predicatesForEntityQuery.hasNext()) {
@@ -738,9 +929,15 @@ public class IndexingPipeline {
             kMeansEntries.add(new MetricsAggregator.ResourceWrapper(ResourceFactory.createResource(entry.getKey()), entry.getValue()));
         }
 
-        MetricsAggregator dummyAggregator = new DummyMetricsAggregator(MetricsAggregator.getEmptyVirtualDocumentTemplate());
+        return getTemplateFromKMeans(kMeansEntries, templateAggregator);
+    }
+
+    private static VirtualDocumentTemplate getTemplateFromKMeans(List<MetricsAggregator.ResourceWrapper> kMeansEntries,
+                                                                 MetricsAggregator templateAggregator) throws IOException {
+        if (templateAggregator == null)
+            templateAggregator = new DummyMetricsAggregator(MetricsAggregator.getEmptyVirtualDocumentTemplate());
 
-        return dummyAggregator.getVirtualDocumentTemplate(MetricsAggregator.runKMeansWithoutAggregator(kMeansEntries));
+        return templateAggregator.getVirtualDocumentTemplate(templateAggregator.runKMeansWithoutReclustering(kMeansEntries));
     }
 
     private static VirtualDocumentTemplate combineTemplatesWithUnion(List<VirtualDocumentTemplate> templates, VirtualDocumentTemplate tCombined) {
@@ -823,70 +1020,36 @@ public class IndexingPipeline {
     /**
      * Generate and return a type-based VirtualDocumentTemplate for every type, using the provided engine. It will
      * automatically exclude the virtualType, if it exists
+     * <p>
+     * The templates are generated in batch by a TypeBasedTemplateBuilder, which retrieves the metrics of every type at
+     * once
      *
      * @throws InterruptedException If the threaded execution is interrupted
      */
     public static Map<Long, VirtualDocumentTemplate> getTypeBasedTemplates(LocalHDTSPARQLEndpoint endpoint,
-                                                                           TypeBasedMetricsAggregator engine) throws InterruptedException {
-        Map<Long, VirtualDocumentTemplate> typeBasedTemplates = new ConcurrentHashMap<>();
-
+                                                                           TypeBasedMetricsAggregator engine) throws IOException,
+            ExecutionException, InterruptedException {
         long typePredicateID = endpoint.hdt.getDictionary().stringToId(ImportanceMetricsGenerator.TYPE_URI, TripleComponentRole.PREDICATE);
-        long virtualTypeID = endpoint.hdt.getDictionary().stringToId(SPARQLEndpoint.VIRTUAL_TYPE, TripleComponentRole.OBJECT);
 
-        // Get all (allowed) types
-        Set<Long> types = new HashSet<>();
+        // Get all distinct types first, so that each one is only decoded and checked once
+        Set<Long> typeIDs = new HashSet<>();
         var typesQuery = endpoint.hdt.getTriples().search(new TripleID(0, typePredicateID, 0));
-        while (typesQuery.hasNext()) {
-            long t = typesQuery.next().getObject();
-            Resource typeResource = ResourceFactory.createResource(endpoint.hdt.getDictionary().idToString(t, TripleComponentRole.OBJECT).toString());
-
-            if (engine.isTypeAllowed(typeResource))
-                types.add(t);
-        }
-
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
-
-        AtomicInteger count = new AtomicInteger(1);
-        AtomicInteger countFailed = new AtomicInteger(0);
-
-        for (long type : types) {
-            completionService.submit(() -> {
-                try {
-                    String typeString = endpoint.hdt.getDictionary().idToString(type, TripleComponentRole.OBJECT).toString();
-
-                    // Clone the engine and change its type
-                    MetricsAggregator clonedEngine = engine.clone();
-                    ((TypeBasedMetricsAggregator) clonedEngine).typeURI = typeString;
-
-                    VirtualDocumentTemplate t = clonedEngine.createVirtualDocumentTemplate(endpoint);
-
-                    typeBasedTemplates.put(type, t);
-                    System.out.print("Generated template for type " + count.getAndIncrement() + " of " + types.size() + '\r');
-                } catch (Exception e) {
-                    countFailed.getAndIncrement();
-
-                    count.getAndIncrement();
-                    String typeString = endpoint.hdt.getDictionary().idToString(type, TripleComponentRole.PREDICATE).toString();
-                    // Its KMeans run probably didn't have enough entries and couldn't converge
-                    System.err.println("Warning: Couldn't create a template for type " + typeString + ", reason: " + e);
-                    return null;
-                }
-
-                return null;
-            });
-        }
-
-        executor.shutdown();
-
-        if (!executor.awaitTermination(INDEXING_TIMEOUT, TimeUnit.HOURS)) {
-            throw new RuntimeException("Timeout when waiting for the type-based template generation tasks to complete!");
+        while (typesQuery.hasNext())
+            typeIDs.add(typesQuery.next().getObject());
+
+        // Get all allowed types (URI <-> ID)
+        LongPredicate typeIDFilter = engine.getTypeIDFilter(endpoint.hdt.getDictionary());
+        Map<String, Long> types = new HashMap<>();
+        for (long t : typeIDs) {
+            if (typeIDFilter.test(t))
+                types.put(endpoint.hdt.getDictionary().idToString(t, TripleComponentRole.OBJECT).toString(), t);
         }
 
-        System.out.println("Finished waiting for type-based template generation jobs...");
-        System.out.println("Failed types: " + countFailed + "/" + count);
+        Map<String, VirtualDocumentTemplate> templates = new TypeBasedTemplateBuilder(endpoint, engine).build(types.keySet());
 
-        executor.shutdownNow();
+        Map<Long, VirtualDocumentTemplate> typeBasedTemplates = new ConcurrentHashMap<>();
+        for (var entry : templates.entrySet())
+            typeBasedTemplates.put(types.get(entry.getKey()), entry.getValue());
 
         return typeBasedTemplates;
     }
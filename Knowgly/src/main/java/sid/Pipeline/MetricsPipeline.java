@@ -15,6 +15,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 
 /**
  * Pipeline class for generating metrics according to its configuration, handling internally any kind of conversion
@@ -29,18 +30,23 @@ public class MetricsPipeline {
     public static final String INFORANK_METRICS_ALGORITHM_CONF = "inforankMetricsAlgorithm";
     public static final String CALCULATE_IMPORTANCE_METRICS_CONF = "calculateImportanceMetrics";
     public static final String IMPORTANCE_METRICS_ALGORITHM_CONF = "importanceMetricsAlgorithm";
+    public static final String METRICS_HDT_MERGE_CONF = "metricsHDTMerge"; // Optional
 
     // Options
     public static final String HDT_OPTION = "HDT";
     public static final String RDF_OPTION = "RDF";
     public static final String EMBEDDED_SPARQL_ENDPOINT_OPTION = "EmbeddedSPARQLServerEndpoint";
     public static final String REMOTE_SPARQL_ENDPOINT_OPTION = "RemoteSPARQLEndpoint";
+    public static final String CONCATENATION_OPTION = "concatenation";
+    public static final String UNION_OPTION = "union";
 
     private SPARQLEndpoint endpoint;
     private final boolean calculateInfoRankMetrics;
     private final boolean useRDFInInforankMetrics;
     private final boolean calculateImportanceMetrics;
     private final boolean useRDFInImportanceMetrics;
+    // Whether HDT metrics are joined with an HDT KG via a FederatedHDTSPARQLEndpoint, instead of concatenating them
+    private boolean mergeHDTMetricsAsUnion = false;
     MetricsGenerator inforankMetricsGenerator;
     MetricsGenerator importanceMetricsGenerator;
 
@@ -112,7 +118,7 @@ public class MetricsPipeline {
         if ((useRDFInInforankMetrics || useRDFInImportanceMetrics) && endpoint instanceof LocalHDTSPARQLEndpoint)
             throw new RuntimeException("Using a local HDT endpoint as a source for RDF metrics engines is not supported.");
 
-        return new MetricsPipeline(endpoint,
+        MetricsPipeline pipeline = new MetricsPipeline(endpoint,
                 calculateInfoRankMetrics,
                 useRDFInInforankMetrics,
                 calculateImportanceMetrics,
@@ -120,6 +126,17 @@ public class MetricsPipeline {
                 inforanksMetricsGenerator,
                 importanceMetricsGenerator,
                 rootNode.get(ADD_VIRTUAL_TYPES_CONF).asBoolean());
+
+        if (rootNode.has(METRICS_HDT_MERGE_CONF)) {
+            String merge = rootNode.get(METRICS_HDT_MERGE_CONF).asText();
+            pipeline.setMergeHDTMetricsAsUnion(switch (merge) {
+                case CONCATENATION_OPTION -> false;
+                case UNION_OPTION -> true;
+                default -> throw new RuntimeException("Unknown option for metricsHDTMerge: " + merge);
+            });
+        }
+
+        return pipeline;
     }
 
     public MetricsPipeline(SPARQLEndpoint endpoint,
@@ -151,6 +168,15 @@ public class MetricsPipeline {
         }
     }
 
+    /**
+     * If true, HDT metrics will be joined with an HDT KG as a FederatedHDTSPARQLEndpoint over both files, instead of
+     * concatenating them into the KG's file. This avoids rewriting (and indexing) the whole KG, and allows to regenerate
+     * the metrics independently. False by default
+     */
+    public void setMergeHDTMetricsAsUnion(boolean mergeHDTMetricsAsUnion) {
+        this.mergeHDTMetricsAsUnion = mergeHDTMetricsAsUnion;
+    }
+
     /**
      * Run the pipeline
      * <p>
@@ -200,6 +226,9 @@ public class MetricsPipeline {
                 // since the metrics HDT file has been concatenated with the results of previous metrics generators
                 // internally. WE only have to replace the previous reference with this one as the previous one
                 // is now invalid (the file has changed)
+                if (HDTEndpointToMerge != null)
+                    HDTEndpointToMerge.hdt.close();
+
                 HDTEndpointToMerge = ((ImportanceMetricsGenerator) importanceMetricsGenerator).getMetricsHDT(false);
             }
         }
@@ -208,6 +237,14 @@ public class MetricsPipeline {
             if (endpoint instanceof SPARQLEndpointWithNamedGraphs) { // RDF endpoint, add it as a subgraph
                 System.out.println("Merging metrics with the KG as a subgraph...");
                 ((SPARQLEndpointWithNamedGraphs) endpoint).addNamedModel(HDTEndpointToMerge.baseURI, HDTEndpointToMerge.model);
+                HDTEndpointToMerge.hdt.close();
+            } else if (mergeHDTMetricsAsUnion) { // HDT endpoint, query both files as one
+                System.out.println("Merging metrics with the KG file as a federated HDT union...");
+                // Reopened with an index, since it will be queried
+                HDTEndpointToMerge.hdt.close();
+                // The KG goes first, so that its IDs are used as is
+                endpoint = new FederatedHDTSPARQLEndpoint(List.of((LocalHDTSPARQLEndpoint) endpoint,
+                        new LocalHDTSPARQLEndpoint(HDTEndpointToMerge.datasetLocation, HDTEndpointToMerge.baseURI, true)));
             } else { // HDT endpoint, add it by concatenating them
                 System.out.println("Merging metrics with the KG file as an HDT concatenation...");
                 LocalHDTSPARQLEndpoint endpointAsHDT = (LocalHDTSPARQLEndpoint) endpoint;
@@ -6,6 +6,7 @@ import org.rdfhdt.hdt.exceptions.ParserException;
 import sid.Connectors.Elastic.ElasticConnector;
 import sid.Connectors.Galago.GalagoConnector;
 import sid.Connectors.IndexConnector;
+import sid.Connectors.Lucene.BM25FRescorer;
 import sid.Connectors.Lucene.LuceneConnector;
 import sid.Connectors.Terrier.TerrierConnector;
 import sid.Evaluation.Evaluator;
@@ -19,6 +20,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -29,8 +31,17 @@ import java.util.concurrent.ExecutionException;
  * system and TREC queries file and stores the results in a .run file
  * <p>
  * If no output path is chosen, it will be stored in 'evaluation/metrics_testing/metrics_aggregator_results'
+ * <p>
+ * The lucene connector can also run the rest of the models galago supports, in-process (see the -m option)
+ * <p>
+ * For parameter sweeps (such as the CA scripts'), the lucene connector also has a sweep mode (see the -s option and
+ * runSweep), which runs the queries once and re-scores every following set of parameters in memory
  */
 public class RunEvaluator {
+    // Printed on stdout once each sweep point has been written to its output file
+    public static final String SWEEP_DONE = "SWEEP_DONE ";
+    public static final String SWEEP_ERROR = "SWEEP_ERROR ";
+
     public static void main(String[] args) throws IOException,
             NotFoundException,
             ClassNotFoundException,
@@ -43,6 +54,9 @@ public class RunEvaluator {
         // Ensure a homogeneous formatting  (avoids conflicts of decimal commas when writing results to ntriples, for example)
         Locale.setDefault(Locale.US);
 
+        // Weights and BM25F parameters are read from stdin in sweep mode
+        boolean sweep = Arrays.asList(args).contains("-s");
+
         Options options = new Options();
 
         Option c = new Option("c", "Connector", true, "Connector to use: 'galago', 'elastic', 'lucene', 'terrier'");
@@ -58,15 +72,15 @@ public class RunEvaluator {
         options.addOption(f);
 
         Option w0 = new Option("w0", "w0", true, "w0");
-        w0.setRequired(true);
+        w0.setRequired(!sweep);
         options.addOption(w0);
 
         Option w1 = new Option("w1", "w1", true, "w1");
-        w1.setRequired(true);
+        w1.setRequired(!sweep);
         options.addOption(w1);
 
         Option w2 = new Option("w2", "w2", true, "w2");
-        w2.setRequired(true);
+        w2.setRequired(!sweep);
         options.addOption(w2);
 
         Option w3 = new Option("w3", "w3", true, "w3 (optional, only if using 5 fields)");
@@ -78,13 +92,28 @@ public class RunEvaluator {
         options.addOption(w4);
 
         Option k1 = new Option("k1", "k1", true, "global k1 parameter for BM25F");
-        k1.setRequired(true);
+        k1.setRequired(!sweep);
         options.addOption(k1);
 
         Option b = new Option("b", "b", true, "global b parameter for BM25F");
-        b.setRequired(true);
+        b.setRequired(!sweep);
         options.addOption(b);
 
+        Option model = new Option("m", "Model", true, "Ranking model, only for the lucene connector: 'bm25f' " +
+                "(default), 'bm25f-bigrams', 'bm25', 'bm25-bigrams', 'fsdm'");
+        model.setRequired(false);
+        options.addOption(model);
+
+        Option sweepOption = new Option("s", "Sweep", false, "Sweep mode, only for the lucene connector: read " +
+                "'w0 w1 w2 [w3 w4] k1 b output' lines from stdin and re-score the queries in memory for each of them");
+        sweepOption.setRequired(false);
+        options.addOption(sweepOption);
+
+        Option maxCandidates = new Option("n", "Max candidates", true, "Maximum number of candidates kept per query " +
+                "in sweep mode (optional, all of them by default, which gives exactly the same results as separate runs)");
+        maxCandidates.setRequired(false);
+        options.addOption(maxCandidates);
+
         Option outputFilename = new Option("o", "output", true, "Output filename (optional, otherwise based on weights and parameters)");
         outputFilename.setRequired(false);
         options.addOption(outputFilename);
@@ -104,6 +133,14 @@ public class RunEvaluator {
 
         int fields = Integer.parseInt(cmd.getOptionValue("f"));
 
+        if (sweep) {
+            runSweep(cmd.getOptionValue("c"),
+                    cmd.getOptionValue("q"),
+                    fields,
+                    Integer.parseInt(cmd.getOptionValue("n", "0")));
+            System.exit(0);
+        }
+
         VirtualDocumentTemplate t = MetricsAggregator.getEmptyVirtualDocumentTemplate();
         Field f0 = t.fields.get(0);
         Field f1 = t.fields.get(1);
@@ -174,14 +211,84 @@ public class RunEvaluator {
             }
 
             Evaluator ev = new Evaluator(cmd.getOptionValue("q"), connector);
-            ev.runQueriesAndSaveAsTRECResultsFile(outputFile,
-                    true,
-                    t,
-                    connectorName,
-                    k1Value,
-                    bValue);
+            String modelName = cmd.getOptionValue("m", "bm25f");
+
+            if (connector instanceof LuceneConnector luceneConnector && !modelName.equals("bm25f")) {
+                Evaluator.BatchSearch search = switch (modelName) {
+                    case "bm25f-bigrams" -> q -> luceneConnector.searchWithBM25F(q, t, k1Value, bValue, true);
+                    case "bm25" -> q -> luceneConnector.searchWithBM25(q, k1Value, bValue, false);
+                    case "bm25-bigrams" -> q -> luceneConnector.searchWithBM25(q, k1Value, bValue, true);
+                    case "fsdm" -> q -> luceneConnector.searchWithFSDM(q, t);
+                    default -> throw new RuntimeException("Invalid model name. Allowed names: 'bm25f', 'bm25f-bigrams', " +
+                            "'bm25', 'bm25-bigrams', 'fsdm'");
+                };
+
+                ev.runQueriesAndSaveAsTRECResultsFile(outputFile, true, connectorName + "_" + modelName, search);
+            } else {
+                ev.runQueriesAndSaveAsTRECResultsFile(outputFile,
+                        true,
+                        t,
+                        connectorName,
+                        k1Value,
+                        bValue);
+            }
         }
 
         System.exit(0);
     }
-}
\ No newline at end of file
+
+    /**
+     * Read parameter points from stdin, one per line ("w0 w1 w2 [w3 w4] k1 b outputFile"), and write the results of
+     * each one to its output file, followed by a SWEEP_DONE line on stdout (or a SWEEP_ERROR one if the line is
+     * invalid). The queries' candidates are collected once, with the first point, and every point is then re-scored in
+     * memory (see BM25FRescorer)
+     */
+    private static void runSweep(String connectorName,
+                                 String queriesFile,
+                                 int fields,
+                                 int maxCandidates) throws IOException, ExecutionException, InterruptedException, URISyntaxException {
+        if (!connectorName.equals("lucene"))
+            throw new RuntimeException("Sweeps are only available for the lucene connector");
+        if (fields != 3 && fields != 5)
+            throw new RuntimeException("Invalid number of fields. Allowed: 3 or 5");
+
+        LuceneConnector connector = LuceneConnector.fromConfigurationFile();
+        Evaluator ev = new Evaluator(queriesFile, connector);
+        VirtualDocumentTemplate t = MetricsAggregator.getEmptyVirtualDocumentTemplate();
+        BM25FRescorer[] rescorer = new BM25FRescorer[1];
+
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = input.readLine()) != null) {
+            if (line.isBlank()) continue;
+
+            String[] values = line.trim().split("\\s+");
+            double[] parameters = new double[fields + 2];
+            try {
+                if (values.length != fields + 3)
+                    throw new NumberFormatException("expected " + (fields + 3) + " values");
+
+                for (int i = 0; i < parameters.length; i++)
+                    parameters[i] = Double.parseDouble(values[i]);
+            } catch (NumberFormatException e) {
+                System.out.println(SWEEP_ERROR + "Invalid sweep point (" + e.getMessage() + "): " + line);
+                continue;
+            }
+
+            for (int i = 0; i < fields; i++)
+                t.fields.get(i).weight = parameters[i];
+            double k1Value = parameters[fields];
+            double bValue = parameters[fields + 1];
+            String outputFile = values[fields + 2];
+
+            ev.runQueriesAndSaveAsTRECResultsFile(outputFile, true, connectorName, queries -> {
+                if (rescorer[0] == null)
+                    rescorer[0] = connector.createBM25FRescorer(queries, t, maxCandidates);
+
+                return connector.rescore(rescorer[0], t, k1Value, bValue);
+            });
+
+            System.out.println(SWEEP_DONE + outputFile);
+        }
+    }
+}
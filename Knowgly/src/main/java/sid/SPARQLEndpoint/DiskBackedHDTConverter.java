@@ -0,0 +1,344 @@
+package sid.SPARQLEndpoint;
+
+import org.apache.commons.io.FileUtils;
+import org.rdfhdt.hdt.enums.RDFNotation;
+import org.rdfhdt.hdt.exceptions.ParserException;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.hdt.HDTSupplier;
+import org.rdfhdt.hdt.options.HDTOptions;
+import org.rdfhdt.hdt.options.HDTOptionsKeys;
+import org.rdfhdt.hdt.options.HDTSpecification;
+import org.rdfhdt.hdt.rdf.RDFFluxStop;
+import org.rdfhdt.hdt.triples.TripleString;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget-aware RDF to HDT converter, for big (multi-GB) line-based RDF files such as the metrics' N-Triples
+ * outputs
+ * <p>
+ * Unlike LocalHDTSPARQLEndpoint.fromRDFCatTree, whose chunk size depends on the free memory at the time it's called
+ * (and thus on the GC state), the chunk size is derived from an explicit heap budget:
+ * <p>
+ * 1. The input file is split into chunks of a fixed size, which are converted (parsed and sorted) into temporary HDT
+ * files in parallel. The number of chunks being converted at the same time is bounded so that all of them fit in the
+ * budget
+ * <p>
+ * 2. The temporary HDT files are merged via HDT's KCat, in rounds of at most MERGE_FAN_IN files, until only one remains
+ * <p>
+ * Progress and temporary disk space statistics are reported during the conversion. If it fails, every temporary file
+ * is deleted. Empty inputs result in an empty HDT file
+ * <p>
+ * Only N-Triples and N-Quads files can be split by lines. Any other notation falls back to catTree, using the same
+ * explicit budget
+ */
+public class DiskBackedHDTConverter {
+    // Approximate heap usage of an in-memory HDT generation, relative to the size of its input (same estimation as in
+    // LocalHDTSPARQLEndpoint.fromRDFCatTree)
+    private static final double HEAP_EXPANSION_FACTOR = 0.85 * 5;
+    // Chunks smaller than this are not worth the extra merges
+    private static final long MIN_CHUNK_SIZE = 64L * 1024 * 1024;
+    // Maximum number of HDT files concatenated by a single KCat
+    private static final int MERGE_FAN_IN = 8;
+
+    private final long heapBudget;
+    private final long chunkSize;
+    private final int parallelism;
+
+    // Temporary disk space statistics, in bytes
+    private final AtomicLong tempSpaceUsed = new AtomicLong(0);
+    private final AtomicLong peakTempSpaceUsed = new AtomicLong(0);
+
+    /**
+     * @return A default heap budget, which is a fixed fraction of the maximum heap size (and not of the currently free
+     * memory, so that it doesn't depend on the GC state)
+     */
+    public static long defaultHeapBudget() {
+        return (long) (Runtime.getRuntime().maxMemory() * 0.6);
+    }
+
+    /**
+     * @param heapBudget Maximum amount of heap memory (in bytes) the conversion is allowed to use
+     */
+    public DiskBackedHDTConverter(long heapBudget) {
+        this.heapBudget = heapBudget;
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        long maxChunkSizeInBudget = (long) (heapBudget / HEAP_EXPANSION_FACTOR);
+
+        this.chunkSize = Math.min(Math.max(maxChunkSizeInBudget / processors, MIN_CHUNK_SIZE), Math.max(maxChunkSizeInBudget, 1));
+        this.parallelism = (int) Math.max(1, Math.min(processors, maxChunkSizeInBudget / chunkSize));
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getPeakTempSpaceUsed() {
+        return peakTempSpaceUsed.get();
+    }
+
+    /**
+     * Convert a RDF file to an HDT file
+     *
+     * @param inputFile  RDF file to convert
+     * @param outputFile location of the resulting HDT file
+     * @param baseURI    Base URI for the HDT dataset
+     * @param inputType  HDT's RDFNotation String (ntriples, nt, n3, nq, nquad, rdf-xml, owl, turtle, tbz2...)
+     * @throws IOException     If any IO error occurs during the HDT file creation
+     * @throws ParserException If parsing error occurs during the HDT file creation
+     */
+    public void convert(String inputFile,
+                        String outputFile,
+                        String baseURI,
+                        String inputType) throws IOException, ParserException {
+        RDFNotation notation = RDFNotation.parse(inputType);
+        Instant start = Instant.now();
+
+        System.out.println("Converting " + inputFile + " to HDT (heap budget: " + toMB(heapBudget) + " MB, chunk size: "
+                + toMB(chunkSize) + " MB, parallel chunks: " + parallelism + ")");
+
+        if (notation != RDFNotation.NTRIPLES && notation != RDFNotation.NQUAD) {
+            convertWithCatTree(inputFile, outputFile, baseURI, notation);
+        } else {
+            try {
+                List<String> chunkHDTs = convertChunks(inputFile, baseURI, notation, outputFile + "_chunk_");
+                mergeChunks(chunkHDTs, outputFile, baseURI);
+            } catch (IOException | ParserException | RuntimeException e) {
+                deleteTempFiles(outputFile);
+                throw e;
+            }
+        }
+
+        System.out.println("Conversion finished. Peak temporary disk space used: " + toMB(peakTempSpaceUsed.get())
+                + " MB. Time: " + Duration.between(start, Instant.now()));
+    }
+
+    private void convertWithCatTree(String inputFile,
+                                    String outputFile,
+                                    String baseURI,
+                                    RDFNotation notation) throws IOException, ParserException {
+        try (HDT hdt = HDTManager.catTree(
+                RDFFluxStop.sizeLimit((long) (heapBudget / HEAP_EXPANSION_FACTOR)),
+                HDTSupplier.disk(),
+                inputFile,
+                baseURI,
+                notation,
+                new HDTSpecification(),
+                null
+        )) {
+            hdt.saveToHDT(outputFile, null);
+        }
+    }
+
+    /**
+     * Split the input file into chunks of chunkSize bytes and convert each of them to a temporary HDT file, in parallel
+     *
+     * @return The locations of the temporary HDT files, in the same order as the input
+     */
+    private List<String> convertChunks(String inputFile,
+                                       String baseURI,
+                                       RDFNotation notation,
+                                       String chunkPrefix) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        // Bounds the number of chunks held on disk pending conversion or being converted, so that the reader doesn't
+        // get too far ahead of the conversions
+        Semaphore chunksInFlight = new Semaphore(parallelism * 2);
+        List<Future<String>> futures = new ArrayList<>();
+        AtomicInteger convertedChunks = new AtomicInteger(0);
+
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(inputFile), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            int chunkNumber = 0;
+
+            while (line != null) {
+                String chunkFile = chunkPrefix + chunkNumber;
+                long chunkBytes = 0;
+
+                try (BufferedWriter writer = Files.newBufferedWriter(Path.of(chunkFile), StandardCharsets.UTF_8)) {
+                    while (line != null && chunkBytes < chunkSize) {
+                        writer.write(line);
+                        writer.newLine();
+                        chunkBytes += line.length() + 1; // Approximate, good enough for the budget
+                        line = reader.readLine();
+                    }
+                }
+
+                addTempSpace(Files.size(Path.of(chunkFile)));
+                chunksInFlight.acquire();
+                chunkNumber++;
+
+                int chunksRead = chunkNumber;
+                futures.add(workers.submit(() -> {
+                    try {
+                        String chunkHDT = convertChunk(chunkFile, baseURI, notation);
+                        System.out.print("\rConverted chunks: " + convertedChunks.incrementAndGet() + "/" + chunksRead
+                                + " read (temporary disk space: " + toMB(tempSpaceUsed.get()) + " MB)");
+                        return chunkHDT;
+                    } finally {
+                        chunksInFlight.release();
+                    }
+                }));
+            }
+
+            List<String> chunkHDTs = new ArrayList<>(futures.size());
+            for (Future<String> future : futures)
+                chunkHDTs.add(future.get());
+
+            System.out.println();
+            return chunkHDTs;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        } finally {
+            // Wait for the chunks still being converted, so that their files can be deleted if anything failed
+            workers.shutdownNow();
+            try {
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String convertChunk(String chunkFile, String baseURI, RDFNotation notation) throws IOException, ParserException {
+        String chunkHDT = chunkFile + ".hdt";
+
+        try (HDT hdt = HDTManager.generateHDT(
+                chunkFile,
+                baseURI,
+                notation,
+                new HDTSpecification(),
+                null
+        )) {
+            hdt.saveToHDT(chunkHDT, null);
+        }
+
+        addTempSpace(Files.size(Path.of(chunkHDT)));
+        deleteTempFile(chunkFile);
+
+        return chunkHDT;
+    }
+
+    /**
+     * Merge the temporary HDT files via KCat, in rounds of at most MERGE_FAN_IN files. If there are none, an empty HDT
+     * file is written instead
+     */
+    private void mergeChunks(List<String> chunkHDTs, String outputFile, String baseURI) throws IOException, ParserException {
+        int round = 0;
+
+        while (chunkHDTs.size() > 1) {
+            List<String> mergedHDTs = new ArrayList<>();
+
+            for (int i = 0; i < chunkHDTs.size(); i += MERGE_FAN_IN) {
+                List<String> group = chunkHDTs.subList(i, Math.min(chunkHDTs.size(), i + MERGE_FAN_IN));
+                if (group.size() == 1) { // Nothing to merge it with on this round
+                    mergedHDTs.add(group.get(0));
+                    continue;
+                }
+
+                String mergedHDT = outputFile + "_merge_" + round + "_" + mergedHDTs.size();
+                catHDTs(new ArrayList<>(group), mergedHDT);
+                addTempSpace(Files.size(Path.of(mergedHDT)));
+                for (String hdtFile : group)
+                    deleteTempFile(hdtFile);
+
+                mergedHDTs.add(mergedHDT);
+                System.out.print("\rMerge round " + round + ": " + mergedHDTs.size() + " HDT files (temporary disk space: "
+                        + toMB(tempSpaceUsed.get()) + " MB)");
+            }
+
+            chunkHDTs = mergedHDTs;
+            round++;
+        }
+
+        if (round > 0)
+            System.out.println();
+
+        if (chunkHDTs.isEmpty()) {
+            try (HDT hdt = HDTManager.generateHDT(
+                    Collections.<TripleString>emptyIterator(),
+                    baseURI,
+                    new HDTSpecification(),
+                    null
+            )) {
+                hdt.saveToHDT(outputFile, null);
+            }
+
+            return;
+        }
+
+        Files.move(Path.of(chunkHDTs.get(0)), Path.of(outputFile), StandardCopyOption.REPLACE_EXISTING);
+        tempSpaceUsed.addAndGet(-Files.size(Path.of(outputFile)));
+    }
+
+    private void catHDTs(List<String> hdtFiles, String loc) throws IOException {
+        HDTOptions spec = HDTOptions.of();
+        spec.set(HDTOptionsKeys.HDTCAT_LOCATION, new File(loc).getAbsolutePath() + "_tmp");
+
+        try (HDT hdt = HDTManager.catHDT(hdtFiles, spec, null)) {
+            hdt.saveToHDT(loc, null);
+        }
+
+        // Delete leftover temp files
+        Files.deleteIfExists(Path.of(loc + "dictionary"));
+        Files.deleteIfExists(Path.of(loc + "triples"));
+    }
+
+    // Delete every temporary file (chunks, their HDT files and merges) of the conversion into outputFile
+    private void deleteTempFiles(String outputFile) {
+        File output = new File(outputFile).getAbsoluteFile();
+        String chunkPrefix = output.getName() + "_chunk_";
+        String mergePrefix = output.getName() + "_merge_";
+
+        File[] tempFiles = output.getParentFile().listFiles((dir, name) -> name.startsWith(chunkPrefix) || name.startsWith(mergePrefix));
+        if (tempFiles != null) {
+            for (File tempFile : tempFiles)
+                FileUtils.deleteQuietly(tempFile);
+        }
+
+        tempSpaceUsed.set(0);
+    }
+
+    private void addTempSpace(long bytes) {
+        long used = tempSpaceUsed.addAndGet(bytes);
+        peakTempSpaceUsed.accumulateAndGet(used, Math::max);
+    }
+
+    private void deleteTempFile(String file) throws IOException {
+        Path path = Path.of(file);
+        if (Files.exists(path)) {
+            long size = Files.size(path);
+            Files.delete(path);
+            tempSpaceUsed.addAndGet(-size);
+        }
+    }
+
+    private static long toMB(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
@@ -6,18 +6,33 @@ import org.apache.jena.atlas.logging.LogCtl;
 import org.apache.jena.fuseki.Fuseki;
 import org.apache.jena.fuseki.main.FusekiServer;
 import org.apache.jena.fuseki.system.FusekiLogging;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdfconnection.RDFConnection;
 import org.apache.jena.rdfconnection.RDFConnectionRemote;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.system.Txn;
 import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
 import org.apache.jena.update.Update;
+import sid.utils.ExecutionRuntime;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 
 /**
@@ -25,34 +40,70 @@ import java.nio.file.Paths;
  * <p>
  * Needs to be provided a Jena dataset location, alongside the name it's going to publish it under. The server will
  * start during initialization.
+ * <p>
+ * Data is added via TDB2's parallel bulk loader, directly on the dataset instead of through the server: the initial
+ * files (loaded before starting the server, if the dataset is empty) and any model added afterwards. Several files are
+ * parsed concurrently, feeding a single loader. Since the loader can't share the dataset with the server, the server
+ * is stopped while loading anything after it has started, and restarted afterwards
  */
 public class EmbeddedSPARQLServerEndpoint implements SPARQLEndpointWithNamedGraphs {
     public static final String CONFIGURATION_FILE = "configuration/EmbeddedSPARQLServerEndpointConfiguration.json";
     public static final String SPARQL_DATASET_LOCATION_CONF = "SPARQLDatasetLocation";
     public static final String SPARQL_DATASET_NAME_CONF = "SPARQLDatasetName";
     public static final String SPARQL_DATASET_PORT_CONF = "SPARQLDatasetPort";
+    // Optional
+    public static final String SPARQL_DATASET_INITIAL_FILES_CONF = "SPARQLDatasetInitialFiles";
     private static final String ADD_VIRTUAL_TYPES_QUERY = "configuration/queries/addVirtualTypes.sparql";
     private final String datasetName;
     private FusekiServer server;
     private final int port;
     private final Dataset dataset;
 
+    // Number of parsed triples or quads sent at once from each file's parser to the loader
+    private static final int LOAD_BATCH_SIZE = 10000;
+    // Number of batches parsed ahead of the loader, for all files
+    private static final int LOAD_QUEUE_SIZE = 64;
+    // Sent by each file's parser once it has finished
+    private static final List<Quad> END_OF_FILE = List.of();
+
     public static EmbeddedSPARQLServerEndpoint fromConfigurationFile() throws IOException {
         byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
 
         ObjectMapper objectMapper = new ObjectMapper();
         JsonNode rootNode = objectMapper.readTree(mapData);
 
+        List<String> initialFiles = new ArrayList<>();
+        if (rootNode.has(SPARQL_DATASET_INITIAL_FILES_CONF)) {
+            for (JsonNode file : rootNode.get(SPARQL_DATASET_INITIAL_FILES_CONF))
+                initialFiles.add(file.asText());
+        }
+
         return new EmbeddedSPARQLServerEndpoint(rootNode.get(SPARQL_DATASET_LOCATION_CONF).asText(),
                 rootNode.get(SPARQL_DATASET_NAME_CONF).asText(),
-                rootNode.get(SPARQL_DATASET_PORT_CONF).asInt());
+                rootNode.get(SPARQL_DATASET_PORT_CONF).asInt(),
+                initialFiles);
     }
 
     public EmbeddedSPARQLServerEndpoint(String datasetLocation, String datasetName, int port) {
+        this(datasetLocation, datasetName, port, List.of());
+    }
+
+    /**
+     * @param initialFiles RDF files to bulk load into the dataset before starting the server, if it's empty
+     */
+    public EmbeddedSPARQLServerEndpoint(String datasetLocation, String datasetName, int port, List<String> initialFiles) {
         this.datasetName = datasetName;
         this.port = port;
 
         dataset = TDB2Factory.connectDataset(datasetLocation);
+
+        if (!initialFiles.isEmpty()) {
+            if (Txn.calculateRead(dataset, dataset::isEmpty))
+                loadFiles(initialFiles, null);
+            else
+                System.out.println("Dataset " + datasetLocation + " is not empty, skipping its initial files");
+        }
+
         startServer();
     }
 
@@ -158,18 +209,177 @@ public class EmbeddedSPARQLServerEndpoint implements SPARQLEndpointWithNamedGrap
 
     @Override
     public void addModel(Model model) {
-        try (RDFConnection conn = RDFConnectionRemote.service("http://localhost:" + port + "/" + datasetName).build()) {
-            conn.load(model);
-        }
+        whileStopped(() -> loadModel(model, null));
     }
 
     @Override
     public void addNamedModel(String URI, Model model) {
-        Dataset temp = DatasetFactory.createTxnMem();
-        temp.addNamedModel(URI, model);
+        whileStopped(() -> loadModel(model, URI));
+    }
 
-        try (RDFConnection conn = RDFConnectionRemote.service("http://localhost:" + port + "/" + datasetName).build()) {
-            conn.loadDataset(temp);
+    /**
+     * Bulk load the given RDF files into the dataset, parsing them concurrently. The server is stopped until they
+     * are loaded
+     *
+     * @param graphURI Graph to load their triples into, or null for the default graph. Quads are loaded into their
+     *                 own graphs
+     */
+    public void bulkLoad(List<String> files, String graphURI) {
+        whileStopped(() -> loadFiles(files, graphURI));
+    }
+
+    // Run the given load with the server stopped, so that nothing else reads or writes the dataset meanwhile
+    private synchronized void whileStopped(Runnable load) {
+        server.stop();
+        System.out.println("Stopped Fuseki server while loading");
+
+        try {
+            load.run();
+        } finally {
+            startServer();
+        }
+    }
+
+    private void loadFiles(List<String> files, String graphURI) {
+        System.out.println("Bulk loading " + files.size() + " file(s) into " + (graphURI == null ? "the default graph" : graphURI) + "...");
+
+        DataLoader loader = createLoader(graphURI);
+        long start = System.nanoTime();
+
+        loader.startBulk();
+        try {
+            if (files.size() == 1)
+                loader.load(files.get(0));
+            else
+                loadConcurrently(files, loader.stream());
+
+            loader.finishBulk();
+        } catch (Exception e) {
+            loader.finishException(e);
+            throw new RuntimeException("Couldn't bulk load " + files, e);
+        }
+
+        printThroughput(loader, start);
+    }
+
+    private void loadModel(Model model, String graphURI) {
+        DataLoader loader = createLoader(graphURI);
+        long start = System.nanoTime();
+
+        loader.startBulk();
+        try {
+            StreamRDF stream = loader.stream();
+            model.getGraph().find().forEachRemaining(stream::triple);
+
+            loader.finishBulk();
+        } catch (RuntimeException e) {
+            loader.finishException(e);
+            throw e;
+        }
+
+        printThroughput(loader, start);
+    }
+
+    private DataLoader createLoader(String graphURI) {
+        // Its own progress output is replaced by printThroughput
+        return graphURI == null ?
+                LoaderFactory.parallelLoader(dataset.asDatasetGraph(), (fmt, args) -> {}) :
+                LoaderFactory.parallelLoader(dataset.asDatasetGraph(), NodeFactory.createURI(graphURI), (fmt, args) -> {});
+    }
+
+    // Parse every file in the IO pool, and send their triples and quads to the loader from the calling thread (since
+    // the loader's stream isn't thread-safe)
+    private static void loadConcurrently(List<String> files, StreamRDF loaderStream) throws ExecutionException, InterruptedException {
+        BlockingQueue<List<Quad>> batches = new ArrayBlockingQueue<>(LOAD_QUEUE_SIZE);
+
+        List<Future<?>> parsers = new ArrayList<>();
+        for (String file : files) {
+            parsers.add(ExecutionRuntime.getDefault().getIOPool().submit(() -> {
+                try {
+                    BatchingStream stream = new BatchingStream(batches);
+                    RDFParser.source(file).parse(stream);
+                    stream.flush();
+                } finally {
+                    batches.put(END_OF_FILE);
+                }
+
+                return null;
+            }));
+        }
+
+        try {
+            int finishedFiles = 0;
+            while (finishedFiles < files.size()) {
+                List<Quad> batch = batches.take();
+
+                if (batch == END_OF_FILE) {
+                    finishedFiles++;
+                    continue;
+                }
+
+                for (Quad quad : batch) {
+                    if (quad.isDefaultGraph())
+                        loaderStream.triple(quad.asTriple());
+                    else
+                        loaderStream.quad(quad);
+                }
+            }
+
+            // Rethrow any parsing error
+            for (Future<?> parser : parsers)
+                parser.get();
+        } finally {
+            for (Future<?> parser : parsers)
+                parser.cancel(true);
+        }
+    }
+
+    private static void printThroughput(DataLoader loader, long startNanos) {
+        long loaded = loader.countTriples() + loader.countQuads();
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-3);
+
+        System.out.println("Loaded " + loaded + " triples/quads in " + String.format("%.2f", seconds) + " s (" +
+                (long) (loaded / seconds) + " per second)");
+    }
+
+    // Groups a file's triples (as default graph quads) and quads in batches
+    private static class BatchingStream extends StreamRDFBase {
+        private final BlockingQueue<List<Quad>> batches;
+        private List<Quad> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+
+        BatchingStream(BlockingQueue<List<Quad>> batches) {
+            this.batches = batches;
+        }
+
+        @Override
+        public void triple(Triple triple) {
+            add(Quad.create(Quad.defaultGraphNodeGenerated, triple));
+        }
+
+        @Override
+        public void quad(Quad quad) {
+            add(quad);
+        }
+
+        private void add(Quad quad) {
+            batch.add(quad);
+
+            if (batch.size() >= LOAD_BATCH_SIZE)
+                flush();
+        }
+
+        void flush() {
+            if (batch.isEmpty())
+                return;
+
+            try {
+                batches.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while parsing", e);
+            }
+
+            batch = new ArrayList<>(LOAD_BATCH_SIZE);
         }
     }
 
@@ -0,0 +1,417 @@
+package sid.SPARQLEndpoint;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.update.Update;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.rdfhdt.hdt.dictionary.Dictionary;
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+import org.rdfhdt.hdt.exceptions.ParserException;
+import org.rdfhdt.hdt.triples.IteratorTripleID;
+import org.rdfhdt.hdt.triples.TripleID;
+import org.rdfhdt.hdtjena.HDTGraph;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only union of several HDT files (typically the KG and its metrics), queried as if they were a single one,
+ * without concatenating them. This way, any of them (such as the metrics) can be regenerated and swapped via replace,
+ * without rewriting and indexing the rest
+ * <p>
+ * SPARQL queries are run against the union of their HDT-backed graphs. For the HDT API, every HDT file has its own
+ * dictionary, so terms are identified by global IDs:
+ * <p>
+ * - A term's global ID is its ID in the first HDT file which contains it (in that role), plus the offset of that file.
+ * The offsets are the sum of the number of IDs of the previous files, so that global IDs never collide
+ * <p>
+ * - The first HDT file has no offset, so its IDs are already global and are never translated. Put the largest file
+ * (the KG) first, since translating an ID from other files needs a string lookup in every previous one
+ * <p>
+ * - As in HDT, subjects and objects share IDs only within the same file: a term which is a subject in one file and an
+ * object in another one will have unrelated subject and object IDs
+ * <p>
+ * Updates are not executed, as in LocalHDTSPARQLEndpoint without updates
+ */
+public class FederatedHDTSPARQLEndpoint implements SPARQLEndpoint {
+    public static final String CONFIGURATION_FILE = "configuration/FederatedHDTSPARQLEndpointConfiguration.json";
+    public static final String DATASET_LOCATIONS_CONF = "datasetLocations";
+
+    // Replaced as a whole when a file is replaced, so that searches in progress keep using the previous one
+    private volatile Union union;
+
+    /**
+     * HDT files of the union, the offsets of their IDs and the Jena model over them
+     *
+     * @param soOffsets        Offset of the subject and object IDs of each file. It's the same for both roles, so
+     *                         that the file's shared IDs stay shared
+     * @param predicateOffsets Offset of the predicate IDs of each file
+     */
+    private record Union(List<LocalHDTSPARQLEndpoint> parts, long[] soOffsets, long[] predicateOffsets, Model model) {
+        static Union of(List<LocalHDTSPARQLEndpoint> parts) {
+            long[] soOffsets = new long[parts.size()];
+            long[] predicateOffsets = new long[parts.size()];
+
+            List<Graph> graphs = new ArrayList<>();
+            for (int i = 0; i < parts.size(); i++) {
+                Dictionary dictionary = parts.get(i).hdt.getDictionary();
+
+                if (i + 1 < parts.size()) {
+                    soOffsets[i + 1] = soOffsets[i] + Math.max(dictionary.getNsubjects(), dictionary.getNobjects());
+                    predicateOffsets[i + 1] = predicateOffsets[i] + dictionary.getNpredicates();
+                }
+
+                graphs.add(new HDTGraph(parts.get(i).hdt, true));
+            }
+
+            return new Union(List.copyOf(parts), soOffsets, predicateOffsets, ModelFactory.createModelForGraph(new UnionGraph(graphs)));
+        }
+
+        long[] offsets(TripleComponentRole role) {
+            return role == TripleComponentRole.PREDICATE ? predicateOffsets : soOffsets;
+        }
+    }
+
+    /**
+     * Union of the HDT-backed graphs, for SPARQL queries. Unlike MultiUnion, which removes duplicates by keeping every
+     * triple it returns in a set, the results of each graph are returned as they are found, dropping those which are in
+     * any of the previous graphs (checked against their indexes, as UnionIterator does for IDs)
+     */
+    private static class UnionGraph extends GraphBase {
+        private final List<Graph> parts;
+
+        UnionGraph(List<Graph> parts) {
+            this.parts = List.copyOf(parts);
+        }
+
+        @Override
+        protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+            ExtendedIterator<Triple> results = parts.get(0).find(pattern);
+
+            for (int i = 1; i < parts.size(); i++) {
+                List<Graph> previous = parts.subList(0, i);
+                results = results.andThen(parts.get(i).find(pattern)
+                        .filterDrop(triple -> previous.stream().anyMatch(graph -> graph.contains(triple))));
+            }
+
+            return results;
+        }
+
+        @Override
+        protected boolean graphBaseContains(Triple triple) {
+            return parts.stream().anyMatch(graph -> graph.contains(triple));
+        }
+
+        @Override
+        protected PrefixMapping createPrefixMapping() {
+            return parts.get(0).getPrefixMapping();
+        }
+    }
+
+    public static FederatedHDTSPARQLEndpoint fromConfigurationFile() throws IOException {
+        byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode rootNode = objectMapper.readTree(mapData);
+
+        List<String> datasetLocations = objectMapper.convertValue(rootNode.get(DATASET_LOCATIONS_CONF), new TypeReference<List<String>>() {
+        });
+
+        List<LocalHDTSPARQLEndpoint> parts = new ArrayList<>();
+        for (String datasetLocation : datasetLocations)
+            parts.add(new LocalHDTSPARQLEndpoint(datasetLocation, "unused", true));
+
+        return new FederatedHDTSPARQLEndpoint(parts);
+    }
+
+    /**
+     * @param parts HDT endpoints to join, which should be indexed. The first one's IDs are used as is (see the class'
+     *              documentation)
+     */
+    public FederatedHDTSPARQLEndpoint(List<LocalHDTSPARQLEndpoint> parts) {
+        if (parts.isEmpty())
+            throw new IllegalArgumentException("A federated HDT endpoint needs at least one HDT file");
+
+        this.union = Union.of(parts);
+    }
+
+    /**
+     * @return The HDT endpoints of the union, in order
+     */
+    public List<LocalHDTSPARQLEndpoint> getParts() {
+        return union.parts();
+    }
+
+    /**
+     * Replace one of the HDT files of the union (such as regenerated metrics). Global IDs obtained before may not be
+     * valid anymore for any term which is not in the files before it
+     *
+     * @return The replaced endpoint, which is not closed
+     */
+    public synchronized LocalHDTSPARQLEndpoint replace(int index, LocalHDTSPARQLEndpoint part) {
+        List<LocalHDTSPARQLEndpoint> parts = new ArrayList<>(union.parts());
+        LocalHDTSPARQLEndpoint replaced = parts.set(index, part);
+
+        this.union = Union.of(parts);
+        return replaced;
+    }
+
+    public Model getModel() {
+        return union.model();
+    }
+
+    /**
+     * @return The term's global ID, or 0 if it's not in any of the HDT files
+     */
+    public long stringToId(CharSequence term, TripleComponentRole role) {
+        Union current = union;
+        long[] offsets = current.offsets(role);
+
+        for (int i = 0; i < current.parts().size(); i++) {
+            long id = current.parts().get(i).hdt.getDictionary().stringToId(term, role);
+            if (id > 0)
+                return offsets[i] + id;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return The term with the given global ID, or null if there isn't any
+     */
+    public CharSequence idToString(long id, TripleComponentRole role) {
+        Union current = union;
+        int part = partOf(current, id, role);
+
+        return current.parts().get(part).hdt.getDictionary().idToString(id - current.offsets(role)[part], role);
+    }
+
+    /**
+     * Search for every triple matching the pattern, in every HDT file. Triples in several files are only returned once
+     *
+     * @param pattern Pattern with global IDs, 0 being a wildcard
+     * @return Iterator over the matching triples, with global IDs
+     */
+    public Iterator<TripleID> search(TripleID pattern) {
+        return new UnionIterator(union, pattern);
+    }
+
+    // Index of the HDT file where the global ID comes from
+    private static int partOf(Union current, long id, TripleComponentRole role) {
+        long[] offsets = current.offsets(role);
+
+        int part = offsets.length - 1;
+        while (part > 0 && offsets[part] >= id)
+            part--;
+
+        return part;
+    }
+
+    // Translate a global ID to the local ID of the given file: > 0 if found, <= 0 if the term isn't there
+    private static long toLocal(Union current, int part, long id, TripleComponentRole role) {
+        if (id == 0)
+            return 0;
+
+        int owner = partOf(current, id, role);
+        long ownerID = id - current.offsets(role)[owner];
+        if (owner == part)
+            return ownerID;
+
+        CharSequence term = current.parts().get(owner).hdt.getDictionary().idToString(ownerID, role);
+        return term == null ? 0 : current.parts().get(part).hdt.getDictionary().stringToId(term, role);
+    }
+
+    // Translate the local ID of the given file to its global ID
+    private static long toGlobal(Union current, int part, long id, TripleComponentRole role) {
+        if (part == 0)
+            return id;
+
+        CharSequence term = current.parts().get(part).hdt.getDictionary().idToString(id, role);
+        for (int i = 0; i < part; i++) {
+            long previousID = current.parts().get(i).hdt.getDictionary().stringToId(term, role);
+            if (previousID > 0)
+                return current.offsets(role)[i] + previousID;
+        }
+
+        return current.offsets(role)[part] + id;
+    }
+
+    // Translate a global pattern to the local IDs of the given file, or null if any of its terms isn't there
+    private static TripleID toLocal(Union current, int part, TripleID pattern) {
+        long s = toLocal(current, part, pattern.getSubject(), TripleComponentRole.SUBJECT);
+        long p = toLocal(current, part, pattern.getPredicate(), TripleComponentRole.PREDICATE);
+        long o = toLocal(current, part, pattern.getObject(), TripleComponentRole.OBJECT);
+
+        if (s < 0 || p < 0 || o < 0 ||
+                (pattern.getSubject() != 0 && s == 0) ||
+                (pattern.getPredicate() != 0 && p == 0) ||
+                (pattern.getObject() != 0 && o == 0))
+            return null;
+
+        return new TripleID(s, p, o);
+    }
+
+    // Concatenation of the searches on each file, translating their results to global IDs
+    private static class UnionIterator implements Iterator<TripleID> {
+        private final Union current;
+        private final TripleID pattern;
+
+        private int part = -1;
+        private IteratorTripleID partResults = null;
+        private TripleID next = null;
+
+        UnionIterator(Union current, TripleID pattern) {
+            this.current = current;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (partResults == null || !partResults.hasNext()) {
+                    if (!nextPart())
+                        return false;
+
+                    continue;
+                }
+
+                TripleID local = partResults.next();
+                if (part == 0) {
+                    next = new TripleID(local.getSubject(), local.getPredicate(), local.getObject());
+                    continue;
+                }
+
+                TripleID global = new TripleID(
+                        toGlobal(current, part, local.getSubject(), TripleComponentRole.SUBJECT),
+                        toGlobal(current, part, local.getPredicate(), TripleComponentRole.PREDICATE),
+                        toGlobal(current, part, local.getObject(), TripleComponentRole.OBJECT));
+
+                if (!inPreviousParts(global))
+                    next = global;
+            }
+
+            return true;
+        }
+
+        @Override
+        public TripleID next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            TripleID result = next;
+            next = null;
+            return result;
+        }
+
+        // Move to the next file whose dictionary has every term of the pattern
+        private boolean nextPart() {
+            while (++part < current.parts().size()) {
+                TripleID localPattern = toLocal(current, part, pattern);
+                if (localPattern != null) {
+                    partResults = current.parts().get(part).hdt.getTriples().search(localPattern);
+                    return true;
+                }
+            }
+
+            partResults = null;
+            return false;
+        }
+
+        private boolean inPreviousParts(TripleID global) {
+            for (int i = 0; i < part; i++) {
+                TripleID local = toLocal(current, i, global);
+                if (local != null && current.parts().get(i).hdt.getTriples().search(local).hasNext())
+                    return true;
+            }
+
+            return false;
+        }
+    }
+
+    @Override
+    public ResultSet runSelectQuery(String query) {
+        return runSelectQuery(QueryFactory.create(query));
+    }
+
+    @Override
+    public boolean runAskQuery(String query) {
+        return runAskQuery(QueryFactory.create(query));
+    }
+
+    @Override
+    public Model runDescribeQuery(String query) {
+        return runDescribeQuery(QueryFactory.create(query));
+    }
+
+    @Override
+    public Model runConstructQuery(String query) {
+        return runConstructQuery(QueryFactory.create(query));
+    }
+
+    @Override
+    public void runUpdate(String update) {
+    }
+
+    @Override
+    public void runUpdate(Update update) {
+    }
+
+    @Override
+    public ResultSet runSelectQuery(Query query) {
+        QueryExecution qExec = QueryExecutionFactory.create(query, getModel());
+        return qExec.execSelect();
+    }
+
+    @Override
+    public boolean runAskQuery(Query query) {
+        QueryExecution qExec = QueryExecutionFactory.create(query, getModel());
+        return qExec.execAsk();
+    }
+
+    @Override
+    public Model runDescribeQuery(Query query) {
+        QueryExecution qExec = QueryExecutionFactory.create(query, getModel());
+        return qExec.execDescribe();
+    }
+
+    @Override
+    public Model runConstructQuery(Query query) {
+        QueryExecution qExec = QueryExecutionFactory.create(query, getModel());
+        return qExec.execConstruct();
+    }
+
+    @Override
+    public void addModel(Model model) {
+    }
+
+    @Override
+    public void close() {
+        for (LocalHDTSPARQLEndpoint part : union.parts())
+            part.close();
+    }
+
+    /**
+     * Add the virtual types to the first HDT file (the KG), which is rewritten
+     */
+    @Override
+    public synchronized void addVirtualTypes() throws IOException, ParserException {
+        LocalHDTSPARQLEndpoint first = union.parts().get(0);
+        first.addVirtualTypes();
+
+        // addVirtualTypes replaces the endpoint's HDT file, so the union is rebuilt over it
+        this.union = Union.of(union.parts());
+    }
+}
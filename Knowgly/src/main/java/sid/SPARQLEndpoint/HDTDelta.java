@@ -0,0 +1,356 @@
+package sid.SPARQLEndpoint;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.rdfhdt.hdt.exceptions.ParserException;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.options.HDTSpecification;
+import org.rdfhdt.hdt.triples.TripleString;
+import org.rdfhdt.hdtjena.HDTGraph;
+import sid.utils.ExecutionRuntime;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Additions to a read-only HDT file, kept on disk instead of on the heap
+ * <p>
+ * New triples are buffered in memory until there are maxBufferedTriples of them, and then written to a run: a small,
+ * indexed HDT file (that is, a sorted run of triple IDs with its own dictionary of strings). Once there are maxRuns runs,
+ * the base HDT file and all of them are merged (via HDTCat) into a new base in the background, while reads and
+ * additions keep going
+ * <p>
+ * getGraph returns a Jena graph with the union of the base, the runs and the buffer, which also receives the
+ * additions. Triples which are already present are not added again, so its parts never overlap and reads just
+ * concatenate them. Only buffered triples can be deleted: since HDT files are immutable, deleting any other triple
+ * does nothing
+ * <p>
+ * Once closed via merge, every addition is merged into the original HDT file
+ */
+public class HDTDelta {
+    public static final int DEFAULT_MAX_BUFFERED_TRIPLES = 500000;
+    public static final int DEFAULT_MAX_RUNS = 8;
+
+    // The original HDT file, which is only closed by merge (and never deleted)
+    private final LocalHDTSPARQLEndpoint original;
+    // Location prefix for the runs and compacted files
+    private final String location;
+    private final int maxBufferedTriples;
+    private final int maxRuns;
+
+    private final Graph buffer = GraphFactory.createDefaultGraph();
+
+    // Current parts of the union. Replaced (never modified) when a run is written or a compaction finishes, so that
+    // reads in progress keep their own
+    private volatile Parts parts;
+
+    // Files which are not part of the union anymore, but may still be read by iterators created before. Closed and
+    // deleted by merge
+    private final List<LocalHDTSPARQLEndpoint> retired = new ArrayList<>();
+
+    private Future<?> compaction = null;
+    private Throwable compactionFailure = null;
+    private int nextFileID = 0;
+
+    private final Graph graph = new DeltaGraph();
+
+    // The base (the original HDT file or the last compacted one) and the runs written since
+    private record Parts(Part base, List<Part> runs) {
+    }
+
+    // An HDT file and its graph. The endpoint's own model isn't used, since the original endpoint's model is replaced
+    // by the union
+    private record Part(LocalHDTSPARQLEndpoint endpoint, Graph graph) {
+        static Part of(LocalHDTSPARQLEndpoint endpoint) {
+            return new Part(endpoint, new HDTGraph(endpoint.hdt, true));
+        }
+    }
+
+    /**
+     * @param hdt                The HDT file to add triples to
+     * @param datasetLocation    Location of the HDT file, which is replaced by merge
+     * @param baseURI            Base URI for the delta's files
+     * @param location           Location prefix for the delta's files
+     * @param maxBufferedTriples Number of triples kept in memory before writing them to a run
+     * @param maxRuns            Number of runs which triggers a compaction
+     */
+    public HDTDelta(HDT hdt, String datasetLocation, String baseURI, String location, int maxBufferedTriples, int maxRuns) {
+        if (maxBufferedTriples < 1 || maxRuns < 1)
+            throw new IllegalArgumentException("Invalid delta limits: " + maxBufferedTriples + " buffered triples, " + maxRuns + " runs");
+
+        this.original = new LocalHDTSPARQLEndpoint(hdt, datasetLocation, baseURI);
+        this.location = location;
+        this.maxBufferedTriples = maxBufferedTriples;
+        this.maxRuns = maxRuns;
+        this.parts = new Parts(Part.of(original), List.of());
+    }
+
+    public HDTDelta(HDT hdt, String datasetLocation, String baseURI, String location) {
+        this(hdt, datasetLocation, baseURI, location, DEFAULT_MAX_BUFFERED_TRIPLES, DEFAULT_MAX_RUNS);
+    }
+
+    /**
+     * @return The union of the HDT file and its additions, which receives any new triple
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return The number of runs not yet compacted
+     */
+    public int getNumberOfRuns() {
+        return parts.runs().size();
+    }
+
+    public synchronized int getNumberOfBufferedTriples() {
+        return buffer.size();
+    }
+
+    /**
+     * @return Whether there are no additions, so that the union has the same triples as the original HDT file
+     */
+    public synchronized boolean isEmpty() {
+        Parts current = parts;
+        return current.base().endpoint() == original && current.runs().isEmpty() && buffer.isEmpty();
+    }
+
+    private synchronized void add(Triple t) {
+        if (buffer.contains(t))
+            return;
+
+        Parts current = parts;
+        if (current.base().graph().contains(t))
+            return;
+
+        for (Part run : current.runs()) {
+            if (run.graph().contains(t))
+                return;
+        }
+
+        buffer.add(t);
+
+        if (buffer.size() >= maxBufferedTriples) {
+            try {
+                writeRun();
+            } catch (IOException | ParserException e) {
+                throw new RuntimeException("Couldn't write the HDT delta's buffered triples to disk", e);
+            }
+        }
+    }
+
+    private synchronized void delete(Triple t) {
+        buffer.delete(t);
+    }
+
+    private ExtendedIterator<Triple> find(Triple pattern) {
+        Parts current = parts;
+
+        ExtendedIterator<Triple> results = current.base().graph().find(pattern);
+        for (Part run : current.runs())
+            results = results.andThen(run.graph().find(pattern));
+
+        // Copied, since the buffer may be written to a run while the results are read
+        List<Triple> buffered;
+        synchronized (this) {
+            buffered = buffer.find(pattern).toList();
+        }
+
+        return buffered.isEmpty() ? results : results.andThen(buffered.iterator());
+    }
+
+    // Write the buffer to a new run, and start a compaction if there are enough of them
+    private synchronized void writeRun() throws IOException, ParserException {
+        if (buffer.isEmpty())
+            return;
+
+        String runLocation = location + "_run_" + (nextFileID++) + ".hdt";
+
+        Iterator<TripleString> triples = buffer.find().mapWith(t -> new TripleString(
+                toHDTString(t.getSubject()),
+                toHDTString(t.getPredicate()),
+                toHDTString(t.getObject())));
+
+        // HDT sorts the triples and builds their dictionary, so the run is sorted by construction
+        try (HDT runHDT = HDTManager.generateHDT(
+                triples,
+                original.baseURI,
+                new HDTSpecification(),   // HDT Options
+                null              // Progress Listener
+        )) {
+            runHDT.saveToHDT(runLocation, null);
+        }
+
+        List<Part> runs = new ArrayList<>(parts.runs());
+        runs.add(Part.of(new LocalHDTSPARQLEndpoint(runLocation, original.baseURI, true)));
+        parts = new Parts(parts.base(), List.copyOf(runs));
+
+        buffer.clear();
+
+        if (runs.size() >= maxRuns && (compaction == null || compaction.isDone()))
+            startCompaction();
+    }
+
+    // Merge the base and the current runs into a new base, in the background
+    private synchronized void startCompaction() {
+        Parts toCompact = parts;
+        String compactedLocation = location + "_compacted_" + (nextFileID++) + ".hdt";
+
+        compaction = ExecutionRuntime.getDefault().getIOPool().submit(() -> {
+            try {
+                LocalHDTSPARQLEndpoint compacted = toCompact.base().endpoint().concatenate(endpointsOf(toCompact.runs()),
+                        compactedLocation, false, true);
+
+                synchronized (this) {
+                    // Keep the runs written while compacting
+                    List<Part> newRuns = new ArrayList<>(parts.runs());
+                    newRuns.removeAll(toCompact.runs());
+                    parts = new Parts(Part.of(compacted), List.copyOf(newRuns));
+
+                    if (toCompact.base().endpoint() != original)
+                        retired.add(toCompact.base().endpoint());
+                    retired.addAll(endpointsOf(toCompact.runs()));
+                }
+            } catch (Throwable t) {
+                synchronized (this) {
+                    if (compactionFailure == null)
+                        compactionFailure = t;
+                }
+
+                System.err.println("Couldn't compact the HDT delta of " + original.datasetLocation + ":");
+                t.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Merge every addition into the original HDT file, and delete the delta's files. Neither the delta nor the
+     * original endpoint can be used afterwards
+     *
+     * @throws IOException If any IO error occurs when writing the delta or merging it, including background compactions
+     */
+    public void merge() throws IOException, ParserException, InterruptedException {
+        Future<?> pendingCompaction;
+        synchronized (this) {
+            writeRun();
+            pendingCompaction = compaction;
+        }
+
+        if (pendingCompaction != null) {
+            try {
+                pendingCompaction.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Couldn't compact the HDT delta", e.getCause());
+            }
+        }
+
+        synchronized (this) {
+            if (compactionFailure != null)
+                throw new IOException("Couldn't compact the HDT delta", compactionFailure);
+
+            Parts current = parts;
+            LocalHDTSPARQLEndpoint base = current.base().endpoint();
+            if (base != original || !current.runs().isEmpty()) {
+                // Written next to the original file and then moved over it, instead of overwriting it while it's mapped
+                String mergedLocation = location + "_merged.hdt";
+
+                LocalHDTSPARQLEndpoint merged = current.runs().isEmpty() ?
+                        base :
+                        base.concatenate(endpointsOf(current.runs()), mergedLocation, false, false);
+
+                merged.hdt.close();
+                // Unmapped before being replaced
+                original.hdt.close();
+                Files.move(Path.of(merged.datasetLocation), Path.of(original.datasetLocation), StandardCopyOption.REPLACE_EXISTING);
+                Files.deleteIfExists(Path.of(merged.datasetLocation + ".index.v1-1"));
+                // The original's index is not valid anymore
+                Files.deleteIfExists(Path.of(original.datasetLocation + ".index.v1-1"));
+
+                if (base != original && base != merged)
+                    retired.add(base);
+                retired.addAll(endpointsOf(current.runs()));
+            }
+
+            for (LocalHDTSPARQLEndpoint file : retired) {
+                file.hdt.close();
+                Files.deleteIfExists(Path.of(file.datasetLocation));
+                Files.deleteIfExists(Path.of(file.datasetLocation + ".index.v1-1"));
+            }
+
+            retired.clear();
+        }
+    }
+
+    private static List<LocalHDTSPARQLEndpoint> endpointsOf(List<Part> parts) {
+        return parts.stream().map(Part::endpoint).toList();
+    }
+
+    /**
+     * @return The node as a string in HDT's format: URIs without brackets, and literals with their quotes, followed by
+     * their language tag or datatype (if it's not xsd:string)
+     */
+    static String toHDTString(Node node) {
+        if (node.isURI())
+            return node.getURI();
+
+        if (node.isBlank())
+            return "_:" + node.getBlankNodeLabel();
+
+        if (node.isLiteral()) {
+            String literal = '"' + node.getLiteralLexicalForm() + '"';
+
+            String language = node.getLiteralLanguage();
+            if (language != null && !language.isEmpty())
+                return literal + "@" + language;
+
+            String datatype = node.getLiteralDatatypeURI();
+            if (datatype == null || datatype.equals(XSDDatatype.XSDstring.getURI()))
+                return literal;
+
+            return literal + "^^<" + datatype + ">";
+        }
+
+        throw new IllegalArgumentException("Unsupported node in HDT: " + node);
+    }
+
+    private class DeltaGraph extends GraphBase {
+        @Override
+        protected ExtendedIterator<Triple> graphBaseFind(Triple triplePattern) {
+            return HDTDelta.this.find(triplePattern);
+        }
+
+        @Override
+        public void performAdd(Triple t) {
+            HDTDelta.this.add(t);
+        }
+
+        @Override
+        public void performDelete(Triple t) {
+            HDTDelta.this.delete(t);
+        }
+
+        @Override
+        protected int graphBaseSize() {
+            Parts current = parts;
+
+            long size = current.base().endpoint().hdt.getTriples().getNumberOfElements() + getNumberOfBufferedTriples();
+            for (Part run : current.runs())
+                size += run.endpoint().hdt.getTriples().getNumberOfElements();
+
+            return (int) Math.min(Integer.MAX_VALUE, size);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package sid.SPARQLEndpoint;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.engine.iterator.QueryIterRoot;
+import org.apache.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
+import org.apache.jena.sparql.engine.main.OpExecutor;
+import org.apache.jena.sparql.engine.main.OpExecutorFactory;
+import org.apache.jena.sparql.engine.main.QC;
+import org.rdfhdt.hdt.enums.TripleComponentOrder;
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.triples.IteratorTripleID;
+import org.rdfhdt.hdt.triples.TripleID;
+import org.rdfhdt.hdtjena.HDTGraph;
+import org.rdfhdt.hdtjena.NodeDictionary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * OpExecutor which evaluates star-shaped basic graph patterns over an HDTGraph as a merge join on dictionary IDs
+ * <p>
+ * hdt-jena already evaluates BGPs over HDT on IDs, but as nested loops: every solution of a triple pattern is a new
+ * lookup for the next one. Most of our aggregation queries are stars around a single subject, such as:
+ * <p>
+ * ?factURI a [Predicate-Type] . ?factURI [predicate] ?pred . ?factURI [type] ?type . ?factURI [metric] ?metric
+ * <p>
+ * With a constant predicate, HDT returns the solutions of each triple pattern sorted by subject, so instead they are
+ * scanned once each and intersected by subject ID, like a merge join. The join is driven by the pattern with the
+ * fewest solutions (according to HDT's estimations): patterns with not many more solutions than it are merged, and the
+ * rest (or those whose solutions are not sorted by subject, according to their iterator's order) are looked up for each
+ * subject found by the merge instead. Strings are only decoded for the final solutions
+ * <p>
+ * Only BGPs evaluated once over the whole graph (from the root binding) are merged, since scanning whole patterns for
+ * every solution of a previous operator (such as the left side of an OPTIONAL) would be far slower than looking them
+ * up. If no pattern other than the driving one would be merged (such as when a pattern with a constant object is far
+ * more selective than the rest), the BGP is left to the previous OpExecutor's nested loops as well
+ * <p>
+ * Any other pattern (or graph), as well as filtered BGPs (which hdt-jena evaluates alongside their filters), is
+ * executed by the previous OpExecutor
+ */
+public class HDTStarJoinOpExecutor extends OpExecutor {
+    // Cost of looking up the solutions of a pattern for a single subject, relative to scanning one of its solutions
+    private static final long LOOKUP_COST = 32;
+
+    private static OpExecutorFactory previousFactory = null;
+
+    private final OpExecutorFactory previous;
+
+    /**
+     * Use this OpExecutor for every query, on top of the current one (usually hdt-jena's, which is registered once
+     * HDTGraph is loaded). It can be called several times
+     */
+    public static synchronized void register() {
+        if (previousFactory != null)
+            return;
+
+        try {
+            // Load HDTGraph first, so that hdt-jena's own OpExecutor doesn't replace this one afterwards
+            Class.forName(HDTGraph.class.getName(), true, HDTGraph.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+
+        OpExecutorFactory current = QC.getFactory(ARQ.getContext());
+        previousFactory = current != null ? current : OpExecutor.stdFactory;
+
+        OpExecutorFactory previous = previousFactory;
+        QC.setFactory(ARQ.getContext(), execCxt -> new HDTStarJoinOpExecutor(execCxt, previous));
+    }
+
+    private HDTStarJoinOpExecutor(ExecutionContext execCxt, OpExecutorFactory previous) {
+        super(execCxt);
+        this.previous = previous;
+    }
+
+    @Override
+    protected QueryIterator execute(OpFilter opFilter, QueryIterator input) {
+        if (OpBGP.isBGP(opFilter.getSubOp()))
+            return previous.create(execCxt).executeOp(opFilter, input);
+
+        return super.execute(opFilter, input);
+    }
+
+    @Override
+    protected QueryIterator execute(OpBGP opBGP, QueryIterator input) {
+        if (!(input instanceof QueryIterRoot) ||
+                !(execCxt.getActiveGraph() instanceof HDTGraph graph) ||
+                !StarPattern.isStar(opBGP.getPattern()))
+            return previous.create(execCxt).executeOp(opBGP, input);
+
+        return new QueryIterRepeatApply(input, execCxt) {
+            @Override
+            protected QueryIterator nextStage(Binding binding) {
+                BasicPattern pattern = Substitute.substitute(opBGP.getPattern(), binding);
+                StarPattern star = StarPattern.of(pattern, graph);
+                Iterator<Binding> solutions = star != null ? star.execute(binding) : null;
+
+                // The bindings turned it into something else (such as a constant subject), or merging isn't worth it
+                if (solutions == null)
+                    return previous.create(execCxt).executeOp(new OpBGP(pattern), QueryIterSingleton.create(binding, execCxt));
+
+                return QueryIterPlainWrapper.create(solutions, execCxt);
+            }
+        };
+    }
+
+    /**
+     * A BGP where every triple pattern has the same subject variable (which doesn't appear anywhere else) and a
+     * constant predicate, translated to IDs
+     */
+    private static class StarPattern {
+        private final HDT hdt;
+        private final NodeDictionary dictionary;
+        private final Var subject;
+        private final long[] predicates;
+        private final long[] objects; // 0 if it's a variable
+        private final Var[] objectVars; // null if it's a constant
+        private final boolean empty; // If any of its constants is not in the dictionary
+
+        private StarPattern(HDTGraph graph, Var subject, long[] predicates, long[] objects, Var[] objectVars, boolean empty) {
+            this.hdt = graph.getHDT();
+            this.dictionary = graph.getNodeDictionary();
+            this.subject = subject;
+            this.predicates = predicates;
+            this.objects = objects;
+            this.objectVars = objectVars;
+            this.empty = empty;
+        }
+
+        static boolean isStar(BasicPattern pattern) {
+            if (pattern.size() < 2)
+                return false;
+
+            Node subject = pattern.get(0).getSubject();
+            if (!Var.isVar(subject))
+                return false;
+
+            for (Triple triple : pattern) {
+                if (!triple.getSubject().equals(subject) ||
+                        !triple.getPredicate().isURI() ||
+                        triple.getObject().equals(subject) ||
+                        !(Var.isVar(triple.getObject()) || triple.getObject().isConcrete()))
+                    return false;
+            }
+
+            return true;
+        }
+
+        // Null if it isn't a star
+        static StarPattern of(BasicPattern pattern, HDTGraph graph) {
+            if (!isStar(pattern))
+                return null;
+
+            NodeDictionary dictionary = graph.getNodeDictionary();
+            int n = pattern.size();
+            long[] predicates = new long[n];
+            long[] objects = new long[n];
+            Var[] objectVars = new Var[n];
+            boolean empty = false;
+
+            for (int i = 0; i < n; i++) {
+                Triple triple = pattern.get(i);
+
+                predicates[i] = dictionary.getIntID(triple.getPredicate(), TripleComponentRole.PREDICATE);
+                if (predicates[i] <= 0)
+                    empty = true;
+
+                if (Var.isVar(triple.getObject())) {
+                    objectVars[i] = Var.alloc(triple.getObject());
+                } else {
+                    objects[i] = dictionary.getIntID(triple.getObject(), TripleComponentRole.OBJECT);
+                    if (objects[i] <= 0)
+                        empty = true;
+                }
+            }
+
+            return new StarPattern(graph, Var.alloc(pattern.get(0).getSubject()), predicates, objects, objectVars, empty);
+        }
+
+        // Null if there would be nothing to merge with the pattern with the fewest solutions (see the class'
+        // documentation)
+        Iterator<Binding> execute(Binding parent) {
+            if (empty)
+                return Collections.emptyIterator();
+
+            int n = predicates.length;
+            IteratorTripleID[] solutions = new IteratorTripleID[n];
+            int driver = 0;
+
+            for (int i = 0; i < n; i++) {
+                solutions[i] = hdt.getTriples().search(new TripleID(0, predicates[i], objects[i]));
+
+                if (solutions[i].estimatedNumResults() < solutions[driver].estimatedNumResults())
+                    driver = i;
+            }
+
+            if (!isSortedBySubject(solutions[driver].getOrder(), objects[driver] != 0))
+                return null;
+
+            // Patterns whose solutions are sorted by subject and not much more than the driver's are merged, and the
+            // rest are looked up
+            long maxMerged = solutions[driver].estimatedNumResults() * LOOKUP_COST;
+            List<SubjectGroups> merged = new ArrayList<>();
+            List<Integer> lookedUp = new ArrayList<>();
+            merged.add(new SubjectGroups(solutions[driver], driver));
+
+            for (int i = 0; i < n; i++) {
+                if (i == driver) continue;
+
+                if (solutions[i].estimatedNumResults() <= maxMerged &&
+                        isSortedBySubject(solutions[i].getOrder(), objects[i] != 0))
+                    merged.add(new SubjectGroups(solutions[i], i));
+                else
+                    lookedUp.add(i);
+            }
+
+            if (merged.size() < 2)
+                return null;
+
+            return new StarJoinIterator(parent, merged, lookedUp);
+        }
+
+        /**
+         * @return Whether the solutions are sorted by subject ID, knowing that their predicate is constant: the first
+         * component of the order which isn't constant needs to be the subject
+         */
+        private static boolean isSortedBySubject(TripleComponentOrder order, boolean constantObject) {
+            if (order == null || order == TripleComponentOrder.Unknown)
+                return false;
+
+            for (char component : order.name().toCharArray()) {
+                if (component == 'P' || component == 'O' && constantObject)
+                    continue;
+
+                return component == 'S';
+            }
+
+            return false;
+        }
+
+        // Solutions of a triple pattern, grouped by subject
+        private static class SubjectGroups {
+            private final IteratorTripleID solutions;
+            private final int pattern;
+            private TripleID pending = null;
+            private boolean positioned = false;
+
+            long subject = 0;
+            final List<Long> objects = new ArrayList<>();
+
+            SubjectGroups(IteratorTripleID solutions, int pattern) {
+                this.solutions = solutions;
+                this.pattern = pattern;
+            }
+
+            // Move to the next subject >= the given one (if not there already), and collect its objects
+            boolean advanceTo(long target) {
+                if (positioned && subject >= target)
+                    return true;
+
+                while (true) {
+                    if (pending == null) {
+                        if (!solutions.hasNext())
+                            return false;
+
+                        TripleID next = solutions.next();
+                        pending = new TripleID(next.getSubject(), next.getPredicate(), next.getObject());
+                    }
+
+                    if (pending.getSubject() < target) {
+                        pending = null;
+                        continue;
+                    }
+
+                    subject = pending.getSubject();
+                    positioned = true;
+                    objects.clear();
+
+                    while (pending != null && pending.getSubject() == subject) {
+                        objects.add(pending.getObject());
+
+                        if (solutions.hasNext()) {
+                            TripleID next = solutions.next();
+                            pending = new TripleID(next.getSubject(), next.getPredicate(), next.getObject());
+                        } else {
+                            pending = null;
+                        }
+                    }
+
+                    return true;
+                }
+            }
+        }
+
+        private class StarJoinIterator implements Iterator<Binding> {
+            private final Binding parent;
+            private final List<SubjectGroups> merged;
+            private final List<Integer> lookedUp;
+
+            // Solutions for the current subject, not returned yet
+            private final List<Binding> buffered = new ArrayList<>();
+            private int nextBuffered = 0;
+            private boolean started = false;
+            private boolean finished = false;
+
+            StarJoinIterator(Binding parent, List<SubjectGroups> merged, List<Integer> lookedUp) {
+                this.parent = parent;
+                this.merged = merged;
+                this.lookedUp = lookedUp;
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (nextBuffered >= buffered.size()) {
+                    if (finished || !nextSubject())
+                        return false;
+                }
+
+                return true;
+            }
+
+            @Override
+            public Binding next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                return buffered.get(nextBuffered++);
+            }
+
+            // Find the next subject in every merged pattern, and buffer its solutions
+            private boolean nextSubject() {
+                buffered.clear();
+                nextBuffered = 0;
+
+                long target = 0;
+                if (started) {
+                    target = merged.get(0).subject + 1;
+                } else {
+                    started = true;
+                }
+
+                // Advance every group to the largest subject among them, until all of them agree
+                int agreeing = 0;
+                int current = 0;
+                while (agreeing < merged.size()) {
+                    SubjectGroups groups = merged.get(current);
+
+                    if (!groups.advanceTo(target)) {
+                        finished = true;
+                        return false;
+                    }
+
+                    if (groups.subject == target) {
+                        agreeing++;
+                    } else {
+                        target = groups.subject;
+                        agreeing = 1;
+                    }
+
+                    current = (current + 1) % merged.size();
+                }
+
+                // Objects of each pattern for this subject
+                List<List<Long>> objectsPerPattern = new ArrayList<>(Collections.nCopies(predicates.length, null));
+                for (SubjectGroups groups : merged)
+                    objectsPerPattern.set(groups.pattern, groups.objects);
+
+                for (int i : lookedUp) {
+                    List<Long> found = new ArrayList<>();
+                    IteratorTripleID solutions = hdt.getTriples().search(new TripleID(target, predicates[i], objects[i]));
+                    while (solutions.hasNext())
+                        found.add(solutions.next().getObject());
+
+                    if (found.isEmpty())
+                        return true; // No solutions for this subject, but there may be for the next ones
+
+                    objectsPerPattern.set(i, found);
+                }
+
+                bufferCombinations(target, objectsPerPattern, 0, new HashMap<>());
+
+                return true;
+            }
+
+            // Every combination of objects of each pattern (usually a single one), checking that repeated variables
+            // have the same ID
+            private void bufferCombinations(long subjectID, List<List<Long>> objectsPerPattern, int pattern,
+                                            Map<Var, Long> boundIDs) {
+                if (pattern == objectsPerPattern.size()) {
+                    BindingBuilder solution = BindingFactory.builder(parent);
+                    solution.add(subject, dictionary.getNode(subjectID, TripleComponentRole.SUBJECT));
+
+                    // Only decoded now that it's a solution
+                    for (var entry : boundIDs.entrySet())
+                        solution.add(entry.getKey(), dictionary.getNode(entry.getValue(), TripleComponentRole.OBJECT));
+
+                    buffered.add(solution.build());
+                    return;
+                }
+
+                Var var = objectVars[pattern];
+                if (var == null) { // Constant object, already checked
+                    bufferCombinations(subjectID, objectsPerPattern, pattern + 1, boundIDs);
+                    return;
+                }
+
+                for (long objectID : objectsPerPattern.get(pattern)) {
+                    Long previous = boundIDs.get(var);
+                    if (previous != null) {
+                        if (previous == objectID)
+                            bufferCombinations(subjectID, objectsPerPattern, pattern + 1, boundIDs);
+
+                        continue;
+                    }
+
+                    boundIDs.put(var, objectID);
+                    bufferCombinations(subjectID, objectsPerPattern, pattern + 1, boundIDs);
+                    boundIDs.remove(var);
+                }
+            }
+        }
+    }
+}
@@ -9,7 +9,6 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.update.Update;
 import org.apache.jena.update.UpdateAction;
 import org.rdfhdt.hdt.enums.RDFNotation;
-import org.rdfhdt.hdt.enums.TripleComponentRole;
 import org.rdfhdt.hdt.exceptions.NotFoundException;
 import org.rdfhdt.hdt.exceptions.ParserException;
 import org.rdfhdt.hdt.hdt.HDT;
@@ -27,15 +26,16 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ForkJoinPool;
-import java.util.stream.LongStream;
 
 /**
  * Wrapper for a HDT-backed Jena model, to be considered as read-only. Can be created from an existing RDF file.
  * <p>
- * Update queries will be run and saved on a separate Jena model, since the model on top of HDT is read-only.
+ * Since the model on top of HDT is read-only, additions are kept in an HDTDelta: they are buffered in memory and
+ * written to small HDT files next to updatesDatasetLocation, which are periodically compacted in the background. Once
+ * there is any addition, queries are run on the union of the HDT file and its delta, so that they see the additions
+ * right away. Note that the hdt and model fields are still the original HDT file, without them.
  * If it is constructed without providing updatesDatasetLocation, update queries will not be executed at all.
- * Needs to be explicitly closed in order to concatenate any update to the original HDT file
+ * Needs to be explicitly closed in order to merge any update into the original HDT file
  * <p>
  * If updates are really needed, it is recommended to instead create a new HDT model and concatenate them. This is
  * what we do for incorporating calculated metrics.
@@ -55,14 +55,17 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
     public Model model; // Its HDT-backed Jena model
     public String datasetLocation;
 
+    // Additions to the HDT file, since Jena's HDT-backed Model is read-only. Null if updates are disabled
+    private final HDTDelta delta;
+    // Model over the union of the HDT file and its delta, which receives the additions. Null if updates are disabled
     private final Model updatesModel;
-
-    // Every time an update is run against the model it will be written to the updates dataset file,
-    // since Jena's HDT-backed Model is read-only
-    private final BufferedWriter updatesDatasetFileWriter;
-    private String updatesDatasetLocation;
     public final String baseURI;
 
+    static {
+        // Evaluate star-shaped BGPs (like most metrics queries) via merge joins on IDs
+        HDTStarJoinOpExecutor.register();
+    }
+
     public static LocalHDTSPARQLEndpoint fromConfigurationFile() throws IOException, NotFoundException {
         byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
 
@@ -160,6 +163,40 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
         }
     }
 
+    /**
+     * Convert a RDF file to HDT and return a LocalHDTSPARQLEndpoint wrapping it. Specialized version for big line-based
+     * RDF files (such as the metrics' N-Triples outputs), which converts chunks of the file in parallel within an
+     * explicit heap budget and merges them on disk. See DiskBackedHDTConverter
+     *
+     * @param inputFile       RDF file to convert
+     * @param outputFile      location of the resulting HDT file
+     * @param baseURI         Base URI for the HDT dataset, existing ones will not be changed.
+     *                        You can set the value to any non-empty String if no prefixes are used (as is the case in Knowgly)
+     * @param inputType       HDT's RDFNotation String (ntriples, nt, n3, nq, nquad, rdf-xml, owl, turtle, tbz2...)
+     * @param deleteInputFile Delete the original input file after the conversion to HDT (Note: this will invalidate any endpoint which used it)
+     * @param indexed         Whether to create an index for the HDT or not
+     * @param heapBudget      Maximum amount of heap memory (in bytes) the conversion is allowed to use
+     * @return a LocalHDTSPARQLEndpoint wrapping the resulting HDT file
+     * @throws IOException     If any IO error occurs during the HDT file creation
+     * @throws ParserException If parsing error occurs during the HDT file creation
+     */
+    public static LocalHDTSPARQLEndpoint fromRDFDiskBacked(String inputFile,
+                                                           String outputFile,
+                                                           String baseURI,
+                                                           String inputType,
+                                                           boolean deleteInputFile,
+                                                           boolean indexed,
+                                                           long heapBudget
+    ) throws IOException, ParserException {
+        new DiskBackedHDTConverter(heapBudget).convert(inputFile, outputFile, baseURI, inputType);
+
+        if (deleteInputFile && !new File(inputFile).delete()) {
+            System.err.println("Failed to delete temporary RDF file!");
+        }
+
+        return new LocalHDTSPARQLEndpoint(outputFile, baseURI, indexed);
+    }
+
     /**
      * Create an HDT file in the given location from all the triples in the endpoint's default graph,
      * and return a LocalHDTSPARQLEndpoint around it. Note: Slower than fromRDF
@@ -222,6 +259,8 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
 
     /**
      * Updates-enabled constructor (note: use of concatenations is recommended over this)
+     *
+     * @param updatesDatasetLocation Location prefix for the files with the additions, which are deleted once merged
      */
     public LocalHDTSPARQLEndpoint(String datasetLocation,
                                   String updatesDatasetLocation,
@@ -239,14 +278,10 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
         }
         this.hdt = hdt;
 
-        // Create Jena Model on top of HDT.
-        HDTGraph graph = new HDTGraph(hdt, true);
-
-        this.model = ModelFactory.createModelForGraph(graph);
-
-        this.updatesModel = ModelFactory.createDefaultModel();
-        this.updatesDatasetFileWriter = new BufferedWriter(new FileWriter(updatesDatasetLocation));
-        this.updatesDatasetLocation = updatesDatasetLocation;
+        // Create Jena Model on top of HDT, and another one on top of the union of the HDT file and its additions
+        this.model = ModelFactory.createModelForGraph(new HDTGraph(hdt, true));
+        this.delta = new HDTDelta(hdt, datasetLocation, baseURI, updatesDatasetLocation);
+        this.updatesModel = ModelFactory.createModelForGraph(delta.getGraph());
     }
 
     /**
@@ -271,8 +306,8 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
         HDTGraph graph = new HDTGraph(hdt, true);
         this.model = ModelFactory.createModelForGraph(graph);
 
-        this.updatesModel = ModelFactory.createDefaultModel();
-        this.updatesDatasetFileWriter = null;
+        this.delta = null;
+        this.updatesModel = null;
     }
 
     /**
@@ -288,8 +323,8 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
         HDTGraph graph = new HDTGraph(hdt, true);
         this.model = ModelFactory.createModelForGraph(graph);
 
-        this.updatesModel = ModelFactory.createDefaultModel();
-        this.updatesDatasetFileWriter = null;
+        this.delta = null;
+        this.updatesModel = null;
     }
 
     @Override
@@ -314,47 +349,53 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
 
     @Override
     public void runUpdate(String update) {
-        if (updatesDatasetFileWriter != null) {
-            UpdateAction.parseExecute(update, model);
-            updatesModel.write(updatesDatasetFileWriter);
+        if (delta != null) {
+            UpdateAction.parseExecute(update, updatesModel);
         }
     }
 
     @Override
     public void runUpdate(Update update) {
-        if (updatesDatasetFileWriter != null) {
+        if (delta != null) {
             UpdateAction.execute(update, updatesModel);
-            updatesModel.write(updatesDatasetFileWriter);
         }
     }
 
+    /**
+     * @return The model to run queries on: the HDT-backed one while there are no additions, so that hdt-jena's
+     * executors (which only handle HDT graphs) are used, or the union of the HDT file and its delta otherwise
+     */
+    private Model queryModel() {
+        return delta == null || delta.isEmpty() ? model : updatesModel;
+    }
+
     @Override
     public ResultSet runSelectQuery(Query query) {
-        QueryExecution qExec = QueryExecutionFactory.create(query, model);
+        QueryExecution qExec = QueryExecutionFactory.create(query, queryModel());
         return qExec.execSelect();
     }
 
     @Override
     public boolean runAskQuery(Query query) {
-        QueryExecution qExec = QueryExecutionFactory.create(query, model);
+        QueryExecution qExec = QueryExecutionFactory.create(query, queryModel());
         return qExec.execAsk();
     }
 
     @Override
     public Model runDescribeQuery(Query query) {
-        QueryExecution qExec = QueryExecutionFactory.create(query, model);
+        QueryExecution qExec = QueryExecutionFactory.create(query, queryModel());
         return qExec.execDescribe();
     }
 
     @Override
     public Model runConstructQuery(Query query) {
-        QueryExecution qExec = QueryExecutionFactory.create(query, model);
+        QueryExecution qExec = QueryExecutionFactory.create(query, queryModel());
         return qExec.execConstruct();
     }
 
     @Override
     public void addModel(Model model) {
-        if (updatesDatasetFileWriter != null) {
+        if (delta != null) {
             updatesModel.add(model);
         }
     }
@@ -362,19 +403,9 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
     @Override
     public void close() {
         try {
-            if (updatesDatasetFileWriter != null) {
-                updatesModel.write(updatesDatasetFileWriter);
-
-                // Do a self-concatenation of the HDT file and the updates model
-                this.concatenate(LocalHDTSPARQLEndpoint.fromRDF(updatesDatasetLocation,
-                                datasetLocation + "_updates_HDT_concat_temp",
-                                "unused",
-                                "ntriples",
-                                true,
-                                false), // Delete the input file too
-                        datasetLocation,
-                        true,
-                        true); // And delete the temp HDT updates file
+            if (delta != null) {
+                // Merge the remaining runs into the HDT file, replacing it
+                delta.merge();
             }
         } catch (Exception e) {
             System.err.println("Couldn't write back changes to the local HDT SPARQL endpoint:");
@@ -445,6 +476,7 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
      */
     public LocalHDTSPARQLEndpoint concatenate(List<LocalHDTSPARQLEndpoint> endpoints, String loc, boolean deleteAfter, boolean indexed) throws IOException {
         List<String> endpointLocations = new ArrayList<>();
+        endpointLocations.add(this.datasetLocation);
         for (var endpoint : endpoints)
             endpointLocations.add(endpoint.datasetLocation);
 
@@ -480,42 +512,31 @@ public class LocalHDTSPARQLEndpoint implements SPARQLEndpoint {
         }
     }
 
+    /**
+     * Add a virtual type to every non-literal node in the HDT file, and concatenate them into it
+     * <p>
+     * The virtual type triples are generated in parallel over the dictionary ID ranges (skipping the literals' range)
+     * and fed directly into the HDT generation, without writing an intermediate N-Triples file
+     */
     @Override
     public void addVirtualTypes() throws IOException, ParserException {
-        LongStream subjectsStream = LongStream.range(1, hdt.getDictionary().getNsubjects() + 1);
-        PrintWriter tempFile = new PrintWriter(datasetLocation + "_virtual_types");
-
-        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        for (PrimitiveIterator.OfLong it = subjectsStream.iterator(); it.hasNext(); ) {
-            long subjectID = it.next();
-            CharSequence subject = hdt.getDictionary().idToString(subjectID, TripleComponentRole.SUBJECT);
-
-            tempFile.println("<" + subject + ">" + " <" + RDF_TYPE_URI + "> <" + VIRTUAL_TYPE + "> .");
-        }
-        workers.close();
-
-        // For all remaining URI objects (those outside shared)
-        LongStream objectsStream = LongStream.range(hdt.getDictionary().getNshared() + 1, hdt.getDictionary().getNobjects() + 1);
-        workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        for (PrimitiveIterator.OfLong it = objectsStream.iterator(); it.hasNext(); ) {
-            long objectID = it.next();
-            CharSequence object = hdt.getDictionary().idToString(objectID, TripleComponentRole.OBJECT);
-            if (object.charAt(0) != '"') // It's not a literal
-                tempFile.println("<" + object + ">" + " <" + RDF_TYPE_URI + "> <" + VIRTUAL_TYPE + "> .");
+        String virtualTypesLocation = datasetLocation + "_virtual_types.hdt";
+
+        try (VirtualTypesGenerator virtualTypes = new VirtualTypesGenerator(hdt)) {
+            System.out.println("Generating " + virtualTypes.getNumberOfTriples() + " virtual types...");
+
+            try (HDT virtualTypesHDT = HDTManager.generateHDT(
+                    virtualTypes,
+                    baseURI,
+                    new HDTSpecification(),   // HDT Options
+                    null              // Progress Listener
+            )) {
+                virtualTypesHDT.saveToHDT(virtualTypesLocation, null);
+            }
         }
-        workers.close();
-
-        tempFile.flush();
-        tempFile.close();
 
         LocalHDTSPARQLEndpoint temp = this.concatenate(
-                LocalHDTSPARQLEndpoint.fromRDF(
-                        datasetLocation + "_virtual_types",
-                        datasetLocation + "_virtual_types.hdt",
-                        "unused",
-                        "ntriples",
-                        true,
-                        false),
+                new LocalHDTSPARQLEndpoint(virtualTypesLocation, "unused", false),
                 this.datasetLocation,
                 true,
                 true);
@@ -9,6 +9,7 @@ import org.apache.jena.rdfconnection.RDFConnectionRemote;
 import org.apache.jena.system.Txn;
 import org.apache.jena.update.Update;
 import org.rdfhdt.hdt.exceptions.ParserException;
+import sid.utils.RequestExecutor;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -18,12 +19,17 @@ import java.nio.file.Paths;
 
 /**
  * A connection to a remote SPARQL endpoint
+ * <p>
+ * Requests are sent from the caller's thread, but no more than maxInFlightRequests at the same time: any other caller
+ * waits until one of them finishes (see RequestExecutor)
  */
 public class RemoteSPARQLEndpoint implements SPARQLEndpointWithNamedGraphs {
     public static final String CONFIGURATION_FILE = "configuration/RemoteSPARQLEndpointConfiguration.json";
     public static final String SPARQL_REMOTE_URL_CONF = "RemoteEndpointURL";
+    public static final String MAX_IN_FLIGHT_REQUESTS_CONF = "maxInFlightRequests"; // Optional
     private static final String ADD_VIRTUAL_TYPES_QUERY = "configuration/queries/addVirtualTypes.sparql";
     private final String remoteURL;
+    private final RequestExecutor requests;
 
     public static RemoteSPARQLEndpoint fromConfigurationFile() throws IOException {
         byte[] mapData = Files.readAllBytes(Paths.get(CONFIGURATION_FILE));
@@ -31,61 +37,91 @@ public class RemoteSPARQLEndpoint implements SPARQLEndpointWithNamedGraphs {
         ObjectMapper objectMapper = new ObjectMapper();
         JsonNode rootNode = objectMapper.readTree(mapData);
 
-        return new RemoteSPARQLEndpoint(rootNode.get(SPARQL_REMOTE_URL_CONF).asText());
+        return new RemoteSPARQLEndpoint(rootNode.get(SPARQL_REMOTE_URL_CONF).asText(),
+                rootNode.has(MAX_IN_FLIGHT_REQUESTS_CONF) ?
+                        rootNode.get(MAX_IN_FLIGHT_REQUESTS_CONF).asInt() : RequestExecutor.DEFAULT_MAX_IN_FLIGHT_REQUESTS);
     }
 
     public RemoteSPARQLEndpoint(String remoteURL) {
+        this(remoteURL, RequestExecutor.DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+    }
+
+    /**
+     * @param maxInFlightRequests Maximum number of requests sent to the endpoint at the same time
+     */
+    public RemoteSPARQLEndpoint(String remoteURL, int maxInFlightRequests) {
         this.remoteURL = remoteURL;
+        this.requests = new RequestExecutor("sparql-remote", maxInFlightRequests);
+    }
+
+    /**
+     * @return The executor through which every request to the endpoint is sent, whose maximum number of requests in
+     * flight can also be used to size the work sent to it
+     */
+    public RequestExecutor getRequestExecutor() {
+        return requests;
     }
 
     @Override
     public void runUpdate(String update) {
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-            Txn.executeWrite(conn, () -> {
-                conn.update(update);
-            });
-        }
+        requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+                Txn.executeWrite(conn, () -> {
+                    conn.update(update);
+                });
+            }
+        });
     }
 
     @Override
     public ResultSet runSelectQuery(String query) {
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-            QueryExecution qExec = conn.query(query);
-            return qExec.execSelect();
-        }
+        return requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+                QueryExecution qExec = conn.query(query);
+                return qExec.execSelect();
+            }
+        });
     }
 
     @Override
     public boolean runAskQuery(String query) {
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-            QueryExecution qExec = conn.query(query);
-            return qExec.execAsk();
-        }
+        return requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+                QueryExecution qExec = conn.query(query);
+                return qExec.execAsk();
+            }
+        });
     }
 
     @Override
     public Model runDescribeQuery(String query) {
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-            QueryExecution qExec = conn.query(query);
-            return qExec.execDescribe();
-        }
+        return requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+                QueryExecution qExec = conn.query(query);
+                return qExec.execDescribe();
+            }
+        });
     }
 
     @Override
     public Model runConstructQuery(String query) {
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-            QueryExecution qExec = conn.query(query);
-            return qExec.execConstruct();
-        }
+        return requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+                QueryExecution qExec = conn.query(query);
+                return qExec.execConstruct();
+            }
+        });
     }
 
     @Override
     public void runUpdate(Update update) {
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-            Txn.executeWrite(conn, () -> {
-                conn.update(update);
-            });
-        }
+        requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+                Txn.executeWrite(conn, () -> {
+                    conn.update(update);
+                });
+            }
+        });
     }
 
     @Override
@@ -110,9 +146,11 @@ public class RemoteSPARQLEndpoint implements SPARQLEndpointWithNamedGraphs {
 
     @Override
     public void addModel(Model model) {
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-            conn.load(model);
-        }
+        requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+                conn.load(model);
+            }
+        });
     }
 
     @Override
@@ -120,31 +158,36 @@ public class RemoteSPARQLEndpoint implements SPARQLEndpointWithNamedGraphs {
         Dataset temp = DatasetFactory.createTxnMem();
         temp.addNamedModel(URI, model);
 
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-            conn.loadDataset(temp);
-        }
+        requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+                conn.loadDataset(temp);
+            }
+        });
     }
 
     @Override
     public ResultSet getIteratorOverSubgraph(String graphURI) {
-        try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
-
-            String subgraphQuery = """
-                    SELECT ?s ?p ?o
-                    WHERE {
-                        GRAPH <%s> {
-                            ?s ?p ?o .
+        return requests.send(() -> {
+            try (RDFConnection conn = RDFConnectionRemote.service(remoteURL).build()) {
+
+                String subgraphQuery = """
+                        SELECT ?s ?p ?o
+                        WHERE {
+                            GRAPH <%s> {
+                                ?s ?p ?o .
+                            }
                         }
-                    }
-                    """.formatted(graphURI);
+                        """.formatted(graphURI);
 
-            QueryExecution qExec = conn.query(subgraphQuery);
-            return qExec.execSelect();
-        }
+                QueryExecution qExec = conn.query(subgraphQuery);
+                return qExec.execSelect();
+            }
+        });
     }
 
     @Override
     public void close() {
+        requests.close();
     }
 
     @Override
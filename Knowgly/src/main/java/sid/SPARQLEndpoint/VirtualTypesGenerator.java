@@ -0,0 +1,137 @@
+package sid.SPARQLEndpoint;
+
+import org.rdfhdt.hdt.dictionary.Dictionary;
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.triples.TripleString;
+import sid.MetricsGeneration.util.LiteralRange;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static sid.SPARQLEndpoint.SPARQLEndpoint.RDF_TYPE_URI;
+import static sid.SPARQLEndpoint.SPARQLEndpoint.VIRTUAL_TYPE;
+
+/**
+ * Parallel generator of the virtual type triples (<x> rdf:type VIRTUAL_TYPE) for every non-literal node of an HDT file
+ * <p>
+ * Instead of walking the dictionary one ID at a time, the subject and object ID ranges are split into chunks which are
+ * resolved in parallel, and served in dictionary order as a TripleString iterator that can be fed directly into
+ * HDTManager.generateHDT, without writing an intermediate N-Triples file
+ * <p>
+ * Literals are skipped by ID range: they are contiguous inside the object-only section of the dictionary (they all
+ * start with "), so their range is located once via binary search instead of checking every object
+ */
+public class VirtualTypesGenerator implements Iterator<TripleString>, AutoCloseable {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final Dictionary dictionary;
+    private final ForkJoinPool workers;
+    private final int maxChunksInFlight;
+
+    // Pending ID ranges to resolve: {first ID, last ID, role (0 = subject, 1 = object)}
+    private final Deque<long[]> pendingChunks = new ArrayDeque<>();
+    // Chunks being resolved, in dictionary order
+    private final Deque<Future<String[]>> chunksInFlight = new ArrayDeque<>();
+
+    private String[] currentChunk = new String[0];
+    private int currentChunkPosition = 0;
+
+    private long numberOfTriples = 0;
+
+    public VirtualTypesGenerator(HDT hdt) {
+        this.dictionary = hdt.getDictionary();
+        this.workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.maxChunksInFlight = Runtime.getRuntime().availableProcessors() * 2;
+
+        long nShared = dictionary.getNshared();
+        long nSubjects = dictionary.getNsubjects();
+        long nObjects = dictionary.getNobjects();
+
+        // All subjects (shared ones included)
+        addChunks(1, nSubjects, 0);
+
+        // All remaining URI objects (those outside shared), skipping the literals' range
+        LiteralRange literals = LiteralRange.of(dictionary);
+        if (literals.isEmpty()) {
+            addChunks(nShared + 1, nObjects, 1);
+        } else {
+            addChunks(nShared + 1, literals.first() - 1, 1);
+            addChunks(literals.last() + 1, nObjects, 1);
+        }
+
+        for (long[] chunk : pendingChunks)
+            numberOfTriples += chunk[1] - chunk[0] + 1;
+
+        fillChunksInFlight();
+    }
+
+    /**
+     * @return The total number of virtual type triples this generator will produce
+     */
+    public long getNumberOfTriples() {
+        return numberOfTriples;
+    }
+
+    private void addChunks(long from, long to, int role) {
+        for (long start = from; start <= to; start += CHUNK_SIZE)
+            pendingChunks.add(new long[]{start, Math.min(to, start + CHUNK_SIZE - 1), role});
+    }
+
+    private void fillChunksInFlight() {
+        while (chunksInFlight.size() < maxChunksInFlight && !pendingChunks.isEmpty()) {
+            long[] chunk = pendingChunks.poll();
+            chunksInFlight.add(workers.submit(() -> resolveChunk(chunk[0], chunk[1], chunk[2] == 0 ? TripleComponentRole.SUBJECT : TripleComponentRole.OBJECT)));
+        }
+    }
+
+    private String[] resolveChunk(long from, long to, TripleComponentRole role) {
+        String[] nodes = new String[(int) (to - from + 1)];
+        for (long id = from; id <= to; id++)
+            nodes[(int) (id - from)] = dictionary.idToString(id, role).toString();
+
+        return nodes;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (currentChunkPosition >= currentChunk.length) {
+            if (chunksInFlight.isEmpty())
+                return false;
+
+            try {
+                currentChunk = chunksInFlight.poll().get();
+                currentChunkPosition = 0;
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+
+            fillChunksInFlight();
+        }
+
+        return true;
+    }
+
+    @Override
+    public TripleString next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        return new TripleString(currentChunk[currentChunkPosition++], RDF_TYPE_URI, VIRTUAL_TYPE);
+    }
+
+    @Override
+    public void close() {
+        for (Future<String[]> chunk : chunksInFlight)
+            chunk.cancel(true);
+        chunksInFlight.clear();
+        pendingChunks.clear();
+
+        workers.close();
+    }
+}
@@ -0,0 +1,131 @@
+package sid.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Immutable snapshot of a set of JSON configuration files, parsed once so that they don't need to be read from disk
+ * again on every use (such as when creating templates or documents for each entity)
+ * <p>
+ * It can be loaded from the configuration files (fromConfigurationFiles) or created from in-memory JSON strings
+ * (fromJSON), which allows running the pipelines with configurations that don't exist on disk. Either way, every file
+ * it contains is validated to be a JSON object on creation, and the classes using it can validate the keys they need
+ * via requireKeys
+ * <p>
+ * Files are identified by the same paths used by the classes which read them (for example,
+ * MetricsAggregator.CONFIGURATION_FILE)
+ */
+public final class ConfigurationSnapshot {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // File path -> parsed contents. Never exposed directly, as JsonNodes are mutable
+    private final Map<String, JsonNode> files;
+
+    private ConfigurationSnapshot(Map<String, JsonNode> files) {
+        this.files = Collections.unmodifiableMap(files);
+    }
+
+    /**
+     * Load and parse the given configuration files
+     *
+     * @throws IOException If there is any IO error with the configuration files, or any of them is not a JSON object
+     */
+    public static ConfigurationSnapshot fromConfigurationFiles(String... files) throws IOException {
+        return fromConfigurationFiles(Arrays.asList(files));
+    }
+
+    /**
+     * Load and parse the given configuration files
+     *
+     * @throws IOException If there is any IO error with the configuration files, or any of them is not a JSON object
+     */
+    public static ConfigurationSnapshot fromConfigurationFiles(Collection<String> files) throws IOException {
+        Map<String, JsonNode> parsedFiles = new HashMap<>();
+        for (String file : files) {
+            if (!parsedFiles.containsKey(file))
+                parsedFiles.put(file, parse(file, Files.readAllBytes(Paths.get(file))));
+        }
+
+        return new ConfigurationSnapshot(parsedFiles);
+    }
+
+    /**
+     * Create a snapshot from in-memory configurations
+     *
+     * @param files Map of file path <-> JSON contents
+     * @throws IOException If any of them is not a JSON object
+     */
+    public static ConfigurationSnapshot fromJSON(Map<String, String> files) throws IOException {
+        Map<String, JsonNode> parsedFiles = new HashMap<>();
+        for (var file : files.entrySet())
+            parsedFiles.put(file.getKey(), parse(file.getKey(), file.getValue().getBytes()));
+
+        return new ConfigurationSnapshot(parsedFiles);
+    }
+
+    private static JsonNode parse(String file, byte[] contents) throws IOException {
+        JsonNode rootNode = objectMapper.readTree(contents);
+        if (rootNode == null || !rootNode.isObject())
+            throw new IOException("Invalid configuration file " + file + ": it should contain a JSON object");
+
+        return rootNode;
+    }
+
+    /**
+     * @return A new snapshot with the files of this one and the other one. Files in both are taken from the other one
+     */
+    public ConfigurationSnapshot merge(ConfigurationSnapshot other) {
+        Map<String, JsonNode> mergedFiles = new HashMap<>(files);
+        mergedFiles.putAll(other.files);
+
+        return new ConfigurationSnapshot(mergedFiles);
+    }
+
+    public boolean contains(String file) {
+        return files.containsKey(file);
+    }
+
+    public Set<String> getFiles() {
+        return files.keySet();
+    }
+
+    /**
+     * @return A copy of the root node of the given file, which can be freely modified
+     * @throws IllegalArgumentException If the file isn't part of the snapshot
+     */
+    public JsonNode get(String file) {
+        JsonNode rootNode = files.get(file);
+        if (rootNode == null)
+            throw new IllegalArgumentException("Configuration file " + file + " is not part of the configuration snapshot");
+
+        return rootNode.deepCopy();
+    }
+
+    /**
+     * Ensure that the given file is part of the snapshot and contains all the given keys
+     *
+     * @return This snapshot
+     * @throws IllegalArgumentException If the file isn't part of the snapshot, or any key is missing
+     */
+    public ConfigurationSnapshot requireKeys(String file, String... keys) {
+        JsonNode rootNode = files.get(file);
+        if (rootNode == null)
+            throw new IllegalArgumentException("Configuration file " + file + " is not part of the configuration snapshot");
+
+        List<String> missingKeys = new ArrayList<>();
+        for (String key : keys) {
+            if (!rootNode.has(key))
+                missingKeys.add(key);
+        }
+
+        if (!missingKeys.isEmpty())
+            throw new IllegalArgumentException("Configuration file " + file + " is missing the following keys: " + missingKeys);
+
+        return this;
+    }
+}
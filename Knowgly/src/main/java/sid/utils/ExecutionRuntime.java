@@ -0,0 +1,476 @@
+package sid.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Thread pools shared by every step of the pipelines (metrics generation, aggregation, indexing and search), so that
+ * they don't create and tear down their own pools for each step, iteration or call
+ * <p>
+ * It has two pools, both with named daemon threads:
+ * <p>
+ * - A CPU pool (a ForkJoinPool) for computations, with one thread per processor by default. Giving it fewer threads
+ * caps the CPU used by the whole pipeline, for example when running next to other services
+ * <p>
+ * - An I/O pool for blocking work, which can be much bigger since its threads spend most of their time waiting.
+ * Requests to remote services (search engines, SPARQL endpoints...) use a RequestExecutor instead, limited by the
+ * number of requests in flight rather than by a number of threads
+ * <p>
+ * Work is run in named stages (see stage and ioStage), each one with a parallelism limit: the maximum number of its
+ * pool's threads that it can use at the same time. Stages hand out their items to their workers in batches which get
+ * smaller as fewer items remain, so that expensive items don't leave the rest of the workers idle at the end. Runs of a
+ * stage can be cancelled at any time, and metrics about the pools (queued tasks, active threads, steals...) and each
+ * stage can be retrieved with getMetrics
+ * <p>
+ * The pipelines use the default runtime (see getDefault), configured by CONFIGURATION_FILE if it exists
+ */
+public final class ExecutionRuntime implements AutoCloseable {
+    public static final String CONFIGURATION_FILE = "configuration/executionRuntimeConfiguration.json";
+    // Configuration keys (all of them optional)
+    private static final String CPU_THREADS_CONF = "cpuThreads";
+    private static final String IO_THREADS_CONF = "ioThreads";
+    private static final String STAGE_PARALLELISM_CONF = "stageParallelism";
+
+    private static final int DEFAULT_IO_THREADS_PER_PROCESSOR = 4;
+    private static final long IO_THREADS_KEEP_ALIVE_SECONDS = 60;
+
+    // Minimum number of batches per worker that the items of a stage are split into
+    private static final int BATCHES_PER_WORKER = 4;
+
+    private static ExecutionRuntime defaultRuntime = null;
+
+    private final ForkJoinPool cpuPool;
+    private final ThreadPoolExecutor ioPool;
+
+    // Stage name -> parallelism limit, for the stages which shouldn't use their whole pool
+    private final Map<String, Integer> stageParallelism;
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+
+    public ExecutionRuntime(int cpuThreads, int ioThreads) {
+        this(cpuThreads, ioThreads, Map.of());
+    }
+
+    /**
+     * @param stageParallelism Map of stage name -> parallelism limit, for the stages which shouldn't use every thread of
+     *                         their pool
+     */
+    public ExecutionRuntime(int cpuThreads, int ioThreads, Map<String, Integer> stageParallelism) {
+        if (cpuThreads < 1 || ioThreads < 1)
+            throw new IllegalArgumentException("Invalid number of threads: " + cpuThreads + " (CPU), " + ioThreads + " (I/O)");
+
+        AtomicInteger cpuThreadCount = new AtomicInteger(1);
+        this.cpuPool = new ForkJoinPool(cpuThreads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("knowgly-cpu-" + cpuThreadCount.getAndIncrement());
+            return thread;
+        }, null, false);
+
+        AtomicInteger ioThreadCount = new AtomicInteger(1);
+        this.ioPool = new ThreadPoolExecutor(ioThreads, ioThreads,
+                IO_THREADS_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "knowgly-io-" + ioThreadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.ioPool.allowCoreThreadTimeOut(true);
+
+        this.stageParallelism = new ConcurrentHashMap<>(stageParallelism);
+    }
+
+    /**
+     * @return A runtime with one CPU thread per processor, and DEFAULT_IO_THREADS_PER_PROCESSOR I/O threads per processor
+     */
+    public static ExecutionRuntime withDefaults() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new ExecutionRuntime(processors, processors * DEFAULT_IO_THREADS_PER_PROCESSOR);
+    }
+
+    /**
+     * Create a runtime from CONFIGURATION_FILE, or with the defaults (see withDefaults) if it doesn't exist
+     *
+     * @throws IOException If there is any IO error with the configuration file, or it's not a JSON object
+     */
+    public static ExecutionRuntime fromConfigurationFile() throws IOException {
+        if (!Files.exists(Paths.get(CONFIGURATION_FILE)))
+            return withDefaults();
+
+        return fromConfiguration(ConfigurationSnapshot.fromConfigurationFiles(CONFIGURATION_FILE));
+    }
+
+    /**
+     * Create a runtime from an already loaded configuration. Any missing key (or the whole file) takes its default value
+     */
+    public static ExecutionRuntime fromConfiguration(ConfigurationSnapshot configuration) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int cpuThreads = processors;
+        int ioThreads = processors * DEFAULT_IO_THREADS_PER_PROCESSOR;
+        Map<String, Integer> stageParallelism = new HashMap<>();
+
+        if (configuration.contains(CONFIGURATION_FILE)) {
+            JsonNode rootNode = configuration.get(CONFIGURATION_FILE);
+
+            if (rootNode.has(CPU_THREADS_CONF))
+                cpuThreads = rootNode.get(CPU_THREADS_CONF).asInt();
+
+            if (rootNode.has(IO_THREADS_CONF))
+                ioThreads = rootNode.get(IO_THREADS_CONF).asInt();
+
+            if (rootNode.has(STAGE_PARALLELISM_CONF))
+                rootNode.get(STAGE_PARALLELISM_CONF).fields().forEachRemaining(stage ->
+                        stageParallelism.put(stage.getKey(), stage.getValue().asInt()));
+        }
+
+        return new ExecutionRuntime(cpuThreads, ioThreads, stageParallelism);
+    }
+
+    /**
+     * @return The runtime shared by the pipelines. Created from CONFIGURATION_FILE (see fromConfigurationFile) the
+     * first time it's requested, unless one has been set via setDefault
+     */
+    public static synchronized ExecutionRuntime getDefault() {
+        if (defaultRuntime == null) {
+            try {
+                defaultRuntime = fromConfigurationFile();
+            } catch (IOException e) {
+                throw new RuntimeException("Couldn't load the execution runtime's configuration", e);
+            }
+        }
+
+        return defaultRuntime;
+    }
+
+    /**
+     * Replace the runtime shared by the pipelines. The previous one is not closed, since stages may still be running
+     * on it
+     */
+    public static synchronized void setDefault(ExecutionRuntime runtime) {
+        defaultRuntime = Objects.requireNonNull(runtime);
+    }
+
+    public ForkJoinPool getCPUPool() {
+        return cpuPool;
+    }
+
+    public ExecutorService getIOPool() {
+        return ioPool;
+    }
+
+    public int getCPUThreads() {
+        return cpuPool.getParallelism();
+    }
+
+    public int getIOThreads() {
+        return ioPool.getMaximumPoolSize();
+    }
+
+    /**
+     * @return The stage with the given name which runs on the CPU pool, created on first use
+     * @throws IllegalArgumentException If the name is already used by an I/O stage
+     */
+    public Stage stage(String name) {
+        return getStage(name, false);
+    }
+
+    /**
+     * @return The stage with the given name which runs on the I/O pool, created on first use
+     * @throws IllegalArgumentException If the name is already used by a CPU stage
+     */
+    public Stage ioStage(String name) {
+        return getStage(name, true);
+    }
+
+    private Stage getStage(String name, boolean io) {
+        Stage stage = stages.computeIfAbsent(name, n -> new Stage(n, io));
+        if (stage.io != io)
+            throw new IllegalArgumentException("Stage " + name + " already exists, running on the " + (stage.io ? "I/O" : "CPU") + " pool");
+
+        return stage;
+    }
+
+    /**
+     * Set the parallelism limit of the given stage, for its next runs. It will be capped to the number of threads of
+     * its pool
+     */
+    public void setStageParallelism(String name, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Invalid parallelism for stage " + name + ": " + parallelism);
+
+        stageParallelism.put(name, parallelism);
+    }
+
+    /**
+     * Cancel every run in progress of every stage
+     */
+    public void cancelAll() {
+        for (Stage stage : stages.values())
+            stage.cancel();
+    }
+
+    /**
+     * Cancel every run in progress and stop both pools. No more work can be run afterwards
+     */
+    @Override
+    public void close() {
+        closed = true;
+        cancelAll();
+
+        cpuPool.shutdownNow();
+        ioPool.shutdownNow();
+    }
+
+    public Metrics getMetrics() {
+        Map<String, StageMetrics> stageMetrics = new TreeMap<>();
+        for (Stage stage : stages.values())
+            stageMetrics.put(stage.name, stage.getMetrics());
+
+        return new Metrics(cpuPool.getParallelism(),
+                cpuPool.getPoolSize(),
+                cpuPool.getActiveThreadCount(),
+                cpuPool.getQueuedTaskCount() + cpuPool.getQueuedSubmissionCount(),
+                cpuPool.getStealCount(),
+                ioPool.getPoolSize(),
+                ioPool.getActiveCount(),
+                ioPool.getQueue().size(),
+                ioPool.getCompletedTaskCount(),
+                stageMetrics);
+    }
+
+    /**
+     * Snapshot of the state of a runtime's pools and stages
+     *
+     * @param cpuThreads        Number of threads of the CPU pool (its parallelism)
+     * @param cpuLiveThreads    Number of threads currently started in the CPU pool
+     * @param cpuActiveThreads  Estimated number of CPU threads running or stealing tasks
+     * @param cpuQueuedTasks    Estimated number of tasks queued in the CPU pool, either submitted or forked
+     * @param cpuSteals         Estimated number of tasks stolen by a CPU thread from another one's queue
+     * @param ioLiveThreads     Number of threads currently started in the I/O pool
+     * @param ioActiveThreads   Approximate number of I/O threads running tasks
+     * @param ioQueuedTasks     Number of tasks waiting for an I/O thread
+     * @param ioCompletedTasks  Approximate number of tasks completed by the I/O pool
+     * @param stages            Map of stage name -> its metrics
+     */
+    public record Metrics(int cpuThreads,
+                          int cpuLiveThreads,
+                          int cpuActiveThreads,
+                          long cpuQueuedTasks,
+                          long cpuSteals,
+                          int ioLiveThreads,
+                          int ioActiveThreads,
+                          int ioQueuedTasks,
+                          long ioCompletedTasks,
+                          Map<String, StageMetrics> stages) {
+    }
+
+    /**
+     * Snapshot of the state of a stage
+     *
+     * @param parallelism    Parallelism limit for its next runs
+     * @param runs           Number of runs in progress
+     * @param activeWorkers  Number of workers currently running its items
+     * @param completedItems Number of items completed since its creation
+     * @param cancelledRuns  Number of runs cancelled (or failed) since its creation
+     */
+    public record StageMetrics(boolean io,
+                               int parallelism,
+                               int runs,
+                               int activeWorkers,
+                               long completedItems,
+                               long cancelledRuns) {
+    }
+
+    // Work for a single item of a stage
+    private interface Item {
+        void run(long index) throws Exception;
+    }
+
+    /**
+     * Named unit of work of the pipelines, which runs its items on one of the runtime's pools without using more than
+     * its parallelism limit of threads at the same time
+     * <p>
+     * The same stage can be run several times, even concurrently (each call is a separate run). Calls block until every
+     * item of the run is done, and throw an ExecutionException with the first exception thrown by any of its items (if
+     * any), after which the rest of the run's items are skipped
+     */
+    public final class Stage {
+        private final String name;
+        private final boolean io;
+
+        // Cancellation flags of the runs in progress
+        private final Set<AtomicInteger> runs = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger activeWorkers = new AtomicInteger(0);
+        private final AtomicLong completedItems = new AtomicLong(0);
+        private final AtomicLong cancelledRuns = new AtomicLong(0);
+
+        private Stage(String name, boolean io) {
+            this.name = name;
+            this.io = io;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The maximum number of threads its next runs will use
+         */
+        public int getParallelism() {
+            int poolThreads = io ? getIOThreads() : getCPUThreads();
+            return Math.max(1, Math.min(poolThreads, stageParallelism.getOrDefault(name, poolThreads)));
+        }
+
+        /**
+         * Run the given work for every index in [from, to)
+         *
+         * @throws ExecutionException   If the work throws any exception or error
+         * @throws InterruptedException If the calling thread is interrupted while waiting
+         * @throws CancellationException If the run is cancelled
+         */
+        public void forRange(long from, long to, LongConsumer work) throws ExecutionException, InterruptedException {
+            run(from, to, Long.MAX_VALUE, work::accept);
+        }
+
+        /**
+         * Run the given work for every index in [from, to), with workers taking at most maxBatchSize indexes at a time.
+         * Indexes are always started in ascending order, so a maxBatchSize of 1 makes sure that the first ones are
+         * started first (for example, when they are sorted by descending cost)
+         *
+         * @throws ExecutionException   If the work throws any exception or error
+         * @throws InterruptedException If the calling thread is interrupted while waiting
+         * @throws CancellationException If the run is cancelled
+         */
+        public void forRange(long from, long to, long maxBatchSize, LongConsumer work) throws ExecutionException, InterruptedException {
+            if (maxBatchSize < 1)
+                throw new IllegalArgumentException("Invalid batch size: " + maxBatchSize);
+
+            run(from, to, maxBatchSize, work::accept);
+        }
+
+        /**
+         * Run the given work for every item of the collection
+         *
+         * @throws ExecutionException   If the work throws any exception or error
+         * @throws InterruptedException If the calling thread is interrupted while waiting
+         * @throws CancellationException If the run is cancelled
+         */
+        public <T> void forEach(Collection<T> items, Consumer<? super T> work) throws ExecutionException, InterruptedException {
+            List<T> list = (items instanceof List<T> l && items instanceof RandomAccess) ? l : new ArrayList<>(items);
+            run(0, list.size(), Long.MAX_VALUE, index -> work.accept(list.get((int) index)));
+        }
+
+        /**
+         * Run every task. Tasks are started in the given order, each worker taking one at a time
+         *
+         * @return Their results, in the same order as the tasks
+         * @throws ExecutionException   If any task throws an exception or error
+         * @throws InterruptedException If the calling thread is interrupted while waiting
+         * @throws CancellationException If the run is cancelled
+         */
+        public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws ExecutionException, InterruptedException {
+            List<T> results = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+            run(0, tasks.size(), 1, index -> results.set((int) index, tasks.get((int) index).call()));
+
+            return results;
+        }
+
+        /**
+         * Cancel every run of this stage in progress. Their items which have already started will finish, but no
+         * other item will be started, and their calls will throw a CancellationException
+         */
+        public void cancel() {
+            for (AtomicInteger run : runs)
+                run.set(1);
+        }
+
+        public StageMetrics getMetrics() {
+            return new StageMetrics(io,
+                    getParallelism(),
+                    runs.size(),
+                    activeWorkers.get(),
+                    completedItems.get(),
+                    cancelledRuns.get());
+        }
+
+        private void run(long from, long to, long maxBatchSize, Item item) throws ExecutionException, InterruptedException {
+            if (closed)
+                throw new RejectedExecutionException("The execution runtime has been closed");
+
+            if (from >= to)
+                return;
+
+            // 0 while running, 1 if cancelled, 2 if an item failed
+            AtomicInteger state = new AtomicInteger(0);
+            // First exception (or error) thrown by an item. Kept here since ForkJoinPool may rethrow copies of it from get()
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            runs.add(state);
+
+            AtomicLong next = new AtomicLong(from);
+            int nWorkers = (int) Math.min(getParallelism(), to - from);
+
+            Callable<Void> worker = () -> {
+                activeWorkers.incrementAndGet();
+                try {
+                    while (state.get() == 0) {
+                        // Claim the next batch: the remaining items are split into BATCHES_PER_WORKER batches per worker
+                        long start = next.get();
+                        if (start >= to)
+                            break;
+
+                        long end = start + Math.min(maxBatchSize, Math.max(1, (to - start) / ((long) nWorkers * BATCHES_PER_WORKER)));
+                        if (!next.compareAndSet(start, end))
+                            continue;
+
+                        for (long index = start; index < end && state.get() == 0; index++) {
+                            item.run(index);
+                            completedItems.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                    state.set(2); // Stop the rest of the workers
+                } finally {
+                    activeWorkers.decrementAndGet();
+                }
+
+                return null;
+            };
+
+            ExecutorService pool = io ? ioPool : cpuPool;
+            List<Future<Void>> workers = new ArrayList<>(nWorkers);
+            try {
+                for (int i = 0; i < nWorkers; i++)
+                    workers.add(pool.submit(worker));
+
+                // Wait for every worker, even if one fails, so that no item is still running once this returns
+                for (Future<Void> future : workers)
+                    future.get();
+
+                if (failure.get() != null)
+                    throw new ExecutionException(failure.get());
+
+                if (state.get() != 0)
+                    throw new CancellationException("Stage " + name + " was cancelled");
+            } catch (InterruptedException | RuntimeException e) {
+                state.compareAndSet(0, 1);
+                throw e;
+            } finally {
+                runs.remove(state);
+                if (state.get() != 0)
+                    cancelledRuns.incrementAndGet();
+            }
+        }
+    }
+}
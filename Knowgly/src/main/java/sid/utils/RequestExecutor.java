@@ -0,0 +1,324 @@
+package sid.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Executor for blocking requests to remote services (search engines, SPARQL endpoints...), which runs each request in
+ * its own virtual thread
+ * <p>
+ * Its concurrency isn't tied to a number of threads (and so to the number of processors), but to a maximum number of
+ * requests in flight, which should be set for the remote service. Once the limit is reached, whoever sends the next
+ * request blocks until one of the requests in flight finishes, so that a slow service slows down its producers
+ * (backpressure) instead of piling up requests
+ * <p>
+ * Requests can be sent:
+ * <p>
+ * - As a batch (invokeAll), which returns once every request is done. If any of them fails, the rest are interrupted
+ * or not started at all, like StructuredTaskScope.ShutdownOnFailure (still a preview API in Java 21) would
+ * <p>
+ * - In the background (submit), for requests whose results aren't needed right away, such as bulk indexing. Once
+ * one of them fails, its failure is thrown by every following submit (so that producers stop right away, instead of
+ * finding out once they are done) and by awaitCompletion
+ * <p>
+ * - From the caller's own thread (send), for callers which already have their own threads
+ * <p>
+ * Every request in progress can be cancelled via cancel
+ */
+public final class RequestExecutor implements AutoCloseable {
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 16;
+
+    private final String name;
+    private final int maxInFlightRequests;
+    private final Semaphore permits;
+    private final ThreadFactory threadFactory;
+
+    // Executor of the background requests, and those which haven't finished yet
+    private final ExecutorService background;
+    private final Set<Future<?>> pendingBackground = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> backgroundFailure = new AtomicReference<>();
+
+    // Executors of the batches in progress -> whether they have been cancelled
+    private final Map<ExecutorService, AtomicBoolean> batches = new ConcurrentHashMap<>();
+
+    private final AtomicLong completedRequests = new AtomicLong(0);
+    private final AtomicLong failedRequests = new AtomicLong(0);
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param name                Name of the remote service, used for the requests' threads
+     * @param maxInFlightRequests Maximum number of requests running at the same time
+     */
+    public RequestExecutor(String name, int maxInFlightRequests) {
+        if (maxInFlightRequests < 1)
+            throw new IllegalArgumentException("Invalid maximum number of requests in flight for " + name + ": " + maxInFlightRequests);
+
+        this.name = name;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.permits = new Semaphore(maxInFlightRequests, true);
+        this.threadFactory = Thread.ofVirtual().name(name + "-", 1).factory();
+        this.background = Executors.newThreadPerTaskExecutor(threadFactory);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * Send every request, each one in its own virtual thread, and wait for all of them
+     *
+     * @return Their results, in the same order as the requests
+     * @throws ExecutionException    With the first exception thrown by any request. The rest of them are interrupted
+     *                               (or not sent) and waited for before throwing it
+     * @throws InterruptedException  If the calling thread is interrupted while waiting
+     * @throws CancellationException If the batch is cancelled
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> requests) throws ExecutionException, InterruptedException {
+        checkOpen();
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        List<Future<T>> futures = new ArrayList<>(requests.size());
+
+        try (ExecutorService batch = Executors.newThreadPerTaskExecutor(threadFactory)) {
+            batches.put(batch, cancelled);
+
+            try {
+                for (Callable<T> request : requests) {
+                    permits.acquire();
+
+                    try {
+                        futures.add(batch.submit(() -> {
+                            try {
+                                T result = request.call();
+                                completedRequests.incrementAndGet();
+                                return result;
+                            } catch (Exception e) {
+                                failedRequests.incrementAndGet();
+                                if (failure.compareAndSet(null, e))
+                                    batch.shutdownNow(); // Interrupt the rest of the batch
+
+                                throw e;
+                            } finally {
+                                permits.release();
+                            }
+                        }));
+                    } catch (RejectedExecutionException e) { // A request failed, or the batch was cancelled
+                        permits.release();
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                batch.shutdownNow();
+                throw e;
+            } finally {
+                // Closing the batch's executor waits for all of its requests
+                batches.remove(batch);
+            }
+        }
+
+        // Interrupted requests may fail because of the cancellation, so it's checked first
+        if (cancelled.get())
+            throw new CancellationException("Batch of requests to " + name + " was cancelled");
+
+        if (failure.get() != null)
+            throw new ExecutionException(failure.get());
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures)
+            results.add(future.resultNow());
+
+        return results;
+    }
+
+    /**
+     * Send a request in its own virtual thread, without waiting for it. Blocks while there are too many requests in
+     * flight
+     *
+     * @return The request's future. If it fails, its exception will also be thrown by the following calls to submit
+     * and by awaitCompletion
+     * @throws ExecutionException   With the first exception thrown by a background request since the last call to
+     *                              awaitCompletion, if any. The request isn't sent then
+     * @throws InterruptedException If the calling thread is interrupted while waiting to send the request
+     */
+    public <T> Future<T> submit(Callable<T> request) throws ExecutionException, InterruptedException {
+        checkOpen();
+        checkBackgroundFailure();
+        permits.acquire();
+
+        // Another request may have failed while this one was waiting
+        try {
+            checkBackgroundFailure();
+        } catch (ExecutionException e) {
+            permits.release();
+            throw e;
+        }
+
+        FutureTask<T> task = new FutureTask<>(request) {
+            @Override
+            protected void set(T result) {
+                completedRequests.incrementAndGet();
+                super.set(result);
+            }
+
+            @Override
+            protected void setException(Throwable t) {
+                failedRequests.incrementAndGet();
+                backgroundFailure.compareAndSet(null, t);
+                super.setException(t);
+            }
+
+            @Override
+            protected void done() {
+                if (pendingBackground.remove(this))
+                    permits.release();
+            }
+        };
+
+        pendingBackground.add(task);
+
+        try {
+            background.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (pendingBackground.remove(task))
+                permits.release();
+
+            throw e;
+        }
+
+        return task;
+    }
+
+    /**
+     * Wait for every request sent via submit so far
+     *
+     * @throws ExecutionException   With the first exception thrown by any of them since the last call, if any
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public void awaitCompletion() throws ExecutionException, InterruptedException {
+        while (!pendingBackground.isEmpty()) {
+            for (Future<?> request : List.copyOf(pendingBackground)) {
+                try {
+                    request.get();
+                } catch (ExecutionException | CancellationException e) {
+                    // Failures are reported below, and cancellations aren't failures
+                }
+            }
+        }
+
+        Throwable failure = backgroundFailure.getAndSet(null);
+        if (failure != null)
+            throw new ExecutionException(failure);
+    }
+
+    /**
+     * Send a request from the calling thread, waiting first if there are too many requests in flight
+     *
+     * @throws CancellationException If the calling thread is interrupted while waiting. Its interrupt status is kept
+     */
+    public <T> T send(Supplier<T> request) {
+        checkOpen();
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting to send a request to " + name);
+        }
+
+        try {
+            T result = request.get();
+            completedRequests.incrementAndGet();
+            return result;
+        } catch (RuntimeException e) {
+            failedRequests.incrementAndGet();
+            throw e;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * See send(Supplier)
+     */
+    public void send(Runnable request) {
+        send(() -> {
+            request.run();
+            return null;
+        });
+    }
+
+    /**
+     * Interrupt every request in progress, both from batches and in the background. Batches in progress will throw a
+     * CancellationException
+     */
+    public void cancel() {
+        batches.forEach((batch, cancelled) -> {
+            cancelled.set(true);
+            batch.shutdownNow();
+        });
+
+        for (Future<?> request : pendingBackground)
+            request.cancel(true);
+    }
+
+    /**
+     * Cancel every request in progress. No more requests can be sent afterwards
+     */
+    @Override
+    public void close() {
+        closed = true;
+        cancel();
+        background.shutdownNow();
+    }
+
+    private void checkBackgroundFailure() throws ExecutionException {
+        Throwable failure = backgroundFailure.get();
+        if (failure != null)
+            throw new ExecutionException(failure);
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new RejectedExecutionException("The request executor for " + name + " has been closed");
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(maxInFlightRequests,
+                maxInFlightRequests - permits.availablePermits(),
+                permits.getQueueLength(),
+                pendingBackground.size(),
+                completedRequests.get(),
+                failedRequests.get());
+    }
+
+    /**
+     * Snapshot of the state of a request executor
+     *
+     * @param maxInFlightRequests Maximum number of requests running at the same time
+     * @param inFlightRequests    Number of requests running
+     * @param waitingRequests     Estimated number of requests waiting for others to finish (the backpressure)
+     * @param pendingBackground   Number of requests sent via submit which haven't finished yet
+     * @param completedRequests   Number of requests completed successfully
+     * @param failedRequests      Number of requests which threw an exception
+     */
+    public record Metrics(int maxInFlightRequests,
+                          int inFlightRequests,
+                          int waitingRequests,
+                          int pendingBackground,
+                          long completedRequests,
+                          long failedRequests) {
+    }
+}
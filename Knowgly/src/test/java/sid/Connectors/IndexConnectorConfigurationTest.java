@@ -0,0 +1,74 @@
+package sid.Connectors;
+
+import org.junit.jupiter.api.Test;
+import sid.Connectors.Terrier.TerrierConnector;
+import sid.MetricsAggregation.MetricsAggregator;
+import sid.utils.ConfigurationSnapshot;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexConnectorConfigurationTest {
+    private static Map<String, String> configurationFiles() {
+        Map<String, String> files = new HashMap<>();
+        files.put(MetricsAggregator.INDEX_CONFIGURATION_FILE, """
+                {"fieldName": "field", "subfields": ["ngrams", "keyword"]}""");
+        files.put(MetricsAggregator.CONFIGURATION_FILE, """
+                {
+                  "buckets": 4,
+                  "typePredicatesOverride": ["http://www.w3.org/1999/02/22-rdf-syntax-ns#type"],
+                  "divideDataTypeAndObjectProperties": true,
+                  "createRelationsFields": false
+                }""");
+        files.put(IndexConnector.ENTITY_INDEXER_CONFIGURATION_FILE, """
+                {"addPredicateNames": true, "predicateNamePrefixes": ["http://example.org/"]}""");
+        files.put(IndexConnector.ENTITY_SEARCHER_CONFIGURATION_FILE, """
+                {"forbiddenSubfields": ["keyword"], "maxNumberOfResults": 25}""");
+        files.put(TerrierConnector.ENDPOINT_CONFIGURATION_FILE, """
+                {"serverAddress": "http://localhost:1", "createIndex": false}""");
+
+        return files;
+    }
+
+    @Test
+    void connectorIsBuiltFromInMemoryConfiguration() throws Exception {
+        IndexConnector connector = TerrierConnector.fromConfiguration(ConfigurationSnapshot.fromJSON(configurationFiles()));
+
+        assertEquals("field", connector.fieldName);
+        assertEquals(4, connector.numberOfFields);
+        assertTrue(connector.divideDataTypeAndObjectProperties);
+        assertTrue(connector.createTypesOverrideField);
+        assertFalse(connector.createRelationsFields);
+        assertEquals(List.of("ngrams", "keyword"), connector.subfields);
+        assertTrue(connector.addPredicateNames);
+        assertEquals(List.of("http://example.org/"), connector.predicateNamePrefixes);
+        assertEquals(List.of("keyword"), connector.forbiddenSubfields);
+        assertEquals(25, connector.maxNumberOfResults);
+    }
+
+    @Test
+    void missingKeysAreReportedBeforeBuilding() throws IOException {
+        Map<String, String> files = configurationFiles();
+        files.put(IndexConnector.ENTITY_SEARCHER_CONFIGURATION_FILE, "{\"forbiddenSubfields\": []}");
+
+        ConfigurationSnapshot configuration = ConfigurationSnapshot.fromJSON(files);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> TerrierConnector.fromConfiguration(configuration));
+        assertTrue(e.getMessage().contains("[maxNumberOfResults]"), e.getMessage());
+    }
+
+    @Test
+    void missingEndpointConfigurationIsReported() throws IOException {
+        Map<String, String> files = configurationFiles();
+        files.remove(TerrierConnector.ENDPOINT_CONFIGURATION_FILE);
+
+        ConfigurationSnapshot configuration = ConfigurationSnapshot.fromJSON(files);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> TerrierConnector.fromConfiguration(configuration));
+        assertTrue(e.getMessage().contains(TerrierConnector.ENDPOINT_CONFIGURATION_FILE), e.getMessage());
+    }
+}
@@ -0,0 +1,176 @@
+package sid.Connectors.Lucene;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sid.Connectors.EntityDocument;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Indexing benchmark of LuceneConnector's default and bulk load profiles, over synthetic DBpedia-like entity documents
+ * <p>
+ * Besides indexing them with each profile, it times building and tokenizing the same documents without indexing them,
+ * which is the lower bound both profiles are compared against: the closer to it, the less time is spent on flushes and
+ * merges
+ * <p>
+ * Not run by default. Run it with mvn test -Pbenchmark, optionally setting -Dbenchmark.documents and
+ * -Dbenchmark.threads
+ */
+@Tag("benchmark")
+class LuceneIndexingBenchmark {
+    private static final int DOCUMENTS = Integer.getInteger("benchmark.documents", 500000);
+    private static final int THREADS = Integer.getInteger("benchmark.threads", Runtime.getRuntime().availableProcessors());
+
+    private static final int FIELDS = 10;
+    private static final int VOCABULARY_SIZE = 200000;
+    private static final String[] VOCABULARY = new String[VOCABULARY_SIZE];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0);
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            char[] word = new char[3 + random.nextInt(8)];
+            for (int c = 0; c < word.length; c++)
+                word[c] = (char) ('a' + random.nextInt(26));
+            VOCABULARY[i] = new String(word);
+        }
+    }
+
+    private interface DocumentConsumer {
+        void accept(Document document) throws IOException;
+    }
+
+    @Test
+    void comparesIndexingProfiles(@TempDir Path dir) throws Exception {
+        System.out.println("Lucene indexing benchmark: " + DOCUMENTS + " documents, " + THREADS + " threads");
+
+        StandardAnalyzer analyzer = new StandardAnalyzer();
+        Duration tokenizing = run(document -> {
+            for (IndexableField field : document) {
+                try (TokenStream tokenStream = field.tokenStream(analyzer, null)) {
+                    if (tokenStream == null) continue;
+
+                    tokenStream.reset();
+                    while (tokenStream.incrementToken()) ;
+                    tokenStream.end();
+                }
+            }
+        });
+        System.out.println("  Building and tokenizing documents: " + tokenizing);
+
+        index(dir.resolve("default"), false, IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, 0, tokenizing);
+        index(dir.resolve("bulk"), true, LuceneConnector.DEFAULT_BULK_RAM_BUFFER_SIZE_MB, 0, tokenizing);
+        index(dir.resolve("bulk-merged"), true, LuceneConnector.DEFAULT_BULK_RAM_BUFFER_SIZE_MB, 1, tokenizing);
+    }
+
+    private void index(Path indexPath,
+                       boolean bulkLoad,
+                       double ramBufferSizeMB,
+                       int forceMergeMaxSegments,
+                       Duration tokenizing) throws Exception {
+        LuceneConnector.TimedMergeScheduler mergeScheduler = new LuceneConnector.TimedMergeScheduler();
+
+        long start = System.nanoTime();
+        try (IndexWriter indexWriter = new IndexWriter(FSDirectory.open(indexPath),
+                LuceneConnector.createIndexWriterConfig(bulkLoad, ramBufferSizeMB, mergeScheduler))) {
+            Duration adding = run(indexWriter::addDocument);
+
+            long forceMergeStart = System.nanoTime();
+            if (forceMergeMaxSegments > 0)
+                indexWriter.forceMerge(forceMergeMaxSegments);
+            long commitStart = System.nanoTime();
+            indexWriter.commit();
+            long end = System.nanoTime();
+
+            System.out.println("  " + (bulkLoad ? "Bulk load" : "Default") + " profile (RAM buffer: " + ramBufferSizeMB
+                    + " MB" + (forceMergeMaxSegments > 0 ? ", force merge into " + forceMergeMaxSegments + " segment(s)" : "")
+                    + "):");
+            System.out.println("    Adding documents: " + adding + " ("
+                    + Math.round(DOCUMENTS / Math.max(0.001, adding.toMillis() / 1000.0)) + " docs/s, "
+                    + String.format("%.2f", adding.toNanos() / (double) tokenizing.toNanos()) + "x tokenizing)");
+            System.out.println("    Merges: " + mergeScheduler.getMerges() + " (cumulative merge time: "
+                    + Duration.ofNanos(mergeScheduler.getMergeNanos()) + ")");
+            System.out.println("    Force merge: " + Duration.ofNanos(commitStart - forceMergeStart));
+            System.out.println("    Commit: " + Duration.ofNanos(end - commitStart));
+            System.out.println("    Total: " + Duration.ofNanos(end - start));
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexPath))) {
+            assertEquals(DOCUMENTS, reader.numDocs());
+            System.out.println("    Segments: " + reader.leaves().size());
+        }
+    }
+
+    /**
+     * Build every document (split in one range per thread, reusing each thread's Document and Field instances as
+     * LuceneConnector does) and pass it to the given consumer
+     *
+     * @return Time taken
+     */
+    private static Duration run(DocumentConsumer consumer) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int from = (int) ((long) DOCUMENTS * t / THREADS);
+                int to = (int) ((long) DOCUMENTS * (t + 1) / THREADS);
+
+                futures.add(executor.submit(() -> {
+                    LuceneConnector.ReusableDocument reusableDoc = new LuceneConnector.ReusableDocument();
+                    for (int i = from; i < to; i++)
+                        consumer.accept(LuceneConnector.toLuceneDocument(reusableDoc, createDocument(i)));
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * Synthetic entity document, always the same for the same index: a handful of fields with a few to a few dozen
+     * terms each, drawn from a skewed vocabulary (as names, types and categories of DBpedia entities are)
+     */
+    private static EntityDocument createDocument(int i) {
+        SplittableRandom random = new SplittableRandom(i);
+        EntityDocument document = new EntityDocument("http://dbpedia.org/resource/Entity_" + i);
+
+        for (int f = 0; f < FIELDS; f++) {
+            String field = "bucket" + f;
+            document.addField(field);
+
+            int terms = random.nextInt(2 + f * 4);
+            for (int t = 0; t < terms; t++) {
+                double r = random.nextDouble();
+                document.addTermToField(field, VOCABULARY[(int) (VOCABULARY_SIZE * r * r * r)], false);
+            }
+        }
+
+        return document;
+    }
+}
@@ -0,0 +1,103 @@
+package sid.Connectors.Lucene;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.sandbox.search.CombinedFieldQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Test;
+import sid.Connectors.ScoredSearchResult;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LuceneRankingModelsTest {
+    private static final String[] WORDS = {"paris", "france", "city", "river", "capital", "music", "band", "album",
+            "football", "club", "london", "england", "painter", "museum", "art"};
+
+    @Test
+    void bm25fMatchesCombinedFieldQuery() throws IOException {
+        StandardAnalyzer analyzer = new StandardAnalyzer();
+        ByteBuffersDirectory directory = new ByteBuffersDirectory();
+
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            SplittableRandom random = new SplittableRandom(7);
+
+            for (int i = 0; i < 500; i++) {
+                Document document = new Document();
+                document.add(new StoredField("URI", "http://example.org/e" + i));
+
+                // A third of the documents have none of the queried fields, so that their document count (which
+                // CombinedFieldQuery uses) differs from the index's
+                String[] fields = (i % 3 == 0) ? new String[]{"other"} : new String[]{"bucket0", "bucket1", "bucket2"};
+                for (String field : fields) {
+                    if (random.nextInt(4) == 0) continue;
+
+                    StringBuilder text = new StringBuilder();
+                    int length = 1 + random.nextInt(field.equals("bucket2") ? 300 : 12);
+                    for (int t = 0; t < length; t++)
+                        text.append(WORDS[(int) (WORDS.length * Math.pow(random.nextDouble(), 2))]).append(' ');
+
+                    document.add(new Field(field, text.toString(), TextField.TYPE_NOT_STORED));
+                }
+
+                writer.addDocument(document);
+            }
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertTrue(reader.getDocCount("bucket0") < reader.numDocs());
+
+            LuceneRankingModels models = new LuceneRankingModels(reader, analyzer);
+            Map<String, Double> weights = new LinkedHashMap<>();
+            weights.put("bucket1", 3.0);
+            weights.put("bucket0", 1.0);
+            weights.put("bucket2", 2.0);
+
+            for (String query : List.of("paris france", "music band album", "art museum capital city", "london")) {
+                List<ScoredSearchResult> results = models.searchBM25F(query, weights, 1.2, 0.75, false, 20);
+
+                IndexSearcher searcher = new IndexSearcher(reader);
+                searcher.setSimilarity(new BM25Similarity(1.2f, 0.75f));
+                TopDocs expected = searcher.search(combinedFieldQuery(query, weights), 20);
+
+                assertEquals(expected.scoreDocs.length, results.size(), query);
+                for (int i = 0; i < results.size(); i++) {
+                    ScoreDoc hit = expected.scoreDocs[i];
+                    assertEquals(hit.score, (float) results.get(i).score, 1e-5f * hit.score, query + " #" + i);
+                }
+            }
+        }
+    }
+
+    // Same query as LuceneConnector.scoredSearch: a sum of one CombinedFieldQuery per term
+    private static BooleanQuery combinedFieldQuery(String query, Map<String, Double> weights) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String term : query.split(" ")) {
+            CombinedFieldQuery.Builder termQuery = new CombinedFieldQuery.Builder();
+            termQuery.addTerm(new BytesRef(term));
+            weights.forEach((field, weight) -> termQuery.addField(field, weight.floatValue()));
+            builder.add(termQuery.build(), BooleanClause.Occur.SHOULD);
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,81 @@
+package sid.MetricsAggregation;
+
+import org.junit.jupiter.api.Test;
+import sid.utils.ConfigurationSnapshot;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsAggregatorConfigurationTest {
+    private static final String AGGREGATOR_CONFIGURATION = """
+            {
+              "buckets": 3,
+              "bucketWeights": [0.2, 1.0, 0.6],
+              "kMeansIterations": 50,
+              "predicatesOverride": ["http://example.org/name"],
+              "typePredicatesOverride": [],
+              "typePredicatesOverrideFieldWeight": 1.0,
+              "typeNamePrefixes": ["http://example.org/"],
+              "divideDataTypeAndObjectProperties": %s,
+              "createRelationsFields": false,
+              "relationsFieldWeights": [6, 7, 8],
+              "dataTypePropertiesWeights": [0.9, 0.3, 0.5],
+              "objectPropertiesWeights": [0.8, 0.4, 0.1],
+              "reclusterize": false
+            }""";
+
+    private static final String INDEX_CONFIGURATION = """
+            {"fieldName": "field", "subfields": []}""";
+
+    private static ConfigurationSnapshot configuration(boolean divideDataTypeAndObjectProperties) throws IOException {
+        return ConfigurationSnapshot.fromJSON(Map.of(
+                MetricsAggregator.CONFIGURATION_FILE, AGGREGATOR_CONFIGURATION.formatted(divideDataTypeAndObjectProperties),
+                MetricsAggregator.INDEX_CONFIGURATION_FILE, INDEX_CONFIGURATION));
+    }
+
+    @Test
+    void aggregatorIsBuiltFromInMemoryConfiguration() throws IOException {
+        ConfigurationSnapshot configuration = configuration(false);
+        MetricsAggregator aggregator = new DummyMetricsAggregator(new VirtualDocumentTemplate(), configuration);
+
+        assertSame(configuration, aggregator.getConfiguration());
+        assertEquals(3, aggregator.kMeansClusters);
+        assertEquals(50, aggregator.kMeansIterations);
+        assertFalse(aggregator.usesPropertyKinds());
+    }
+
+    @Test
+    void emptyTemplateFollowsTheConfiguration() throws IOException {
+        VirtualDocumentTemplate template = MetricsAggregator.getEmptyVirtualDocumentTemplate(configuration(false));
+
+        assertEquals(List.of("field0", "field1", "field2"), template.fields.stream().map(f -> f.name).toList());
+        // Weights are assigned in descending order
+        assertEquals(List.of(1.0, 0.6, 0.2), template.fields.stream().map(f -> f.weight).toList());
+
+        template = MetricsAggregator.getEmptyVirtualDocumentTemplate(configuration(true));
+        assertEquals(List.of("field0dp", "field0op", "field1dp", "field1op", "field2dp", "field2op"),
+                template.fields.stream().map(f -> f.name).toList());
+        assertEquals(List.of(0.9, 0.8, 0.5, 0.4, 0.3, 0.1), template.fields.stream().map(f -> f.weight).toList());
+    }
+
+    @Test
+    void missingKeysAreReportedBeforeBuilding() throws IOException {
+        ConfigurationSnapshot configuration = ConfigurationSnapshot.fromJSON(Map.of(
+                MetricsAggregator.CONFIGURATION_FILE, "{\"buckets\": 3, \"kMeansIterations\": 50}",
+                MetricsAggregator.INDEX_CONFIGURATION_FILE, INDEX_CONFIGURATION));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new DummyMetricsAggregator(new VirtualDocumentTemplate(), configuration));
+        assertTrue(e.getMessage().contains(MetricsAggregator.FIELD_WEIGHTS_CONF), e.getMessage());
+        assertTrue(e.getMessage().contains(MetricsAggregator.RELUSTERIZE_CONF), e.getMessage());
+
+        ConfigurationSnapshot withoutIndex = ConfigurationSnapshot.fromJSON(Map.of(
+                MetricsAggregator.CONFIGURATION_FILE, AGGREGATOR_CONFIGURATION.formatted(false)));
+        e = assertThrows(IllegalArgumentException.class,
+                () -> new DummyMetricsAggregator(new VirtualDocumentTemplate(), withoutIndex));
+        assertTrue(e.getMessage().contains(MetricsAggregator.INDEX_CONFIGURATION_FILE), e.getMessage());
+    }
+}
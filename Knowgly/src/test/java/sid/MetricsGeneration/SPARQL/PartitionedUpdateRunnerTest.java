@@ -0,0 +1,122 @@
+package sid.MetricsGeneration.SPARQL;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.update.UpdateFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sid.MetricsGeneration.MetricsGenerator.Metric;
+import sid.SPARQLEndpoint.LocalSPARQLEndpoint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedUpdateRunnerTest {
+    private static final List<Node> VALUES = List.of(NodeFactory.createURI("http://example.org/a"),
+            NodeFactory.createURI("http://example.org/b"));
+
+    @Test
+    void restrictsEveryPartitionedMetric() throws IOException {
+        List<Metric> metrics = new ArrayList<>(ImportanceMetricsGenerator.getMetrics());
+        metrics.addAll(InfoRankMetricsGenerator.getFeatureMetrics());
+        metrics.add(InfoRankMetricsGenerator.getInfoRankMetric());
+
+        int partitioned = 0;
+        for (Metric metric : metrics) {
+            if (metric.partitionVariable == null) continue;
+
+            String restricted = assertDoesNotThrow(
+                    () -> PartitionedUpdateRunner.restrictTo(metric.query, Var.alloc(metric.partitionVariable), VALUES),
+                    metric.name);
+
+            assertDoesNotThrow(() -> UpdateFactory.create(restricted), metric.name);
+            assertTrue(restricted.contains("VALUES ?" + metric.partitionVariable), metric.name);
+            partitioned++;
+        }
+
+        assertTrue(partitioned > 0);
+    }
+
+    @Test
+    void restrictsBareSubQueryBeforeItsAggregation() {
+        String update = "INSERT { ?p <http://example.org/count> ?n } " +
+                "WHERE { SELECT ?p (count(*) AS ?n) WHERE { ?s ?p ?o } GROUP BY ?p }";
+
+        String restricted = PartitionedUpdateRunner.restrictTo(update, Var.alloc("p"), VALUES);
+
+        // The VALUES block must be inside the subquery, before its GROUP BY
+        int values = restricted.indexOf("VALUES ?p");
+        assertTrue(values > restricted.indexOf("SELECT"), restricted);
+        assertTrue(values < restricted.indexOf("GROUP BY"), restricted);
+    }
+
+    @Test
+    void rejectsAggregatedAwayVariable() {
+        String update = "INSERT { <http://example.org/total> <http://example.org/count> ?n } " +
+                "WHERE { SELECT (count(*) AS ?n) WHERE { ?s ?p ?o } }";
+
+        assertThrows(IllegalArgumentException.class,
+                () -> PartitionedUpdateRunner.restrictTo(update, Var.alloc("p"), VALUES));
+    }
+
+    @Test
+    void partitionsAcrossKeysPages(@TempDir Path dir) throws Exception {
+        // 25 predicates, the i-th one with i + 1 triples
+        StringBuilder triples = new StringBuilder();
+        for (int p = 0; p < 25; p++)
+            for (int s = 0; s <= p; s++)
+                triples.append("<http://example.org/s").append(s).append("> <http://example.org/p").append(p)
+                        .append("> \"").append(s).append("\" .\n");
+
+        Path dataset = dir.resolve("dataset.nt");
+        Files.writeString(dataset, triples);
+
+        Metric metric = new Metric("INSERT { ?p <http://example.org/count> ?n } " +
+                "WHERE { SELECT ?p (count(*) AS ?n) WHERE { ?s ?p ?o } GROUP BY ?p }",
+                "count",
+                "p",
+                "SELECT DISTINCT ?key WHERE { ?s ?key ?o FILTER(STRSTARTS(STR(?key), \"http://example.org/p\")) } ORDER BY ?key");
+
+        SynchronizedEndpoint endpoint = new SynchronizedEndpoint(dataset.toString());
+        // Partitions of 2 keys over pages of 3 of them, so that some partitions span two pages
+        new PartitionedUpdateRunner(endpoint, 2, 2, 3, null).run(metric);
+
+        Property count = endpoint.model.createProperty("http://example.org/count");
+        assertEquals(25, endpoint.model.listStatements(null, count, (Resource) null).toList().size());
+
+        for (int p = 0; p < 25; p++) {
+            Literal n = endpoint.model.getRequiredProperty(endpoint.model.createResource("http://example.org/p" + p), count)
+                    .getLiteral();
+            assertEquals(p + 1, n.getInt());
+        }
+    }
+
+    // Partitions are run from other threads, while the next keys are read
+    private static class SynchronizedEndpoint extends LocalSPARQLEndpoint {
+        SynchronizedEndpoint(String datasetLocation) {
+            super(datasetLocation);
+        }
+
+        @Override
+        public synchronized void runUpdate(String update) {
+            super.runUpdate(update);
+        }
+
+        @Override
+        public synchronized ResultSet runSelectQuery(Query query) {
+            return ResultSetFactory.copyResults(super.runSelectQuery(query));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package sid.MetricsGeneration.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapDoubleArrayTest {
+    // More than 2^31 elements, spanning 17 chunks. Only the touched pages of the (sparse) backing file are allocated
+    private static final long SIZE = (1L << 31) + 1000;
+    private static final long CHUNK_ELEMENTS = OffHeapArray.CHUNK_SIZE / Double.BYTES;
+
+    @Test
+    void readsAndWritesAcrossChunks() throws IOException {
+        OffHeapDoubleArray array = new OffHeapDoubleArray(SIZE);
+        assertEquals(SIZE, array.size());
+
+        long[] indexes = {0, CHUNK_ELEMENTS - 1, CHUNK_ELEMENTS, 2 * CHUNK_ELEMENTS - 1, Integer.MAX_VALUE,
+                Integer.MAX_VALUE + 1L, SIZE - 1};
+
+        for (long index : indexes)
+            assertEquals(0.0, array.get(index), "Index " + index);
+
+        for (long index : indexes)
+            array.set(index, index / 3.0);
+
+        for (long index : indexes)
+            assertEquals(index / 3.0, array.get(index), "Index " + index);
+
+        // Neighbours of the written elements are untouched
+        assertEquals(0.0, array.get(CHUNK_ELEMENTS + 1));
+        assertEquals(0.0, array.get(Integer.MAX_VALUE - 1L));
+    }
+
+    @Test
+    void atomicOperationsBeyondIntRange() throws Exception {
+        OffHeapDoubleArray array = new OffHeapDoubleArray(SIZE);
+        long index = Integer.MAX_VALUE + 1L;
+
+        // Halves add up exactly, whatever the order of the additions
+        int nThreads = 4;
+        int additions = 100000;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < additions; i++)
+                    array.addAndGet(index, 0.5);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(0.5 * nThreads * additions, array.get(index));
+        assertEquals(0.5 * nThreads * additions + 0.25, array.addAndGet(index, 0.25));
+
+        assertFalse(array.compareAndSet(index, 0.0, 1.0));
+        assertTrue(array.compareAndSet(index, 0.5 * nThreads * additions + 0.25, Double.NaN));
+        assertTrue(Double.isNaN(array.get(index)));
+        // NaNs are compared by their bits, so the CAS can still replace them
+        assertTrue(array.compareAndSet(index, Double.NaN, -1.0));
+        assertEquals(-1.0, array.get(index));
+        assertEquals(0.0, array.get(index - 1));
+        assertEquals(0.0, array.get(index + 1));
+    }
+
+    @Test
+    void fillsAndCopiesAcrossChunks() throws IOException {
+        OffHeapDoubleArray array = new OffHeapDoubleArray(SIZE);
+
+        // A range straddling the last chunk boundary, copied to one which straddles it at a different offset
+        long from = 16 * CHUNK_ELEMENTS - 100;
+        array.fill(from, from + 200, 0.125);
+        for (long i = from; i < from + 200; i++)
+            array.set(i, array.get(i) + (i - from));
+
+        long destination = 16 * CHUNK_ELEMENTS - 37;
+        OffHeapDoubleArray copy = new OffHeapDoubleArray(SIZE);
+        copy.copyFrom(array, from, destination, 200);
+
+        assertEquals(0.0, copy.get(destination - 1));
+        for (long i = 0; i < 200; i++)
+            assertEquals(0.125 + i, copy.get(destination + i), "Offset " + i);
+        assertEquals(0.0, copy.get(destination + 200));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> array.fill(SIZE - 1, SIZE + 1, 1.0));
+        assertThrows(IndexOutOfBoundsException.class, () -> copy.copyFrom(array, 0, SIZE - 1, 2));
+    }
+
+    @Test
+    void reopensPersistentArrays(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("array.bin");
+
+        try (OffHeapDoubleArray array = new OffHeapDoubleArray(SIZE, file)) {
+            array.set(SIZE - 1, 0.42);
+            array.set(CHUNK_ELEMENTS, -0.42);
+        }
+
+        OffHeapDoubleArray reopened = OffHeapDoubleArray.open(file);
+        assertEquals(SIZE, reopened.size());
+        assertEquals(0.42, reopened.get(SIZE - 1));
+        assertEquals(-0.42, reopened.get(CHUNK_ELEMENTS));
+        assertEquals(0.0, reopened.get(CHUNK_ELEMENTS - 1));
+    }
+}
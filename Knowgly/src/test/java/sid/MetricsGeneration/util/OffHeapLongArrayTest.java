@@ -0,0 +1,111 @@
+package sid.MetricsGeneration.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapLongArrayTest {
+    // More than 2^31 elements, spanning 17 chunks. Only the touched pages of the (sparse) backing file are allocated
+    private static final long SIZE = (1L << 31) + 1000;
+    private static final long CHUNK_ELEMENTS = OffHeapArray.CHUNK_SIZE / Long.BYTES;
+
+    @Test
+    void readsAndWritesAcrossChunks() throws IOException {
+        OffHeapLongArray array = new OffHeapLongArray(SIZE);
+        assertEquals(SIZE, array.size());
+
+        long[] indexes = {0, CHUNK_ELEMENTS - 1, CHUNK_ELEMENTS, 2 * CHUNK_ELEMENTS - 1, Integer.MAX_VALUE,
+                Integer.MAX_VALUE + 1L, SIZE - 1};
+
+        for (long index : indexes)
+            assertEquals(0, array.get(index), "Index " + index);
+
+        for (long index : indexes)
+            array.set(index, index * 31 + Long.MIN_VALUE);
+
+        for (long index : indexes)
+            assertEquals(index * 31 + Long.MIN_VALUE, array.get(index), "Index " + index);
+
+        // Neighbours of the written elements are untouched
+        assertEquals(0, array.get(CHUNK_ELEMENTS + 1));
+        assertEquals(0, array.get(Integer.MAX_VALUE - 1L));
+    }
+
+    @Test
+    void atomicOperationsBeyondIntRange() throws Exception {
+        OffHeapLongArray array = new OffHeapLongArray(SIZE);
+        long index = Integer.MAX_VALUE + 1L;
+
+        int nThreads = 4;
+        int additions = 100000;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < additions; i++)
+                    array.addAndGet(index, 3);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(3L * nThreads * additions, array.get(index));
+        assertEquals(3L * nThreads * additions + 5, array.addAndGet(index, 5));
+
+        assertFalse(array.compareAndSet(index, 0, 1));
+        assertTrue(array.compareAndSet(index, 3L * nThreads * additions + 5, -1));
+        assertEquals(-1, array.get(index));
+        assertEquals(0, array.get(index - 1));
+        assertEquals(0, array.get(index + 1));
+    }
+
+    @Test
+    void fillsAndCopiesAcrossChunks() throws IOException {
+        OffHeapLongArray array = new OffHeapLongArray(SIZE);
+
+        // A range straddling the last chunk boundary, copied to one which straddles it at a different offset
+        long from = 16 * CHUNK_ELEMENTS - 100;
+        array.fill(from, from + 200, 7);
+        for (long i = from; i < from + 200; i++)
+            array.set(i, array.get(i) + i);
+
+        long destination = 16 * CHUNK_ELEMENTS - 37;
+        OffHeapLongArray copy = new OffHeapLongArray(SIZE);
+        copy.copyFrom(array, from, destination, 200);
+
+        assertEquals(0, copy.get(destination - 1));
+        for (long i = 0; i < 200; i++)
+            assertEquals(7 + from + i, copy.get(destination + i), "Offset " + i);
+        assertEquals(0, copy.get(destination + 200));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> array.fill(SIZE - 1, SIZE + 1, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> copy.copyFrom(array, 0, SIZE - 1, 2));
+    }
+
+    @Test
+    void reopensPersistentArrays(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("array.bin");
+
+        try (OffHeapLongArray array = new OffHeapLongArray(SIZE, file)) {
+            assertTrue(array.isPersistent());
+            assertEquals(file, array.getFile());
+
+            array.set(SIZE - 1, 42);
+            array.set(CHUNK_ELEMENTS, -42);
+        }
+
+        OffHeapLongArray reopened = OffHeapLongArray.open(file);
+        assertEquals(SIZE, reopened.size());
+        assertEquals(42, reopened.get(SIZE - 1));
+        assertEquals(-42, reopened.get(CHUNK_ELEMENTS));
+        assertEquals(0, reopened.get(CHUNK_ELEMENTS - 1));
+    }
+}
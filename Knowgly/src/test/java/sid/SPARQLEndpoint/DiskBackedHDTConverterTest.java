@@ -0,0 +1,81 @@
+package sid.SPARQLEndpoint;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskBackedHDTConverterTest {
+    private static final String BASE_URI = "http://example.org/";
+
+    // Small enough to split the test files in several chunks
+    private static final long HEAP_BUDGET = 20000;
+
+    private static Path writeNTriples(Path dir, int numberOfTriples, String extraLine) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < numberOfTriples; i++) {
+            lines.add("<http://example.org/s" + i + "> <http://example.org/p" + (i % 3) + "> \"" + i + "\" .");
+
+            if (extraLine != null && i == numberOfTriples / 2)
+                lines.add(extraLine);
+        }
+
+        return Files.write(dir.resolve("input.nt"), lines);
+    }
+
+    private static List<String> files(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(f -> f.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    @Test
+    void convertsInChunks(@TempDir Path dir) throws Exception {
+        Path input = writeNTriples(dir, 2000, null);
+        String output = dir.resolve("output.hdt").toString();
+
+        DiskBackedHDTConverter converter = new DiskBackedHDTConverter(HEAP_BUDGET);
+        assertTrue(Files.size(input) > converter.getChunkSize() * 2);
+        converter.convert(input.toString(), output, BASE_URI, "ntriples");
+
+        try (HDT hdt = HDTManager.mapHDT(output)) {
+            assertEquals(2000, hdt.getTriples().getNumberOfElements());
+        }
+
+        assertEquals(List.of("input.nt", "output.hdt"), files(dir));
+    }
+
+    @Test
+    void emptyInputResultsInEmptyHDT(@TempDir Path dir) throws Exception {
+        Path input = Files.createFile(dir.resolve("input.nt"));
+        String output = dir.resolve("output.hdt").toString();
+
+        new DiskBackedHDTConverter(HEAP_BUDGET).convert(input.toString(), output, BASE_URI, "ntriples");
+
+        try (HDT hdt = HDTManager.mapHDT(output)) {
+            assertEquals(0, hdt.getTriples().getNumberOfElements());
+        }
+
+        assertEquals(List.of("input.nt", "output.hdt"), files(dir));
+    }
+
+    @Test
+    void failuresDeleteTemporaryFiles(@TempDir Path dir) throws Exception {
+        Path input = writeNTriples(dir, 2000, "<http://example.org/broken> \"not a triple");
+        String output = dir.resolve("output.hdt").toString();
+
+        assertThrows(IOException.class,
+                () -> new DiskBackedHDTConverter(HEAP_BUDGET).convert(input.toString(), output, BASE_URI, "ntriples"));
+
+        assertEquals(List.of("input.nt"), files(dir));
+    }
+}
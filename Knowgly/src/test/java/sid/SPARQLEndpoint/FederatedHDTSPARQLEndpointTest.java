@@ -0,0 +1,236 @@
+package sid.SPARQLEndpoint;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.options.HDTSpecification;
+import org.rdfhdt.hdt.triples.IteratorTripleString;
+import org.rdfhdt.hdt.triples.TripleID;
+import org.rdfhdt.hdt.triples.TripleString;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FederatedHDTSPARQLEndpointTest {
+    private static final String BASE_URI = "http://example.org/";
+    private static final int NUMBER_OF_FILES = 3;
+    private static final TripleComponentRole[] ROLES = {TripleComponentRole.SUBJECT,
+            TripleComponentRole.PREDICATE,
+            TripleComponentRole.OBJECT};
+
+    private static String save(Collection<TripleString> triples, String location) throws Exception {
+        try (HDT hdt = HDTManager.generateHDT(triples.iterator(), BASE_URI, new HDTSpecification(), null)) {
+            hdt.saveToHDT(location, null);
+        }
+
+        return location;
+    }
+
+    private static String toString(TripleString triple) {
+        return triple.getSubject() + " " + triple.getPredicate() + " " + triple.getObject();
+    }
+
+    /**
+     * Overlapping HDT files, each one with some triples of the others and some terms of its own (including URIs
+     * which are subjects in one file and objects in another). Returns the union of all of them as the last file
+     */
+    private static List<String> createFiles(Path dir) throws Exception {
+        Random random = new Random(42);
+        Map<String, TripleString> all = new LinkedHashMap<>();
+        List<String> locations = new ArrayList<>();
+
+        for (int f = 0; f < NUMBER_OF_FILES; f++) {
+            Map<String, TripleString> triples = new LinkedHashMap<>();
+
+            // Some triples of the previous files
+            for (TripleString triple : all.values()) {
+                if (random.nextInt(3) == 0)
+                    triples.put(toString(triple), triple);
+            }
+
+            for (int i = 0; i < 300; i++) {
+                String subject = BASE_URI + "s" + random.nextInt(40 + 20 * f);
+                String predicate = BASE_URI + "p" + random.nextInt(3 + f);
+                String object = random.nextBoolean() ?
+                        BASE_URI + "s" + random.nextInt(40 + 20 * f) :
+                        "\"" + random.nextInt(10 + 10 * f) + "\"";
+
+                TripleString triple = new TripleString(subject, predicate, object);
+                triples.put(toString(triple), triple);
+            }
+
+            locations.add(save(triples.values(), dir.resolve("part" + f + ".hdt").toString()));
+            all.putAll(triples);
+        }
+
+        locations.add(save(all.values(), dir.resolve("all.hdt").toString()));
+        return locations;
+    }
+
+    private static FederatedHDTSPARQLEndpoint open(List<String> locations) throws Exception {
+        List<LocalHDTSPARQLEndpoint> parts = new ArrayList<>();
+        for (String location : locations.subList(0, NUMBER_OF_FILES))
+            parts.add(new LocalHDTSPARQLEndpoint(location, BASE_URI, true));
+
+        return new FederatedHDTSPARQLEndpoint(parts);
+    }
+
+    private static void close(FederatedHDTSPARQLEndpoint union) throws Exception {
+        for (LocalHDTSPARQLEndpoint part : union.getParts())
+            part.hdt.close();
+    }
+
+    @Test
+    void idsRoundTrip(@TempDir Path dir) throws Exception {
+        List<String> locations = createFiles(dir);
+        FederatedHDTSPARQLEndpoint union = open(locations);
+
+        try (HDT all = HDTManager.mapIndexedHDT(locations.get(NUMBER_OF_FILES))) {
+            for (TripleComponentRole role : ROLES) {
+                List<Long> ids = new ArrayList<>();
+
+                IteratorTripleString triples = all.search("", "", "");
+                while (triples.hasNext()) {
+                    TripleString triple = triples.next();
+                    CharSequence term = role == TripleComponentRole.SUBJECT ? triple.getSubject() :
+                            role == TripleComponentRole.PREDICATE ? triple.getPredicate() : triple.getObject();
+
+                    long id = union.stringToId(term, role);
+                    assertTrue(id > 0, term + " as " + role);
+                    assertEquals(term.toString(), union.idToString(id, role).toString(), role.toString());
+                    ids.add(id);
+                }
+
+                // Different terms never share an ID
+                assertEquals(distinctTerms(all, role), ids.stream().distinct().count(), role.toString());
+            }
+
+            assertEquals(0, union.stringToId(BASE_URI + "missing", TripleComponentRole.SUBJECT));
+        } finally {
+            close(union);
+        }
+    }
+
+    private static long distinctTerms(HDT hdt, TripleComponentRole role) {
+        return switch (role) {
+            case SUBJECT -> hdt.getDictionary().getNsubjects();
+            case PREDICATE -> hdt.getDictionary().getNpredicates();
+            case OBJECT -> hdt.getDictionary().getNobjects();
+        };
+    }
+
+    @Test
+    void searchReturnsEveryTripleOnce(@TempDir Path dir) throws Exception {
+        List<String> locations = createFiles(dir);
+        FederatedHDTSPARQLEndpoint union = open(locations);
+
+        try (HDT all = HDTManager.mapIndexedHDT(locations.get(NUMBER_OF_FILES))) {
+            List<String[]> patterns = new ArrayList<>();
+            patterns.add(new String[]{"", "", ""});
+            for (int i = 0; i < 100; i += 7) {
+                patterns.add(new String[]{BASE_URI + "s" + i, "", ""});
+                patterns.add(new String[]{"", "", BASE_URI + "s" + i});
+                patterns.add(new String[]{BASE_URI + "s" + i, BASE_URI + "p" + (i % 5), ""});
+            }
+            for (int p = 0; p < 5; p++) {
+                patterns.add(new String[]{"", BASE_URI + "p" + p, ""});
+                patterns.add(new String[]{"", BASE_URI + "p" + p, "\"" + p + "\""});
+            }
+
+            for (String[] pattern : patterns) {
+                List<String> expected = new ArrayList<>();
+                IteratorTripleString triples = all.search(pattern[0], pattern[1], pattern[2]);
+                while (triples.hasNext())
+                    expected.add(toString(triples.next()));
+                Collections.sort(expected);
+
+                assertEquals(expected, search(union, pattern), String.join(" ", pattern));
+            }
+        } finally {
+            close(union);
+        }
+    }
+
+    // Search for the pattern (with "" as a wildcard) via global IDs, or return nothing if a term isn't in any file
+    private static List<String> search(FederatedHDTSPARQLEndpoint union, String[] pattern) {
+        long[] ids = new long[3];
+        for (int i = 0; i < 3; i++) {
+            if (pattern[i].isEmpty())
+                continue;
+
+            ids[i] = union.stringToId(pattern[i], ROLES[i]);
+            if (ids[i] == 0)
+                return List.of();
+        }
+
+        List<String> results = new ArrayList<>();
+        Iterator<TripleID> triples = union.search(new TripleID(ids[0], ids[1], ids[2]));
+        while (triples.hasNext()) {
+            TripleID triple = triples.next();
+            results.add(union.idToString(triple.getSubject(), TripleComponentRole.SUBJECT) + " " +
+                    union.idToString(triple.getPredicate(), TripleComponentRole.PREDICATE) + " " +
+                    union.idToString(triple.getObject(), TripleComponentRole.OBJECT));
+        }
+
+        Collections.sort(results);
+        return results;
+    }
+
+    @Test
+    void queriesSeeEveryTripleOnce(@TempDir Path dir) throws Exception {
+        List<String> locations = createFiles(dir);
+        FederatedHDTSPARQLEndpoint union = open(locations);
+        LocalHDTSPARQLEndpoint all = new LocalHDTSPARQLEndpoint(locations.get(NUMBER_OF_FILES), BASE_URI, true);
+
+        try {
+            String[] queries = {
+                    "SELECT * { ?s ?p ?o }",
+                    "SELECT * { ?s <http://example.org/p1> ?o }",
+                    "SELECT * { <http://example.org/s3> ?p ?o }",
+                    "SELECT * { ?s ?p <http://example.org/s3> }",
+                    "SELECT * { ?s <http://example.org/p0> ?o . ?o <http://example.org/p2> ?z }",
+                    "SELECT * { ?s <http://example.org/p0> ?a . ?s <http://example.org/p1> ?b }",
+                    "SELECT ?p (count(*) AS ?n) { ?s ?p ?o } GROUP BY ?p",
+                    "SELECT (count(DISTINCT ?s) AS ?n) { ?s ?p \"5\" }",
+            };
+
+            for (String query : queries)
+                assertEquals(solutions(all.runSelectQuery(query)), solutions(union.runSelectQuery(query)), query);
+
+            assertTrue(union.runAskQuery("ASK { <http://example.org/s3> ?p ?o }"));
+            assertFalse(union.runAskQuery("ASK { <http://example.org/missing> ?p ?o }"));
+        } finally {
+            close(union);
+            all.hdt.close();
+        }
+    }
+
+    // Each solution as a sorted list of var=value, and the solutions sorted too
+    private static List<String> solutions(ResultSet results) {
+        List<String> solutions = new ArrayList<>();
+        while (results.hasNext()) {
+            QuerySolution solution = results.next();
+
+            List<String> values = new ArrayList<>();
+            solution.varNames().forEachRemaining(var -> values.add(var + "=" + solution.get(var)));
+            Collections.sort(values);
+            solutions.add(values.toString());
+        }
+
+        Collections.sort(solutions);
+        return solutions;
+    }
+}
@@ -0,0 +1,93 @@
+package sid.SPARQLEndpoint;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.options.HDTSpecification;
+import org.rdfhdt.hdt.triples.TripleString;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HDTDeltaTest {
+    private static final String BASE_URI = "http://example.org/";
+
+    private static Triple triple(String subject, String object) {
+        return Triple.create(NodeFactory.createURI(BASE_URI + subject),
+                NodeFactory.createURI(BASE_URI + "p"),
+                NodeFactory.createURI(BASE_URI + object));
+    }
+
+    private static String createHDT(Path dir, int numberOfTriples) throws Exception {
+        List<TripleString> triples = new ArrayList<>();
+        for (int i = 0; i < numberOfTriples; i++)
+            triples.add(new TripleString(BASE_URI + "s" + i, BASE_URI + "p", BASE_URI + "o" + (i % 3)));
+
+        String location = dir.resolve("dataset.hdt").toString();
+        try (HDT hdt = HDTManager.generateHDT(triples.iterator(), BASE_URI, new HDTSpecification(), null)) {
+            hdt.saveToHDT(location, null);
+        }
+
+        return location;
+    }
+
+    @Test
+    void additionsAreMergedIntoTheOriginalFile(@TempDir Path dir) throws Exception {
+        String location = createHDT(dir, 10);
+        HDT hdt = HDTManager.mapIndexedHDT(location);
+        HDTDelta delta = new HDTDelta(hdt, location, BASE_URI, dir.resolve("delta").toString(), 2, 2);
+        Graph graph = delta.getGraph();
+        assertTrue(delta.isEmpty());
+
+        // Already in the HDT file
+        graph.add(triple("s0", "o0"));
+        assertTrue(delta.isEmpty());
+
+        // Enough for several runs and a compaction
+        for (int i = 0; i < 9; i++)
+            graph.add(triple("new" + i, "o" + i));
+        assertFalse(delta.isEmpty());
+        assertEquals(19, graph.size());
+        assertEquals(19, graph.find().toList().size());
+        assertTrue(graph.contains(triple("new0", "o0")));
+        assertTrue(graph.contains(triple("new8", "o8")));
+
+        delta.merge();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of("dataset.hdt"), files.map(f -> f.getFileName().toString()).toList());
+        }
+
+        try (HDT merged = HDTManager.mapHDT(location)) {
+            assertEquals(19, merged.getTriples().getNumberOfElements());
+        }
+    }
+
+    @Test
+    void onlyAdditionsAreDeleted(@TempDir Path dir) throws Exception {
+        String location = createHDT(dir, 10);
+        try (HDT hdt = HDTManager.mapIndexedHDT(location)) {
+            HDTDelta delta = new HDTDelta(hdt, location, BASE_URI, dir.resolve("delta").toString(), 100, 2);
+            Graph graph = delta.getGraph();
+
+            graph.add(triple("new", "o0"));
+            graph.delete(triple("new", "o0"));
+            assertFalse(graph.contains(triple("new", "o0")));
+            assertTrue(delta.isEmpty());
+
+            // Triples in the HDT file are kept, since it's immutable
+            graph.delete(triple("s0", "o0"));
+            assertTrue(graph.contains(triple("s0", "o0")));
+            assertEquals(10, graph.size());
+        }
+    }
+}
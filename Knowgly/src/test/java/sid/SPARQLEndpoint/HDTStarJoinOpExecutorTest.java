@@ -0,0 +1,157 @@
+package sid.SPARQLEndpoint;
+
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.engine.main.QC;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.options.HDTSpecification;
+import org.rdfhdt.hdt.triples.TripleString;
+import org.rdfhdt.hdtjena.HDTGraph;
+import org.rdfhdt.hdtjena.solver.OpExecutorHDT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HDTStarJoinOpExecutorTest {
+    private static final String PREFIXES = "PREFIX ex: <http://example.org/> ";
+
+    private static HDT hdt;
+    private static Model model;
+
+    @BeforeAll
+    static void createHDT() throws Exception {
+        List<TripleString> triples = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String subject = "http://example.org/s" + i;
+
+            triples.add(new TripleString(subject, "http://example.org/name", "\"name " + (i % 50) + "\""));
+            triples.add(new TripleString(subject, "http://www.w3.org/1999/02/22-rdf-syntax-ns#type",
+                    "http://example.org/Type" + (i % 4)));
+
+            // Shares its objects with ex:linkedTo for some subjects, and is multi-valued for others
+            if (i % 2 == 0)
+                triples.add(new TripleString(subject, "http://example.org/related", "http://example.org/s" + (i % 7)));
+            if (i % 3 == 0)
+                triples.add(new TripleString(subject, "http://example.org/related", "http://example.org/s" + (i + 1)));
+            if (i % 5 != 0)
+                triples.add(new TripleString(subject, "http://example.org/linkedTo", "http://example.org/s" + (i % 7)));
+
+            // Few enough to look up ex:name instead of merging it
+            if (i % 60 == 0)
+                triples.add(new TripleString(subject, "http://example.org/rare", "\"" + i + "\""));
+            if (i % 30 == 0)
+                triples.add(new TripleString(subject, "http://example.org/lessRare", "\"" + i + "\""));
+        }
+
+        hdt = HDTManager.indexedHDT(HDTManager.generateHDT(triples.iterator(), "http://example.org/",
+                new HDTSpecification(), null), null);
+        model = ModelFactory.createModelForGraph(new HDTGraph(hdt, true));
+
+        HDTStarJoinOpExecutor.register();
+    }
+
+    @AfterAll
+    static void closeHDT() throws Exception {
+        hdt.close();
+    }
+
+    // Each solution as a sorted list of var=value, and the solutions sorted too
+    private static List<String> solutions(ResultSet results) {
+        List<String> solutions = new ArrayList<>();
+        while (results.hasNext()) {
+            QuerySolution solution = results.next();
+
+            List<String> values = new ArrayList<>();
+            solution.varNames().forEachRemaining(var -> values.add(var + "=" + solution.get(var)));
+            Collections.sort(values);
+            solutions.add(values.toString());
+        }
+
+        Collections.sort(solutions);
+        return solutions;
+    }
+
+    // Compare the solutions of the registered executors with hdt-jena's alone
+    private static List<String> assertSameSolutions(String query) {
+        List<String> expected;
+        try (QueryExecution qExec = QueryExecutionFactory.create(PREFIXES + query, model)) {
+            QC.setFactory(qExec.getContext(), OpExecutorHDT.opExecFactoryHDT);
+            expected = solutions(qExec.execSelect());
+        }
+
+        List<String> actual;
+        try (QueryExecution qExec = QueryExecutionFactory.create(PREFIXES + query, model)) {
+            actual = solutions(qExec.execSelect());
+        }
+
+        assertEquals(expected, actual, query);
+        return actual;
+    }
+
+    @Test
+    void star() {
+        List<String> solutions = assertSameSolutions("SELECT * { ?s ex:name ?name . ?s a ?type . ?s ex:related ?related }");
+        assertFalse(solutions.isEmpty());
+
+        solutions = assertSameSolutions("SELECT * { ?s ex:rare ?rare . ?s ex:lessRare ?lessRare . ?s ex:name ?name }");
+        assertEquals(5, solutions.size());
+    }
+
+    @Test
+    void repeatedObjectVariables() {
+        List<String> solutions = assertSameSolutions("SELECT * { ?s ex:related ?o . ?s ex:linkedTo ?o . ?s ex:name ?name }");
+        assertFalse(solutions.isEmpty());
+
+        assertSameSolutions("SELECT * { ?s ex:related ?o . ?s ex:linkedTo ?o }");
+    }
+
+    @Test
+    void constantObject() {
+        List<String> solutions = assertSameSolutions("SELECT * { ?s a ex:Type1 . ?s ex:name ?name . ?s ex:linkedTo ?linked }");
+        assertFalse(solutions.isEmpty());
+
+        // Not in the dictionary as an object
+        assertTrue(assertSameSolutions("SELECT * { ?s a ex:Missing . ?s ex:name ?name }").isEmpty());
+    }
+
+    @Test
+    void missingPredicate() {
+        assertTrue(assertSameSolutions("SELECT * { ?s ex:name ?name . ?s ex:missing ?missing }").isEmpty());
+    }
+
+    @Test
+    void nonRootInput() {
+        List<String> solutions = assertSameSolutions(
+                "SELECT * { ?s a ex:Type2 OPTIONAL { ?s ex:related ?related . ?s ex:linkedTo ?linked } }");
+        assertFalse(solutions.isEmpty());
+
+        solutions = assertSameSolutions(
+                "SELECT * { ?x ex:linkedTo ?s . { SELECT * { ?s ex:name ?name . ?s a ?type } LIMIT 1000 } }");
+        assertFalse(solutions.isEmpty());
+
+        assertSameSolutions("SELECT * { ?s ex:related ?r . ?r ex:name ?name . ?r a ?type }");
+    }
+
+    @Test
+    void filteredStar() {
+        List<String> solutions = assertSameSolutions(
+                "SELECT * { ?s ex:related ?related . ?s ex:linkedTo ?linked FILTER(?related != ?linked) }");
+        assertFalse(solutions.isEmpty());
+    }
+
+    @Test
+    void aggregation() {
+        assertSameSolutions("SELECT ?type (count(*) AS ?n) { ?s a ?type . ?s ex:name ?name . ?s ex:related ?r } GROUP BY ?type");
+    }
+}
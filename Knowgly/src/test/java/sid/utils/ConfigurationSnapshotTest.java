@@ -0,0 +1,85 @@
+package sid.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigurationSnapshotTest {
+    private static final String FILE = "configuration/testConfiguration.json";
+    private static final String OTHER_FILE = "configuration/otherConfiguration.json";
+
+    @Test
+    void fromJSONRejectsAnythingButObjects() {
+        for (String contents : new String[]{"[1, 2]", "\"text\"", "3", ""}) {
+            IOException e = assertThrows(IOException.class, () -> ConfigurationSnapshot.fromJSON(Map.of(FILE, contents)));
+            assertTrue(e.getMessage().contains(FILE), e.getMessage());
+        }
+    }
+
+    @Test
+    void getReturnsACopy() throws IOException {
+        ConfigurationSnapshot configuration = ConfigurationSnapshot.fromJSON(Map.of(FILE, """
+                {"buckets": 5, "bucketWeights": [1.0, 0.5]}"""));
+
+        ObjectNode copy = (ObjectNode) configuration.get(FILE);
+        copy.put("buckets", 3);
+        copy.remove("bucketWeights");
+
+        JsonNode rootNode = configuration.get(FILE);
+        assertEquals(5, rootNode.get("buckets").asInt());
+        assertTrue(rootNode.has("bucketWeights"));
+        assertDoesNotThrow(() -> configuration.requireKeys(FILE, "buckets", "bucketWeights"));
+
+        // Nested nodes are copied too
+        ((ArrayNode) rootNode.get("bucketWeights")).removeAll();
+        assertEquals(2, configuration.get(FILE).get("bucketWeights").size());
+    }
+
+    @Test
+    void requireKeysListsEveryMissingKey() throws IOException {
+        ConfigurationSnapshot configuration = ConfigurationSnapshot.fromJSON(Map.of(FILE, """
+                {"buckets": 5}"""));
+
+        assertSame(configuration, configuration.requireKeys(FILE, "buckets"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> configuration.requireKeys(FILE, "buckets", "kMeansIterations", "bucketWeights"));
+        assertTrue(e.getMessage().contains("[kMeansIterations, bucketWeights]"), e.getMessage());
+        assertFalse(e.getMessage().contains("buckets,"), e.getMessage());
+    }
+
+    @Test
+    void missingFilesAreRejected() throws IOException {
+        ConfigurationSnapshot configuration = ConfigurationSnapshot.fromJSON(Map.of(FILE, "{}"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> configuration.requireKeys(OTHER_FILE));
+        assertTrue(e.getMessage().contains(OTHER_FILE), e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class, () -> configuration.get(OTHER_FILE));
+        assertTrue(e.getMessage().contains(OTHER_FILE), e.getMessage());
+        assertFalse(configuration.contains(OTHER_FILE));
+    }
+
+    @Test
+    void mergeTakesSharedFilesFromTheOtherSnapshot() throws IOException {
+        ConfigurationSnapshot base = ConfigurationSnapshot.fromJSON(Map.of(FILE, "{\"buckets\": 5}"));
+        ConfigurationSnapshot other = ConfigurationSnapshot.fromJSON(Map.of(FILE, "{\"buckets\": 3}",
+                OTHER_FILE, "{}"));
+
+        ConfigurationSnapshot merged = base.merge(other);
+        assertEquals(Set.of(FILE, OTHER_FILE), merged.getFiles());
+        assertEquals(3, merged.get(FILE).get("buckets").asInt());
+
+        // The merged snapshots are left untouched
+        assertEquals(5, base.get(FILE).get("buckets").asInt());
+        assertFalse(base.contains(OTHER_FILE));
+    }
+}
@@ -0,0 +1,114 @@
+package sid.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark of RequestExecutor against a local stub HTTP server which answers every request after a fixed latency, as
+ * a remote search engine or SPARQL endpoint would
+ * <p>
+ * Requests are sent as the connectors did before RequestExecutor (from a fixed pool of one platform thread per
+ * processor), and with RequestExecutor's batches and background requests for several maximums of requests in flight
+ * <p>
+ * Not run by default. Run it with mvn test -Pbenchmark, optionally setting -Dbenchmark.requests and
+ * -Dbenchmark.latencyMs
+ */
+@Tag("benchmark")
+class RequestExecutorBenchmark {
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 800);
+    private static final int LATENCY_MS = Integer.getInteger("benchmark.latencyMs", 20);
+    private static final int[] MAX_IN_FLIGHT_REQUESTS = {1, 4, 16, 64};
+
+    private static final byte[] RESPONSE = "{\"results\": []}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void comparesWithAFixedThreadPool() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(RESPONSE);
+            }
+        });
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        try {
+            URL url = URI.create("http://localhost:" + server.getAddress().getPort() + "/search").toURL();
+            List<Callable<Integer>> requests = new ArrayList<>(REQUESTS);
+            for (int i = 0; i < REQUESTS; i++)
+                requests.add(() -> get(url));
+
+            int processors = Runtime.getRuntime().availableProcessors();
+            System.out.println("RequestExecutor benchmark: " + REQUESTS + " requests, " + LATENCY_MS
+                    + " ms of latency, " + processors + " processor(s)");
+
+            long start = System.nanoTime();
+            ExecutorService pool = Executors.newFixedThreadPool(processors);
+            try {
+                for (Future<Integer> response : pool.invokeAll(requests))
+                    assertEquals(RESPONSE.length, (int) response.get());
+            } finally {
+                pool.shutdown();
+            }
+            report("Fixed pool of " + processors + " platform thread(s)", start);
+
+            for (int maxInFlightRequests : MAX_IN_FLIGHT_REQUESTS) {
+                try (RequestExecutor executor = new RequestExecutor("benchmark", maxInFlightRequests)) {
+                    start = System.nanoTime();
+                    for (int length : executor.invokeAll(requests))
+                        assertEquals(RESPONSE.length, length);
+                    report("RequestExecutor.invokeAll, " + maxInFlightRequests + " in flight", start);
+
+                    start = System.nanoTime();
+                    for (Callable<Integer> request : requests)
+                        executor.submit(request);
+                    executor.awaitCompletion();
+                    report("RequestExecutor.submit, " + maxInFlightRequests + " in flight", start);
+
+                    assertEquals(2L * REQUESTS, executor.getMetrics().completedRequests());
+                }
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static int get(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try (InputStream response = connection.getInputStream()) {
+            return response.readAllBytes().length;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void report(String method, long start) {
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("  %s: %.0f ms (%.2f ms per request)%n", method, millis, millis / REQUESTS);
+    }
+}
@@ -0,0 +1,95 @@
+package sid.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestExecutorTest {
+    @Test
+    void backgroundFailureFailsTheNextSubmit() throws Exception {
+        try (RequestExecutor requests = new RequestExecutor("test", 2)) {
+            IOException failure = new IOException("bulk update failed");
+            requests.submit(() -> {
+                throw failure;
+            });
+
+            // Let it fail before the next submit
+            while (requests.getMetrics().failedRequests() == 0)
+                Thread.sleep(1);
+
+            AtomicInteger sent = new AtomicInteger(0);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> requests.submit(sent::incrementAndGet));
+            assertSame(failure, e.getCause());
+            assertEquals(0, sent.get());
+
+            // Until it's reported by awaitCompletion
+            e = assertThrows(ExecutionException.class, requests::awaitCompletion);
+            assertSame(failure, e.getCause());
+
+            requests.submit(sent::incrementAndGet);
+            requests.awaitCompletion();
+            assertEquals(1, sent.get());
+        }
+    }
+
+    @Test
+    void backgroundFailureFailsSubmitsWaitingForASlot() throws Exception {
+        try (RequestExecutor requests = new RequestExecutor("test", 1)) {
+            CountDownLatch fail = new CountDownLatch(1);
+            IOException failure = new IOException("bulk update failed");
+            requests.submit(() -> {
+                fail.await();
+                throw failure;
+            });
+
+            // The only slot is taken, so this submit waits until the request above fails
+            Thread failLater = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                fail.countDown();
+            });
+            failLater.start();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> requests.submit(() -> null));
+            assertSame(failure, e.getCause());
+            failLater.join();
+
+            assertThrows(ExecutionException.class, requests::awaitCompletion);
+            assertEquals(0, requests.getMetrics().inFlightRequests());
+        }
+    }
+
+    @Test
+    void batchFailureInterruptsTheRest() throws Exception {
+        try (RequestExecutor requests = new RequestExecutor("test", 4)) {
+            AtomicInteger interrupted = new AtomicInteger(0);
+            Callable<Integer> slow = () -> {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    throw e;
+                }
+                return 0;
+            };
+            Callable<Integer> failing = () -> {
+                Thread.sleep(50);
+                throw new IOException("search failed");
+            };
+
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> requests.invokeAll(List.of(slow, slow, failing)));
+            assertEquals("search failed", e.getCause().getMessage());
+            assertEquals(2, interrupted.get());
+        }
+    }
+}